@@ -26,6 +26,7 @@ import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.jackson.Jackson;
+import com.graphhopper.jackson.ResponsePathBinaryFormat;
 import com.graphhopper.jackson.ResponsePathDeserializerHelper;
 import com.graphhopper.util.CustomModel;
 import com.graphhopper.util.Helper;
@@ -54,6 +55,8 @@ import static com.graphhopper.util.Parameters.Routing.INSTRUCTIONS;
 public class GraphHopperWeb {
 
     public static final String X_GH_CLIENT_VERSION = "X-GH-Client-Version";
+    // we still need JSON for the errors
+    private static final String ACCEPT_BINARY = ResponsePathBinaryFormat.MEDIA_TYPE + ", application/json;q=0.5";
     private final ObjectMapper objectMapper;
     private final String routeServiceUrl;
     private OkHttpClient downloader;
@@ -63,6 +66,7 @@ public class GraphHopperWeb {
     private boolean elevation = false;
     private String optimize = "false";
     private boolean postRequest = true;
+    private boolean binaryResponse = false;
     private int maxUnzippedLength = 1000;
     private final Set<String> ignoreSetForGet;
     private final Set<String> ignoreSetForPost;
@@ -145,6 +149,15 @@ public class GraphHopperWeb {
         return this;
     }
 
+    /**
+     * If true the server is asked for the compact binary format of {@link ResponsePathBinaryFormat} instead of JSON,
+     * which is faster to create and to parse. The server must support it. The default is false.
+     */
+    public GraphHopperWeb setBinaryResponse(boolean binaryResponse) {
+        this.binaryResponse = binaryResponse;
+        return this;
+    }
+
     /**
      * Enable or disable calculating points for the way. The default is true.
      */
@@ -192,6 +205,15 @@ public class GraphHopperWeb {
             Request okRequest = postRequest ? createPostRequest(ghRequest) : createGetRequest(ghRequest);
             Response rsp = getClientForRequest(ghRequest).newCall(okRequest).execute();
             rspBody = rsp.body();
+            MediaType contentType = rspBody.contentType();
+            if (contentType != null && ResponsePathBinaryFormat.MEDIA_TYPE.equals(contentType.type() + "/" + contentType.subtype())) {
+                GHResponse res = ResponsePathBinaryFormat.read(rspBody.byteStream(), tmpTurnDescription);
+                for (Map.Entry<String, List<String>> entry : rsp.headers().toMultimap().entrySet()) {
+                    res.getHints().putObject(entry.getKey(), entry.getValue());
+                }
+                return res;
+            }
+            // errors are always returned as JSON
             JsonNode json = objectMapper.reader().readTree(rspBody.byteStream());
 
             GHResponse res = new GHResponse();
@@ -248,6 +270,8 @@ public class GraphHopperWeb {
         }
         Request.Builder builder = new Request.Builder().url(url).post(RequestBody.create(MT_JSON, body));
         builder.header(X_GH_CLIENT_VERSION, GH_VERSION_FROM_MAVEN);
+        if (binaryResponse)
+            builder.header("Accept", ACCEPT_BINARY);
         // force avoiding our GzipRequestInterceptor for smaller requests ~30 locations
         if (body.length() < maxUnzippedLength)
             builder.header("Content-Encoding", "identity");
@@ -382,9 +406,12 @@ public class GraphHopperWeb {
             }
         }
 
-        return new Request.Builder().url(url)
-                .header(X_GH_CLIENT_VERSION, GH_VERSION_FROM_MAVEN)
-                .build();
+        Request.Builder builder = new Request.Builder().url(url)
+                .header(X_GH_CLIENT_VERSION, GH_VERSION_FROM_MAVEN);
+        // only the JSON can be replaced, e.g. not the GPX export
+        if (binaryResponse && "json".equals(type))
+            builder.header("Accept", ACCEPT_BINARY);
+        return builder.build();
     }
 
     public String export(GHRequest ghRequest) {
@@ -53,6 +53,21 @@ public class GraphHopperWebTest {
                 hopper.createGetRequest(new GHRequest().setProfile("my_car")).url().toString());
     }
 
+    @Test
+    public void binaryResponse() {
+        GraphHopperWeb hopper = new GraphHopperWeb("http://localhost:8080/route");
+        GHRequest req = new GHRequest(new GHPoint(42.509225, 1.534728), new GHPoint(42.512602, 1.551558)).
+                setProfile("car");
+        assertNull(hopper.createGetRequest(req).header("Accept"));
+        assertNull(hopper.createPostRequest(req).header("Accept"));
+
+        hopper.setBinaryResponse(true);
+        assertEquals("application/x-graphhopper-route, application/json;q=0.5", hopper.createGetRequest(req).header("Accept"));
+        assertEquals("application/x-graphhopper-route, application/json;q=0.5", hopper.createPostRequest(req).header("Accept"));
+        req.putHint("type", "gpx");
+        assertNull(hopper.createGetRequest(req).header("Accept"));
+    }
+
     @Test
     public void headings() {
         GraphHopperWeb hopper = new GraphHopperWeb("http://localhost:8080/route");
@@ -23,16 +23,21 @@ import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.carrotsearch.hppc.sorting.IndirectSort;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.reader.dem.*;
+import com.graphhopper.reader.osm.OSMChangeApplier;
 import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.reader.osm.RestrictionTagParser;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.CHPreparationHandler;
+import com.graphhopper.routing.ch.OneToAllCH;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMConfig;
@@ -47,6 +52,7 @@ import com.graphhopper.routing.util.parsers.OSMBikeNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMFootNetworkTagParser;
 import com.graphhopper.routing.util.parsers.TagParser;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.AreaEdgeCache;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.routing.weighting.custom.NameValidator;
@@ -54,6 +60,7 @@ import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.util.*;
+import com.graphhopper.util.Parameters.CH;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.Parameters.Routing;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
@@ -68,6 +75,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -111,6 +119,10 @@ public class GraphHopper {
     private final OSMReaderConfig osmReaderConfig = new OSMReaderConfig();
     // for routing
     private final RouterConfig routerConfig = new RouterConfig();
+    private RouteCache routeCache;
+    private SearchStatePool searchStatePool;
+    private AreaEdgeCache areaEdgeCache;
+    private RouterMetrics routerMetrics = RouterMetrics.NOOP;
     // for index
     private LocationIndex locationIndex;
     private int preciseIndexResolution = 300;
@@ -129,6 +141,7 @@ public class GraphHopper {
     private final LMPreparationHandler lmPreparationHandler = new LMPreparationHandler();
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
     private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
+    private final Map<String, int[]> chSweepOrders = new ConcurrentHashMap<>();
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
 
     // for data reader
@@ -394,6 +407,17 @@ public class GraphHopper {
         return chGraphs;
     }
 
+    /**
+     * @return the nodes of the CH graph of the given profile in the order of the downward sweep of {@link OneToAllCH}.
+     * It is calculated on first use and kept as long as the CH graph.
+     */
+    public int[] getCHSweepOrder(String profile) {
+        RoutingCHGraph chGraph = chGraphs.get(profile);
+        if (chGraph == null)
+            throw new IllegalArgumentException("There is no CH graph for profile: " + profile);
+        return chSweepOrders.computeIfAbsent(profile, p -> OneToAllCH.calcSweepOrder(chGraph));
+    }
+
     /**
      * @return a mapping between profile names and according landmark preparations. The map will be empty before loading
      * or import.
@@ -590,6 +614,12 @@ public class GraphHopper {
         routerConfig.setMaxRoundTripRetries(ghConfig.getInt(RoundTrip.INIT_MAX_RETRIES, routerConfig.getMaxRoundTripRetries()));
         routerConfig.setNonChMaxWaypointDistance(ghConfig.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, routerConfig.getNonChMaxWaypointDistance()));
         routerConfig.setInstructionsEnabled(ghConfig.getBool(Routing.INIT_INSTRUCTIONS, routerConfig.isInstructionsEnabled()));
+        routerConfig.setMaxMatrixLocations(ghConfig.getInt(Routing.INIT_MATRIX_MAX_LOCATIONS, routerConfig.getMaxMatrixLocations()));
+        routerConfig.setRouteCacheSize(ghConfig.getInt(Routing.INIT_CACHE_SIZE, routerConfig.getRouteCacheSize()));
+        routerConfig.setRouteCacheTtlMillis(ghConfig.getLong(Routing.INIT_CACHE_TTL_MS, routerConfig.getRouteCacheTtlMillis()));
+        routerConfig.setAreaCacheSize(ghConfig.getInt(Routing.INIT_AREA_CACHE_SIZE, routerConfig.getAreaCacheSize()));
+        routerConfig.setAreaCacheMaxBytes(ghConfig.getLong(Routing.INIT_AREA_CACHE_MAX_BYTES, routerConfig.getAreaCacheMaxBytes()));
+        routerConfig.setSearchStatePoolSize(ghConfig.getInt(Routing.INIT_SEARCH_STATE_POOL_SIZE, routerConfig.getSearchStatePoolSize()));
         int activeLandmarkCount = ghConfig.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, lmPreparationHandler.getLandmarks()));
         if (activeLandmarkCount > lmPreparationHandler.getLandmarks())
             throw new IllegalArgumentException("Default value for active landmarks " + activeLandmarkCount
@@ -1033,15 +1063,7 @@ public class GraphHopper {
             throw new IllegalStateException("Couldn't load from existing folder: " + ghLocation
                     + " but also cannot use file for DataReader as it wasn't specified!");
 
-        List<CustomArea> customAreas = readCountries();
-        if (isEmpty(customAreasDirectory)) {
-            logger.info("No custom areas are used, custom_areas.directory not given");
-        } else {
-            logger.info("Creating custom area index, reading custom areas from: '" + customAreasDirectory + "'");
-            customAreas.addAll(readCustomAreas());
-        }
-
-        AreaIndex<CustomArea> areaIndex = new AreaIndex<>(customAreas);
+        AreaIndex<CustomArea> areaIndex = createAreaIndex();
 
         eleProvider.init();
         logger.info("start creating graph from " + osmFile);
@@ -1063,6 +1085,123 @@ public class GraphHopper {
             properties.put("datareader.data.date", f.format(reader.getDataDate()));
     }
 
+    private AreaIndex<CustomArea> createAreaIndex() {
+        List<CustomArea> customAreas = readCountries();
+        if (isEmpty(customAreasDirectory)) {
+            logger.info("No custom areas are used, custom_areas.directory not given");
+        } else {
+            logger.info("Creating custom area index, reading custom areas from: '" + customAreasDirectory + "'");
+            customAreas.addAll(readCustomAreas());
+        }
+        return new AreaIndex<>(customAreas);
+    }
+
+    /**
+     * Applies the given OSM change file (.osc or .osc.gz) to the loaded graph and stores the result. Only changed and
+     * deleted ways are applied, see {@link OSMChangeApplier}, which requires the osm_way_id encoded value. Since the
+     * edge flags change, the subnetworks are determined again and the CH and LM preparations are removed and
+     * prepared again. Do not use this instance for routing while this method is running.
+     */
+    public OSMChangeApplier.Result applyOSMChanges(File changeFile) {
+        if (!fullyLoaded)
+            throw new IllegalStateException("The graph must be loaded before OSM changes can be applied");
+        ensureWriteAccess();
+        if (!encodingManager.hasEncodedValue(OSMWayID.KEY))
+            throw new IllegalArgumentException("Applying OSM changes requires the encoded value " + OSMWayID.KEY + ", add it to graph.encoded_values and import the graph again");
+        if (maxSpeedCalculator != null)
+            throw new IllegalArgumentException("Applying OSM changes is not supported together with max_speed_calculator");
+
+        // the tag parsers are not stored with the graph, so we create them again. their encoded values must be the same.
+        EncodingManager storedEncodingManager = encodingManager;
+        prepareImport();
+        if (!encodedValuesLayout(encodingManager).equals(encodedValuesLayout(storedEncodingManager)))
+            throw new IllegalStateException("The configured encoded values do not match the ones of the stored graph");
+        encodingManager = storedEncodingManager;
+
+        // encoded values without tag parser are calculated after the import (or from relations), so we keep them
+        List<EncodedValue> preserved = encodingManager.getEncodedValues().stream().filter(ev -> {
+            ImportUnit importUnit = importRegistry.createImportUnit(ev.getName());
+            return importUnit == null || importUnit.getCreateTagParser() == null;
+        }).collect(Collectors.toList());
+        OSMChangeApplier applier = new OSMChangeApplier(baseGraph, osmParsers, osmReaderConfig, encodingManager.getIntEncodedValue(OSMWayID.KEY)).
+                setAreaIndex(createAreaIndex()).
+                setPreservedEncodedValues(preserved).
+                setGraphEncodedValues(encodingManager.getEncodedValues());
+        OSMChangeApplier.Result result;
+        try {
+            result = applier.apply(changeFile);
+        } catch (IOException ex) {
+            throw new RuntimeException("Cannot read file " + changeFile, ex);
+        }
+        if (!result.isComplete())
+            logger.warn("Some of the OSM changes cannot be applied, they require a full import: " + result);
+        if (!result.hasChanges())
+            return result;
+
+        // edges might have become inaccessible or accessible, so we determine all subnetworks again
+        List<BooleanEncodedValue> subnetworkEncs = profilesByName.keySet().stream().map(p -> encodingManager.getBooleanEncodedValue(Subnetwork.key(p))).toList();
+        AllEdgesIterator iter = baseGraph.getAllEdges();
+        while (iter.next())
+            for (BooleanEncodedValue subnetworkEnc : subnetworkEncs)
+                iter.set(subnetworkEnc, false);
+        cleanUp();
+
+        removeCHAndLMPreparations();
+        if (routeCache != null)
+            routeCache.clear();
+        if (areaEdgeCache != null)
+            areaEdgeCache.clear();
+        properties.put("datareader.changes.date", createFormatter().format(new Date()));
+        if (lmPreparationHandler.isEnabled())
+            loadOrPrepareLM(false);
+        if (chPreparationHandler.isEnabled())
+            loadOrPrepareCH(false);
+        flush();
+        return result;
+    }
+
+    /**
+     * @return the serialized encoded values without their maximum values, which are only known after the import
+     */
+    private static List<JsonNode> encodedValuesLayout(EncodingManager em) {
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        return em.getEncodedValues().stream().map(ev -> {
+            try {
+                ObjectNode node = (ObjectNode) objectMapper.readTree(EncodedValueSerializer.serializeEncodedValue(ev));
+                node.remove("max_value");
+                return (JsonNode) node;
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).toList();
+    }
+
+    private void removeCHAndLMPreparations() {
+        Directory dir = baseGraph.getDirectory();
+        chGraphs.forEach((name, chGraph) -> {
+            // removing the DataAccess objects also closes them
+            boolean upwardLayout = ((RoutingCHGraphImpl) chGraph).getCHUpwardStorage() != null;
+            dir.remove("nodes_ch_" + name);
+            dir.remove("shortcuts_" + name);
+            if (upwardLayout) {
+                dir.remove("ch_upward_nodes_" + name);
+                dir.remove("ch_upward_edges_" + name);
+            }
+            properties.remove("graph.profiles.ch." + name + ".version");
+            properties.remove(CH.PREPARE + "date." + name);
+        });
+        chGraphs = Collections.emptyMap();
+        chSweepOrders.clear();
+        // several profiles can share the same landmarks
+        landmarks.values().stream().map(lms -> lms.getLMConfig().getName()).distinct().forEach(name -> {
+            dir.remove("landmarks_" + name);
+            dir.remove("landmarks_subnetwork_" + name);
+            properties.remove(Landmark.PREPARE + "date." + name);
+        });
+        landmarks.keySet().forEach(profile -> properties.remove("graph.profiles.lm." + profile + ".version"));
+        landmarks = Collections.emptyMap();
+    }
+
     protected void createBaseGraphAndProperties() {
         baseGraph.getDirectory().create();
         baseGraph.create(100);
@@ -1438,13 +1577,21 @@ public class GraphHopper {
     }
 
     protected WeightingFactory createWeightingFactory() {
-        return new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager());
+        return new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager(), areaEdgeCache);
     }
 
     public GHResponse route(GHRequest request) {
         return createRouter().route(request);
     }
 
+    /**
+     * Calculates the weights, times and/or distances between many points. This requires a CH preparation for the
+     * requested profile.
+     */
+    public GHMatrixResponse matrix(GHMatrixRequest request) {
+        return createRouter().matrix(request);
+    }
+
     private Router createRouter() {
         if (baseGraph == null || !fullyLoaded)
             throw new IllegalStateException("Do a successful call to load or importOrLoad before routing");
@@ -1462,7 +1609,7 @@ public class GraphHopper {
                                     WeightingFactory weightingFactory, Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
         return new Router(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
                 trMap, routerConfig, weightingFactory, chGraphs, landmarks
-        );
+        ).setRouteCache(routeCache).setRouterMetrics(routerMetrics).setSearchStatePool(searchStatePool);
     }
 
     protected LocationIndex createLocationIndex(Directory dir) {
@@ -1548,13 +1695,14 @@ public class GraphHopper {
 
         // we map all profile names for which there is CH support to the according CH graphs
         chGraphs = new LinkedHashMap<>();
+        chSweepOrders.clear();
         for (CHProfile profile : chPreparationHandler.getCHProfiles()) {
             if (loaded.containsKey(profile.getProfile()) && prepared.containsKey(profile.getProfile()))
                 throw new IllegalStateException("CH graph should be either loaded or prepared, but not both: " + profile.getProfile());
             else if (prepared.containsKey(profile.getProfile())) {
                 setCHProfileVersion(profile.getProfile(), getProfileHash(profilesByName.get(profile.getProfile())));
                 PrepareContractionHierarchies.Result res = prepared.get(profile.getProfile());
-                chGraphs.put(profile.getProfile(), RoutingCHGraphImpl.fromGraph(baseGraph.getBaseGraph(), res.getCHStorage(), res.getCHConfig()));
+                chGraphs.put(profile.getProfile(), RoutingCHGraphImpl.fromGraph(baseGraph.getBaseGraph(), res.getCHStorage(), res.getCHUpwardStorage(), res.getCHConfig()));
             } else if (loaded.containsKey(profile.getProfile())) {
                 chGraphs.put(profile.getProfile(), loaded.get(profile.getProfile()));
             } else
@@ -1563,6 +1711,9 @@ public class GraphHopper {
         chGraphs.forEach((name, ch) -> {
             CHStorage store = ((RoutingCHGraphImpl) ch).getCHStorage();
             logger.info("CH available for profile {}, {}MB, {}, ({}MB)", name, Helper.nf(store.getCapacity() / Helper.MB), store.toDetailsString(), store.getMB());
+            CHUpwardStorage upwardStore = ((RoutingCHGraphImpl) ch).getCHUpwardStorage();
+            if (upwardStore != null)
+                logger.info("Upward CH layout available for profile {}, {}MB, {}", name, Helper.nf(upwardStore.getCapacity() / Helper.MB), upwardStore.toDetailsString());
         });
     }
 
@@ -1650,12 +1801,19 @@ public class GraphHopper {
      * remove the files created in graphhopperLocation you have to call clean().
      */
     public void close() {
+        if (routeCache != null)
+            routeCache.clear();
+        if (searchStatePool != null)
+            searchStatePool.clear();
+        if (areaEdgeCache != null)
+            areaEdgeCache.clear();
         if (baseGraph != null)
             baseGraph.close();
         if (properties != null)
             properties.close();
 
         chGraphs.values().forEach(RoutingCHGraph::close);
+        chSweepOrders.clear();
         landmarks.values().forEach(LandmarkStorage::close);
 
         if (locationIndex != null)
@@ -1691,6 +1849,13 @@ public class GraphHopper {
     }
 
     private void setFullyLoaded() {
+        // a new cache makes sure that no responses of a previously loaded graph are returned
+        routeCache = routerConfig.getRouteCacheSize() > 0
+                ? new RouteCache(routerConfig.getRouteCacheSize(), routerConfig.getRouteCacheTtlMillis()) : null;
+        areaEdgeCache = routerConfig.getAreaCacheSize() > 0 && locationIndex != null
+                ? new AreaEdgeCache(baseGraph.getBaseGraph(), locationIndex, routerConfig.getAreaCacheSize(), routerConfig.getAreaCacheMaxBytes()) : null;
+        // the search states are sized for this graph, so the pool must not be shared with a previously loaded graph
+        searchStatePool = routerConfig.getSearchStatePoolSize() > 0 ? new SearchStatePool(routerConfig.getSearchStatePoolSize()) : null;
         fullyLoaded = true;
     }
 
@@ -1698,6 +1863,43 @@ public class GraphHopper {
         return fullyLoaded;
     }
 
+    /**
+     * Sets the metrics that receive the time spent in the different stages of the routing requests. This only
+     * affects routers created afterwards.
+     */
+    public GraphHopper setRouterMetrics(RouterMetrics routerMetrics) {
+        if (routerMetrics == null)
+            throw new IllegalArgumentException("routerMetrics must not be null, use RouterMetrics.NOOP instead");
+        this.routerMetrics = routerMetrics;
+        return this;
+    }
+
+    public RouterMetrics getRouterMetrics() {
+        return routerMetrics;
+    }
+
+    /**
+     * @return the search states that are re-used by the routing algorithms, or null if the array search state is
+     * disabled or the graph is not loaded yet
+     */
+    public SearchStatePool getSearchStatePool() {
+        return searchStatePool;
+    }
+
+    /**
+     * @return the cache for route responses or null if it is disabled or the graph is not loaded yet
+     */
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * @return the cache for the edges within custom model areas or null if it is disabled or the graph is not loaded yet
+     */
+    public AreaEdgeCache getAreaEdgeCache() {
+        return areaEdgeCache;
+    }
+
     public RouterConfig getRouterConfig() {
         return routerConfig;
     }
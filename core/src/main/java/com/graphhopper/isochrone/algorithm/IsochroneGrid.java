@@ -0,0 +1,383 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.carrotsearch.hppc.cursors.IntDoubleCursor;
+import com.carrotsearch.hppc.cursors.LongLongCursor;
+import com.graphhopper.routing.ch.OneToAllCH;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.*;
+import org.locationtech.jts.algorithm.Area;
+import org.locationtech.jts.algorithm.PointLocation;
+import org.locationtech.jts.geom.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A raster of the values (time, distance or weight) of a shortest path tree. Every edge between reached nodes is
+ * drawn into the grid, interpolating between the values of its nodes, and each cell gets the smallest value drawn
+ * into it.
+ * This is much cheaper than a triangulation, and for analyses that only need the grid, the contours are not needed
+ * at all. When they are, {@link #computeIsoline} traces them with marching squares.
+ * <p>
+ * Cells are stored row by row, starting at the north-west corner. Cells that no edge of the tree touches are
+ * {@link #UNREACHED}.
+ */
+public class IsochroneGrid {
+
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final double west;
+    private final double north;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int width;
+    private final int height;
+    private final int[] values;
+
+    IsochroneGrid(double west, double north, double cellWidth, double cellHeight, int width, int height) {
+        this.west = west;
+        this.north = north;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.width = width;
+        this.height = height;
+        this.values = new int[width * height];
+        Arrays.fill(values, UNREACHED);
+    }
+
+    /**
+     * @param limit    the largest value to draw into the grid
+     * @param cellSize the size of the (roughly square) cells, in meters
+     * @param maxCells the largest grid we are willing to create
+     */
+    public static IsochroneGrid create(Snap snap, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double limit, double cellSize, int maxCells) {
+        IntDoubleHashMap values = new IntDoubleHashMap();
+        shortestPathTree.search(snap.getClosestNode(), label -> {
+            // edge-based searches visit nodes more than once
+            double z = fz.applyAsDouble(label);
+            int index = values.indexOf(label.node);
+            if (index < 0 || values.indexGet(index) > z)
+                values.put(label.node, z);
+        });
+        return create(queryGraph, values, limit, cellSize, maxCells);
+    }
+
+    public static IsochroneGrid create(QueryGraph queryGraph, OneToAllCH.Result oneToAllResult, IntToDoubleFunction fz, double limit, double cellSize, int maxCells) {
+        IntDoubleHashMap values = new IntDoubleHashMap();
+        for (int node = 0; node < oneToAllResult.getNodes(); node++)
+            if (oneToAllResult.isReached(node))
+                values.put(node, fz.applyAsDouble(node));
+        return create(queryGraph, values, limit, cellSize, maxCells);
+    }
+
+    /**
+     * Draws all edges between the reached nodes. Along an edge, the value goes linearly from one node to the other,
+     * just like in a triangulation of the nodes. That's only exact for the edges of the tree, the others are a bit
+     * more expensive in the middle.
+     */
+    private static IsochroneGrid create(QueryGraph queryGraph, IntDoubleHashMap values, double limit, double cellSize, int maxCells) {
+        if (cellSize <= 0)
+            throw new IllegalArgumentException("cell size must be positive: " + cellSize);
+        NodeAccess na = queryGraph.getNodeAccess();
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE, minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (IntDoubleCursor c : values) {
+            if (c.value > limit)
+                continue;
+            minLat = Math.min(minLat, na.getLat(c.key));
+            maxLat = Math.max(maxLat, na.getLat(c.key));
+            minLon = Math.min(minLon, na.getLon(c.key));
+            maxLon = Math.max(maxLon, na.getLon(c.key));
+        }
+        if (minLat > maxLat)
+            throw new IllegalArgumentException("Too few points found. Please try a different 'point' or a larger 'time_limit'.");
+        double cellHeight = cellSize / DistanceCalcEarth.METERS_PER_DEGREE;
+        double cellWidth = cellHeight / Math.cos(Math.toRadians((minLat + maxLat) / 2));
+        // a margin of one cell, the edges to nodes beyond the limit leave the bounding box of the reached nodes
+        long width = (long) Math.ceil((maxLon - minLon) / cellWidth) + 3;
+        long height = (long) Math.ceil((maxLat - minLat) / cellHeight) + 3;
+        if (width * height > maxCells)
+            throw new IllegalArgumentException("Too many cells would be included in the grid (" + width * height + "). Please try a larger cell size.");
+        IsochroneGrid grid = new IsochroneGrid(minLon - 1.5 * cellWidth, maxLat + 1.5 * cellHeight, cellWidth, cellHeight, (int) width, (int) height);
+        EdgeExplorer explorer = queryGraph.createEdgeExplorer();
+        for (IntDoubleCursor c : values) {
+            double z0 = c.value;
+            grid.set(na.getLat(c.key), na.getLon(c.key), z0, limit);
+            EdgeIterator iter = explorer.setBaseNode(c.key);
+            while (iter.next()) {
+                // we draw each edge from its lower node
+                int adjNode = iter.getAdjNode();
+                if (adjNode <= c.key)
+                    continue;
+                int index = values.indexOf(adjNode);
+                if (index < 0)
+                    continue;
+                double z1 = values.indexGet(index);
+                if (Math.min(z0, z1) <= limit)
+                    grid.draw(iter.fetchWayGeometry(FetchMode.ALL), z0, z1, limit);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Draws the line into the grid, with values going linearly from z0 to z1 along it.
+     */
+    private void draw(PointList points, double z0, double z1, double limit) {
+        double length = 0;
+        for (int i = 1; i < points.size(); i++)
+            length += lengthInCells(points, i);
+        double lengthSoFar = 0;
+        set(points.getLat(0), points.getLon(0), z0, limit);
+        for (int i = 1; i < points.size(); i++) {
+            double segmentLength = lengthInCells(points, i);
+            // two samples per cell, so we don't skip any cell the segment crosses
+            int steps = Math.max(1, (int) Math.ceil(2 * segmentLength));
+            for (int step = 1; step <= steps; step++) {
+                double t = (double) step / steps;
+                double lat = points.getLat(i - 1) + t * (points.getLat(i) - points.getLat(i - 1));
+                double lon = points.getLon(i - 1) + t * (points.getLon(i) - points.getLon(i - 1));
+                double z = length > 0 ? z0 + (z1 - z0) * (lengthSoFar + t * segmentLength) / length : z1;
+                set(lat, lon, z, limit);
+            }
+            lengthSoFar += segmentLength;
+        }
+    }
+
+    private double lengthInCells(PointList points, int i) {
+        double dx = (points.getLon(i) - points.getLon(i - 1)) / cellWidth;
+        double dy = (points.getLat(i) - points.getLat(i - 1)) / cellHeight;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private void set(double lat, double lon, double z, double limit) {
+        if (z > limit)
+            return;
+        int column = (int) Math.floor((lon - west) / cellWidth);
+        int row = (int) Math.floor((north - lat) / cellHeight);
+        if (column < 0 || column >= width || row < 0 || row >= height)
+            return;
+        int index = row * width + column;
+        values[index] = Math.min(values[index], (int) Math.round(z));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the longitude of the western border of the grid
+     */
+    public double getWest() {
+        return west;
+    }
+
+    /**
+     * @return the latitude of the northern border of the grid
+     */
+    public double getNorth() {
+        return north;
+    }
+
+    public double getCellWidth() {
+        return cellWidth;
+    }
+
+    public double getCellHeight() {
+        return cellHeight;
+    }
+
+    public int getValue(int row, int column) {
+        return values[row * width + column];
+    }
+
+    /**
+     * Traces the border of the area with values up to z, with marching squares over the centers of the cells.
+     * Outer borders are counter-clockwise, holes clockwise.
+     */
+    public MultiPolygon computeIsoline(double z, GeometryFactory geometryFactory) {
+        // Each contour segment goes from the crossing where the square's border (counter-clockwise) leaves the area
+        // to the crossing where it enters it again, so the area is on its left. Every crossing lies on the border
+        // of two squares, once as the start and once as the end of a segment, so following the segments gives
+        // closed rings. The squares cover one row and column outside the grid, which is unreached, so the rings
+        // also close at the border of the grid.
+        LongLongHashMap segments = new LongLongHashMap();
+        for (int row = -1; row < height; row++) {
+            for (int column = -1; column < width; column++) {
+                // the corners of the square, counter-clockwise from the bottom left
+                int[] rows = {row + 1, row + 1, row, row};
+                int[] columns = {column, column + 1, column + 1, column};
+                boolean[] inside = new boolean[4];
+                int insideCount = 0;
+                for (int i = 0; i < 4; i++) {
+                    inside[i] = valueAt(rows[i], columns[i]) <= z;
+                    if (inside[i])
+                        insideCount++;
+                }
+                if (insideCount == 0 || insideCount == 4)
+                    continue;
+                // the crossings on the sides of the square, in the same order. Side i goes from corner i to i + 1.
+                long[] crossings = {
+                        crossing(row + 1, column, true), crossing(row, column + 1, false),
+                        crossing(row, column, true), crossing(row, column, false)};
+                List<Integer> exits = new ArrayList<>();
+                List<Integer> entries = new ArrayList<>();
+                for (int side = 0; side < 4; side++) {
+                    boolean from = inside[side];
+                    boolean to = inside[(side + 1) % 4];
+                    if (from && !to)
+                        exits.add(side);
+                    else if (!from && to)
+                        entries.add(side);
+                }
+                if (exits.size() == 1) {
+                    segments.put(crossings[exits.get(0)], crossings[entries.get(0)]);
+                } else {
+                    // a saddle: two opposite corners are inside. Either the middle of the square connects them,
+                    // and each exit goes to the next entry, or it doesn't, and each exit goes to the previous one.
+                    boolean connected = centerValue(rows, columns) <= z;
+                    for (int exit : exits)
+                        segments.put(crossings[exit], crossings[connected ? nextOf(exit, entries) : previousOf(exit, entries)]);
+                }
+            }
+        }
+
+        List<LinearRing> shells = new ArrayList<>();
+        List<LinearRing> holes = new ArrayList<>();
+        while (!segments.isEmpty()) {
+            LongLongCursor first = segments.iterator().next();
+            List<Coordinate> coordinates = new ArrayList<>();
+            long start = first.key;
+            long current = start;
+            do {
+                coordinates.add(coordinate(current, z));
+                if (!segments.containsKey(current))
+                    throw new IllegalStateException("Contour is not closed at " + coordinates.get(coordinates.size() - 1));
+                long next = segments.get(current);
+                segments.remove(current);
+                current = next;
+            } while (current != start);
+            coordinates.add(coordinates.get(0));
+            Coordinate[] ring = coordinates.toArray(new Coordinate[0]);
+            if (ring.length < 4)
+                continue;
+            if (Area.ofRingSigned(ring) < 0)
+                shells.add(geometryFactory.createLinearRing(ring));
+            else
+                holes.add(geometryFactory.createLinearRing(ring));
+        }
+        return polygons(shells, holes, geometryFactory);
+    }
+
+    private static int nextOf(int exit, List<Integer> entries) {
+        for (int i = 1; i < 4; i++)
+            if (entries.contains((exit + i) % 4))
+                return (exit + i) % 4;
+        throw new IllegalStateException("no entry after exit " + exit);
+    }
+
+    private static int previousOf(int exit, List<Integer> entries) {
+        for (int i = 3; i > 0; i--)
+            if (entries.contains((exit + i) % 4))
+                return (exit + i) % 4;
+        throw new IllegalStateException("no entry before exit " + exit);
+    }
+
+    private MultiPolygon polygons(List<LinearRing> shells, List<LinearRing> holes, GeometryFactory geometryFactory) {
+        List<List<LinearRing>> holesOfShells = new ArrayList<>();
+        for (int i = 0; i < shells.size(); i++)
+            holesOfShells.add(new ArrayList<>());
+        for (LinearRing hole : holes) {
+            // rings don't cross, so the hole belongs to the smallest shell around any of its points
+            int bestShell = -1;
+            double bestArea = Double.MAX_VALUE;
+            for (int i = 0; i < shells.size(); i++) {
+                Coordinate[] shell = shells.get(i).getCoordinates();
+                if (PointLocation.isInRing(hole.getCoordinateN(0), shell)) {
+                    double area = Math.abs(Area.ofRingSigned(shell));
+                    if (area < bestArea) {
+                        bestArea = area;
+                        bestShell = i;
+                    }
+                }
+            }
+            if (bestShell >= 0)
+                holesOfShells.get(bestShell).add(hole);
+        }
+        Polygon[] polygons = new Polygon[shells.size()];
+        for (int i = 0; i < shells.size(); i++)
+            polygons[i] = geometryFactory.createPolygon(shells.get(i), holesOfShells.get(i).toArray(new LinearRing[0]));
+        return geometryFactory.createMultiPolygon(polygons);
+    }
+
+    private int valueAt(int row, int column) {
+        if (column < 0 || column >= width || row < 0 || row >= height)
+            return UNREACHED;
+        return values[row * width + column];
+    }
+
+    private double centerValue(int[] rows, int[] columns) {
+        double sum = 0;
+        for (int i = 0; i < 4; i++) {
+            int value = valueAt(rows[i], columns[i]);
+            if (value == UNREACHED)
+                return Double.MAX_VALUE;
+            sum += value;
+        }
+        return sum / 4;
+    }
+
+    /**
+     * The crossing on the side going right (horizontal) or down from the given cell center.
+     */
+    private long crossing(int row, int column, boolean horizontal) {
+        return ((long) (row + 1) * (width + 2) + column + 1) * 2 + (horizontal ? 0 : 1);
+    }
+
+    private Coordinate coordinate(long crossing, double z) {
+        boolean horizontal = crossing % 2 == 0;
+        long cell = crossing / 2;
+        int row = (int) (cell / (width + 2)) - 1;
+        int column = (int) (cell % (width + 2)) - 1;
+        int otherRow = horizontal ? row : row + 1;
+        int otherColumn = horizontal ? column + 1 : column;
+        int value = valueAt(row, column);
+        int otherValue = valueAt(otherRow, otherColumn);
+        double t;
+        if (value == UNREACHED || otherValue == UNREACHED || value == otherValue)
+            // we don't know where it ends between a reached cell and an unreached one, so we take the middle
+            t = 0.5;
+        else
+            t = (z - value) / (otherValue - value);
+        double x = west + (column + 0.5 + (otherColumn - column) * t) * cellWidth;
+        double y = north - (row + 0.5 + (otherRow - row) * t) * cellHeight;
+        return new Coordinate(x, y);
+    }
+}
@@ -19,9 +19,11 @@
 package com.graphhopper.isochrone.algorithm;
 
 import com.graphhopper.routing.RouterConfig;
+import com.graphhopper.routing.ch.OneToAllCH;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.FetchMode;
 import com.graphhopper.util.PointList;
@@ -35,6 +37,7 @@ import org.locationtech.jts.triangulate.quadedge.Vertex;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.function.IntToDoubleFunction;
 import java.util.function.ToDoubleFunction;
 
 public class JTSTriangulator implements Triangulator {
@@ -46,35 +49,50 @@ public class JTSTriangulator implements Triangulator {
     }
 
     public Result triangulate(Snap snap, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance) {
-        final NodeAccess na = queryGraph.getNodeAccess();
         Collection<Coordinate> sites = new ArrayList<>();
-        shortestPathTree.search(snap.getClosestNode(), label -> {
-            double exploreValue = fz.applyAsDouble(label);
-            double lat = na.getLat(label.node);
-            double lon = na.getLon(label.node);
-            Coordinate site = new Coordinate(lon, lat);
-            site.z = exploreValue;
-            sites.add(site);
-
-            // add a pillar node to increase precision a bit for longer roads
-            if (label.parent != null) {
-                EdgeIteratorState edge = queryGraph.getEdgeIteratorState(label.edge, label.node);
-                PointList innerPoints = edge.fetchWayGeometry(FetchMode.PILLAR_ONLY);
-                if (innerPoints.size() > 0) {
-                    int midIndex = innerPoints.size() / 2;
-                    if (innerPoints.size() % 2 == 0 && edge.get(EdgeIteratorState.REVERSE_STATE))
-                        // For edge-based routing we might have explored the same edge in two different directions.
-                        // Here we make sure we only include the **same** point twice instead of two different ones.
-                        midIndex -= 1;
-                    double lat2 = innerPoints.getLat(midIndex);
-                    double lon2 = innerPoints.getLon(midIndex);
-                    Coordinate site2 = new Coordinate(lon2, lat2);
-                    site2.z = exploreValue;
-                    sites.add(site2);
-                }
+        shortestPathTree.search(snap.getClosestNode(), label ->
+                addSites(sites, queryGraph, label.node, label.parent == null ? EdgeIterator.NO_EDGE : label.edge, fz.applyAsDouble(label)));
+        return triangulate(sites, tolerance);
+    }
+
+    public Result triangulate(QueryGraph queryGraph, OneToAllCH.Result oneToAllResult, IntToDoubleFunction fz, double limit, double tolerance) {
+        Collection<Coordinate> sites = new ArrayList<>();
+        for (int node = 0; node < oneToAllResult.getNodes(); node++) {
+            if (!oneToAllResult.isReached(node))
+                continue;
+            double exploreValue = fz.applyAsDouble(node);
+            if (exploreValue <= limit)
+                addSites(sites, queryGraph, node, oneToAllResult.getEdge(node), exploreValue);
+        }
+        return triangulate(sites, tolerance);
+    }
+
+    private void addSites(Collection<Coordinate> sites, QueryGraph queryGraph, int node, int edgeId, double exploreValue) {
+        final NodeAccess na = queryGraph.getNodeAccess();
+        Coordinate site = new Coordinate(na.getLon(node), na.getLat(node));
+        site.z = exploreValue;
+        sites.add(site);
+
+        // add a pillar node to increase precision a bit for longer roads
+        if (EdgeIterator.Edge.isValid(edgeId)) {
+            EdgeIteratorState edge = queryGraph.getEdgeIteratorState(edgeId, node);
+            PointList innerPoints = edge.fetchWayGeometry(FetchMode.PILLAR_ONLY);
+            if (innerPoints.size() > 0) {
+                int midIndex = innerPoints.size() / 2;
+                if (innerPoints.size() % 2 == 0 && edge.get(EdgeIteratorState.REVERSE_STATE))
+                    // For edge-based routing we might have explored the same edge in two different directions.
+                    // Here we make sure we only include the **same** point twice instead of two different ones.
+                    midIndex -= 1;
+                double lat2 = innerPoints.getLat(midIndex);
+                double lon2 = innerPoints.getLon(midIndex);
+                Coordinate site2 = new Coordinate(lon2, lat2);
+                site2.z = exploreValue;
+                sites.add(site2);
             }
-        });
+        }
+    }
 
+    private Result triangulate(Collection<Coordinate> sites, double tolerance) {
         if (sites.size() > routerConfig.getMaxVisitedNodes() / 3)
             throw new IllegalArgumentException("Too many nodes would be included in post processing (" + sites.size() + "). Let us know if you need this increased.");
 
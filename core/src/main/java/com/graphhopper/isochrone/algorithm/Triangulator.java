@@ -18,10 +18,12 @@
 
 package com.graphhopper.isochrone.algorithm;
 
+import com.graphhopper.routing.ch.OneToAllCH;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.storage.index.Snap;
 
 import java.util.Collection;
+import java.util.function.IntToDoubleFunction;
 import java.util.function.ToDoubleFunction;
 
 public interface Triangulator {
@@ -40,4 +42,10 @@ public interface Triangulator {
 
     Result triangulate(Snap snap, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance);
 
+    /**
+     * Same as above, but uses the result of a {@link OneToAllCH} calculation instead of a search on the base graph.
+     * Only the nodes with fz(node) <= limit are used.
+     */
+    Result triangulate(QueryGraph queryGraph, OneToAllCH.Result oneToAllResult, IntToDoubleFunction fz, double limit, double tolerance);
+
 }
@@ -0,0 +1,443 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.LongObjectMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.LongCursor;
+import com.carrotsearch.hppc.cursors.LongObjectCursor;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.OSMReaderConfig;
+import com.graphhopper.routing.ev.EdgeIntAccess;
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.ev.IntEncodedValue;
+import com.graphhopper.routing.ev.IntEncodedValueImpl;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.AreaIndex;
+import com.graphhopper.routing.util.CustomArea;
+import com.graphhopper.routing.util.OSMParsers;
+import com.graphhopper.routing.util.parsers.TagParser;
+import com.graphhopper.search.KVStorage.KValue;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+import com.graphhopper.util.shapes.GHPoint3D;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static com.graphhopper.util.Helper.nf;
+import static com.graphhopper.util.Parameters.Details.MOTORWAY_JUNCTION;
+
+/**
+ * Applies an OSM change file (.osc or .osc.gz) to a graph that was imported before. The edges are found using the
+ * osm_way_id encoded value, which therefore must be enabled for the import.
+ * <p>
+ * Only changes that do not modify the topology of the graph can be applied:
+ * <ul>
+ * <li>modified ways: the edges of the way are parsed again using the new tags, i.e. the edge flags and key values
+ * are updated. The nodes of the way must not change, see below.</li>
+ * <li>deleted ways: all edge flags of the edges of the way are cleared (except the OSM way ID), so they cannot be used
+ * any longer. The edges themselves remain in the graph and can be restored by a later change.</li>
+ * </ul>
+ * New ways, modified ways whose node list changed, modified nodes (coordinates or tags like barriers) and relations
+ * (turn restrictions, route relations) are not applied. They are only counted, see {@link Result#isComplete()}, and
+ * require a full import. The graph does not store the OSM node IDs, so a changed node list is detected if the way
+ * uses a node created in the same change file or if it has fewer nodes than the stored geometry of its edges. Since
+ * the geometry might be simplified during the import, nodes that were added to a way are not always detected.
+ * <p>
+ * Some data that was available during the import cannot be derived from the change file:
+ * <ul>
+ * <li>the relations of a way, so the relation tag parsers are not used. Instead, the encoded values derived from
+ * relations must be 'preserved', see below.</li>
+ * <li>the tags of the barrier nodes, because the graph does not store them. The artificial barrier edges of a
+ * modified way keep their flags.</li>
+ * <li>the coordinates and tags of the nodes that are not part of the change file. Ways that need the coordinates
+ * of all their nodes, like ferries whose speed is calculated from their length, are not applied unless the change
+ * file contains all their nodes. The name of a motorway_junction is taken from the stored edges.</li>
+ * </ul>
+ * The values of the given 'preserved' encoded values are kept when an edge is parsed again. They are restored
+ * before the way tag parsers are run, so these can still use them. This is meant for the encoded values that are
+ * not set by the way tag parsers, but e.g. calculated after the import or from relations. All graph data derived
+ * from the edge flags (CH, LM, subnetworks) must be updated afterwards.
+ */
+public class OSMChangeApplier {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OSMChangeApplier.class);
+
+    private final BaseGraph baseGraph;
+    private final OSMParsers osmParsers;
+    private final OSMReader osmReader;
+    private final IntEncodedValue osmWayIdEnc;
+    private final List<IntEncodedValueImpl> preservedEncodedValues = new ArrayList<>();
+    private final List<IntEncodedValueImpl> graphEncodedValues = new ArrayList<>();
+    private final int intsForFlags;
+
+    public OSMChangeApplier(BaseGraph baseGraph, OSMParsers osmParsers, OSMReaderConfig config, IntEncodedValue osmWayIdEnc) {
+        this.baseGraph = baseGraph;
+        this.osmParsers = osmParsers;
+        this.osmWayIdEnc = osmWayIdEnc;
+        // we only use the reader to enrich the ways the same way as during the import
+        this.osmReader = new OSMReader(baseGraph, osmParsers, config);
+        this.intsForFlags = baseGraph.getIntsForFlags();
+    }
+
+    /**
+     * The area index is queried for each modified OSM way, just like it is done during the import.
+     */
+    public OSMChangeApplier setAreaIndex(AreaIndex<CustomArea> areaIndex) {
+        osmReader.setAreaIndex(areaIndex);
+        return this;
+    }
+
+    /**
+     * The values of these encoded values are kept for the edges that are parsed again.
+     */
+    public OSMChangeApplier setPreservedEncodedValues(Collection<? extends EncodedValue> encodedValues) {
+        preservedEncodedValues.clear();
+        for (EncodedValue ev : encodedValues)
+            // other encoded values are not stored in the edge flags
+            if (ev instanceof IntEncodedValueImpl)
+                preservedEncodedValues.add((IntEncodedValueImpl) ev);
+        return this;
+    }
+
+    /**
+     * The tag parsers might use other instances of the encoded values than the graph. Set the encoded values of the
+     * graph here, so their maximum values are updated for the edges that are parsed again.
+     */
+    public OSMChangeApplier setGraphEncodedValues(Collection<? extends EncodedValue> encodedValues) {
+        graphEncodedValues.clear();
+        for (EncodedValue ev : encodedValues)
+            if (ev instanceof IntEncodedValueImpl)
+                graphEncodedValues.add((IntEncodedValueImpl) ev);
+        return this;
+    }
+
+    public Result apply(File changeFile) throws IOException {
+        if (!changeFile.exists())
+            throw new IllegalStateException("Your specified OSM change file does not exist:" + changeFile.getAbsolutePath());
+        try (InputStream is = openStream(changeFile)) {
+            return apply(is);
+        }
+    }
+
+    public Result apply(InputStream changeStream) throws IOException {
+        ChangeSet changes;
+        try {
+            changes = readChanges(changeStream);
+        } catch (XMLStreamException ex) {
+            throw new IOException("Cannot read OSM change file", ex);
+        }
+
+        // new ways would require new nodes and edges, so they are only counted unless we already know them
+        LongObjectMap<ReaderWay> modifiedWays = new LongObjectHashMap<>();
+        Set<Long> foundWays = new HashSet<>();
+        changes.modifiedWays.forEach((id, way) -> modifiedWays.put(id, way));
+        changes.createdWays.forEach((id, way) -> modifiedWays.put(id, way));
+        changes.deletedWays.forEach(id -> modifiedWays.put(id, null));
+
+        // we need all edges of a way before we can check if its nodes changed
+        LongObjectMap<IntArrayList> edgesByWay = new LongObjectHashMap<>();
+        AllEdgesIterator iter = baseGraph.getAllEdges();
+        while (iter.next()) {
+            long wayId = iter.get(osmWayIdEnc);
+            if (!modifiedWays.containsKey(wayId))
+                continue;
+            IntArrayList edges = edgesByWay.get(wayId);
+            if (edges == null)
+                edgesByWay.put(wayId, edges = new IntArrayList());
+            edges.add(iter.getEdge());
+        }
+
+        int updatedEdges = 0, removedEdges = 0, unsupportedWays = 0;
+        EdgeIntAccess edgeIntAccess = baseGraph.getEdgeAccess();
+        // relations are not part of the change set
+        IntsRef relationFlags = osmParsers.createRelationFlags();
+        int[] oldFlags = new int[intsForFlags];
+        for (LongObjectCursor<IntArrayList> cursor : edgesByWay) {
+            long wayId = cursor.key;
+            foundWays.add(wayId);
+            ReaderWay way = modifiedWays.get(wayId);
+            if (way != null && (changes.unresolvedWays.contains(wayId) || nodesChanged(way, cursor.value, changes.createdNodes))) {
+                // parsing the old edges with the new tags would be wrong, e.g. if the way was split
+                unsupportedWays++;
+                continue;
+            }
+            boolean accepted = way != null && osmReader.acceptWay(way);
+            for (IntCursor edgeCursor : cursor.value) {
+                int edge = edgeCursor.value;
+                EdgeIteratorState edgeState = baseGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+                if (accepted && isBarrierEdge(edgeState))
+                    // we do not know the tags of the barrier node, so we keep the flags of the barrier edge
+                    continue;
+                for (int i = 0; i < intsForFlags; i++) {
+                    oldFlags[i] = edgeIntAccess.getInt(edge, i);
+                    edgeIntAccess.setInt(edge, i, 0);
+                }
+                restorePreservedValues(edge, oldFlags, edgeIntAccess);
+                if (accepted) {
+                    PointList pointList = edgeState.fetchWayGeometry(FetchMode.ALL);
+                    List<Map<String, Object>> nodeTags = new ArrayList<>(pointList.size());
+                    for (int i = 0; i < pointList.size(); i++)
+                        nodeTags.add(Collections.emptyMap());
+                    osmReader.setArtificialWayTags(pointList, way, edgeState.getDistance(), nodeTags);
+                    // the relation tag parsers would reset the values we restored above, because the relations are
+                    // not part of the change set
+                    for (TagParser tagParser : osmParsers.getWayTagParsers())
+                        tagParser.handleWayTags(edge, edgeIntAccess, way, relationFlags);
+                    edgeState.setKeyValues(getKeyValues(way, edgeState, changes));
+                    updatedEdges++;
+                } else {
+                    edgeState.setKeyValues(Collections.emptyMap());
+                    removedEdges++;
+                }
+                // we still need to find the edges of deleted ways, in case they are restored later
+                osmWayIdEnc.setInt(false, edge, edgeIntAccess, (int) wayId);
+                updateMaxValues(edge, edgeIntAccess);
+            }
+        }
+
+        for (long id : changes.createdWays.keySet())
+            if (!foundWays.contains(id) && osmReader.acceptWay(changes.createdWays.get(id)))
+                unsupportedWays++;
+        for (long id : changes.modifiedWays.keySet())
+            // the way was not imported before, but it might be accepted now
+            if (!foundWays.contains(id) && osmReader.acceptWay(changes.modifiedWays.get(id)))
+                unsupportedWays++;
+        Result result = new Result(changes.modifiedWays.size() + changes.createdWays.size() + changes.deletedWays.size(),
+                updatedEdges, removedEdges, unsupportedWays, changes.nodes, changes.relations);
+        LOGGER.info("Applied OSM changes: {}", result);
+        return result;
+    }
+
+    /**
+     * Barrier edges are created for barrier nodes during the import. They connect two copies of the same node.
+     */
+    private static boolean isBarrierEdge(EdgeIteratorState edgeState) {
+        PointList pointList = edgeState.fetchWayGeometry(FetchMode.ALL);
+        return pointList.size() == 2 && pointList.getLat(0) == pointList.getLat(1) && pointList.getLon(0) == pointList.getLon(1);
+    }
+
+    private static Map<String, KValue> getKeyValues(ReaderWay way, EdgeIteratorState edgeState, ChangeSet changes) {
+        Map<String, KValue> keyValues = way.getTag("key_values", Collections.emptyMap());
+        // the name of a motorway_junction is a tag of the first node, which is usually not part of the change set
+        if (keyValues.containsKey(MOTORWAY_JUNCTION) || changes.nodesById.containsKey(way.getNodes().get(0))
+                || !way.hasTag("highway", "motorway") && !way.hasTag("highway", "motorway_link"))
+            return keyValues;
+        KValue junction = edgeState.getKeyValues().get(MOTORWAY_JUNCTION);
+        if (junction == null)
+            return keyValues;
+        Map<String, KValue> result = new LinkedHashMap<>(keyValues);
+        result.put(MOTORWAY_JUNCTION, junction);
+        return result;
+    }
+
+    /**
+     * @return true if the given way uses a node that was created in this change set or if it has fewer nodes than the
+     * stored geometry of its edges
+     */
+    private boolean nodesChanged(ReaderWay way, IntArrayList edges, Set<Long> createdNodes) {
+        Set<Long> nodes = new HashSet<>();
+        for (LongCursor node : way.getNodes()) {
+            if (createdNodes.contains(node.value))
+                return true;
+            nodes.add(node.value);
+        }
+        // the nodes at the ends of the edges and the duplicated barrier nodes share their coordinates
+        Set<GHPoint> points = new HashSet<>();
+        for (IntCursor edge : edges) {
+            PointList pointList = baseGraph.getEdgeIteratorState(edge.value, Integer.MIN_VALUE).fetchWayGeometry(FetchMode.ALL);
+            for (int i = 0; i < pointList.size(); i++)
+                points.add(new GHPoint(pointList.getLat(i), pointList.getLon(i)));
+        }
+        return nodes.size() < points.size();
+    }
+
+    private void restorePreservedValues(int edge, int[] oldFlags, EdgeIntAccess edgeIntAccess) {
+        if (preservedEncodedValues.isEmpty())
+            return;
+        EdgeIntAccess oldAccess = new EdgeIntAccess() {
+            @Override
+            public int getInt(int edgeId, int index) {
+                return oldFlags[index];
+            }
+
+            @Override
+            public void setInt(int edgeId, int index, int value) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        for (IntEncodedValueImpl ev : preservedEncodedValues) {
+            ev.setInt(false, edge, edgeIntAccess, ev.getInt(false, edge, oldAccess));
+            if (ev.isStoreTwoDirections())
+                ev.setInt(true, edge, edgeIntAccess, ev.getInt(true, edge, oldAccess));
+        }
+    }
+
+    private void updateMaxValues(int edge, EdgeIntAccess edgeIntAccess) {
+        // setting the value again updates the maximum value of the encoded value
+        for (IntEncodedValueImpl ev : graphEncodedValues) {
+            ev.setInt(false, edge, edgeIntAccess, ev.getInt(false, edge, edgeIntAccess));
+            if (ev.isStoreTwoDirections())
+                ev.setInt(true, edge, edgeIntAccess, ev.getInt(true, edge, edgeIntAccess));
+        }
+    }
+
+    private ChangeSet readChanges(InputStream inputStream) throws XMLStreamException {
+        XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(inputStream, "UTF-8");
+        int event = parser.next();
+        if (event != XMLStreamConstants.START_ELEMENT || !parser.getLocalName().equalsIgnoreCase("osmChange"))
+            throw new IllegalArgumentException("File is not a valid OSM change stream");
+
+        ChangeSet changes = new ChangeSet();
+        String action = null;
+        while (event != XMLStreamConstants.END_DOCUMENT) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = parser.getLocalName();
+                switch (name) {
+                    case "create", "modify", "delete" -> action = name;
+                    case "node" -> {
+                        changes.nodes++;
+                        if ("create".equals(action))
+                            changes.createdNodes.add(Long.parseLong(parser.getAttributeValue(null, "id")));
+                        if (!"delete".equals(action) && parser.getAttributeValue(null, "lat") != null) {
+                            ReaderNode node = OSMXMLHelper.createNode(Long.parseLong(parser.getAttributeValue(null, "id")), parser);
+                            changes.nodesById.put(node.getId(), node);
+                        }
+                    }
+                    case "way" -> {
+                        ReaderWay way = OSMXMLHelper.createWay(Long.parseLong(parser.getAttributeValue(null, "id")), parser);
+                        changes.addWay(action, way);
+                    }
+                    case "relation" -> changes.relations++;
+                    default -> {
+                    }
+                }
+            }
+            event = parser.next();
+        }
+        parser.close();
+        // ways are enriched before they are split into edges during the import, so we do this here as well
+        for (Map<Long, ReaderWay> ways : List.of(changes.modifiedWays, changes.createdWays))
+            for (ReaderWay way : ways.values()) {
+                if (osmReader.isCalculateWayDistance(way) && !changes.containsAllNodes(way)) {
+                    // the graph does not store the OSM node IDs, so we cannot calculate the length of this way
+                    changes.unresolvedWays.add(way.getId());
+                    continue;
+                }
+                osmReader.preprocessWay(way,
+                        osmNodeId -> {
+                            ReaderNode node = changes.nodesById.get(osmNodeId);
+                            return node == null ? null : new GHPoint3D(node.getLat(), node.getLon(), Double.NaN);
+                        },
+                        osmNodeId -> {
+                            ReaderNode node = changes.nodesById.get(osmNodeId);
+                            return node == null ? Collections.emptyMap() : node.getTags();
+                        });
+            }
+        return changes;
+    }
+
+    private static InputStream openStream(File file) throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(file), 50_000);
+        return file.getName().endsWith(".gz") ? new GZIPInputStream(is) : is;
+    }
+
+    private static class ChangeSet {
+        // only the last change of every way counts
+        final Map<Long, ReaderWay> createdWays = new LinkedHashMap<>();
+        final Map<Long, ReaderWay> modifiedWays = new LinkedHashMap<>();
+        final Set<Long> deletedWays = new LinkedHashSet<>();
+        final Map<Long, ReaderNode> nodesById = new HashMap<>();
+        final Set<Long> createdNodes = new HashSet<>();
+        // ways that require the coordinates of nodes that are not part of the change set
+        final Set<Long> unresolvedWays = new HashSet<>();
+        int nodes;
+        int relations;
+
+        boolean containsAllNodes(ReaderWay way) {
+            for (LongCursor node : way.getNodes())
+                if (!nodesById.containsKey(node.value))
+                    return false;
+            return true;
+        }
+
+        void addWay(String action, ReaderWay way) {
+            if (action == null)
+                throw new IllegalArgumentException("OSM way " + way.getId() + " is not part of a create, modify or delete block");
+            createdWays.remove(way.getId());
+            modifiedWays.remove(way.getId());
+            deletedWays.remove(way.getId());
+            switch (action) {
+                case "create" -> createdWays.put(way.getId(), way);
+                case "modify" -> modifiedWays.put(way.getId(), way);
+                default -> deletedWays.add(way.getId());
+            }
+        }
+    }
+
+    /**
+     * @param ways             the number of created, modified and deleted ways in the change file
+     * @param updatedEdges     the number of edges that were parsed again. Barrier edges keep their flags and are
+     *                         not counted.
+     * @param removedEdges     the number of edges whose flags were cleared, because their way was deleted or is not
+     *                         accepted anymore
+     * @param unsupportedWays  the number of new ways (or ways that were not accepted before) that could not be added
+     *                         and the number of modified ways that were ignored, because their nodes changed or
+     *                         because the coordinates of their nodes are required, but not part of the change file
+     * @param unsupportedNodes the number of node changes, which were ignored
+     * @param relations        the number of relation changes, which were ignored
+     */
+    public record Result(int ways, int updatedEdges, int removedEdges, int unsupportedWays, int unsupportedNodes,
+                         int relations) {
+
+        /**
+         * @return true if the graph has changed
+         */
+        public boolean hasChanges() {
+            return updatedEdges > 0 || removedEdges > 0;
+        }
+
+        /**
+         * @return true if there were no changes that could not be applied
+         */
+        public boolean isComplete() {
+            return unsupportedWays == 0 && unsupportedNodes == 0 && relations == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "ways: " + nf(ways) + ", updated edges: " + nf(updatedEdges) + ", removed edges: " + nf(removedEdges)
+                    + ", ignored ways: " + nf(unsupportedWays) + ", ignored node changes: " + nf(unsupportedNodes)
+                    + ", ignored relation changes: " + nf(relations);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.BalancedWeightApproximator;
+import com.graphhopper.routing.weighting.BeelineWeightApproximator;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.Parameters;
+
+/**
+ * Calculates the same paths as {@link AStarBidirection}, but uses the primitive search state of
+ * {@link AbstractArrayBidirAlgo}.
+ */
+public class AStarBidirectionArray extends AbstractArrayBidirAlgo {
+    private BalancedWeightApproximator weightApprox;
+    private double stoppingCriterionOffset;
+
+    public AStarBidirectionArray(Graph graph, Weighting weighting, TraversalMode tMode) {
+        super(graph, weighting, tMode);
+        BeelineWeightApproximator defaultApprox = new BeelineWeightApproximator(graph.getNodeAccess(), weighting);
+        defaultApprox.setDistanceCalc(DistancePlaneProjection.DIST_PLANE);
+        weightApprox = new BalancedWeightApproximator(defaultApprox);
+    }
+
+    @Override
+    void init(int from, int to) {
+        weightApprox.setFromTo(from, to);
+        stoppingCriterionOffset = weightApprox.approximate(to, true) + weightApprox.getSlack();
+        super.init(from, to);
+    }
+
+    @Override
+    protected double calcHeapWeight(int node, double weight, boolean reverse) {
+        return weight + weightApprox.approximate(node, reverse);
+    }
+
+    @Override
+    protected double getStoppingCriterionOffset() {
+        return stoppingCriterionOffset;
+    }
+
+    public WeightApproximator getApproximation() {
+        return weightApprox.getApproximation();
+    }
+
+    public AStarBidirectionArray setApproximation(WeightApproximator approx) {
+        weightApprox = new BalancedWeightApproximator(approx);
+        return this;
+    }
+
+    @Override
+    public String getName() {
+        return Parameters.Algorithms.ASTAR_BI + "|" + weightApprox;
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.coll.DoubleMinHeapWithUpdate;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.QueryGraphWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * Common subclass for bidirectional algorithms that do the same as {@link AbstractNonCHBidirAlgo}, but keep the search
+ * state in primitive arrays instead of creating a {@link SPTEntry} per visited node or edge. The arrays are
+ * proportional to the size of the graph, i.e. the number of nodes for node-based and two times the number of edges for
+ * edge-based traversal. With a {@link SearchStatePool} they are re-used by later searches and reset by incrementing a
+ * version stamp, so a search does not produce garbage proportional to the number of visited nodes. Without a pool
+ * every search allocates its own arrays.
+ *
+ * @see DijkstraBidirectionArray
+ * @see AStarBidirectionArray
+ */
+public abstract class AbstractArrayBidirAlgo implements EdgeToEdgeRoutingAlgorithm {
+    private static final int NO_ENTRY = -1;
+    // the virtual nodes and edges of a QueryGraph should usually not require a new allocation
+    private static final int EXTRA_CAPACITY = 1_000;
+    protected final Graph graph;
+    protected final Weighting weighting;
+    protected final TraversalMode traversalMode;
+    private final EdgeExplorer edgeExplorer;
+    private EdgeFilter additionalEdgeFilter;
+    private final int capacity;
+    private SearchStatePool searchStatePool;
+    private SearchState stateFrom;
+    private SearchState stateTo;
+    protected int from;
+    protected int to;
+    private int fromOutEdge = ANY_EDGE;
+    private int toInEdge = ANY_EDGE;
+    private int currFrom = NO_ENTRY;
+    private int currTo = NO_ENTRY;
+    protected double currFromWeight;
+    protected double currToWeight;
+    private int bestFwdEntry = NO_ENTRY;
+    private int bestBwdEntry = NO_ENTRY;
+    protected double bestWeight = Double.MAX_VALUE;
+    private boolean finishedFrom;
+    private boolean finishedTo;
+    private int visitedCountFrom;
+    private int visitedCountTo;
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private long timeoutMillis = Long.MAX_VALUE;
+    private long finishTimeMillis = Long.MAX_VALUE;
+    private boolean alreadyRun;
+
+    public AbstractArrayBidirAlgo(Graph graph, Weighting weighting, TraversalMode tMode) {
+        if (graph instanceof QueryGraph && !(weighting instanceof QueryGraphWeighting))
+            throw new IllegalStateException("Weighting must use QueryGraphWeighting");
+        if (weighting.hasTurnCosts() && !tMode.isEdgeBased())
+            throw new IllegalStateException("Weightings supporting turn costs cannot be used with node-based traversal mode");
+        this.graph = graph;
+        this.weighting = weighting;
+        this.traversalMode = tMode;
+        this.edgeExplorer = graph.createEdgeExplorer();
+        // for edge-based traversal the root entries have no traversal id, so we store them in an additional slot
+        this.capacity = tMode.isEdgeBased() ? 2 * graph.getEdges() + 1 : graph.getNodes();
+    }
+
+    /**
+     * @param searchStatePool the pool to take the search states from and to return them to after the search, or null
+     *                        to allocate new states for this search
+     */
+    public AbstractArrayBidirAlgo setSearchStatePool(SearchStatePool searchStatePool) {
+        this.searchStatePool = searchStatePool;
+        return this;
+    }
+
+    /**
+     * @return the weight that is used as the heap key, i.e. the weight of the visited path plus a potential estimate
+     * of the remaining weight
+     */
+    protected abstract double calcHeapWeight(int node, double weight, boolean reverse);
+
+    /**
+     * @return an offset to the stopping criterion of the bidirectional search, which is required for A*
+     */
+    protected double getStoppingCriterionOffset() {
+        return 0;
+    }
+
+    @Override
+    public List<Path> calcPaths(int from, int to) {
+        return Collections.singletonList(calcPath(from, to));
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPath(from, to, ANY_EDGE, ANY_EDGE);
+    }
+
+    @Override
+    public Path calcPath(int from, int to, int fromOutEdge, int toInEdge) {
+        if ((fromOutEdge != ANY_EDGE || toInEdge != ANY_EDGE) && !traversalMode.isEdgeBased()) {
+            throw new IllegalArgumentException("Restricting the start/target edges is only possible for edge-based graph traversal");
+        }
+        this.fromOutEdge = fromOutEdge;
+        this.toInEdge = toInEdge;
+        checkAlreadyRun();
+        setupFinishTime();
+        try {
+            init(from, to);
+            runAlgo();
+            return extractPath();
+        } finally {
+            releaseSearchStates();
+        }
+    }
+
+    void init(int from, int to) {
+        this.from = from;
+        this.to = to;
+        stateFrom = searchStatePool == null ? new SearchState() : searchStatePool.acquire();
+        stateTo = searchStatePool == null ? new SearchState() : searchStatePool.acquire();
+        stateFrom.reset(capacity);
+        stateTo.reset(capacity);
+        currFrom = createRootEntry(stateFrom, from, false);
+        currTo = createRootEntry(stateTo, to, true);
+
+        if (!traversalMode.isEdgeBased()) {
+            updateBestPath(Double.POSITIVE_INFINITY, currTo, to, true);
+        } else if (from == to && fromOutEdge == ANY_EDGE && toInEdge == ANY_EDGE) {
+            // special handling if start and end are the same and no directions are restricted
+            // the resulting weight should be zero
+            bestFwdEntry = currFrom;
+            bestBwdEntry = currTo;
+            bestWeight = 0;
+            finishedFrom = true;
+            finishedTo = true;
+            return;
+        }
+        additionalEdgeFilter = fromOutEdge == ANY_EDGE ? null : edgeState -> edgeState.getEdge() == fromOutEdge;
+        finishedFrom = !fillEdgesFrom();
+        additionalEdgeFilter = toInEdge == ANY_EDGE ? null : edgeState -> edgeState.getEdge() == toInEdge;
+        finishedTo = !fillEdgesTo();
+        additionalEdgeFilter = null;
+    }
+
+    private void releaseSearchStates() {
+        if (searchStatePool == null)
+            return;
+        if (stateFrom != null)
+            searchStatePool.release(stateFrom);
+        if (stateTo != null)
+            searchStatePool.release(stateTo);
+        stateFrom = null;
+        stateTo = null;
+    }
+
+    private int createRootEntry(SearchState state, int node, boolean reverse) {
+        int id = traversalMode.isEdgeBased() ? capacity - 1 : node;
+        state.set(id, 0, NO_EDGE, node, NO_ENTRY);
+        state.heap.push(id, calcHeapWeight(node, 0, reverse));
+        return id;
+    }
+
+    protected void runAlgo() {
+        while (!finished() && !isMaxVisitedNodesExceeded() && !isTimeoutExceeded()) {
+            if (!finishedFrom)
+                finishedFrom = !fillEdgesFrom();
+
+            if (!finishedTo)
+                finishedTo = !fillEdgesTo();
+        }
+    }
+
+    protected boolean finished() {
+        if (finishedFrom || finishedTo)
+            return true;
+
+        return currFromWeight + currToWeight >= bestWeight + getStoppingCriterionOffset();
+    }
+
+    boolean fillEdgesFrom() {
+        if (stateFrom.heap.isEmpty())
+            return false;
+        currFrom = stateFrom.heap.poll();
+        currFromWeight = calcHeapWeight(stateFrom.adjNodes[currFrom], stateFrom.weights[currFrom], false);
+        visitedCountFrom++;
+        fillEdges(currFrom, stateFrom, stateTo, false);
+        return true;
+    }
+
+    boolean fillEdgesTo() {
+        if (stateTo.heap.isEmpty())
+            return false;
+        currTo = stateTo.heap.poll();
+        currToWeight = calcHeapWeight(stateTo.adjNodes[currTo], stateTo.weights[currTo], true);
+        visitedCountTo++;
+        fillEdges(currTo, stateTo, stateFrom, true);
+        return true;
+    }
+
+    private void fillEdges(int curr, SearchState state, SearchState otherState, boolean reverse) {
+        final int currEdge = state.edges[curr];
+        final double currWeight = state.weights[curr];
+        EdgeIterator iter = edgeExplorer.setBaseNode(state.adjNodes[curr]);
+        while (iter.next()) {
+            if (!accept(iter, currEdge))
+                continue;
+
+            // note that for node-based routing the weights will be wrong in case the weighting is returning non-zero
+            // turn weights, see discussion in #1960
+            final double weight = GHUtility.calcWeightWithTurnWeight(weighting, iter, reverse, currEdge) + currWeight;
+            if (Double.isInfinite(weight))
+                continue;
+
+            final int traversalId = traversalMode.createTraversalId(iter, reverse);
+            if (state.contains(traversalId) && state.weights[traversalId] <= weight)
+                continue;
+
+            final int adjNode = iter.getAdjNode();
+            state.set(traversalId, weight, iter.getEdge(), adjNode, curr);
+            double heapWeight = calcHeapWeight(adjNode, weight, reverse);
+            // we re-insert entries that were polled already to get the same results as AbstractNonCHBidirAlgo
+            if (state.heap.contains(traversalId))
+                state.heap.update(traversalId, heapWeight);
+            else
+                state.heap.push(traversalId, heapWeight);
+
+            if (otherState.contains(traversalId)) {
+                // only needed for edge-based -> skip the calculation and use dummy value otherwise
+                double edgeWeight = traversalMode.isEdgeBased() ? weighting.calcEdgeWeight(iter, reverse) : Double.POSITIVE_INFINITY;
+                updateBestPath(edgeWeight, traversalId, traversalId, reverse);
+            }
+        }
+    }
+
+    private void updateBestPath(double edgeWeight, int entry, int traversalId, boolean reverse) {
+        SearchState state = reverse ? stateTo : stateFrom;
+        SearchState otherState = reverse ? stateFrom : stateTo;
+        if (!otherState.contains(traversalId))
+            return;
+
+        // update μ
+        double weight = state.weights[entry] + otherState.weights[traversalId];
+        if (traversalMode.isEdgeBased()) {
+            if (otherState.edges[traversalId] != state.edges[entry])
+                throw new IllegalStateException("cannot happen for edge based execution of " + getName());
+
+            // prevents the path to contain the edge at the meeting point twice and subtracts the weight (excluding turn weight => no previous edge)
+            entry = state.parents[entry];
+            weight -= edgeWeight;
+        }
+
+        if (weight < bestWeight) {
+            bestFwdEntry = reverse ? traversalId : entry;
+            bestBwdEntry = reverse ? entry : traversalId;
+            bestWeight = weight;
+        }
+    }
+
+    private boolean accept(EdgeIteratorState iter, int prevOrNextEdgeId) {
+        // for edge-based traversal we leave it for calcTurnWeight to decide whether or not a u-turn is acceptable,
+        // but for node-based traversal we exclude such a turn for performance reasons already here
+        if (!traversalMode.isEdgeBased() && iter.getEdge() == prevOrNextEdgeId)
+            return false;
+
+        return additionalEdgeFilter == null || additionalEdgeFilter.accept(iter);
+    }
+
+    protected Path extractPath() {
+        if (finished() && bestFwdEntry != NO_ENTRY && bestBwdEntry != NO_ENTRY)
+            return new ArrayPathExtractor().extract(bestWeight);
+
+        return new Path(graph);
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedCountFrom + visitedCountTo;
+    }
+
+    @Override
+    public void setMaxVisitedNodes(int numberOfNodes) {
+        this.maxVisitedNodes = numberOfNodes;
+    }
+
+    @Override
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    protected void checkAlreadyRun() {
+        if (alreadyRun)
+            throw new IllegalStateException("Create a new instance per call");
+
+        alreadyRun = true;
+    }
+
+    private void setupFinishTime() {
+        try {
+            this.finishTimeMillis = Math.addExact(System.currentTimeMillis(), timeoutMillis);
+        } catch (ArithmeticException e) {
+            this.finishTimeMillis = Long.MAX_VALUE;
+        }
+    }
+
+    protected boolean isMaxVisitedNodesExceeded() {
+        return maxVisitedNodes < getVisitedNodes();
+    }
+
+    protected boolean isTimeoutExceeded() {
+        return finishTimeMillis < Long.MAX_VALUE && System.currentTimeMillis() > finishTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "|" + weighting;
+    }
+
+    /**
+     * Follows the parent entries of the forward and backward search in the same way as the
+     * {@link DefaultBidirPathExtractor} does for the {@link SPTEntry}s.
+     */
+    private class ArrayPathExtractor extends DefaultBidirPathExtractor {
+        ArrayPathExtractor() {
+            super(graph, weighting);
+        }
+
+        Path extract(double weight) {
+            if (stateFrom.adjNodes[bestFwdEntry] != stateTo.adjNodes[bestBwdEntry])
+                throw new IllegalStateException("forward and backward entries must have same adjacent nodes, fwdEntry:"
+                        + stateFrom.adjNodes[bestFwdEntry] + ", bwdEntry:" + stateTo.adjNodes[bestBwdEntry]);
+
+            StopWatch sw = new StopWatch().start();
+            onFwdTreeRoot(followParentsUntilRoot(stateFrom, bestFwdEntry, false));
+            // since we followed the fwd path in backward direction we need to reverse the edge ids
+            ArrayUtil.reverse(path.getEdges());
+            onMeetingPoint(stateFrom.edges[bestFwdEntry], stateFrom.adjNodes[bestFwdEntry], stateTo.edges[bestBwdEntry]);
+            onBwdTreeRoot(followParentsUntilRoot(stateTo, bestBwdEntry, true));
+            setExtractionTime(sw.stop().getNanos());
+            path.setFound(true);
+            path.setWeight(weight);
+            return path;
+        }
+
+        private int followParentsUntilRoot(SearchState state, int entry, boolean reverse) {
+            while (EdgeIterator.Edge.isValid(state.edges[entry])) {
+                int parent = state.parents[entry];
+                onEdge(state.edges[entry], state.adjNodes[entry], reverse, state.edges[parent]);
+                entry = parent;
+            }
+            return state.adjNodes[entry];
+        }
+    }
+
+    /**
+     * The shortest path tree and the heap of one search direction. An entry is only valid if its version equals the
+     * current version, so resetting the state for the next search does not require clearing the arrays.
+     */
+    static class SearchState {
+        private int version;
+        private int[] versions = new int[0];
+        private double[] weights;
+        private int[] edges;
+        private int[] adjNodes;
+        private int[] parents;
+        private DoubleMinHeapWithUpdate heap;
+
+        void reset(int capacity) {
+            if (versions.length < capacity) {
+                int newCapacity = capacity + EXTRA_CAPACITY;
+                versions = new int[newCapacity];
+                weights = new double[newCapacity];
+                edges = new int[newCapacity];
+                adjNodes = new int[newCapacity];
+                parents = new int[newCapacity];
+                heap = new DoubleMinHeapWithUpdate(newCapacity);
+                version = 1;
+                return;
+            }
+            heap.clear();
+            if (version == Integer.MAX_VALUE) {
+                Arrays.fill(versions, 0);
+                version = 0;
+            }
+            version++;
+        }
+
+        boolean contains(int id) {
+            return versions[id] == version;
+        }
+
+        void set(int id, double weight, int edge, int adjNode, int parent) {
+            versions[id] = version;
+            weights[id] = weight;
+            edges[id] = edge;
+            adjNodes[id] = adjNode;
+            parents[id] = parent;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.graphhopper.routing.ch.CHEntry;
 import com.graphhopper.routing.ch.EdgeBasedCHBidirPathExtractor;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.storage.CHEdgeFilter;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
 import com.graphhopper.storage.RoutingCHEdgeIteratorState;
 import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.util.EdgeExplorer;
@@ -34,6 +35,9 @@ import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
  */
 public abstract class AbstractBidirectionEdgeCHNoSOD extends AbstractBidirCHAlgo {
     private final EdgeExplorer innerExplorer;
+    // the explorers of the search might only return the edges leading upwards, but the first step needs all edges
+    private final RoutingCHEdgeExplorer allOutEdgeExplorer;
+    private final RoutingCHEdgeExplorer allInEdgeExplorer;
 
     public AbstractBidirectionEdgeCHNoSOD(RoutingCHGraph graph) {
         super(graph, TraversalMode.EDGE_BASED);
@@ -45,6 +49,8 @@ public abstract class AbstractBidirectionEdgeCHNoSOD extends AbstractBidirCHAlgo
         // note that we do not need to filter edges with the inner explorer, because inaccessible edges won't be added
         // to bestWeightMapOther in the first place
         innerExplorer = graph.getBaseGraph().createEdgeExplorer();
+        allOutEdgeExplorer = graph.createAllOutEdgeExplorer();
+        allInEdgeExplorer = graph.createAllInEdgeExplorer();
         setPathExtractorSupplier(() -> new EdgeBasedCHBidirPathExtractor(graph));
     }
 
@@ -52,20 +58,26 @@ public abstract class AbstractBidirectionEdgeCHNoSOD extends AbstractBidirCHAlgo
     protected void postInitFrom() {
         // We use the levelEdgeFilter to filter out edges leading or coming from lower rank nodes.
         // For the first step though we need all edges, so we need to ignore this filter.
+        RoutingCHEdgeExplorer tmpExplorer = outEdgeExplorer;
+        outEdgeExplorer = allOutEdgeExplorer;
         if (fromOutEdge == ANY_EDGE) {
             fillEdgesFromUsingFilter(CHEdgeFilter.ALL_EDGES);
         } else {
             fillEdgesFromUsingFilter(edgeState -> GHUtility.getEdgeFromEdgeKey(edgeState.getOrigEdgeKeyFirst()) == fromOutEdge);
         }
+        outEdgeExplorer = tmpExplorer;
     }
 
     @Override
     protected void postInitTo() {
+        RoutingCHEdgeExplorer tmpExplorer = inEdgeExplorer;
+        inEdgeExplorer = allInEdgeExplorer;
         if (toInEdge == ANY_EDGE) {
             fillEdgesToUsingFilter(CHEdgeFilter.ALL_EDGES);
         } else {
             fillEdgesToUsingFilter(edgeState -> GHUtility.getEdgeFromEdgeKey(edgeState.getOrigEdgeKeyLast()) == toInEdge);
         }
+        inEdgeExplorer = tmpExplorer;
     }
 
     @Override
@@ -25,6 +25,7 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.weighting.DefaultTurnCostProvider;
 import com.graphhopper.routing.weighting.TurnCostProvider;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.AreaEdgeCache;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.util.CustomModel;
@@ -40,10 +41,19 @@ public class DefaultWeightingFactory implements WeightingFactory {
 
     private final BaseGraph graph;
     private final EncodingManager encodingManager;
+    private final AreaEdgeCache areaEdgeCache;
 
     public DefaultWeightingFactory(BaseGraph graph, EncodingManager encodingManager) {
+        this(graph, encodingManager, null);
+    }
+
+    /**
+     * @param areaEdgeCache the cache for the edges within the areas of custom models, can be null
+     */
+    public DefaultWeightingFactory(BaseGraph graph, EncodingManager encodingManager, AreaEdgeCache areaEdgeCache) {
         this.graph = graph;
         this.encodingManager = encodingManager;
+        this.areaEdgeCache = areaEdgeCache;
     }
 
     @Override
@@ -69,7 +79,7 @@ public class DefaultWeightingFactory implements WeightingFactory {
             if (requestHints.has(Parameters.Routing.HEADING_PENALTY))
                 mergedCustomModel.setHeadingPenalty(requestHints.getDouble(Parameters.Routing.HEADING_PENALTY, Parameters.Routing.DEFAULT_HEADING_PENALTY));
 
-            CustomWeighting.Parameters parameters = createWeightingParameters(mergedCustomModel, encodingManager);
+            CustomWeighting.Parameters parameters = createWeightingParameters(mergedCustomModel, encodingManager, areaEdgeCache);
             final TurnCostProvider turnCostProvider;
             if (profile.hasTurnCosts() && !disableTurnCosts) {
                 BooleanEncodedValue turnRestrictionEnc = encodingManager.getTurnBooleanEncodedValue(TurnRestriction.key(profile.getName()));
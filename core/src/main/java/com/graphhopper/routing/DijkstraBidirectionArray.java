@@ -0,0 +1,43 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.Parameters;
+
+/**
+ * Calculates the same paths as {@link DijkstraBidirectionRef}, but uses the primitive search state of
+ * {@link AbstractArrayBidirAlgo}.
+ */
+public class DijkstraBidirectionArray extends AbstractArrayBidirAlgo {
+    public DijkstraBidirectionArray(Graph graph, Weighting weighting, TraversalMode tMode) {
+        super(graph, weighting, tMode);
+    }
+
+    @Override
+    protected double calcHeapWeight(int node, double weight, boolean reverse) {
+        return weight;
+    }
+
+    @Override
+    public String getName() {
+        return Parameters.Algorithms.DIJKSTRA_BI;
+    }
+}
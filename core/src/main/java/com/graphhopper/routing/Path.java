@@ -51,6 +51,7 @@ public class Path {
     private List<String> description;
     private boolean found;
     private String debugInfo = "";
+    private long extractNanos;
 
     public Path(Graph graph) {
         this.graph = graph;
@@ -185,6 +186,17 @@ public class Path {
         return debugInfo;
     }
 
+    public void setExtractNanos(long extractNanos) {
+        this.extractNanos = extractNanos;
+    }
+
+    /**
+     * @return the time it took to extract this path from the shortest path tree(s) of the routing algorithm
+     */
+    public long getExtractNanos() {
+        return extractNanos;
+    }
+
     /**
      * Iterates over all edges in this path sorted from start to end and calls the visitor callback
      * for every edge.
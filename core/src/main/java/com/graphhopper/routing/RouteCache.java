@@ -0,0 +1,192 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.details.PathDetail;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A size- and time-bounded cache for the responses of {@link Router#route}. The key consists of the snapped points
+ * (instead of the requested coordinates) and all request parameters that can influence the response, i.e. the profile,
+ * the hints, the custom model etc. Once the maximum size is reached the least recently used response is evicted.
+ * <p>
+ * The cache stores a snapshot of the response paths without the hints and debug info of the request that calculated
+ * them, and every hit returns a new response with copies of these paths. The point lists are immutable and the
+ * instructions are shared between all copies, so they must not be modified. The cache has to be discarded when the
+ * graph changes.
+ */
+public class RouteCache {
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<Key, Entry> map;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RouteCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    RouteCache(int maxSize, long ttlMillis, LongSupplier clock) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The maximum size of the route cache must be positive, but was: " + maxSize);
+        if (ttlMillis <= 0)
+            throw new IllegalArgumentException("The time to live of the route cache must be positive, but was: " + ttlMillis);
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        // access order turns the map into a LRU cache
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > RouteCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Creates the cache key for the given request. The snaps must be the result of the location lookup, i.e. they
+     * must not be modified by the creation of the QueryGraph yet.
+     */
+    public static Key createKey(GHRequest request, List<Snap> snaps) {
+        List<SnapKey> snapKeys = new ArrayList<>(snaps.size());
+        for (Snap snap : snaps) {
+            // for snaps at tower nodes the closest edge can be any of the adjacent edges, but it does not matter
+            boolean tower = snap.getSnappedPosition() == Snap.Position.TOWER;
+            snapKeys.add(new SnapKey(snap.getClosestNode(),
+                    tower ? EdgeIterator.NO_EDGE : snap.getClosestEdge().getEdgeKey(),
+                    tower ? -1 : snap.getWayIndex(), snap.getSnappedPosition(),
+                    snap.getSnappedPoint().getLat(), snap.getSnappedPoint().getLon()));
+        }
+        return new Key(request.getProfile(), request.getAlgorithm(), request.getLocale(), request.getHints().toMap(),
+                new ArrayList<>(request.getHeadings()), new ArrayList<>(request.getCurbsides()),
+                new ArrayList<>(request.getPathDetails()),
+                request.getCustomModel() == null ? "" : request.getCustomModel().toString(), snapKeys);
+    }
+
+    /**
+     * @return a new response containing copies of the cached paths or null if there is none or if it expired. The
+     * response has no hints or debug info.
+     */
+    public GHResponse get(Key key) {
+        List<ResponsePath> paths = null;
+        synchronized (map) {
+            Entry entry = map.get(key);
+            if (entry != null) {
+                if (entry.expirationMillis > clock.getAsLong())
+                    paths = entry.paths;
+                else
+                    map.remove(key);
+            }
+        }
+        if (paths == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        GHResponse response = new GHResponse();
+        for (ResponsePath path : paths)
+            response.add(copy(path));
+        return response;
+    }
+
+    public void put(Key key, GHResponse response) {
+        if (response.hasErrors())
+            throw new IllegalArgumentException("Responses with errors must not be cached");
+        List<ResponsePath> paths = new ArrayList<>(response.getAll().size());
+        for (ResponsePath path : response.getAll())
+            paths.add(copy(path));
+        Entry entry = new Entry(paths, clock.getAsLong() + ttlMillis);
+        synchronized (map) {
+            map.put(key, entry);
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int getSize() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Copies the given path without its debug info. Mutable point lists are copied and made immutable, immutable ones
+     * are shared.
+     */
+    private static ResponsePath copy(ResponsePath path) {
+        ResponsePath copy = new ResponsePath();
+        copy.setDescription(new ArrayList<>(path.getDescription()));
+        copy.setDistance(path.getDistance()).setAscend(path.getAscend()).setDescend(path.getDescend())
+                .setRouteWeight(path.getRouteWeight()).setTime(path.getTime());
+        copy.setPoints(immutable(path.getPoints()));
+        copy.setWaypoints(immutable(path.getWaypoints()));
+        if (path.getWaypointIndices() != null)
+            copy.setWaypointIndices(new ArrayList<>(path.getWaypointIndices()));
+        copy.setPointsOrder(path.getPointsOrder());
+        if (path.hasInstructions())
+            copy.setInstructions(path.getInstructions());
+        Map<String, List<PathDetail>> details = new HashMap<>();
+        path.getPathDetails().forEach((name, list) -> details.put(name, new ArrayList<>(list)));
+        copy.addPathDetails(details);
+        copy.getLegs().addAll(path.getLegs());
+        copy.setNumChanges(path.getNumChanges());
+        copy.setFare(path.getFare());
+        copy.setImpossible(path.isImpossible());
+        return copy;
+    }
+
+    private static PointList immutable(PointList points) {
+        return points == PointList.EMPTY || points.isImmutable() ? points : points.clone(false).makeImmutable();
+    }
+
+    public record Key(String profile, String algorithm, Locale locale, Map<String, Object> hints, List<Double> headings,
+                      List<String> curbsides, List<String> pathDetails, String customModel, List<SnapKey> snaps) {
+    }
+
+    record SnapKey(int closestNode, int closestEdgeKey, int wayIndex, Snap.Position position, double lat, double lon) {
+    }
+
+    private record Entry(List<ResponsePath> paths, long expirationMillis) {
+    }
+}
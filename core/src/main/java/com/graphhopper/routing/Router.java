@@ -18,16 +18,21 @@
 
 package com.graphhopper.routing;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.GHMatrixRequest;
+import com.graphhopper.GHMatrixResponse;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.config.Profile;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
+import com.graphhopper.routing.ch.ManyToManyCH;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMRoutingAlgorithmFactory;
 import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
@@ -39,6 +44,7 @@ import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
 import com.graphhopper.util.exceptions.PointDistanceExceededException;
 import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.exceptions.PointOutOfBoundsException;
@@ -64,6 +70,9 @@ public class Router {
     protected final WeightingFactory weightingFactory;
     protected final Map<String, RoutingCHGraph> chGraphs;
     protected final Map<String, LandmarkStorage> landmarks;
+    protected RouteCache routeCache;
+    protected RouterMetrics routerMetrics = RouterMetrics.NOOP;
+    protected SearchStatePool searchStatePool;
 
     public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
@@ -86,6 +95,33 @@ public class Router {
         }
     }
 
+    /**
+     * @param routeCache the cache for the responses of {@link #route} or null if responses should not be cached
+     */
+    public Router setRouteCache(RouteCache routeCache) {
+        this.routeCache = routeCache;
+        return this;
+    }
+
+    /**
+     * @param routerMetrics receives the time spent in the different stages of every request
+     */
+    public Router setRouterMetrics(RouterMetrics routerMetrics) {
+        if (routerMetrics == null)
+            throw new IllegalArgumentException("routerMetrics must not be null, use RouterMetrics.NOOP instead");
+        this.routerMetrics = routerMetrics;
+        return this;
+    }
+
+    /**
+     * @param searchStatePool the search states that are re-used by the algorithms with array search state, or null
+     *                        if every search should allocate its own
+     */
+    public Router setSearchStatePool(SearchStatePool searchStatePool) {
+        this.searchStatePool = searchStatePool;
+        return this;
+    }
+
     public GHResponse route(GHRequest request) {
         try {
             checkNoLegacyParameters(request);
@@ -123,6 +159,210 @@ public class Router {
         }
     }
 
+    /**
+     * Calculates the weights, times and/or distances between all from and to points of the given request. This
+     * requires a node-based CH preparation for the requested profile.
+     */
+    public GHMatrixResponse matrix(GHMatrixRequest request) {
+        GHMatrixResponse rsp = new GHMatrixResponse();
+        try {
+            List<GHPoint> fromPoints = request.getFromPoints();
+            List<GHPoint> toPoints = request.getToPoints();
+            checkMatrixRequest(request, fromPoints, toPoints);
+            Profile profile = profilesByName.get(request.getProfile());
+            if (profile == null)
+                throw new IllegalArgumentException("The requested profile '" + request.getProfile() + "' does not exist.\nAvailable profiles: " + profilesByName.keySet());
+            RoutingCHGraph chGraph = chGraphs.get(profile.getName());
+            if (chGraph == null)
+                throw new IllegalArgumentException("Cannot find CH preparation for the requested profile: '" + profile.getName() + "'" +
+                        "\nThe matrix calculation requires a CH preparation, available CH profiles: " + chGraphs.keySet());
+
+            // for a symmetric matrix we only need to snap the points once
+            boolean symmetric = request.getPoints() != null;
+            List<GHPoint> points = new ArrayList<>(fromPoints);
+            List<String> pointHints = new ArrayList<>();
+            if (!request.getFromPointHints().isEmpty() || (!symmetric && !request.getToPointHints().isEmpty())) {
+                pointHints.addAll(request.getFromPointHints().isEmpty() ? Collections.nCopies(fromPoints.size(), "") : request.getFromPointHints());
+                if (!symmetric)
+                    pointHints.addAll(request.getToPointHints().isEmpty() ? Collections.nCopies(toPoints.size(), "") : request.getToPointHints());
+            }
+            if (!symmetric)
+                points.addAll(toPoints);
+
+            StopWatch sw = new StopWatch().start();
+            Weighting weighting = chGraph.getWeighting();
+            Snap[] snaps = lookupMatrixPoints(request, profile, weighting, points, pointHints, fromPoints.size(), symmetric);
+            List<Snap> validSnaps = new ArrayList<>(snaps.length);
+            IntArrayList sources = new IntArrayList(fromPoints.size());
+            IntArrayList sourceIndices = new IntArrayList(fromPoints.size());
+            IntArrayList targets = new IntArrayList(toPoints.size());
+            IntArrayList targetIndices = new IntArrayList(toPoints.size());
+            for (int i = 0; i < snaps.length; i++) {
+                if (snaps[i] == null) {
+                    if (i < fromPoints.size())
+                        rsp.getInvalidFromPoints().add(i);
+                    if (symmetric || i >= fromPoints.size())
+                        rsp.getInvalidToPoints().add(symmetric ? i : i - fromPoints.size());
+                } else {
+                    validSnaps.add(snaps[i]);
+                }
+            }
+            rsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+            if (validSnaps.isEmpty())
+                throw new IllegalArgumentException("None of the points could be found");
+
+            QueryGraph queryGraph = QueryGraph.create(graph, validSnaps);
+            for (int i = 0; i < snaps.length; i++) {
+                if (snaps[i] == null)
+                    continue;
+                // the closest node of a snap can change when the query graph is created
+                int node = snaps[i].getClosestNode();
+                if (i < fromPoints.size()) {
+                    sources.add(node);
+                    sourceIndices.add(i);
+                }
+                if (symmetric || i >= fromPoints.size()) {
+                    targets.add(node);
+                    targetIndices.add(symmetric ? i : i - fromPoints.size());
+                }
+            }
+            if (sources.isEmpty() || targets.isEmpty())
+                throw new IllegalArgumentException("At least one of the from and one of the to points has to be found");
+
+            sw = new StopWatch().start();
+            ManyToManyCH manyToMany = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph)).
+                    setMaxVisitedNodes(request.getHints().getInt(MAX_VISITED_NODES, routerConfig.getMaxVisitedNodes())).
+                    setTimeoutMillis(Math.min(routerConfig.getTimeoutMillis(), request.getHints().getLong(TIMEOUT_MS, routerConfig.getTimeoutMillis())));
+            ManyToManyCH.Result result = manyToMany.calcMatrix(sources.toArray(), targets.toArray());
+            rsp.addDebugInfo("matrix:" + sw.stop().getSeconds() + "s");
+            rsp.getHints().putObject("visited_nodes.sum", manyToMany.getVisitedNodes());
+
+            fillMatrixResponse(rsp, request, result, fromPoints.size(), toPoints.size(), sourceIndices, targetIndices);
+            return rsp;
+        } catch (MultiplePointsNotFoundException ex) {
+            for (IntCursor p : ex.getPointsNotFound()) {
+                rsp.addError(new PointNotFoundException("Cannot find point " + p.value, p.value));
+            }
+            return rsp;
+        } catch (IllegalArgumentException ex) {
+            rsp.addError(ex);
+            return rsp;
+        }
+    }
+
+    private void checkMatrixRequest(GHMatrixRequest request, List<GHPoint> fromPoints, List<GHPoint> toPoints) {
+        if (Helper.isEmpty(request.getProfile()))
+            throw new IllegalArgumentException("You need to specify a profile to perform a matrix request, see docs/core/profiles.md");
+        if (fromPoints == null || fromPoints.isEmpty() || toPoints == null || toPoints.isEmpty())
+            throw new IllegalArgumentException("You have to pass at least one from and one to point or the points parameter");
+        if (fromPoints.size() > routerConfig.getMaxMatrixLocations() || toPoints.size() > routerConfig.getMaxMatrixLocations())
+            throw new IllegalArgumentException("The number of from or to points must not exceed " + routerConfig.getMaxMatrixLocations()
+                    + ", but was: " + fromPoints.size() + "x" + toPoints.size());
+        checkIfPointsAreInBoundsAndNotNull(fromPoints);
+        checkIfPointsAreInBoundsAndNotNull(toPoints);
+        if (!request.getFromPointHints().isEmpty() && request.getFromPointHints().size() != fromPoints.size())
+            throw new IllegalArgumentException("If you pass from point hints, you need to pass exactly one hint for every from point, empty hints will be ignored");
+        if (!request.getToPointHints().isEmpty() && request.getToPointHints().size() != toPoints.size())
+            throw new IllegalArgumentException("If you pass to point hints, you need to pass exactly one hint for every to point, empty hints will be ignored");
+        if (!request.getFromCurbsides().isEmpty() || !request.getToCurbsides().isEmpty())
+            throw new IllegalArgumentException("The " + CURBSIDE + " parameter is currently not supported for matrix requests");
+        for (String outArray : request.getOutArrays()) {
+            if (!"weights".equals(outArray) && !"times".equals(outArray) && !"distances".equals(outArray))
+                throw new IllegalArgumentException("Unknown out_arrays value '" + outArray + "', use weights, times and/or distances");
+        }
+        if (request.getOutArrays().isEmpty())
+            throw new IllegalArgumentException("Please specify times, distances or weights that should be calculated by the matrix");
+    }
+
+    /**
+     * @param fromCount the number of from points at the beginning of the given points. The remaining points are the to
+     *                  points, unless the matrix is symmetric, in which case every point is a from and a to point.
+     * @return the snaps of the given points or null for the points that could not be found. If fail_fast is enabled
+     * points that cannot be found lead to an exception instead
+     */
+    private Snap[] lookupMatrixPoints(GHMatrixRequest request, Profile profile, Weighting weighting, List<GHPoint> points, List<String> pointHints,
+                                      int fromCount, boolean symmetric) {
+        EdgeFilter snapFilter = new DefaultSnapFilter(weighting, encodingManager.getBooleanEncodedValue(Subnetwork.key(profile.getName())));
+        Snap[] result = new Snap[points.size()];
+        IntArrayList pointIndices = new IntArrayList(points.size());
+        for (int i = 0; i < points.size(); i++)
+            pointIndices.add(i);
+        try {
+            lookupMatrixPoints(request, snapFilter, points, pointHints, pointIndices, result);
+        } catch (MultiplePointsNotFoundException ex) {
+            if (request.getFailFast())
+                throw ex;
+            // we repeat the lookup without the points that cannot be found
+            for (IntCursor p : ex.getPointsNotFound())
+                pointIndices.removeFirst(p.value);
+            boolean fromFound = false, toFound = false;
+            for (IntCursor p : pointIndices) {
+                fromFound |= p.value < fromCount;
+                toFound |= symmetric || p.value >= fromCount;
+            }
+            if (!fromFound || !toFound)
+                throw new IllegalArgumentException("At least one of the from and one of the to points has to be found");
+            lookupMatrixPoints(request, snapFilter, points, pointHints, pointIndices, result);
+        }
+        return result;
+    }
+
+    private void lookupMatrixPoints(GHMatrixRequest request, EdgeFilter snapFilter, List<GHPoint> points, List<String> pointHints,
+                                    IntArrayList pointIndices, Snap[] result) {
+        if (pointIndices.size() == 1) {
+            // a single point, e.g. for a symmetric 1x1 matrix, there is nothing to snap relative to other points
+            int index = pointIndices.get(0);
+            Snap snap = locationIndex.findClosest(points.get(index).getLat(), points.get(index).getLon(), snapFilter);
+            if (!snap.isValid())
+                throw new MultiplePointsNotFoundException(IntArrayList.from(index));
+            result[index] = snap;
+            return;
+        }
+        List<GHPoint> lookupPoints = new ArrayList<>(pointIndices.size());
+        List<String> lookupHints = new ArrayList<>(pointHints.isEmpty() ? 0 : pointIndices.size());
+        for (IntCursor c : pointIndices) {
+            lookupPoints.add(points.get(c.value));
+            if (!pointHints.isEmpty())
+                lookupHints.add(pointHints.get(c.value));
+        }
+        List<Snap> snaps = ViaRouting.lookup(encodingManager, lookupPoints, snapFilter, locationIndex,
+                request.getSnapPreventions(), lookupHints, null, Collections.emptyList());
+        for (int i = 0; i < snaps.size(); i++)
+            result[pointIndices.get(i)] = snaps.get(i);
+    }
+
+    private void fillMatrixResponse(GHMatrixResponse rsp, GHMatrixRequest request, ManyToManyCH.Result result, int fromCount, int toCount,
+                                    IntArrayList sourceIndices, IntArrayList targetIndices) {
+        double[][] weights = request.getOutArrays().contains("weights") ? new double[fromCount][toCount] : null;
+        long[][] times = request.getOutArrays().contains("times") ? new long[fromCount][toCount] : null;
+        double[][] distances = request.getOutArrays().contains("distances") ? new double[fromCount][toCount] : null;
+        for (int i = 0; i < fromCount; i++) {
+            if (weights != null) Arrays.fill(weights[i], Double.POSITIVE_INFINITY);
+            if (times != null) Arrays.fill(times[i], Long.MAX_VALUE);
+            if (distances != null) Arrays.fill(distances[i], Double.POSITIVE_INFINITY);
+        }
+        for (int s = 0; s < sourceIndices.size(); s++) {
+            int from = sourceIndices.get(s);
+            for (int t = 0; t < targetIndices.size(); t++) {
+                int to = targetIndices.get(t);
+                if (!result.isConnected(s, t)) {
+                    if (request.getFailFast()) {
+                        Map<String, Object> details = new HashMap<>(2);
+                        details.put("from", from);
+                        details.put("to", to);
+                        throw new ConnectionNotFoundException("Connection between locations not found: " + from + " -> " + to, details);
+                    }
+                    rsp.addDisconnectedPoints(from, to);
+                    continue;
+                }
+                if (weights != null) weights[from][to] = result.getWeight(s, t);
+                if (times != null) times[from][to] = result.getTime(s, t);
+                if (distances != null) distances[from][to] = result.getDistance(s, t);
+            }
+        }
+        rsp.setWeights(weights).setTimes(times).setDistances(distances);
+    }
+
     private void checkNoLegacyParameters(GHRequest request) {
         if (request.getHints().has("vehicle"))
             throw new IllegalArgumentException("GHRequest may no longer contain a vehicle, use the profile parameter instead, see docs/core/profiles.md");
@@ -180,15 +420,30 @@ public class Router {
     }
 
     protected Solver createSolver(GHRequest request) {
-        if (chGraphs.containsKey(request.getProfile()) && !getDisableCH(request.getHints())) {
-            return createCHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
-        } else if (landmarks.containsKey(request.getProfile()) && !getDisableLM(request.getHints())) {
-            return createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
-        } else {
-            return createFlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex);
+        switch (getMode(request, chGraphs.containsKey(request.getProfile()), landmarks.containsKey(request.getProfile()))) {
+            case "ch":
+                return createCHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
+            case "lm":
+                return createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
+            default:
+                return createFlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex);
         }
     }
 
+    /**
+     * @param hasCH true if there is a CH preparation for the profile of the request
+     * @param hasLM true if there is a LM preparation for the profile of the request
+     * @return the mode the request is calculated with, i.e. "ch", "lm" or "flex"
+     */
+    public static String getMode(GHRequest request, boolean hasCH, boolean hasLM) {
+        if (hasCH && !getDisableCH(request.getHints()))
+            return "ch";
+        else if (hasLM && !getDisableLM(request.getHints()))
+            return "lm";
+        else
+            return "flex";
+    }
+
     protected Solver createCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                     EncodingManager encodingManager, Map<String, RoutingCHGraph> chGraphs) {
         return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
@@ -197,13 +452,15 @@ public class Router {
     protected Solver createLMSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                     EncodingManager encodingManager, WeightingFactory weightingFactory, BaseGraph baseGraph,
                                     LocationIndex locationIndex, Map<String, LandmarkStorage> landmarks) {
-        return new LMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex, landmarks);
+        return new LMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex, landmarks).
+                setSearchStatePool(searchStatePool);
     }
 
     protected Solver createFlexSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                       EncodingManager encodingManager, WeightingFactory weightingFactory, BaseGraph baseGraph,
                                       LocationIndex locationIndex) {
-        return new FlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex);
+        return new FlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex).
+                setSearchStatePool(searchStatePool);
     }
 
     protected GHResponse routeRoundTrip(GHRequest request, FlexSolver solver) {
@@ -213,15 +470,23 @@ public class Router {
         RoundTripRouting.Params params = new RoundTripRouting.Params(request.getHints(), startHeading, routerConfig.getMaxRoundTripRetries());
         List<Snap> snaps = RoundTripRouting.lookup(request.getPoints(), solver.createSnapFilter(), locationIndex, params);
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        recordStage(solver, RouterMetrics.Stage.LOOKUP, sw.getNanos());
 
+        long start = System.nanoTime();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        recordStage(solver, RouterMetrics.Stage.QUERY_GRAPH, System.nanoTime() - start);
         FlexiblePathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
 
+        start = System.nanoTime();
         RoundTripRouting.Result result = RoundTripRouting.calcPaths(snaps, pathCalculator);
+        long extractNanos = 0;
+        for (Path path : result.paths)
+            extractNanos += path.getExtractNanos();
+        recordPathCalculation(solver, System.nanoTime() - start, extractNanos, result.visitedNodes);
         // we merge the different legs of the roundtrip into one response path
         // note that the waypoints are not just the snapped points of the snaps, as usual, because we do some kind of tweak
         // to avoid 'unnecessary tails' in the roundtrip algo
-        ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, result.wayPoints);
+        ResponsePath responsePath = concatenatePaths(request, solver, queryGraph, result.paths, result.wayPoints);
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
@@ -237,7 +502,14 @@ public class Router {
         List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
                 request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        recordStage(solver, RouterMetrics.Stage.LOOKUP, sw.getNanos());
+        RouteCache.Key cacheKey = routeCache == null ? null : RouteCache.createKey(request, snaps);
+        GHResponse cachedRsp = cacheKey == null ? null : routeCache.get(cacheKey);
+        if (cachedRsp != null)
+            return fromCache(ghRsp, cachedRsp);
+        long start = System.nanoTime();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        recordStage(solver, RouterMetrics.Stage.QUERY_GRAPH, System.nanoTime() - start);
         PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
         boolean passThrough = getPassThrough(request.getHints());
         String curbsideStrictness = getCurbsideStrictness(request.getHints());
@@ -248,6 +520,7 @@ public class Router {
 
         ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
                 pathCalculator, request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough, encodingManager);
+        recordPathCalculation(solver, result.calcNanos, result.extractNanos, result.visitedNodes);
         if (result.paths.isEmpty())
             throw new RuntimeException("Empty paths for alternative route calculation not expected");
 
@@ -258,8 +531,10 @@ public class Router {
             ResponsePath responsePath = pathMerger.doWork(waypoints, Collections.singletonList(path), encodingManager, translationMap.getWithFallBack(request.getLocale()));
             ghRsp.add(responsePath);
         }
+        recordPathMerging(solver, pathMerger);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
+        putIntoCache(cacheKey, ghRsp);
         return ghRsp;
     }
 
@@ -270,27 +545,52 @@ public class Router {
         List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
                 request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        recordStage(solver, RouterMetrics.Stage.LOOKUP, sw.getNanos());
+        RouteCache.Key cacheKey = routeCache == null ? null : RouteCache.createKey(request, snaps);
+        GHResponse cachedRsp = cacheKey == null ? null : routeCache.get(cacheKey);
+        if (cachedRsp != null)
+            return fromCache(ghRsp, cachedRsp);
         // (base) query graph used to resolve headings, curbsides etc. this is not necessarily the same thing as
         // the (possibly implementation specific) query graph used by PathCalculator
+        long start = System.nanoTime();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        recordStage(solver, RouterMetrics.Stage.QUERY_GRAPH, System.nanoTime() - start);
         PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
         boolean passThrough = getPassThrough(request.getHints());
         String curbsideStrictness = getCurbsideStrictness(request.getHints());
         ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
                 pathCalculator, request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough, encodingManager);
+        recordPathCalculation(solver, result.calcNanos, result.extractNanos, result.visitedNodes);
 
         if (request.getPoints().size() != result.paths.size() + 1)
             throw new RuntimeException("There should be exactly one more point than paths. points:" + request.getPoints().size() + ", paths:" + result.paths.size());
 
         // here each path represents one leg of the via-route and we merge them all together into one response path
-        ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, getWaypoints(snaps));
+        ResponsePath responsePath = concatenatePaths(request, solver, queryGraph, result.paths, getWaypoints(snaps));
         responsePath.addDebugInfo(result.debug);
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
+        putIntoCache(cacheKey, ghRsp);
+        return ghRsp;
+    }
+
+    private static GHResponse fromCache(GHResponse ghRsp, GHResponse cachedRsp) {
+        // the cached response carries no hints or debug info, so we add those of this request
+        ghRsp.addDebugInfo("routeCache:hit");
+        for (ResponsePath path : cachedRsp.getAll())
+            ghRsp.add(path);
+        ghRsp.getHints().putObject("visited_nodes.sum", 0);
+        ghRsp.getHints().putObject("visited_nodes.average", 0f);
         return ghRsp;
     }
 
+    private void putIntoCache(RouteCache.Key cacheKey, GHResponse ghRsp) {
+        // e.g. responses of requests that exceeded the timeout or the maximum visited nodes must not be cached
+        if (cacheKey != null && !ghRsp.hasErrors())
+            routeCache.put(cacheKey, ghRsp);
+    }
+
     private PathMerger createPathMerger(GHRequest request, Weighting weighting, Graph graph) {
         boolean enableInstructions = request.getHints().getBool(Parameters.Routing.INSTRUCTIONS, routerConfig.isInstructionsEnabled());
         boolean enableViaPointInstructions = request.getHints().getBool(Parameters.Routing.VIA_POINT_INSTRUCTIONS, routerConfig.isViaPointInstructionsEnabled());
@@ -314,9 +614,26 @@ public class Router {
         return pathMerger;
     }
 
-    private ResponsePath concatenatePaths(GHRequest request, Weighting weighting, QueryGraph queryGraph, List<Path> paths, PointList waypoints) {
-        PathMerger pathMerger = createPathMerger(request, weighting, queryGraph);
-        return pathMerger.doWork(waypoints, paths, encodingManager, translationMap.getWithFallBack(request.getLocale()));
+    private ResponsePath concatenatePaths(GHRequest request, Solver solver, QueryGraph queryGraph, List<Path> paths, PointList waypoints) {
+        PathMerger pathMerger = createPathMerger(request, solver.weighting, queryGraph);
+        ResponsePath responsePath = pathMerger.doWork(waypoints, paths, encodingManager, translationMap.getWithFallBack(request.getLocale()));
+        recordPathMerging(solver, pathMerger);
+        return responsePath;
+    }
+
+    private void recordStage(Solver solver, RouterMetrics.Stage stage, long nanos) {
+        routerMetrics.recordStage(solver.profile.getName(), solver.getMode(), stage, nanos);
+    }
+
+    private void recordPathCalculation(Solver solver, long calcNanos, long extractNanos, long visitedNodes) {
+        recordStage(solver, RouterMetrics.Stage.ALGORITHM, calcNanos - extractNanos);
+        recordStage(solver, RouterMetrics.Stage.PATH_EXTRACTION, extractNanos);
+        routerMetrics.recordVisitedNodes(solver.profile.getName(), solver.getMode(), visitedNodes);
+    }
+
+    private void recordPathMerging(Solver solver, PathMerger pathMerger) {
+        recordStage(solver, RouterMetrics.Stage.INSTRUCTIONS, pathMerger.getInstructionsNanos());
+        recordStage(solver, RouterMetrics.Stage.PATH_DETAILS, pathMerger.getPathDetailsNanos());
     }
 
     private PointList getWaypoints(List<Snap> snaps) {
@@ -416,6 +733,11 @@ public class Router {
 
         protected abstract PathCalculator createPathCalculator(QueryGraph queryGraph);
 
+        /**
+         * @return the name of the mode used for the {@link RouterMetrics}
+         */
+        protected abstract String getMode();
+
         private List<String> getTurnCostProfiles() {
             List<String> turnCostProfiles = new ArrayList<>();
             for (Profile p : profilesByName.values()) {
@@ -472,6 +794,11 @@ public class Router {
             return getRoutingCHGraph(profile.getName()).getWeighting();
         }
 
+        @Override
+        protected String getMode() {
+            return "ch";
+        }
+
         @Override
         protected PathCalculator createPathCalculator(QueryGraph queryGraph) {
             PMap opts = new PMap(request.getHints());
@@ -496,6 +823,7 @@ public class Router {
         private final WeightingFactory weightingFactory;
         private final BaseGraph baseGraph;
         private final LocationIndex locationIndex;
+        protected SearchStatePool searchStatePool;
 
         protected FlexSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                              EncodedValueLookup lookup, WeightingFactory weightingFactory, BaseGraph graph, LocationIndex locationIndex) {
@@ -506,6 +834,11 @@ public class Router {
             this.locationIndex = locationIndex;
         }
 
+        public FlexSolver setSearchStatePool(SearchStatePool searchStatePool) {
+            this.searchStatePool = searchStatePool;
+            return this;
+        }
+
         @Override
         protected void checkRequest() {
             super.checkRequest();
@@ -519,9 +852,14 @@ public class Router {
             return weightingFactory.createWeighting(profile, requestHints, false);
         }
 
+        @Override
+        protected String getMode() {
+            return "flex";
+        }
+
         @Override
         protected FlexiblePathCalculator createPathCalculator(QueryGraph queryGraph) {
-            RoutingAlgorithmFactory algorithmFactory = new RoutingAlgorithmFactorySimple();
+            RoutingAlgorithmFactory algorithmFactory = new RoutingAlgorithmFactorySimple().setSearchStatePool(searchStatePool);
             return new FlexiblePathCalculator(queryGraph, algorithmFactory, weighting, getAlgoOpts());
         }
 
@@ -571,6 +909,11 @@ public class Router {
             this.landmarks = landmarks;
         }
 
+        @Override
+        protected String getMode() {
+            return "lm";
+        }
+
         @Override
         protected FlexiblePathCalculator createPathCalculator(QueryGraph queryGraph) {
             // for now do not allow mixing CH&LM #1082,#1889
@@ -581,7 +924,9 @@ public class Router {
                         "\navailable LM profiles: " + landmarks.keySet());
             if (request.getCustomModel() != null)
                 FindMinMax.checkLMConstraints(profile.getCustomModel(), request.getCustomModel(), lookup);
-            RoutingAlgorithmFactory routingAlgorithmFactory = new LMRoutingAlgorithmFactory(landmarkStorage).setDefaultActiveLandmarks(routerConfig.getActiveLandmarkCount());
+            RoutingAlgorithmFactory routingAlgorithmFactory = new LMRoutingAlgorithmFactory(landmarkStorage).
+                    setDefaultActiveLandmarks(routerConfig.getActiveLandmarkCount()).
+                    setSearchStatePool(searchStatePool);
             return new FlexiblePathCalculator(queryGraph, routingAlgorithmFactory, weighting, getAlgoOpts());
         }
     }
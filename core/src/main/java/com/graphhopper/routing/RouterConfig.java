@@ -32,6 +32,12 @@ public class RouterConfig {
     private boolean simplifyResponse = true;
     private double elevationWayPointMaxDistance = Double.MAX_VALUE;
     private int activeLandmarkCount = 8;
+    private int maxMatrixLocations = 1000;
+    private int routeCacheSize = 0;
+    private long routeCacheTtlMillis = 10 * 60 * 1000;
+    private int areaCacheSize = 100;
+    private long areaCacheMaxBytes = 64L * 1024 * 1024;
+    private int searchStatePoolSize = 0;
 
     public int getMaxVisitedNodes() {
         return maxVisitedNodes;
@@ -128,4 +134,74 @@ public class RouterConfig {
     public void setElevationWayPointMaxDistance(double elevationWayPointMaxDistance) {
         this.elevationWayPointMaxDistance = elevationWayPointMaxDistance;
     }
+
+    public int getMaxMatrixLocations() {
+        return maxMatrixLocations;
+    }
+
+    /**
+     * Limits the number of from and the number of to points of matrix requests.
+     */
+    public void setMaxMatrixLocations(int maxMatrixLocations) {
+        this.maxMatrixLocations = maxMatrixLocations;
+    }
+
+    public int getRouteCacheSize() {
+        return routeCacheSize;
+    }
+
+    /**
+     * Caches up to the given number of route responses, see {@link RouteCache}. 0 disables the cache.
+     */
+    public void setRouteCacheSize(int routeCacheSize) {
+        this.routeCacheSize = routeCacheSize;
+    }
+
+    public long getRouteCacheTtlMillis() {
+        return routeCacheTtlMillis;
+    }
+
+    /**
+     * Cached route responses expire after the given amount of milliseconds.
+     */
+    public void setRouteCacheTtlMillis(long routeCacheTtlMillis) {
+        this.routeCacheTtlMillis = routeCacheTtlMillis;
+    }
+
+    public int getAreaCacheSize() {
+        return areaCacheSize;
+    }
+
+    /**
+     * Caches the edges within up to the given number of custom model areas, see
+     * {@link com.graphhopper.routing.weighting.custom.AreaEdgeCache}. 0 disables the cache.
+     */
+    public void setAreaCacheSize(int areaCacheSize) {
+        this.areaCacheSize = areaCacheSize;
+    }
+
+    public long getAreaCacheMaxBytes() {
+        return areaCacheMaxBytes;
+    }
+
+    /**
+     * Limits the memory of the edges that are cached for custom model areas, see {@link #setAreaCacheSize(int)}.
+     */
+    public void setAreaCacheMaxBytes(long areaCacheMaxBytes) {
+        this.areaCacheMaxBytes = areaCacheMaxBytes;
+    }
+
+    public int getSearchStatePoolSize() {
+        return searchStatePoolSize;
+    }
+
+    /**
+     * Lets the bidirectional Dijkstra and A* (not for CH) keep their search state in primitive arrays that are sized
+     * for the graph and re-used by later searches, see {@link SearchStatePool}. Every search needs two of the given
+     * number of states, further searches use the algorithms that create an object per visited node. 0 disables the
+     * array search state.
+     */
+    public void setSearchStatePoolSize(int searchStatePoolSize) {
+        this.searchStatePoolSize = searchStatePoolSize;
+    }
 }
@@ -0,0 +1,54 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+/**
+ * Receives the time spent in the different stages of a routing request, e.g. to find out whether the snapping, the
+ * algorithm or the instructions take the most time. The values are reported per profile and per mode, i.e. "ch",
+ * "lm" or "flex". Implementations must be thread-safe as they are shared by all requests.
+ */
+public interface RouterMetrics {
+    RouterMetrics NOOP = new RouterMetrics() {
+        @Override
+        public void recordStage(String profile, String mode, Stage stage, long nanos) {
+        }
+
+        @Override
+        public void recordVisitedNodes(String profile, String mode, long visitedNodes) {
+        }
+    };
+
+    enum Stage {
+        /**
+         * Finding the closest edges for the request points, see {@link ViaRouting#lookup}
+         */
+        LOOKUP,
+        QUERY_GRAPH,
+        /**
+         * The routing algorithm without the path extraction
+         */
+        ALGORITHM,
+        PATH_EXTRACTION,
+        INSTRUCTIONS,
+        PATH_DETAILS
+    }
+
+    void recordStage(String profile, String mode, Stage stage, long nanos);
+
+    void recordVisitedNodes(String profile, String mode, long visitedNodes);
+}
@@ -36,21 +36,42 @@ import static com.graphhopper.util.Parameters.Algorithms.*;
  * @author Peter Karich
  */
 public class RoutingAlgorithmFactorySimple implements RoutingAlgorithmFactory {
+    private SearchStatePool searchStatePool;
+
+    /**
+     * @param searchStatePool the pool for the search states of dijkstrabi and astarbi, which then keep their search
+     *                        state in primitive arrays while the pool has capacity. Without a pool (null) they
+     *                        create an object per visited node.
+     */
+    public RoutingAlgorithmFactorySimple setSearchStatePool(SearchStatePool searchStatePool) {
+        this.searchStatePool = searchStatePool;
+        return this;
+    }
+
     @Override
     public RoutingAlgorithm createAlgo(Graph g, Weighting w, AlgorithmOptions opts) {
         RoutingAlgorithm ra;
         String algoStr = opts.getAlgorithm();
         Weighting weighting = g.wrapWeighting(w);
+        boolean arraySearchState = searchStatePool != null && searchStatePool.hasCapacity();
         if (DIJKSTRA_BI.equalsIgnoreCase(algoStr)) {
-            ra = new DijkstraBidirectionRef(g, weighting, opts.getTraversalMode());
+            if (arraySearchState)
+                ra = new DijkstraBidirectionArray(g, weighting, opts.getTraversalMode()).setSearchStatePool(searchStatePool);
+            else
+                ra = new DijkstraBidirectionRef(g, weighting, opts.getTraversalMode());
         } else if (DIJKSTRA.equalsIgnoreCase(algoStr)) {
             ra = new Dijkstra(g, weighting, opts.getTraversalMode());
 
         } else if (ASTAR_BI.equalsIgnoreCase(algoStr) || Helper.isEmpty(algoStr)) {
-            AStarBidirection aStarBi = new AStarBidirection(g, weighting,
-                    opts.getTraversalMode());
-            aStarBi.setApproximation(getApproximation(ASTAR_BI, opts.getHints(), weighting, g.getNodeAccess()));
-            ra = aStarBi;
+            WeightApproximator approx = getApproximation(ASTAR_BI, opts.getHints(), weighting, g.getNodeAccess());
+            if (arraySearchState) {
+                ra = new AStarBidirectionArray(g, weighting, opts.getTraversalMode()).setApproximation(approx).setSearchStatePool(searchStatePool);
+            } else {
+                AStarBidirection aStarBi = new AStarBidirection(g, weighting,
+                        opts.getTraversalMode());
+                aStarBi.setApproximation(approx);
+                ra = aStarBi;
+            }
 
         } else if (DIJKSTRA_ONE_TO_MANY.equalsIgnoreCase(algoStr)) {
             ra = new DijkstraOneToMany(g, weighting, opts.getTraversalMode());
@@ -0,0 +1,85 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps the search states of the {@link AbstractArrayBidirAlgo}s, so later searches can re-use their arrays. Every
+ * graph should use its own pool, so the arrays are sized for this graph and become garbage together with it. The
+ * number of states is limited: the routing algorithm factories only create algorithms with array search state while
+ * {@link #hasCapacity()} is true, and states that are released while the pool is full are dropped.
+ */
+public class SearchStatePool {
+    private final int maxSize;
+    private final ArrayDeque<AbstractArrayBidirAlgo.SearchState> states = new ArrayDeque<>();
+    private int inUse;
+
+    /**
+     * @param maxSize the maximum number of states. Every search needs two of them, one per direction.
+     */
+    public SearchStatePool(int maxSize) {
+        if (maxSize < 2)
+            throw new IllegalArgumentException("The maximum size of the search state pool must be at least 2, but was: " + maxSize);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return true if another search can take its two states from this pool. Otherwise, an algorithm without array
+     * search state should be used, so the number of graph-sized arrays stays bounded. Concurrent searches that checked
+     * this at the same time might still exceed the maximum size, but their states are dropped afterwards.
+     */
+    public boolean hasCapacity() {
+        synchronized (states) {
+            return inUse + 2 <= maxSize;
+        }
+    }
+
+    AbstractArrayBidirAlgo.SearchState acquire() {
+        AbstractArrayBidirAlgo.SearchState state;
+        synchronized (states) {
+            inUse++;
+            state = states.pollLast();
+        }
+        return state == null ? new AbstractArrayBidirAlgo.SearchState() : state;
+    }
+
+    void release(AbstractArrayBidirAlgo.SearchState state) {
+        synchronized (states) {
+            inUse--;
+            if (states.size() + inUse < maxSize)
+                states.addLast(state);
+        }
+    }
+
+    public int getSize() {
+        synchronized (states) {
+            return states.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void clear() {
+        synchronized (states) {
+            states.clear();
+        }
+    }
+}
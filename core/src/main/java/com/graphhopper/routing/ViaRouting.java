@@ -146,7 +146,9 @@ public class ViaRouting {
             edgeRestrictions.setTargetInEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getTargetInEdge(), leg + 1, curbsideStrictness));
 
             // calculate paths
+            long start = System.nanoTime();
             List<Path> paths = pathCalculator.calcPaths(fromSnap.getClosestNode(), toSnap.getClosestNode(), edgeRestrictions);
+            result.calcNanos += System.nanoTime() - start;
             result.debug += pathCalculator.getDebugString();
 
             // for alternative routing we get multiple paths and add all of them (which is ok, because we do not allow
@@ -158,6 +160,7 @@ public class ViaRouting {
                     throw new RuntimeException("Time was negative " + path.getTime() + " for index " + i);
 
                 result.paths.add(path);
+                result.extractNanos += path.getExtractNanos();
                 result.debug += ", " + path.getDebugInfo();
             }
 
@@ -171,6 +174,9 @@ public class ViaRouting {
     public static class Result {
         public List<Path> paths;
         public long visitedNodes;
+        // the time for the path calculations, including the path extraction
+        public long calcNanos;
+        public long extractNanos;
         public String debug = "";
 
         Result(int legs) {
@@ -10,6 +10,10 @@ public final class CHParameters {
     public static final String NEIGHBOR_UPDATES_MAX = Parameters.CH.PREPARE + "updates.neighbor_max";
     public static final String CONTRACTED_NODES = Parameters.CH.PREPARE + "contracted_nodes";
     public static final String LOG_MESSAGES = Parameters.CH.PREPARE + "log_messages";
+    // number of threads used to contract the nodes of a single (node-based) profile
+    public static final String CONTRACTION_THREADS = Parameters.CH.PREPARE + "contraction_threads";
+    // after the contraction the CH graph is additionally stored in a level-ordered layout of only the upward edges
+    public static final String UPWARD_LAYOUT = Parameters.CH.PREPARE + "upward_layout";
     // node contraction, node-based
     public static final String EDGE_DIFFERENCE_WEIGHT = Parameters.CH.PREPARE + "node.edge_difference_weight";
     public static final String ORIGINAL_EDGE_COUNT_WEIGHT = Parameters.CH.PREPARE + "node.original_edge_count_weight";
@@ -29,6 +29,7 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 import java.util.stream.Stream;
 
+import static com.graphhopper.routing.ch.CHParameters.UPWARD_LAYOUT;
 import static com.graphhopper.util.Helper.createFormatter;
 import static com.graphhopper.util.Helper.getMemInfo;
 
@@ -101,7 +102,7 @@ public class CHPreparationHandler {
                 .map(c -> () -> {
                     CHStorage chStorage = new CHStorage(graph.getDirectory(), c.getName(), c.isEdgeBased());
                     if (chStorage.loadExisting())
-                        loaded.put(c.getName(), RoutingCHGraphImpl.fromGraph(graph, chStorage, c));
+                        loaded.put(c.getName(), RoutingCHGraphImpl.fromGraph(graph, chStorage, loadUpwardLayout(graph, chStorage, c), c));
                     else {
                         // todo: this is ugly, see comments in LMPreparationHandler
                         graph.getDirectory().remove("nodes_ch_" + c.getName());
@@ -112,6 +113,21 @@ public class CHPreparationHandler {
         return loaded;
     }
 
+    private CHUpwardStorage loadUpwardLayout(BaseGraph graph, CHStorage chStorage, CHConfig chConfig) {
+        if (!pMap.getBool(UPWARD_LAYOUT, false))
+            return null;
+        CHUpwardStorage chUpwardStorage = new CHUpwardStorage(graph.getDirectory(), chConfig.getName(), chConfig.isEdgeBased());
+        if (chUpwardStorage.loadExisting())
+            return chUpwardStorage;
+        // the CH graph was prepared without the upward layout, but we can still create it
+        graph.getDirectory().remove("ch_upward_nodes_" + chConfig.getName());
+        graph.getDirectory().remove("ch_upward_edges_" + chConfig.getName());
+        LOGGER.info("Building upward CH layout for profile '{}' that was prepared without it", chConfig.getName());
+        chUpwardStorage = CHUpwardStorage.fromCHStorage(graph, chStorage, chConfig.getWeighting(), chConfig.getName());
+        chUpwardStorage.flush();
+        return chUpwardStorage;
+    }
+
     public Map<String, PrepareContractionHierarchies.Result> prepare(BaseGraph baseGraph, StorableProperties properties, List<CHConfig> chConfigs, final boolean closeEarly) {
         if (chConfigs.isEmpty()) {
             LOGGER.info("There are no CHs to prepare");
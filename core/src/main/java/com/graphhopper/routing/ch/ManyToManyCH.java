@@ -0,0 +1,356 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.*;
+import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHEdgeIteratorState;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
+
+import java.util.Arrays;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * Calculates the weights, times and distances between many sources and many targets on a node-based
+ * {@link RoutingCHGraph} using the bucket-based approach described in 'Computing Many-to-Many Shortest Paths Using
+ * Highway Hierarchies' (Knopp et al.):
+ * <p>
+ * For every target we run a backward search that only goes upwards in the hierarchy and store every settled node
+ * together with the target and the weight in the 'bucket' of this node. Afterwards we run a forward upward search for
+ * every source and scan the buckets of all nodes it settles. The shortest path between a source and a target meets at
+ * the highest node of the path, so the minimum over all bucket entries yields the shortest path weight. This means
+ * we only need |sources| + |targets| upward searches instead of |sources| * |targets| point-to-point queries.
+ * <p>
+ * Time and distance are accumulated along the two search trees, which requires unpacking the shortcuts of the settled
+ * nodes. The results for the shortcuts are cached for the lifetime of an instance.
+ */
+public class ManyToManyCH {
+    // we have to be careful because of rounded shortcut weights in combination with virtual via nodes, see #1574
+    private static final double STALL_PRECISION = 0.001;
+    private final RoutingCHGraph graph;
+    private final Weighting weighting;
+    private final RoutingCHEdgeExplorer inEdgeExplorer;
+    private final RoutingCHEdgeExplorer outEdgeExplorer;
+    private final ShortcutUnpacker shortcutUnpacker;
+    private final int maxBaseNodes;
+    private final LongLongHashMap shortcutTimes = new LongLongHashMap();
+    private final LongDoubleHashMap shortcutDistances = new LongDoubleHashMap();
+    private long unpackedTime;
+    private double unpackedDistance;
+
+    // the state of the current search, we re-use it for all searches
+    private final IntIntHashMap nodeIndices = new IntIntHashMap();
+    private final IntArrayList nodes = new IntArrayList();
+    private final IntArrayList incEdges = new IntArrayList();
+    private final IntArrayList parents = new IntArrayList();
+    private final DoubleArrayList weights = new DoubleArrayList();
+    private final LongArrayList times = new LongArrayList();
+    private final DoubleArrayList distances = new DoubleArrayList();
+    private final IntArrayList settled = new IntArrayList();
+    private final IntFloatBinaryHeap heap = new IntFloatBinaryHeap(128);
+
+    // the buckets, i.e. a linked list of entries per node
+    private final IntIntHashMap bucketHeads = new IntIntHashMap();
+    private final IntArrayList bucketNext = new IntArrayList();
+    private final IntArrayList bucketTargets = new IntArrayList();
+    private final DoubleArrayList bucketWeights = new DoubleArrayList();
+    private final LongArrayList bucketTimes = new LongArrayList();
+    private final DoubleArrayList bucketDistances = new DoubleArrayList();
+
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private long timeoutMillis = Long.MAX_VALUE;
+    private long finishTimeMillis;
+    private int visitedNodes;
+
+    public ManyToManyCH(RoutingCHGraph graph) {
+        if (graph.isEdgeBased())
+            throw new IllegalArgumentException("Matrix calculation is only supported for node-based CH profiles, i.e. profiles without turn costs");
+        this.graph = graph;
+        this.weighting = graph.getBaseGraph().wrapWeighting(graph.getWeighting());
+        inEdgeExplorer = graph.createInEdgeExplorer();
+        outEdgeExplorer = graph.createOutEdgeExplorer();
+        maxBaseNodes = graph.getBaseGraph().getBaseGraph().getNodes();
+        shortcutUnpacker = new ShortcutUnpacker(graph, (edge, reverse, prevOrNextEdgeId) -> {
+            unpackedTime += weighting.calcEdgeMillis(edge, reverse);
+            unpackedDistance += edge.getDistance();
+        }, false);
+    }
+
+    /**
+     * Limits the number of nodes settled by each single forward or backward search
+     */
+    public ManyToManyCH setMaxVisitedNodes(int maxVisitedNodes) {
+        this.maxVisitedNodes = maxVisitedNodes;
+        return this;
+    }
+
+    /**
+     * Limits the runtime of the whole matrix calculation
+     */
+    public ManyToManyCH setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * @return the total number of nodes settled by all forward and backward searches of the last calculation
+     */
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    /**
+     * @param sources the (possibly virtual) start nodes
+     * @param targets the (possibly virtual) end nodes
+     */
+    public Result calcMatrix(int[] sources, int[] targets) {
+        if (sources.length == 0 || targets.length == 0)
+            throw new IllegalArgumentException("There has to be at least one source and one target, but was: " + sources.length + "x" + targets.length);
+        finishTimeMillis = timeoutMillis == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + timeoutMillis;
+        visitedNodes = 0;
+        clearBuckets();
+        Result result = new Result(sources.length, targets.length);
+        for (int t = 0; t < targets.length; t++) {
+            search(targets[t], true);
+            for (int i = 0; i < settled.size(); i++) {
+                int idx = settled.get(i);
+                addBucketEntry(nodes.get(idx), t, weights.get(idx), times.get(idx), distances.get(idx));
+            }
+        }
+        for (int s = 0; s < sources.length; s++) {
+            search(sources[s], false);
+            double[] weightRow = result.weights[s];
+            long[] timeRow = result.times[s];
+            double[] distanceRow = result.distances[s];
+            for (int i = 0; i < settled.size(); i++) {
+                int idx = settled.get(i);
+                int entry = bucketHeads.getOrDefault(nodes.get(idx), -1);
+                while (entry >= 0) {
+                    int t = bucketTargets.get(entry);
+                    double weight = weights.get(idx) + bucketWeights.get(entry);
+                    if (weight < weightRow[t]) {
+                        weightRow[t] = weight;
+                        timeRow[t] = times.get(idx) + bucketTimes.get(entry);
+                        distanceRow[t] = distances.get(idx) + bucketDistances.get(entry);
+                    }
+                    entry = bucketNext.get(entry);
+                }
+            }
+        }
+        clearBuckets();
+        return result;
+    }
+
+    /**
+     * Runs an upward search from the given node and fills {@link #settled} with the indices of all settled nodes that
+     * were not stalled.
+     */
+    private void search(int startNode, boolean reverse) {
+        clearSearch();
+        RoutingCHEdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        RoutingCHEdgeExplorer stallExplorer = reverse ? outEdgeExplorer : inEdgeExplorer;
+        heap.insert(0, addEntry(startNode, NO_EDGE, -1, 0));
+        int settledCount = 0;
+        while (!heap.isEmpty()) {
+            int idx = heap.poll();
+            // we never remove entries from the heap, so there might be outdated duplicates of settled nodes
+            if (times.get(idx) >= 0)
+                continue;
+            calcTimeAndDistance(idx, reverse);
+            if (++settledCount > maxVisitedNodes)
+                throw new MaximumNodesExceededException("No path found due to maximum nodes exceeded " + maxVisitedNodes, maxVisitedNodes);
+            if ((settledCount & 0xFF) == 0 && System.currentTimeMillis() > finishTimeMillis)
+                throw new IllegalArgumentException("Matrix calculation timed out after " + timeoutMillis + "ms");
+            if (isStallable(idx, stallExplorer, reverse))
+                continue;
+            settled.add(idx);
+            int node = nodes.get(idx);
+            double weight = weights.get(idx);
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (iter.getEdge() == incEdges.get(idx) || !isUpward(iter))
+                    continue;
+                double newWeight = weight + iter.getWeight(reverse);
+                if (Double.isInfinite(newWeight))
+                    continue;
+                int adjNode = iter.getAdjNode();
+                int adjIdx = nodeIndices.getOrDefault(adjNode, -1);
+                if (adjIdx < 0) {
+                    adjIdx = addEntry(adjNode, iter.getEdge(), idx, newWeight);
+                    heap.insert(newWeight, adjIdx);
+                } else if (times.get(adjIdx) < 0 && newWeight < weights.get(adjIdx)) {
+                    weights.set(adjIdx, newWeight);
+                    incEdges.set(adjIdx, iter.getEdge());
+                    parents.set(adjIdx, idx);
+                    heap.insert(newWeight, adjIdx);
+                }
+            }
+        }
+        visitedNodes += settledCount;
+    }
+
+    private boolean isUpward(RoutingCHEdgeIteratorState edgeState) {
+        int base = edgeState.getBaseNode();
+        int adj = edgeState.getAdjNode();
+        // always accept virtual edges, see #288
+        if (base >= maxBaseNodes || adj >= maxBaseNodes)
+            return true;
+        return graph.getLevel(base) <= graph.getLevel(adj);
+    }
+
+    /**
+     * Stall-on-demand: we do not expand the given node if we can prove that it was reached via a suboptimal path, the
+     * same way {@link com.graphhopper.routing.DijkstraBidirectionCH} does it.
+     */
+    private boolean isStallable(int idx, RoutingCHEdgeExplorer stallExplorer, boolean reverse) {
+        RoutingCHEdgeIterator iter = stallExplorer.setBaseNode(nodes.get(idx));
+        while (iter.next()) {
+            if (iter.getEdge() == incEdges.get(idx))
+                continue;
+            int adjIdx = nodeIndices.getOrDefault(iter.getAdjNode(), -1);
+            if (adjIdx >= 0 && weights.get(adjIdx) + iter.getWeight(!reverse) - weights.get(idx) < -STALL_PRECISION)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The time and distance of a node only depend on its parent, which is settled already, so we calculate them once
+     * the node is settled. A negative time marks nodes that are not settled yet.
+     */
+    private void calcTimeAndDistance(int idx, boolean reverse) {
+        int parent = parents.get(idx);
+        if (parent < 0) {
+            times.set(idx, 0);
+            distances.set(idx, 0);
+            return;
+        }
+        int adjNode = nodes.get(idx);
+        int edge = incEdges.get(idx);
+        RoutingCHEdgeIteratorState edgeState = graph.getEdgeIteratorState(edge, adjNode);
+        long key = ((long) edge << 32) | (adjNode & 0xFFFFFFFFL);
+        // the backward search traverses the shortcut in the opposite direction, edge IDs are not negative so we can
+        // use the sign bit
+        if (reverse)
+            key |= Long.MIN_VALUE;
+        if (edgeState.isShortcut() && shortcutTimes.containsKey(key)) {
+            unpackedTime = shortcutTimes.get(key);
+            unpackedDistance = shortcutDistances.get(key);
+        } else {
+            unpackedTime = 0;
+            unpackedDistance = 0;
+            if (reverse)
+                shortcutUnpacker.visitOriginalEdgesBwd(edge, adjNode, false, NO_EDGE);
+            else
+                shortcutUnpacker.visitOriginalEdgesFwd(edge, adjNode, false, NO_EDGE);
+            if (edgeState.isShortcut()) {
+                shortcutTimes.put(key, unpackedTime);
+                shortcutDistances.put(key, unpackedDistance);
+            }
+        }
+        times.set(idx, times.get(parent) + unpackedTime);
+        distances.set(idx, distances.get(parent) + unpackedDistance);
+    }
+
+    private int addEntry(int node, int incEdge, int parent, double weight) {
+        int idx = nodes.size();
+        nodeIndices.put(node, idx);
+        nodes.add(node);
+        incEdges.add(incEdge);
+        parents.add(parent);
+        weights.add(weight);
+        times.add(-1);
+        distances.add(-1);
+        return idx;
+    }
+
+    private void addBucketEntry(int node, int target, double weight, long time, double distance) {
+        int entry = bucketTargets.size();
+        bucketNext.add(bucketHeads.getOrDefault(node, -1));
+        bucketHeads.put(node, entry);
+        bucketTargets.add(target);
+        bucketWeights.add(weight);
+        bucketTimes.add(time);
+        bucketDistances.add(distance);
+    }
+
+    private void clearSearch() {
+        nodeIndices.clear();
+        nodes.elementsCount = 0;
+        incEdges.elementsCount = 0;
+        parents.elementsCount = 0;
+        weights.elementsCount = 0;
+        times.elementsCount = 0;
+        distances.elementsCount = 0;
+        settled.elementsCount = 0;
+        heap.clear();
+    }
+
+    private void clearBuckets() {
+        bucketHeads.clear();
+        bucketNext.elementsCount = 0;
+        bucketTargets.elementsCount = 0;
+        bucketWeights.elementsCount = 0;
+        bucketTimes.elementsCount = 0;
+        bucketDistances.elementsCount = 0;
+    }
+
+    public static class Result {
+        private final double[][] weights;
+        private final long[][] times;
+        private final double[][] distances;
+
+        Result(int sources, int targets) {
+            weights = new double[sources][targets];
+            times = new long[sources][targets];
+            distances = new double[sources][targets];
+            for (int s = 0; s < sources; s++) {
+                Arrays.fill(weights[s], Double.POSITIVE_INFINITY);
+                Arrays.fill(times[s], Long.MAX_VALUE);
+                Arrays.fill(distances[s], Double.POSITIVE_INFINITY);
+            }
+        }
+
+        public boolean isConnected(int source, int target) {
+            return Double.isFinite(weights[source][target]);
+        }
+
+        public double getWeight(int source, int target) {
+            return weights[source][target];
+        }
+
+        /**
+         * @return the time in milliseconds or Long.MAX_VALUE if the target cannot be reached from the source
+         */
+        public long getTime(int source, int target) {
+            return times[source][target];
+        }
+
+        /**
+         * @return the distance in meters or infinity if the target cannot be reached from the source
+         */
+        public double getDistance(int source, int target) {
+            return distances[source][target];
+        }
+    }
+}
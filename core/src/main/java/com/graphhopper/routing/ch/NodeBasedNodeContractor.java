@@ -17,14 +17,22 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.graphhopper.storage.CHStorageBuilder;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.StopWatch;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
 import static com.graphhopper.util.Helper.nf;
@@ -38,16 +46,15 @@ class NodeBasedNodeContractor implements NodeContractor {
     private PrepareGraphEdgeExplorer inEdgeExplorer;
     private PrepareGraphEdgeExplorer outEdgeExplorer;
     private PrepareGraphEdgeExplorer existingShortcutExplorer;
-    private NodeBasedWitnessPathSearcher witnessPathSearcher;
+    private ShortcutSearch search;
+    // only used for parallel contraction: one search per thread and the nodes that are contracted concurrently
+    private ShortcutSearch[] parallelSearches;
+    private ExecutorService executorService;
+    private BitSet currentBatch;
     private int addedShortcutsCount;
-    private long dijkstraCount;
-    private final StopWatch dijkstraSW = new StopWatch();
     // meanDegree is the number of edges / number of nodes ratio of the graph, not really the average degree, because
     // each edge can exist in both directions
     private double meanDegree;
-    // temporary counters used for priority calculation
-    private int originalEdgesCount;
-    private int shortcutsCount;
 
     NodeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
@@ -60,6 +67,9 @@ class NodeBasedNodeContractor implements NodeContractor {
         params.originalEdgesCountWeight = pMap.getFloat(ORIGINAL_EDGE_COUNT_WEIGHT, params.originalEdgesCountWeight);
         params.maxPollFactorHeuristic = pMap.getDouble(MAX_POLL_FACTOR_HEURISTIC_NODE, params.maxPollFactorHeuristic);
         params.maxPollFactorContraction = pMap.getDouble(MAX_POLL_FACTOR_CONTRACTION_NODE, params.maxPollFactorContraction);
+        params.threads = pMap.getInt(CONTRACTION_THREADS, params.threads);
+        if (params.threads < 1)
+            throw new IllegalArgumentException(CONTRACTION_THREADS + " has to be at least 1, but was: " + params.threads);
     }
 
     @Override
@@ -67,8 +77,15 @@ class NodeBasedNodeContractor implements NodeContractor {
         inEdgeExplorer = prepareGraph.createInEdgeExplorer();
         outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
         existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
-        witnessPathSearcher = new NodeBasedWitnessPathSearcher(prepareGraph);
         meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
+        if (params.threads > 1) {
+            parallelSearches = new ShortcutSearch[params.threads];
+            for (int i = 0; i < parallelSearches.length; i++)
+                parallelSearches[i] = new ShortcutSearch();
+            executorService = new ForkJoinPool(params.threads);
+            currentBatch = new BitSet(prepareGraph.getNodes());
+        }
+        search = parallelSearches == null ? new ShortcutSearch() : parallelSearches[0];
     }
 
     @Override
@@ -79,7 +96,16 @@ class NodeBasedNodeContractor implements NodeContractor {
         inEdgeExplorer = null;
         outEdgeExplorer = null;
         existingShortcutExplorer = null;
-        witnessPathSearcher = null;
+        search = null;
+        parallelSearches = null;
+        currentBatch = null;
+        if (executorService != null)
+            executorService.shutdown();
+        executorService = null;
+    }
+
+    int getThreads() {
+        return params.threads;
     }
 
     /**
@@ -89,40 +115,94 @@ class NodeBasedNodeContractor implements NodeContractor {
      */
     @Override
     public float calculatePriority(int node) {
-        // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
-        //
-        // every adjNode has an 'original edge' number associated. initially it is r=1
-        // when a new shortcut is introduced then r of the associated edges is summed up:
-        // r(u,w)=r(u,v)+r(v,w) now we can define
-        // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
-        shortcutsCount = 0;
-        originalEdgesCount = 0;
-        findAndHandleShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic));
-
-        // from shortcuts we can compute the edgeDifference
-        // # low influence: with it the shortcut creation is slightly faster
-        //
-        // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|
-        // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
-        // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
-        int edgeDifference = shortcutsCount - prepareGraph.getDegree(node);
-
-        // according to the paper do a simple linear combination of the properties to get the priority.
-        return params.edgeDifferenceWeight * edgeDifference +
-                params.originalEdgesCountWeight * originalEdgesCount;
-        // todo: maybe use contracted-neighbors heuristic (contract nodes with lots of contracted neighbors later) as in GH 1.0 again?
-        //       maybe use hierarchy-depths heuristic as in edge-based?
+        return search.calculatePriority(node);
+    }
+
+    /**
+     * Calculates the priorities of the given nodes concurrently, see {@link #calculatePriority(int)}.
+     */
+    float[] calculatePriorities(IntArrayList nodes) {
+        float[] priorities = new float[nodes.size()];
+        runInParallel(nodes.size(), (search, i) -> priorities[i] = search.calculatePriority(nodes.get(i)));
+        return priorities;
     }
 
     @Override
     public IntContainer contractNode(int node) {
-        long degree = findAndHandleShortcuts(node, this::addOrUpdateShortcut, (int) (meanDegree * params.maxPollFactorContraction));
+        long degree = search.findAndHandleShortcuts(node, this::addOrUpdateShortcut, (int) (meanDegree * params.maxPollFactorContraction));
         insertShortcuts(node);
         // put weight factor on meanDegree instead of taking the average => meanDegree is more stable
         meanDegree = (meanDegree * 2 + degree) / 3;
         return prepareGraph.disconnect(node);
     }
 
+    /**
+     * Contracts the given nodes, no two of which may be adjacent. The witness searches for the different nodes run
+     * concurrently and ignore all nodes of the batch, so the shortcuts we find for one node do not depend on the
+     * contraction of the others. Afterward the shortcuts are inserted one node after the other. Ignoring the other
+     * nodes of the batch can only lead to additional shortcuts, but never to missing ones.
+     *
+     * @return the nodes adjacent to each of the given nodes (before contraction)
+     */
+    IntArrayList[] contractNodes(IntArrayList nodes) {
+        for (int i = 0; i < nodes.size(); i++)
+            currentBatch.set(nodes.get(i));
+        int maxVisitedNodes = (int) (meanDegree * params.maxPollFactorContraction);
+        FoundShortcuts[] foundShortcuts = new FoundShortcuts[nodes.size()];
+        try {
+            runInParallel(nodes.size(), (search, i) -> {
+                FoundShortcuts found = new FoundShortcuts();
+                search.witnessPathSearcher.setIgnoredNodes(currentBatch);
+                found.degree = search.findAndHandleShortcuts(nodes.get(i), found::add, maxVisitedNodes);
+                foundShortcuts[i] = found;
+            });
+        } finally {
+            for (int i = 0; i < nodes.size(); i++)
+                currentBatch.clear(nodes.get(i));
+        }
+        IntArrayList[] neighbors = new IntArrayList[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            int node = nodes.get(i);
+            FoundShortcuts found = foundShortcuts[i];
+            for (int j = 0; j < found.weights.size(); j++) {
+                int k = 6 * j;
+                addOrUpdateShortcut(found.ints.get(k), found.ints.get(k + 1), found.weights.get(j),
+                        found.ints.get(k + 2), found.ints.get(k + 3), found.ints.get(k + 4), found.ints.get(k + 5));
+            }
+            insertShortcuts(node);
+            meanDegree = (meanDegree * 2 + found.degree) / 3;
+            neighbors[i] = new IntArrayList(prepareGraph.disconnect(node));
+        }
+        return neighbors;
+    }
+
+    /**
+     * Runs the given task for all indices in [0, size) using one thread and {@link ShortcutSearch} per thread.
+     */
+    private void runInParallel(int size, ParallelTask task) {
+        if (parallelSearches == null)
+            throw new IllegalStateException("Parallel contraction requires " + CONTRACTION_THREADS + " > 1");
+        List<Callable<Object>> callables = new ArrayList<>(parallelSearches.length);
+        for (int t = 0; t < parallelSearches.length; t++) {
+            final int offset = t;
+            final ShortcutSearch threadSearch = parallelSearches[t];
+            callables.add(() -> {
+                for (int i = offset; i < size; i += parallelSearches.length)
+                    task.run(threadSearch, i);
+                return null;
+            });
+        }
+        try {
+            for (Future<Object> future : executorService.invokeAll(callables))
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     /**
      * Calls the shortcut handler for all edges and shortcuts adjacent to the given node. After this method is called
      * these edges and shortcuts will be removed from the prepare graph, so this method offers the last chance to deal
@@ -196,69 +276,11 @@ class NodeBasedNodeContractor implements NodeContractor {
 
     @Override
     public String getStatisticsString() {
+        long dijkstraCount = 0;
+        for (ShortcutSearch s : getSearches())
+            dijkstraCount += s.dijkstraCount;
         return String.format(Locale.ROOT, "meanDegree: %.2f, dijkstras: %10s, mem: %10s",
-                meanDegree, nf(dijkstraCount), witnessPathSearcher.getMemoryUsageAsString());
-    }
-
-    /**
-     * Searches for shortcuts and calls the given handler on each shortcut that is found. The graph is not directly
-     * changed by this method.
-     * Returns the 'degree' of the given node (disregarding edges from/to already contracted nodes).
-     * Note that here the degree is not the total number of adjacent edges, but only the number of incoming edges
-     */
-    private long findAndHandleShortcuts(int node, PrepareShortcutHandler handler, int maxVisitedNodes) {
-        long degree = 0;
-        PrepareGraphEdgeIterator incomingEdges = inEdgeExplorer.setBaseNode(node);
-        // collect outgoing nodes (goal-nodes) only once
-        while (incomingEdges.next()) {
-            int fromNode = incomingEdges.getAdjNode();
-            if (fromNode == node)
-                throw new IllegalStateException("Unexpected loop-edge at node: " + node);
-
-            final double incomingEdgeWeight = incomingEdges.getWeight();
-            // this check is important to prevent calling calcMillis on inaccessible edges and also allows early exit
-            if (Double.isInfinite(incomingEdgeWeight)) {
-                continue;
-            }
-            // collect outgoing nodes (goal-nodes) only once
-            PrepareGraphEdgeIterator outgoingEdges = outEdgeExplorer.setBaseNode(node);
-            witnessPathSearcher.init(fromNode, node);
-            degree++;
-            while (outgoingEdges.next()) {
-                int toNode = outgoingEdges.getAdjNode();
-                // no need to search for witnesses going from a node back to itself
-                if (fromNode == toNode)
-                    continue;
-
-                // Limit weight as ferries or forbidden edges can increase local search too much.
-                // If we decrease the correct weight we only explore less and introduce more shortcuts.
-                // I.e. no change to accuracy is made.
-                double existingDirectWeight = incomingEdgeWeight + outgoingEdges.getWeight();
-                if (Double.isInfinite(existingDirectWeight))
-                    continue;
-
-                dijkstraSW.start();
-                dijkstraCount++;
-                double maxWeight = witnessPathSearcher.findUpperBound(toNode, existingDirectWeight, maxVisitedNodes);
-                dijkstraSW.stop();
-
-                if (maxWeight <= existingDirectWeight)
-                    // FOUND witness path, so do not add shortcut
-                    continue;
-
-                handler.handleShortcut(fromNode, toNode, existingDirectWeight,
-                        outgoingEdges.getPrepareEdge(), outgoingEdges.getOrigEdgeCount(),
-                        incomingEdges.getPrepareEdge(), incomingEdges.getOrigEdgeCount());
-            }
-        }
-        return degree;
-    }
-
-    private void countShortcuts(int fromNode, int toNode, double existingDirectWeight,
-                                int outgoingEdge, int outOrigEdgeCount,
-                                int incomingEdge, int inOrigEdgeCount) {
-        shortcutsCount++;
-        originalEdgesCount += inOrigEdgeCount + outOrigEdgeCount;
+                meanDegree, nf(dijkstraCount), search.witnessPathSearcher.getMemoryUsageAsString());
     }
 
     private void addOrUpdateShortcut(int fromNode, int toNode, double weight,
@@ -287,9 +309,19 @@ class NodeBasedNodeContractor implements NodeContractor {
         return addedShortcutsCount;
     }
 
+    /**
+     * For parallel contraction this is the sum of the time spent in witness searches over all threads.
+     */
     @Override
     public float getDijkstraSeconds() {
-        return dijkstraSW.getCurrentSeconds();
+        float seconds = 0;
+        for (ShortcutSearch s : getSearches())
+            seconds += s.dijkstraSW.getCurrentSeconds();
+        return seconds;
+    }
+
+    private ShortcutSearch[] getSearches() {
+        return parallelSearches == null ? new ShortcutSearch[]{search} : parallelSearches;
     }
 
     @FunctionalInterface
@@ -299,6 +331,130 @@ class NodeBasedNodeContractor implements NodeContractor {
                             int incomingEdge, int inOrigEdgeCount);
     }
 
+    @FunctionalInterface
+    private interface ParallelTask {
+        void run(ShortcutSearch search, int index);
+    }
+
+    /**
+     * The state needed to search for the shortcuts of a single node. Parallel contraction uses one instance per thread.
+     */
+    private class ShortcutSearch {
+        private final PrepareGraphEdgeExplorer inEdgeExplorer = prepareGraph.createInEdgeExplorer();
+        private final PrepareGraphEdgeExplorer outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
+        private final NodeBasedWitnessPathSearcher witnessPathSearcher = new NodeBasedWitnessPathSearcher(prepareGraph);
+        private final StopWatch dijkstraSW = new StopWatch();
+        private long dijkstraCount;
+        // temporary counters used for priority calculation
+        private int originalEdgesCount;
+        private int shortcutsCount;
+
+        float calculatePriority(int node) {
+            // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
+            //
+            // every adjNode has an 'original edge' number associated. initially it is r=1
+            // when a new shortcut is introduced then r of the associated edges is summed up:
+            // r(u,w)=r(u,v)+r(v,w) now we can define
+            // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
+            shortcutsCount = 0;
+            originalEdgesCount = 0;
+            witnessPathSearcher.setIgnoredNodes(null);
+            findAndHandleShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic));
+
+            // from shortcuts we can compute the edgeDifference
+            // # low influence: with it the shortcut creation is slightly faster
+            //
+            // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|
+            // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
+            // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
+            int edgeDifference = shortcutsCount - prepareGraph.getDegree(node);
+
+            // according to the paper do a simple linear combination of the properties to get the priority.
+            return params.edgeDifferenceWeight * edgeDifference +
+                    params.originalEdgesCountWeight * originalEdgesCount;
+            // todo: maybe use contracted-neighbors heuristic (contract nodes with lots of contracted neighbors later) as in GH 1.0 again?
+            //       maybe use hierarchy-depths heuristic as in edge-based?
+        }
+
+        /**
+         * Searches for shortcuts and calls the given handler on each shortcut that is found. The graph is not directly
+         * changed by this method.
+         * Returns the 'degree' of the given node (disregarding edges from/to already contracted nodes).
+         * Note that here the degree is not the total number of adjacent edges, but only the number of incoming edges
+         */
+        long findAndHandleShortcuts(int node, PrepareShortcutHandler handler, int maxVisitedNodes) {
+            long degree = 0;
+            PrepareGraphEdgeIterator incomingEdges = inEdgeExplorer.setBaseNode(node);
+            // collect outgoing nodes (goal-nodes) only once
+            while (incomingEdges.next()) {
+                int fromNode = incomingEdges.getAdjNode();
+                if (fromNode == node)
+                    throw new IllegalStateException("Unexpected loop-edge at node: " + node);
+
+                final double incomingEdgeWeight = incomingEdges.getWeight();
+                // this check is important to prevent calling calcMillis on inaccessible edges and also allows early exit
+                if (Double.isInfinite(incomingEdgeWeight)) {
+                    continue;
+                }
+                // collect outgoing nodes (goal-nodes) only once
+                PrepareGraphEdgeIterator outgoingEdges = outEdgeExplorer.setBaseNode(node);
+                witnessPathSearcher.init(fromNode, node);
+                degree++;
+                while (outgoingEdges.next()) {
+                    int toNode = outgoingEdges.getAdjNode();
+                    // no need to search for witnesses going from a node back to itself
+                    if (fromNode == toNode)
+                        continue;
+
+                    // Limit weight as ferries or forbidden edges can increase local search too much.
+                    // If we decrease the correct weight we only explore less and introduce more shortcuts.
+                    // I.e. no change to accuracy is made.
+                    double existingDirectWeight = incomingEdgeWeight + outgoingEdges.getWeight();
+                    if (Double.isInfinite(existingDirectWeight))
+                        continue;
+
+                    dijkstraSW.start();
+                    dijkstraCount++;
+                    double maxWeight = witnessPathSearcher.findUpperBound(toNode, existingDirectWeight, maxVisitedNodes);
+                    dijkstraSW.stop();
+
+                    if (maxWeight <= existingDirectWeight)
+                        // FOUND witness path, so do not add shortcut
+                        continue;
+
+                    handler.handleShortcut(fromNode, toNode, existingDirectWeight,
+                            outgoingEdges.getPrepareEdge(), outgoingEdges.getOrigEdgeCount(),
+                            incomingEdges.getPrepareEdge(), incomingEdges.getOrigEdgeCount());
+                }
+            }
+            return degree;
+        }
+
+        private void countShortcuts(int fromNode, int toNode, double existingDirectWeight,
+                                    int outgoingEdge, int outOrigEdgeCount,
+                                    int incomingEdge, int inOrigEdgeCount) {
+            shortcutsCount++;
+            originalEdgesCount += inOrigEdgeCount + outOrigEdgeCount;
+        }
+    }
+
+    /**
+     * The shortcuts found for a single node during parallel contraction that still need to be added to the graph
+     */
+    private static class FoundShortcuts {
+        // fromNode, toNode, outgoingEdge, outOrigEdgeCount, incomingEdge, inOrigEdgeCount
+        final IntArrayList ints = new IntArrayList();
+        final DoubleArrayList weights = new DoubleArrayList();
+        long degree;
+
+        void add(int fromNode, int toNode, double weight,
+                 int outgoingEdge, int outOrigEdgeCount,
+                 int incomingEdge, int inOrigEdgeCount) {
+            ints.add(fromNode, toNode, outgoingEdge, outOrigEdgeCount, incomingEdge, inOrigEdgeCount);
+            weights.add(weight);
+        }
+    }
+
     public static class Params {
         // default values were optimized for Unterfranken
         private float edgeDifferenceWeight = 10;
@@ -308,6 +464,7 @@ class NodeBasedNodeContractor implements NodeContractor {
         // cost of a longer preparation (see #2514)
         private double maxPollFactorHeuristic = 5;
         private double maxPollFactorContraction = 200;
+        private int threads = 1;
     }
 
     private static class Shortcut {
@@ -23,6 +23,7 @@ import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
 import com.graphhopper.util.Helper;
 
 import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Used to perform witness searches during node-based CH preparation. Witness searches at node B determine if there is a
@@ -34,6 +35,7 @@ public class NodeBasedWitnessPathSearcher {
     private final IntArrayList changedNodes;
     private final IntFloatBinaryHeap heap;
     private int ignoreNode = -1;
+    private BitSet ignoredNodes;
     private int settledNodes = 0;
 
     public NodeBasedWitnessPathSearcher(CHPreparationGraph graph) {
@@ -56,6 +58,14 @@ public class NodeBasedWitnessPathSearcher {
         heap.insert(0, startNode);
     }
 
+    /**
+     * Sets additional nodes that shall be ignored by all following searches, or null to ignore no other nodes than
+     * the one given in init(). The given set must not be modified while a search is running.
+     */
+    public void setIgnoredNodes(BitSet ignoredNodes) {
+        this.ignoredNodes = ignoredNodes;
+    }
+
     /**
      * Runs or continues a Dijkstra search starting at the startNode and ignoring the ignoreNode given in init().
      * If the shortest path is found we return its weight. However, this method also returns early if any path was
@@ -85,7 +95,7 @@ public class NodeBasedWitnessPathSearcher {
             PrepareGraphEdgeIterator iter = outEdgeExplorer.setBaseNode(node);
             while (iter.next()) {
                 int adjNode = iter.getAdjNode();
-                if (adjNode == ignoreNode)
+                if (adjNode == ignoreNode || (ignoredNodes != null && ignoredNodes.get(adjNode)))
                     continue;
                 double weight = weights[node] + iter.getWeight();
                 if (Double.isInfinite(weight))
@@ -0,0 +1,328 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.BitSet;
+import com.carrotsearch.hppc.LongDoubleHashMap;
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHEdgeIteratorState;
+import com.graphhopper.storage.RoutingCHGraph;
+
+import java.util.Arrays;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * Calculates the weights, times and distances from one node to all other nodes of a node-based {@link RoutingCHGraph}
+ * using PHAST, see 'PHAST: Hardware-Accelerated Shortest Path Trees' (Delling et al.):
+ * <p>
+ * First we run a search from the start node that only goes upwards in the hierarchy. Afterwards we sweep over all
+ * nodes in descending level order and relax the edges coming from higher level nodes. Since every shortest path
+ * consists of an upward part followed by a downward part, the weights of all nodes are final after this linear sweep.
+ * This is much faster than a Dijkstra search on the base graph when a large part of the graph is reached, e.g. for
+ * isochrones with a large time limit.
+ * <p>
+ * The graph may contain a single virtual start node (a {@link com.graphhopper.routing.querygraph.QueryRoutingCHGraph}
+ * with one snap). Time and distance are accumulated along the shortest path tree, which requires unpacking the
+ * shortcuts. The results for the shortcuts are cached for the lifetime of an instance, so an instance should be re-used
+ * for several calculations on the same graph.
+ * <p>
+ * The order of the downward sweep only depends on the CH graph. Calculate it once using {@link #calcSweepOrder} and
+ * pass it to all instances that use the same CH graph, e.g. with different query graphs.
+ */
+public class OneToAllCH {
+    private final RoutingCHGraph graph;
+    private final Weighting weighting;
+    private final RoutingCHEdgeExplorer inEdgeExplorer;
+    private final RoutingCHEdgeExplorer outEdgeExplorer;
+    private final ShortcutUnpacker shortcutUnpacker;
+    private final int maxBaseNodes;
+    private final int[] sweepOrder;
+    private final LongLongHashMap shortcutTimes = new LongLongHashMap();
+    private final LongDoubleHashMap shortcutDistances = new LongDoubleHashMap();
+    private final LongIntHashMap shortcutLastEdges = new LongIntHashMap();
+    private long unpackedTime;
+    private double unpackedDistance;
+    private int unpackedLastEdge;
+    private final IntFloatBinaryHeap heap = new IntFloatBinaryHeap(128);
+    private boolean reverseFlow;
+    private double weightLimit = Double.POSITIVE_INFINITY;
+    private int visitedNodes;
+
+    public OneToAllCH(RoutingCHGraph graph) {
+        this(graph, calcSweepOrder(graph));
+    }
+
+    /**
+     * @param sweepOrder the base nodes of the CH graph sorted by level, see {@link #calcSweepOrder}
+     */
+    public OneToAllCH(RoutingCHGraph graph, int[] sweepOrder) {
+        if (graph.isEdgeBased())
+            throw new IllegalArgumentException("One-to-all calculation is only supported for node-based CH profiles, i.e. profiles without turn costs");
+        this.graph = graph;
+        this.weighting = graph.getBaseGraph().wrapWeighting(graph.getWeighting());
+        inEdgeExplorer = graph.createInEdgeExplorer();
+        outEdgeExplorer = graph.createOutEdgeExplorer();
+        maxBaseNodes = graph.getBaseGraph().getBaseGraph().getNodes();
+        if (sweepOrder.length != maxBaseNodes)
+            throw new IllegalArgumentException("The sweep order must contain all " + maxBaseNodes + " base nodes, but has: " + sweepOrder.length);
+        this.sweepOrder = sweepOrder;
+        shortcutUnpacker = new ShortcutUnpacker(graph, (edge, reverse, prevOrNextEdgeId) -> {
+            unpackedTime += weighting.calcEdgeMillis(edge, reverse);
+            unpackedDistance += edge.getDistance();
+            unpackedLastEdge = edge.getEdge();
+        }, false);
+    }
+
+    /**
+     * If true the weights, times and distances are calculated from all nodes to the start node instead.
+     */
+    public OneToAllCH setReverseFlow(boolean reverseFlow) {
+        this.reverseFlow = reverseFlow;
+        return this;
+    }
+
+    /**
+     * Nodes that can only be reached with a larger weight are considered unreachable. This does not make the downward
+     * sweep any cheaper, but it reduces the number of nodes for which we need to calculate the time and distance.
+     */
+    public OneToAllCH setWeightLimit(double weightLimit) {
+        this.weightLimit = weightLimit;
+        return this;
+    }
+
+    /**
+     * @return the number of nodes that were reached by the last calculation
+     */
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    /**
+     * @param startNode the (possibly virtual) start node
+     */
+    public Result calcOneToAll(int startNode) {
+        Result result = new Result(graph.getNodes());
+        visitedNodes = 0;
+        upwardSearch(startNode, result);
+        downwardSweep(result);
+        return result;
+    }
+
+    private void upwardSearch(int startNode, Result result) {
+        RoutingCHEdgeExplorer explorer = reverseFlow ? inEdgeExplorer : outEdgeExplorer;
+        BitSet settled = new BitSet(graph.getNodes());
+        heap.clear();
+        result.weights[startNode] = 0;
+        result.times[startNode] = 0;
+        result.distances[startNode] = 0;
+        heap.insert(0, startNode);
+        while (!heap.isEmpty()) {
+            int node = heap.poll();
+            // we never remove entries from the heap, so there might be outdated duplicates of settled nodes
+            if (settled.get(node))
+                continue;
+            settled.set(node);
+            if (node != startNode)
+                calcTimeAndDistance(node, result);
+            double weight = result.weights[node];
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                int adjNode = iter.getAdjNode();
+                if (settled.get(adjNode) || !isUpward(iter))
+                    continue;
+                double newWeight = weight + iter.getWeight(reverseFlow);
+                if (newWeight < result.weights[adjNode] && newWeight <= weightLimit) {
+                    result.weights[adjNode] = newWeight;
+                    result.incEdges[adjNode] = iter.getEdge();
+                    result.parents[adjNode] = node;
+                    heap.insert(newWeight, adjNode);
+                }
+            }
+        }
+    }
+
+    private void downwardSweep(Result result) {
+        // for reverse flow we need the edges leading from the node to the higher level nodes
+        RoutingCHEdgeExplorer explorer = reverseFlow ? outEdgeExplorer : inEdgeExplorer;
+        // the virtual nodes are the highest nodes of the hierarchy
+        for (int node = maxBaseNodes; node < graph.getNodes(); node++)
+            sweep(node, explorer, result);
+        for (int node : sweepOrder)
+            sweep(node, explorer, result);
+    }
+
+    private void sweep(int node, RoutingCHEdgeExplorer explorer, Result result) {
+        int level = getLevel(node);
+        boolean improved = false;
+        RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            int adjNode = iter.getAdjNode();
+            if (getLevel(adjNode) <= level)
+                continue;
+            double newWeight = result.weights[adjNode] + iter.getWeight(!reverseFlow);
+            if (newWeight < result.weights[node] && newWeight <= weightLimit) {
+                result.weights[node] = newWeight;
+                result.incEdges[node] = iter.getEdge();
+                result.parents[node] = adjNode;
+                improved = true;
+            }
+        }
+        // the nodes of higher levels are final, so we can calculate the time and distance of the new parent.
+        // otherwise the node was settled by the upward search already.
+        if (improved)
+            calcTimeAndDistance(node, result);
+        if (result.isReached(node))
+            visitedNodes++;
+    }
+
+    /**
+     * The time and distance of a node only depend on its parent, which is final already.
+     */
+    private void calcTimeAndDistance(int node, Result result) {
+        int parent = result.parents[node];
+        int edge = result.incEdges[node];
+        RoutingCHEdgeIteratorState edgeState = graph.getEdgeIteratorState(edge, node);
+        long key = ((long) edge << 32) | (node & 0xFFFFFFFFL);
+        // the time of a shortcut depends on the direction, edge IDs are not negative so we can use the sign bit
+        if (reverseFlow)
+            key |= Long.MIN_VALUE;
+        if (edgeState.isShortcut() && shortcutTimes.containsKey(key)) {
+            unpackedTime = shortcutTimes.get(key);
+            unpackedDistance = shortcutDistances.get(key);
+            unpackedLastEdge = shortcutLastEdges.get(key);
+        } else {
+            unpackedTime = 0;
+            unpackedDistance = 0;
+            unpackedLastEdge = NO_EDGE;
+            // in both directions the original edge adjacent to the node is visited last
+            if (reverseFlow)
+                shortcutUnpacker.visitOriginalEdgesBwd(edge, node, false, NO_EDGE);
+            else
+                shortcutUnpacker.visitOriginalEdgesFwd(edge, node, false, NO_EDGE);
+            if (edgeState.isShortcut()) {
+                shortcutTimes.put(key, unpackedTime);
+                shortcutDistances.put(key, unpackedDistance);
+                shortcutLastEdges.put(key, unpackedLastEdge);
+            }
+        }
+        result.times[node] = result.times[parent] + unpackedTime;
+        result.distances[node] = result.distances[parent] + unpackedDistance;
+        result.edges[node] = unpackedLastEdge;
+    }
+
+    private boolean isUpward(RoutingCHEdgeIteratorState edgeState) {
+        int base = edgeState.getBaseNode();
+        int adj = edgeState.getAdjNode();
+        // always accept virtual edges, see #288
+        if (base >= maxBaseNodes || adj >= maxBaseNodes)
+            return true;
+        return graph.getLevel(base) <= graph.getLevel(adj);
+    }
+
+    /**
+     * The virtual nodes are treated as the highest nodes of the hierarchy.
+     */
+    private int getLevel(int node) {
+        return node >= maxBaseNodes ? Integer.MAX_VALUE : graph.getLevel(node);
+    }
+
+    /**
+     * @return the base nodes of the given CH graph sorted by level, starting with the highest. We use counting sort,
+     * because the levels are in [0, nodes].
+     */
+    public static int[] calcSweepOrder(RoutingCHGraph graph) {
+        int nodes = graph.getBaseGraph().getBaseGraph().getNodes();
+        int[] counts = new int[nodes + 1];
+        for (int node = 0; node < nodes; node++)
+            counts[nodes - graph.getLevel(node)]++;
+        int[] offsets = new int[counts.length];
+        for (int i = 1; i < counts.length; i++)
+            offsets[i] = offsets[i - 1] + counts[i - 1];
+        int[] sorted = new int[nodes];
+        for (int node = 0; node < nodes; node++)
+            sorted[offsets[nodes - graph.getLevel(node)]++] = node;
+        return sorted;
+    }
+
+    /**
+     * The weights, times and distances of all nodes. Nodes that cannot be reached have an infinite weight.
+     */
+    public static class Result {
+        private final double[] weights;
+        private final long[] times;
+        private final double[] distances;
+        private final int[] edges;
+        private final int[] incEdges;
+        private final int[] parents;
+
+        Result(int nodes) {
+            weights = new double[nodes];
+            times = new long[nodes];
+            distances = new double[nodes];
+            edges = new int[nodes];
+            incEdges = new int[nodes];
+            parents = new int[nodes];
+            Arrays.fill(weights, Double.POSITIVE_INFINITY);
+            Arrays.fill(times, Long.MAX_VALUE);
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+            Arrays.fill(edges, NO_EDGE);
+            Arrays.fill(incEdges, NO_EDGE);
+            Arrays.fill(parents, -1);
+        }
+
+        public int getNodes() {
+            return weights.length;
+        }
+
+        public boolean isReached(int node) {
+            return Double.isFinite(weights[node]);
+        }
+
+        public double getWeight(int node) {
+            return weights[node];
+        }
+
+        /**
+         * @return the time in milliseconds or Long.MAX_VALUE if the node cannot be reached
+         */
+        public long getTime(int node) {
+            return times[node];
+        }
+
+        /**
+         * @return the distance in meters or infinity if the node cannot be reached
+         */
+        public double getDistance(int node) {
+            return distances[node];
+        }
+
+        /**
+         * @return the (base or virtual) edge via which the node is reached on the shortest path or
+         * {@link com.graphhopper.util.EdgeIterator#NO_EDGE} for the start node and nodes that cannot be reached
+         */
+        public int getEdge(int node) {
+            return edges[node];
+        }
+    }
+}
@@ -17,6 +17,8 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.FloatArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.coll.MinHeapWithUpdate;
@@ -28,6 +30,7 @@ import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.BitSet;
 import java.util.Locale;
 import java.util.Random;
 
@@ -52,6 +55,7 @@ public class PrepareContractionHierarchies {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final CHConfig chConfig;
     private final CHStorage chStore;
+    private CHUpwardStorage chUpwardStore;
     private final CHStorageBuilder chBuilder;
     private final Random rand = new Random(123);
     private final StopWatch allSW = new StopWatch();
@@ -61,6 +65,7 @@ public class PrepareContractionHierarchies {
     private final StopWatch contractionSW = new StopWatch();
     private final Params params;
     private final BaseGraph graph;
+    private CHPreparationGraph prepareGraph;
     private NodeContractor nodeContractor;
     private final int nodes;
     private NodeOrderingProvider nodeOrderingProvider;
@@ -131,10 +136,12 @@ public class PrepareContractionHierarchies {
         allSW.start();
         initFromGraph();
         runGraphContraction();
+        if (pMap.getBool(UPWARD_LAYOUT, false))
+            buildUpwardLayout();
         allSW.stop();
         logFinalGraphStats();
         return new Result(
-                chConfig, chStore,
+                chConfig, chStore, chUpwardStore,
                 nodeContractor.getAddedShortcutsCount(),
                 lazyUpdateSW.getCurrentSeconds(),
                 periodicUpdateSW.getCurrentSeconds(),
@@ -155,12 +162,20 @@ public class PrepareContractionHierarchies {
                 (int) allSW.getSeconds(), nf(graph.getEdges()), nf(nodes), nf(chStore.getShortcuts()));
     }
 
+    private void buildUpwardLayout() {
+        StopWatch sw = new StopWatch().start();
+        chUpwardStore = CHUpwardStorage.fromCHStorage(graph, chStore, chConfig.getWeighting(), chConfig.getName());
+        logger.info("Finished building upward CH layout, took: {}s, {}", sw.stop().getSeconds(), chUpwardStore.toDetailsString());
+    }
+
     private void runGraphContraction() {
         if (nodes < 1)
             return;
         setMaxLevelOnAllNodes();
         if (nodeOrderingProvider != null) {
             contractNodesUsingFixedNodeOrdering();
+        } else if (nodeContractor instanceof NodeBasedNodeContractor nodeBasedContractor && nodeBasedContractor.getThreads() > 1) {
+            contractNodesInParallel(nodeBasedContractor);
         } else {
             contractNodesUsingHeuristicNodeOrdering();
         }
@@ -172,7 +187,6 @@ public class PrepareContractionHierarchies {
 
     private void initFromGraph() {
         logger.info("Creating CH prepare graph, {}", getMemInfo());
-        CHPreparationGraph prepareGraph;
         if (chConfig.getTraversalMode().isEdgeBased()) {
             TurnCostStorage turnCostStorage = graph.getTurnCostStorage();
             if (turnCostStorage == null)
@@ -180,6 +194,9 @@ public class PrepareContractionHierarchies {
             CHPreparationGraph.TurnCostFunction turnCostFunction = CHPreparationGraph.buildTurnCostFunctionFromTurnCostStorage(graph, chConfig.getWeighting());
             prepareGraph = CHPreparationGraph.edgeBased(graph.getNodes(), graph.getEdges(), turnCostFunction);
             nodeContractor = new EdgeBasedNodeContractor(prepareGraph, chBuilder, pMap);
+            if (pMap.getInt(CONTRACTION_THREADS, 1) > 1)
+                logger.warn("{} is only supported for node-based CH, profile {} will be contracted using a single thread",
+                        CONTRACTION_THREADS, chConfig.getName());
         } else {
             prepareGraph = CHPreparationGraph.nodeBased(graph.getNodes(), graph.getEdges());
             nodeContractor = new NodeBasedNodeContractor(prepareGraph, chBuilder, pMap);
@@ -318,6 +335,178 @@ public class PrepareContractionHierarchies {
         _close();
     }
 
+    /**
+     * Contracts the nodes in batches of independent nodes, i.e. no two nodes of a batch are adjacent. The witness
+     * searches for the nodes of a batch and the priority updates of their neighbors run concurrently. Each batch
+     * contains the nodes with the lowest priorities that are not adjacent to a node with lower priority that was chosen
+     * already. Instead of doing lazy updates for every polled node we update the priorities of all nodes of a batch at
+     * once and postpone the contraction of those that got more important.
+     */
+    private void contractNodesInParallel(NodeBasedNodeContractor contractor) {
+        StopWatch sw = new StopWatch().start();
+        logger.info("Building initial queue of nodes to be contracted: {} nodes, threads: {}, {}", nodes, contractor.getThreads(), getMemInfo());
+        periodicUpdateSW.start();
+        IntArrayList remainingNodes = new IntArrayList(nodes);
+        for (int node = 0; node < nodes; node++)
+            remainingNodes.add(node);
+        updatePriorities(contractor, remainingNodes);
+        periodicUpdateSW.stop();
+        logger.info("Finished building queue, took: {}s, {}", sw.stop().getSeconds(), getMemInfo());
+        final int initSize = sortedNodes.size();
+        int level = 0;
+        checkCounter = 0;
+        final long logSize = params.getLogMessagesPercentage() == 0
+                ? Long.MAX_VALUE
+                : Math.round(Math.max(10, initSize * (params.getLogMessagesPercentage() / 100d)));
+        final long periodicUpdatesCount = params.getPeriodicUpdatesPercentage() == 0
+                ? Long.MAX_VALUE
+                : Math.round(Math.max(10, initSize * (params.getPeriodicUpdatesPercentage() / 100d)));
+        final long lastNodesLazyUpdates = Math.round(initSize * (params.getLastNodesLazyUpdatePercentage() / 100d));
+        final long nodesToAvoidContract = Math.round(initSize * ((100 - params.getNodesContractedPercentage()) / 100d));
+        final boolean neighborUpdate = (params.getNeighborUpdatePercentage() != 0);
+        // with larger batches the threads are kept busy for longer, but the batches contain nodes with worse priorities
+        final int maxBatchSize = contractor.getThreads() * 64;
+        int updateCounter = 0;
+        long nextLog = 0;
+        long nextPeriodicUpdate = periodicUpdatesCount;
+
+        IntArrayList batch = new IntArrayList();
+        IntArrayList skippedNodes = new IntArrayList();
+        FloatArrayList skippedPriorities = new FloatArrayList();
+        IntArrayList blockedNodes = new IntArrayList();
+        BitSet blocked = new BitSet(nodes);
+        PrepareGraphEdgeExplorer inExplorer = prepareGraph.createInEdgeExplorer();
+        PrepareGraphEdgeExplorer outExplorer = prepareGraph.createOutEdgeExplorer();
+        while (!sortedNodes.isEmpty() && sortedNodes.size() > nodesToAvoidContract) {
+            stopIfInterrupted();
+            if (checkCounter >= nextPeriodicUpdate) {
+                periodicUpdateSW.start();
+                remainingNodes.elementsCount = 0;
+                while (!sortedNodes.isEmpty())
+                    remainingNodes.add(sortedNodes.poll());
+                updatePriorities(contractor, remainingNodes);
+                periodicUpdateSW.stop();
+                updateCounter++;
+                nextPeriodicUpdate += periodicUpdatesCount;
+            }
+            if (checkCounter >= nextLog) {
+                logHeuristicStats(updateCounter);
+                nextLog += logSize;
+            }
+
+            // find a batch of independent nodes
+            int batchSize = (int) Math.min(maxBatchSize, sortedNodes.size() - nodesToAvoidContract);
+            batch.elementsCount = 0;
+            while (!sortedNodes.isEmpty() && batch.size() < batchSize && skippedNodes.size() < 4 * batchSize) {
+                float priority = sortedNodes.peekValue();
+                int node = sortedNodes.poll();
+                if (blocked.get(node)) {
+                    skippedNodes.add(node);
+                    skippedPriorities.add(priority);
+                    continue;
+                }
+                batch.add(node);
+                blocked.set(node);
+                blockedNodes.add(node);
+                blockNeighbors(outExplorer.setBaseNode(node), blocked, blockedNodes);
+                blockNeighbors(inExplorer.setBaseNode(node), blocked, blockedNodes);
+            }
+            for (int i = 0; i < skippedNodes.size(); i++)
+                sortedNodes.push(skippedNodes.get(i), skippedPriorities.get(i));
+            skippedNodes.elementsCount = 0;
+            skippedPriorities.elementsCount = 0;
+            for (IntCursor c : blockedNodes)
+                blocked.clear(c.value);
+            blockedNodes.elementsCount = 0;
+
+            if (!sortedNodes.isEmpty() && sortedNodes.size() < lastNodesLazyUpdates) {
+                // the parallel equivalent of the lazy updates: nodes that got more important are not contracted yet
+                lazyUpdateSW.start();
+                float[] priorities = contractor.calculatePriorities(batch);
+                float maxPriority = sortedNodes.peekValue();
+                int size = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    if (priorities[i] > maxPriority)
+                        sortedNodes.push(batch.get(i), priorities[i]);
+                    else
+                        batch.set(size++, batch.get(i));
+                }
+                batch.elementsCount = size;
+                lazyUpdateSW.stop();
+                if (batch.isEmpty())
+                    continue;
+            }
+
+            // contract the batch
+            contractionSW.start();
+            for (IntCursor c : batch) {
+                if (isContracted(c.value))
+                    throw new IllegalArgumentException("Node " + c.value + " was contracted already");
+                chBuilder.setLevel(c.value, level);
+                level++;
+            }
+            IntArrayList[] neighbors = contractor.contractNodes(batch);
+            contractionSW.stop();
+            checkCounter += batch.size();
+
+            if (neighborUpdate) {
+                neighborUpdateSW.start();
+                remainingNodes.elementsCount = 0;
+                for (IntArrayList nodeNeighbors : neighbors) {
+                    int neighborCount = 0;
+                    for (IntCursor neighbor : nodeNeighbors) {
+                        if ((params.getMaxNeighborUpdates() < 0 || neighborCount < params.getMaxNeighborUpdates()) && rand.nextInt(100) < params.getNeighborUpdatePercentage()) {
+                            neighborCount++;
+                            // nodes can be adjacent to multiple nodes of the batch, but we update them only once
+                            if (!blocked.get(neighbor.value)) {
+                                blocked.set(neighbor.value);
+                                remainingNodes.add(neighbor.value);
+                            }
+                        }
+                    }
+                }
+                float[] priorities = contractor.calculatePriorities(remainingNodes);
+                for (int i = 0; i < remainingNodes.size(); i++) {
+                    blocked.clear(remainingNodes.get(i));
+                    sortedNodes.update(remainingNodes.get(i), priorities[i]);
+                }
+                neighborUpdateSW.stop();
+            }
+        }
+
+        nodeContractor.finishContraction();
+
+        logHeuristicStats(updateCounter);
+
+        logger.info(
+                "new shortcuts: " + nf(nodeContractor.getAddedShortcutsCount())
+                        + ", initSize:" + nf(initSize)
+                        + ", " + chConfig.getWeighting()
+                        + ", threads:" + contractor.getThreads()
+                        + ", periodic:" + params.getPeriodicUpdatesPercentage()
+                        + ", lazy:" + params.getLastNodesLazyUpdatePercentage()
+                        + ", neighbor:" + params.getNeighborUpdatePercentage()
+                        + ", " + getTimesAsString()
+                        + ", " + Helper.getMemInfo());
+
+        _close();
+    }
+
+    private void updatePriorities(NodeBasedNodeContractor contractor, IntArrayList nodes) {
+        float[] priorities = contractor.calculatePriorities(nodes);
+        for (int i = 0; i < nodes.size(); i++)
+            sortedNodes.push(nodes.get(i), priorities[i]);
+    }
+
+    private static void blockNeighbors(PrepareGraphEdgeIterator iter, BitSet blocked, IntArrayList blockedNodes) {
+        while (iter.next()) {
+            if (!blocked.get(iter.getAdjNode())) {
+                blocked.set(iter.getAdjNode());
+                blockedNodes.add(iter.getAdjNode());
+            }
+        }
+    }
+
     private void contractNodesUsingFixedNodeOrdering() {
         final int nodesToContract = nodeOrderingProvider.getNumNodes();
         final int logSize = Math.max(10, (int) (params.getLogMessagesPercentage() / 100.0 * nodesToContract));
@@ -422,23 +611,29 @@ public class PrepareContractionHierarchies {
 
     void flush() {
         chStore.flush();
+        if (chUpwardStore != null)
+            chUpwardStore.flush();
     }
 
     void close() {
         chStore.close();
+        if (chUpwardStore != null)
+            chUpwardStore.close();
     }
 
     public static class Result {
         private final CHConfig chConfig;
         private final CHStorage chStorage;
+        private final CHUpwardStorage chUpwardStorage;
         private final long shortcuts;
         private final double lazyTime;
         private final double periodTime;
         private final double neighborTime;
         private final long totalPrepareTime;
 
-        private Result(CHConfig chConfig, CHStorage chStorage, long shortcuts, double lazyTime, double periodTime, double neighborTime, long totalPrepareTime) {
+        private Result(CHConfig chConfig, CHStorage chStorage, CHUpwardStorage chUpwardStorage, long shortcuts, double lazyTime, double periodTime, double neighborTime, long totalPrepareTime) {
             this.chStorage = chStorage;
+            this.chUpwardStorage = chUpwardStorage;
             this.shortcuts = shortcuts;
             this.lazyTime = lazyTime;
             this.periodTime = periodTime;
@@ -455,6 +650,13 @@ public class PrepareContractionHierarchies {
             return chStorage;
         }
 
+        /**
+         * @return the upward layout of the CH graph or null if it was not enabled via {@link CHParameters#UPWARD_LAYOUT}
+         */
+        public CHUpwardStorage getCHUpwardStorage() {
+            return chUpwardStorage;
+        }
+
         public long getShortcuts() {
             return shortcuts;
         }
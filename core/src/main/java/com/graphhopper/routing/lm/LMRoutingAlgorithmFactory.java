@@ -30,6 +30,7 @@ import static com.graphhopper.util.Parameters.Algorithms.*;
 public class LMRoutingAlgorithmFactory implements RoutingAlgorithmFactory {
     private final LandmarkStorage lms;
     private int defaultActiveLandmarks;
+    private SearchStatePool searchStatePool;
 
     public LMRoutingAlgorithmFactory(LandmarkStorage lms) {
         this.lms = lms;
@@ -41,6 +42,14 @@ public class LMRoutingAlgorithmFactory implements RoutingAlgorithmFactory {
         return this;
     }
 
+    /**
+     * @see RoutingAlgorithmFactorySimple#setSearchStatePool
+     */
+    public LMRoutingAlgorithmFactory setSearchStatePool(SearchStatePool searchStatePool) {
+        this.searchStatePool = searchStatePool;
+        return this;
+    }
+
     @Override
     public RoutingAlgorithm createAlgo(Graph g, Weighting w, AlgorithmOptions opts) {
         if (!lms.isInitialized())
@@ -57,6 +66,14 @@ public class LMRoutingAlgorithmFactory implements RoutingAlgorithmFactory {
             return algo;
         } else if (ASTAR_BI.equalsIgnoreCase(algoStr) || Helper.isEmpty(algoStr)) {
             double epsilon = opts.getHints().getDouble(Parameters.Algorithms.AStarBi.EPSILON, 1);
+            if (searchStatePool != null && searchStatePool.hasCapacity()) {
+                AStarBidirectionArray algo = new AStarBidirectionArray(g, weighting, opts.getTraversalMode());
+                algo.setSearchStatePool(searchStatePool);
+                algo.setApproximation(getApproximator(g, weighting, activeLM, epsilon));
+                algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+                algo.setTimeoutMillis(opts.getTimeoutMillis());
+                return algo;
+            }
             AStarBidirection algo = new AStarBidirection(g, weighting, opts.getTraversalMode());
             algo.setApproximation(getApproximator(g, weighting, activeLM, epsilon));
             algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
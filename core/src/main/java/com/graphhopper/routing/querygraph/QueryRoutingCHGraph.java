@@ -49,6 +49,9 @@ public class QueryRoutingCHGraph implements RoutingCHGraph {
 
     private final IntObjectMap<List<RoutingCHEdgeIteratorState>> virtualOutEdgesAtRealNodes;
     private final IntObjectMap<List<RoutingCHEdgeIteratorState>> virtualInEdgesAtRealNodes;
+    // only built when needed, see createAllOutEdgeExplorer
+    private IntObjectMap<List<RoutingCHEdgeIteratorState>> allVirtualOutEdgesAtRealNodes;
+    private IntObjectMap<List<RoutingCHEdgeIteratorState>> allVirtualInEdgesAtRealNodes;
     private final List<List<RoutingCHEdgeIteratorState>> virtualEdgesAtVirtualNodes;
 
     public QueryRoutingCHGraph(RoutingCHGraph routingCHGraph, QueryGraph queryGraph) {
@@ -88,6 +91,20 @@ public class QueryRoutingCHGraph implements RoutingCHGraph {
         return createEdgeExplorer(routingCHGraph.createOutEdgeExplorer(), virtualOutEdgesAtRealNodes);
     }
 
+    @Override
+    public RoutingCHEdgeExplorer createAllInEdgeExplorer() {
+        if (allVirtualInEdgesAtRealNodes == null)
+            allVirtualInEdgesAtRealNodes = buildVirtualEdgesAtRealNodes(routingCHGraph.createAllInEdgeExplorer());
+        return createEdgeExplorer(routingCHGraph.createAllInEdgeExplorer(), allVirtualInEdgesAtRealNodes);
+    }
+
+    @Override
+    public RoutingCHEdgeExplorer createAllOutEdgeExplorer() {
+        if (allVirtualOutEdgesAtRealNodes == null)
+            allVirtualOutEdgesAtRealNodes = buildVirtualEdgesAtRealNodes(routingCHGraph.createAllOutEdgeExplorer());
+        return createEdgeExplorer(routingCHGraph.createAllOutEdgeExplorer(), allVirtualOutEdgesAtRealNodes);
+    }
+
     private RoutingCHEdgeExplorer createEdgeExplorer(final RoutingCHEdgeExplorer explorer, final IntObjectMap<List<RoutingCHEdgeIteratorState>> virtualEdgesAtRealNodes) {
         final VirtualCHEdgeIterator iterator = new VirtualCHEdgeIterator();
         return new RoutingCHEdgeExplorer() {
@@ -160,6 +177,8 @@ public class QueryRoutingCHGraph implements RoutingCHGraph {
         virtualEdgesAtVirtualNodes.clear();
         virtualInEdgesAtRealNodes.clear();
         virtualOutEdgesAtRealNodes.clear();
+        allVirtualInEdgesAtRealNodes = null;
+        allVirtualOutEdgesAtRealNodes = null;
     }
 
     private VirtualEdgeIteratorState getVirtualEdgeState(int virtualEdgeId, int adjNode) {
@@ -0,0 +1,218 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.shapes.Polygon;
+import org.locationtech.jts.geom.Geometry;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded cache for the edges that are within the areas of custom models. Without it the "in_area" conditions
+ * have to compare the geometry of every explored edge with the area polygon, for every request. Instead, we query the
+ * {@link LocationIndex} once per area and store the result as a bit set or a sorted array of edges, whichever needs
+ * less memory, which is then shared by all requests that use the same area geometry. The cache is bounded by the
+ * number of areas and by the memory of their edges, the least recently used areas are evicted first.
+ * <p>
+ * Only the edges of the base graph are cached, the virtual edges of a query graph are still checked against the
+ * polygon. The cache has to be discarded when the graph changes.
+ */
+public class AreaEdgeCache {
+    private final BaseGraph graph;
+    private final LocationIndex locationIndex;
+    private final int maxSize;
+    private final long maxBytes;
+    // access order turns the map into a LRU cache
+    private final LinkedHashMap<Geometry, AreaEdges> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize  the maximum number of cached areas
+     * @param maxBytes the maximum memory of the edges of all cached areas, see {@link AreaEdges#getBytes()}
+     */
+    public AreaEdgeCache(BaseGraph graph, LocationIndex locationIndex, int maxSize, long maxBytes) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The maximum size of the area edge cache must be positive, but was: " + maxSize);
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("The maximum bytes of the area edge cache must be positive, but was: " + maxBytes);
+        this.graph = graph;
+        this.locationIndex = locationIndex;
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param geometry the geometry of the area, which is used as key. Note that JTS compares geometries by their
+     *                 coordinates, so equal areas of different requests share the same entry.
+     * @param polygon  the polygon created from the geometry, which is used to find the edges if they are not cached
+     */
+    public AreaEdges get(Geometry geometry, Polygon polygon) {
+        AreaEdges areaEdges;
+        synchronized (map) {
+            areaEdges = map.get(geometry);
+        }
+        if (areaEdges != null) {
+            hits.increment();
+            return areaEdges;
+        }
+        misses.increment();
+        // we do not block other requests while finding the edges, two requests for the same new area might both do it
+        areaEdges = findEdges(polygon);
+        // an area that is too large would evict all other areas
+        if (areaEdges.getBytes() > maxBytes)
+            return areaEdges;
+        synchronized (map) {
+            AreaEdges old = map.put(geometry, areaEdges);
+            if (old != null)
+                bytes -= old.getBytes();
+            bytes += areaEdges.getBytes();
+            Iterator<AreaEdges> iter = map.values().iterator();
+            while (map.size() > maxSize || bytes > maxBytes) {
+                bytes -= iter.next().getBytes();
+                iter.remove();
+            }
+        }
+        return areaEdges;
+    }
+
+    private AreaEdges findEdges(Polygon polygon) {
+        IntArrayList edges = new IntArrayList();
+        locationIndex.query(polygon.getBounds(), edge -> {
+            if (CustomWeightingHelper.in(polygon, graph.getEdgeIteratorState(edge, Integer.MIN_VALUE)))
+                edges.add(edge);
+        });
+        int[] sortedEdges = edges.toArray();
+        Arrays.sort(sortedEdges);
+        if (sortedEdges.length == 0)
+            return new AreaEdges(graph.getEdges(), sortedEdges);
+        // the graph is usually sorted spatially, so the edges of an area are close to each other and we only need
+        // bits for the range between the smallest and the largest edge. but if they are spread over a large range
+        // a sorted array is smaller.
+        int firstEdge = sortedEdges[0];
+        long range = (long) sortedEdges[sortedEdges.length - 1] - firstEdge + 1;
+        if (4L * sortedEdges.length <= 8 * ((range + 63) / 64))
+            return new AreaEdges(graph.getEdges(), sortedEdges);
+        BitSet bits = new BitSet((int) range);
+        for (int edge : sortedEdges)
+            bits.set(edge - firstEdge);
+        return new AreaEdges(graph.getEdges(), firstEdge, bits);
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+            bytes = 0;
+        }
+    }
+
+    public int getSize() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the memory of the edges of all cached areas
+     */
+    public long getBytes() {
+        synchronized (map) {
+            return bytes;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * The edges of the base graph that are within an area, either as bit set starting at the first edge or, if the
+     * edges are sparse, as sorted array.
+     */
+    public static final class AreaEdges {
+        private final int edgeCount;
+        private final int firstEdge;
+        private final BitSet bits;
+        private final int[] sortedEdges;
+
+        AreaEdges(int edgeCount, int firstEdge, BitSet bits) {
+            this.edgeCount = edgeCount;
+            this.firstEdge = firstEdge;
+            this.bits = bits;
+            this.sortedEdges = null;
+        }
+
+        AreaEdges(int edgeCount, int[] sortedEdges) {
+            this.edgeCount = edgeCount;
+            this.firstEdge = 0;
+            this.bits = null;
+            this.sortedEdges = sortedEdges;
+        }
+
+        /**
+         * @return true if the edge is an edge of the base graph, i.e. if {@link #contains} can be used for it
+         */
+        public boolean covers(int edge) {
+            return edge < edgeCount;
+        }
+
+        public boolean contains(int edge) {
+            if (bits == null)
+                return Arrays.binarySearch(sortedEdges, edge) >= 0;
+            return edge >= firstEdge && bits.get(edge - firstEdge);
+        }
+
+        /**
+         * @return the number of edges within the area
+         */
+        public int size() {
+            return bits == null ? sortedEdges.length : bits.cardinality();
+        }
+
+        /**
+         * @return the memory used for the edges
+         */
+        public long getBytes() {
+            return bits == null ? 4L * sortedEdges.length : bits.size() / 8;
+        }
+
+        boolean isSparse() {
+            return bits == null;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import org.codehaus.janino.*;
 import java.io.StringReader;
 import java.util.*;
 
+import static com.graphhopper.routing.weighting.custom.CustomModelParser.AREA_EDGES_PREFIX;
 import static com.graphhopper.routing.weighting.custom.CustomModelParser.IN_AREA_PREFIX;
 
 /**
@@ -65,7 +66,7 @@ class ConditionalExpressionVisitor implements Visitor.AtomVisitor<Boolean, Excep
                 if (arg.startsWith(IN_AREA_PREFIX)) {
                     int start = rv.getLocation().getColumnNumber() - 1;
                     replacements.put(start, new Replacement(start, arg.length(),
-                            CustomWeightingHelper.class.getSimpleName() + ".in(this." + arg + ", edge)"));
+                            CustomWeightingHelper.class.getSimpleName() + ".in(this." + arg + ", this." + AREA_EDGES_PREFIX + arg + ", edge)"));
                     result.guessedVariables.add(arg);
                     return true;
                 } else {
@@ -44,6 +44,9 @@ import static com.graphhopper.json.Statement.Keyword.IF;
 public class CustomModelParser {
     private static final AtomicLong longVal = new AtomicLong(1);
     static final String IN_AREA_PREFIX = "in_";
+    // the field for the cached edges of an area, e.g. edges_in_custom1. this cannot collide with the fields of encoded
+    // values or other areas, as they end with _enc or start with in_
+    static final String AREA_EDGES_PREFIX = "edges_";
     static final String BACKWARD_PREFIX = "backward_";
     static final String PREV_PREFIX = "prev_";
     static final String CHANGE_ANGLE = "change_angle";
@@ -90,6 +93,15 @@ public class CustomModelParser {
      * and returns an instance.
      */
     public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup) {
+        return createWeightingParameters(customModel, lookup, null);
+    }
+
+    /**
+     * @param areaEdgeCache the cache for the edges within the areas of the custom model, or null to compare the
+     *                      geometry of every edge with the areas
+     */
+    public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup,
+                                                                       AreaEdgeCache areaEdgeCache) {
         String key = customModel.toString();
         Class<?> clazz = customModel.isInternal() ? INTERNAL_CACHE.get(key) : null;
         if (CACHE_SIZE > 0 && clazz == null)
@@ -112,6 +124,7 @@ public class CustomModelParser {
         try {
             // The class does not need to be thread-safe as we create an instance per request
             CustomWeightingHelper prio = (CustomWeightingHelper) clazz.getDeclaredConstructor().newInstance();
+            prio.areaEdgeCache = areaEdgeCache;
             prio.init(customModel, lookup, CustomModel.getAreasAsMap(customModel.getAreas()));
             return new CustomWeighting.Parameters(
                     prio::getSpeed, prio::calcMaxSpeed,
@@ -465,6 +478,7 @@ public class CustomModelParser {
                     importSourceCode.append("import " + Polygonal.class.getName() + ";\n");
                     importSourceCode.append("import " + JsonFeature.class.getName() + ";\n");
                     importSourceCode.append("import " + Polygon.class.getName() + ";\n");
+                    importSourceCode.append("import " + AreaEdgeCache.class.getName() + ";\n");
                     includedAreaImports = true;
                 }
 
@@ -483,6 +497,8 @@ public class CustomModelParser {
                 classSourceCode.append("protected " + Polygon.class.getSimpleName() + " " + arg + ";\n");
                 initSourceCode.append("JsonFeature feature_" + id + " = (JsonFeature) areas.get(\"" + id + "\");\n");
                 initSourceCode.append("this." + arg + " = new Polygon(new PreparedPolygon((Polygonal) feature_" + id + ".getGeometry()));\n");
+                classSourceCode.append("protected " + AreaEdgeCache.class.getSimpleName() + ".AreaEdges " + AREA_EDGES_PREFIX + arg + ";\n");
+                initSourceCode.append("this." + AREA_EDGES_PREFIX + arg + " = findAreaEdges(feature_" + id + ".getGeometry(), this." + arg + ");\n");
             } else if (arg.equals(STREET_NAME)) {
                 // street_name is resolved at runtime from graph KV storage, no class field needed
             } else {
@@ -26,6 +26,7 @@ import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.Polygon;
+import org.locationtech.jts.geom.Geometry;
 
 import java.util.List;
 import java.util.Map;
@@ -40,6 +41,7 @@ public class CustomWeightingHelper {
 
     protected EncodedValueLookup lookup;
     protected CustomModel customModel;
+    protected AreaEdgeCache areaEdgeCache;
 
     protected CustomWeightingHelper() {
     }
@@ -90,6 +92,19 @@ public class CustomWeightingHelper {
         return minMaxPriority.max;
     }
 
+    /**
+     * @return the cached edges of the given area or null if there is no cache
+     */
+    protected final AreaEdgeCache.AreaEdges findAreaEdges(Geometry geometry, Polygon p) {
+        return areaEdgeCache == null ? null : areaEdgeCache.get(geometry, p);
+    }
+
+    public static boolean in(Polygon p, AreaEdgeCache.AreaEdges areaEdges, EdgeIteratorState edge) {
+        if (areaEdges != null && areaEdges.covers(edge.getEdge()))
+            return areaEdges.contains(edge.getEdge());
+        return in(p, edge);
+    }
+
     public static boolean in(Polygon p, EdgeIteratorState edge) {
         BBox edgeBBox = GHUtility.createBBox(edge);
         BBox polyBBOX = p.getBounds();
@@ -97,7 +112,7 @@ public class CustomWeightingHelper {
             return false;
         if (p.isRectangle() && polyBBOX.contains(edgeBBox))
             return true;
-        return p.intersects(edge.fetchWayGeometry(FetchMode.ALL).makeImmutable()); // TODO PERF: cache bbox and edge wayGeometry for multiple area
+        return p.intersects(edge.fetchWayGeometry(FetchMode.ALL).makeImmutable());
     }
 
     public static double calcChangeAngle(EdgeIntAccess edgeIntAccess, DecimalEncodedValue orientationEnc,
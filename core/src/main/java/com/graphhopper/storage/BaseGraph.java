@@ -175,6 +175,8 @@ public class BaseGraph implements Graph, Closeable {
     public synchronized void freeze() {
         if (isFrozen())
             throw new IllegalStateException("base graph already frozen");
+        if (supportsTurnCosts() && !turnCostStorage.isSorted())
+            turnCostStorage.sortNodes();
         store.setFrozen(true);
     }
 
@@ -510,6 +512,13 @@ public class BaseGraph implements Graph, Closeable {
         return store;
     }
 
+    /**
+     * @return the number of ints that can be accessed per edge using {@link #getEdgeAccess()}
+     */
+    public int getIntsForFlags() {
+        return (int) Math.ceil((double) store.getBytesForFlags() / 4);
+    }
+
     /**
      * Creates bytes from the geometry for storage. First comes 1 byte for the bytes length L if L < 0xFF.
      * If more bytes are required then L == 0xFF and 4 more bytes are required.
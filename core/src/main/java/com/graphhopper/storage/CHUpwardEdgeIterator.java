@@ -0,0 +1,141 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * Iterates the edges of a {@link CHUpwardStorage}, i.e. only the edges leading to nodes with a higher (or equal) CH
+ * level. Just like {@link RoutingCHEdgeIteratorImpl} the out-iterator only returns the edges that can be traversed
+ * starting from the base node and the in-iterator only returns the edges that can be traversed to reach the base node.
+ */
+public class CHUpwardEdgeIterator implements RoutingCHEdgeExplorer, RoutingCHEdgeIterator {
+    private final CHUpwardStorage store;
+    private final CHStorage chStore;
+    private final int baseEdges;
+    private final boolean reverse;
+    private final int entryBytes;
+    private int baseNode;
+    private long edgePointer;
+    private long endPointer;
+    private int edge;
+    private int adjNode;
+
+    public static CHUpwardEdgeIterator outEdges(CHUpwardStorage store, CHStorage chStore, BaseGraph baseGraph) {
+        return new CHUpwardEdgeIterator(store, chStore, baseGraph, false);
+    }
+
+    public static CHUpwardEdgeIterator inEdges(CHUpwardStorage store, CHStorage chStore, BaseGraph baseGraph) {
+        return new CHUpwardEdgeIterator(store, chStore, baseGraph, true);
+    }
+
+    private CHUpwardEdgeIterator(CHUpwardStorage store, CHStorage chStore, BaseGraph baseGraph, boolean reverse) {
+        this.store = store;
+        this.chStore = chStore;
+        this.baseEdges = baseGraph.getEdges();
+        this.reverse = reverse;
+        this.entryBytes = store.getEdgeEntryBytes();
+    }
+
+    @Override
+    public RoutingCHEdgeIterator setBaseNode(int baseNode) {
+        this.baseNode = baseNode;
+        long nodePointer = store.toNodePointer(baseNode);
+        // we increase the pointer before reading the next edge
+        edgePointer = store.getFirstEdgePointer(nodePointer) - entryBytes;
+        endPointer = store.getEndEdgePointer(nodePointer);
+        edge = NO_EDGE;
+        return this;
+    }
+
+    @Override
+    public boolean next() {
+        while (true) {
+            edgePointer += entryBytes;
+            if (edgePointer >= endPointer)
+                return false;
+            if (Double.isInfinite(store.getWeight(edgePointer, reverse)))
+                continue;
+            edge = store.getEdge(edgePointer);
+            adjNode = store.getAdjNode(edgePointer);
+            return true;
+        }
+    }
+
+    @Override
+    public int getEdge() {
+        return edge;
+    }
+
+    @Override
+    public int getOrigEdge() {
+        return isShortcut() ? NO_EDGE : edge;
+    }
+
+    @Override
+    public int getOrigEdgeKeyFirst() {
+        return store.getOrigEdgeKeyFirst(edgePointer);
+    }
+
+    @Override
+    public int getOrigEdgeKeyLast() {
+        return store.getOrigEdgeKeyLast(edgePointer);
+    }
+
+    @Override
+    public int getBaseNode() {
+        return baseNode;
+    }
+
+    @Override
+    public int getAdjNode() {
+        return adjNode;
+    }
+
+    @Override
+    public boolean isShortcut() {
+        return edge >= baseEdges;
+    }
+
+    @Override
+    public int getSkippedEdge1() {
+        checkShortcut("getSkippedEdge1");
+        return chStore.getSkippedEdge1(chStore.toShortcutPointer(edge - baseEdges));
+    }
+
+    @Override
+    public int getSkippedEdge2() {
+        checkShortcut("getSkippedEdge2");
+        return chStore.getSkippedEdge2(chStore.toShortcutPointer(edge - baseEdges));
+    }
+
+    @Override
+    public double getWeight(boolean reverse) {
+        return store.getWeight(edgePointer, reverse);
+    }
+
+    private void checkShortcut(String methodName) {
+        if (!isShortcut())
+            throw new IllegalStateException("Method " + methodName + " only for shortcuts " + getEdge());
+    }
+
+    @Override
+    public String toString() {
+        return getEdge() + " " + getBaseNode() + "-" + getAdjNode();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * An alternative, read-only layout of the CH graph that is built from a prepared {@link CHStorage}. For every node we
+ * only store the edges (base graph edges and shortcuts) that lead to an adjacent node with a higher (or equal) CH level,
+ * because these are the only ones the CH queries need. The edges of a node are stored contiguously together with the
+ * base graph edge keys and the edge weights in both directions, so iterating them does not require access to the base
+ * graph, the shortcut storage or the weighting. The edge blocks of the nodes are sorted by CH level, so the top of the
+ * hierarchy (where all searches meet) occupies a small, contiguous region in memory.
+ * <p>
+ * The weight of an edge is infinite for the direction in which it cannot be traversed.
+ *
+ * @see CHUpwardEdgeIterator
+ */
+public class CHUpwardStorage {
+    private final DataAccess nodes;
+    private final DataAccess edges;
+    private final int N_FIRST, N_END;
+    private final int E_EDGE, E_ADJ, E_KEY_FIRST, E_KEY_LAST, E_WEIGHT_FWD, E_WEIGHT_BWD;
+    private int nodeEntryBytes;
+    private int edgeEntryBytes;
+    private int nodeCount = -1;
+    private int edgeCount;
+    private boolean edgeBased;
+
+    /**
+     * Creates the upward layout for the given (prepared) CH storage. The weighting must be the one that was used for
+     * the preparation.
+     */
+    public static CHUpwardStorage fromCHStorage(BaseGraph baseGraph, CHStorage chStorage, Weighting weighting, String name) {
+        CHUpwardStorage store = new CHUpwardStorage(baseGraph.getDirectory(), name, chStorage.isEdgeBased());
+        store.fill(baseGraph, chStorage, weighting);
+        return store;
+    }
+
+    public CHUpwardStorage(Directory dir, String name, boolean edgeBased) {
+        this.edgeBased = edgeBased;
+        this.nodes = dir.create("ch_upward_nodes_" + name, dir.getDefaultType("ch_upward_nodes_" + name, true));
+        this.edges = dir.create("ch_upward_edges_" + name, dir.getDefaultType("ch_upward_edges_" + name, true));
+        // for every node we store the range of its edges:
+        // FIRST | END
+        N_FIRST = 0;
+        N_END = N_FIRST + 4;
+        nodeEntryBytes = N_END + 4;
+
+        // edges are stored consecutively using this layout (the last orig edge key only exists for edge-based):
+        // EDGE | ADJ | KEY_FIRST | KEY_LAST | WEIGHT_FWD | WEIGHT_BWD
+        E_EDGE = 0;
+        E_ADJ = E_EDGE + 4;
+        E_KEY_FIRST = E_ADJ + 4;
+        E_KEY_LAST = E_KEY_FIRST + (edgeBased ? 4 : 0);
+        E_WEIGHT_FWD = E_KEY_LAST + 4;
+        E_WEIGHT_BWD = E_WEIGHT_FWD + 8;
+        edgeEntryBytes = E_WEIGHT_BWD + 8;
+    }
+
+    private void fill(BaseGraph baseGraph, CHStorage chStorage, Weighting weighting) {
+        if (nodeCount >= 0)
+            throw new IllegalStateException("CHUpwardStorage can only be created once");
+        if (chStorage.getNodes() != baseGraph.getNodes())
+            throw new IllegalArgumentException("CHStorage nodes (" + chStorage.getNodes() + ") do not match the base graph nodes (" + baseGraph.getNodes() + ")");
+        nodeCount = chStorage.getNodes();
+        nodes.create((long) nodeCount * nodeEntryBytes);
+        // we expect as many upward edges as there are edges and shortcuts
+        edges.create((long) (baseGraph.getEdges() + chStorage.getShortcuts()) * edgeEntryBytes);
+        // accept edges in both directions and shortcuts that are loops
+        RoutingCHEdgeIteratorImpl iter = new RoutingCHEdgeIteratorImpl(chStorage, baseGraph, weighting, true, true);
+        long edgePointer = 0;
+        for (int node : sortByLevel(chStorage)) {
+            int level = chStorage.getLevel(chStorage.toNodePointer(node));
+            long nodePointer = toNodePointer(node);
+            nodes.setInt(nodePointer + N_FIRST, edgeCount);
+            iter.setBaseNode(node);
+            while (iter.next()) {
+                int adjNode = iter.getAdjNode();
+                if (chStorage.getLevel(chStorage.toNodePointer(adjNode)) < level)
+                    continue;
+                double weightFwd, weightBwd;
+                int keyFirst, keyLast;
+                if (iter.isShortcut()) {
+                    long shortcutPointer = iter.shortcutPointer;
+                    double weight = chStorage.getWeight(shortcutPointer);
+                    // loops must be found in both directions, see RoutingCHEdgeIteratorImpl
+                    boolean loop = node == adjNode;
+                    weightFwd = loop || chStorage.getFwdAccess(shortcutPointer) ? weight : Double.POSITIVE_INFINITY;
+                    weightBwd = loop || chStorage.getBwdAccess(shortcutPointer) ? weight : Double.POSITIVE_INFINITY;
+                    keyFirst = edgeBased ? chStorage.getOrigEdgeKeyFirst(shortcutPointer) : NO_EDGE;
+                    keyLast = edgeBased ? chStorage.getOrigEdgeKeyLast(shortcutPointer) : NO_EDGE;
+                } else {
+                    weightFwd = iter.getWeight(false);
+                    weightBwd = iter.getWeight(true);
+                    keyFirst = keyLast = iter.getOrigEdgeKeyFirst();
+                }
+                if (Double.isInfinite(weightFwd) && Double.isInfinite(weightBwd))
+                    continue;
+                if (edgeCount == Integer.MAX_VALUE)
+                    throw new IllegalStateException("Maximum edge count exceeded: " + edgeCount);
+                edgeCount++;
+                edges.ensureCapacity((long) edgeCount * edgeEntryBytes);
+                edges.setInt(edgePointer + E_EDGE, iter.getEdge());
+                edges.setInt(edgePointer + E_ADJ, adjNode);
+                edges.setInt(edgePointer + E_KEY_FIRST, keyFirst);
+                if (edgeBased)
+                    edges.setInt(edgePointer + E_KEY_LAST, keyLast);
+                setDouble(edgePointer + E_WEIGHT_FWD, weightFwd);
+                setDouble(edgePointer + E_WEIGHT_BWD, weightBwd);
+                edgePointer += edgeEntryBytes;
+            }
+            nodes.setInt(nodePointer + N_END, edgeCount);
+        }
+    }
+
+    /**
+     * @return the nodes sorted by CH level. We cannot use {@link CHStorage#getNodeOrderingProvider()}, because nodes
+     * that were not contracted all share the maximum level.
+     */
+    private static int[] sortByLevel(CHStorage chStorage) {
+        int nodes = chStorage.getNodes();
+        // counting sort, the levels are in [0, nodes]
+        int[] offsets = new int[nodes + 2];
+        for (int node = 0; node < nodes; node++)
+            offsets[chStorage.getLevel(chStorage.toNodePointer(node)) + 1]++;
+        for (int level = 1; level < offsets.length; level++)
+            offsets[level] += offsets[level - 1];
+        int[] sorted = new int[nodes];
+        for (int node = 0; node < nodes; node++)
+            sorted[offsets[chStorage.getLevel(chStorage.toNodePointer(node))]++] = node;
+        return sorted;
+    }
+
+    public void flush() {
+        nodes.setHeader(0, Constants.VERSION_CH_UPWARD);
+        nodes.setHeader(4, nodeCount);
+        nodes.setHeader(8, nodeEntryBytes);
+        nodes.flush();
+
+        edges.setHeader(0, Constants.VERSION_CH_UPWARD);
+        edges.setHeader(4, edgeCount);
+        edges.setHeader(8, edgeEntryBytes);
+        edges.setHeader(12, edgeBased ? 1 : 0);
+        edges.flush();
+    }
+
+    public boolean loadExisting() {
+        if (!nodes.loadExisting() || !edges.loadExisting())
+            return false;
+
+        GHUtility.checkDAVersion(nodes.getName(), Constants.VERSION_CH_UPWARD, nodes.getHeader(0));
+        nodeCount = nodes.getHeader(4);
+        nodeEntryBytes = nodes.getHeader(8);
+
+        GHUtility.checkDAVersion(edges.getName(), Constants.VERSION_CH_UPWARD, edges.getHeader(0));
+        edgeCount = edges.getHeader(4);
+        edgeEntryBytes = edges.getHeader(8);
+        if (edgeBased != (edges.getHeader(12) == 1))
+            throw new IllegalStateException("Configured edgeBased=" + edgeBased + " does not match the stored " + edges.getName());
+        return true;
+    }
+
+    public void close() {
+        nodes.close();
+        edges.close();
+    }
+
+    public boolean isClosed() {
+        return nodes.isClosed();
+    }
+
+    public boolean isEdgeBased() {
+        return edgeBased;
+    }
+
+    public int getNodes() {
+        return nodeCount;
+    }
+
+    /**
+     * The number of stored edges, i.e. the number of base graph edges and shortcuts leading upwards.
+     */
+    public int getEdges() {
+        return edgeCount;
+    }
+
+    long toNodePointer(int node) {
+        assert node >= 0 && node < nodeCount : "node not in bounds: [0, " + nodeCount + "[";
+        return (long) node * nodeEntryBytes;
+    }
+
+    long getFirstEdgePointer(long nodePointer) {
+        return (long) nodes.getInt(nodePointer + N_FIRST) * edgeEntryBytes;
+    }
+
+    long getEndEdgePointer(long nodePointer) {
+        return (long) nodes.getInt(nodePointer + N_END) * edgeEntryBytes;
+    }
+
+    int getEdgeEntryBytes() {
+        return edgeEntryBytes;
+    }
+
+    int getEdge(long edgePointer) {
+        return edges.getInt(edgePointer + E_EDGE);
+    }
+
+    int getAdjNode(long edgePointer) {
+        return edges.getInt(edgePointer + E_ADJ);
+    }
+
+    int getOrigEdgeKeyFirst(long edgePointer) {
+        return edges.getInt(edgePointer + E_KEY_FIRST);
+    }
+
+    int getOrigEdgeKeyLast(long edgePointer) {
+        return edges.getInt(edgePointer + E_KEY_LAST);
+    }
+
+    double getWeight(long edgePointer, boolean reverse) {
+        return getDouble(edgePointer + (reverse ? E_WEIGHT_BWD : E_WEIGHT_FWD));
+    }
+
+    private void setDouble(long bytePos, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        edges.setInt(bytePos, (int) bits);
+        edges.setInt(bytePos + 4, (int) (bits >>> 32));
+    }
+
+    private double getDouble(long bytePos) {
+        return Double.longBitsToDouble(((long) edges.getInt(bytePos + 4) << 32) | (edges.getInt(bytePos) & 0xFFFFFFFFL));
+    }
+
+    public long getCapacity() {
+        return nodes.getCapacity() + edges.getCapacity();
+    }
+
+    public String toDetailsString() {
+        return "upward edges:" + nf(edgeCount) + " (" + nf(edges.getCapacity() / Helper.MB) + "MB)" +
+                ", nodes:" + nf(nodeCount) + " (" + nf(nodes.getCapacity() / Helper.MB) + "MB)";
+    }
+}
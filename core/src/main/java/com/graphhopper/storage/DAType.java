@@ -53,6 +53,15 @@ public class DAType {
      * See RAM_INT_1SEG
      */
     public static final DAType RAM_INT_1SEG_STORE = new DAType(MemRef.HEAP, true, true, true, true);
+    /**
+     * The DA object is hold entirely in-memory but outside of the Java heap, backed by a single contiguous
+     * MemorySegment. See OffHeapDataAccess.
+     */
+    public static final DAType OFF_HEAP = new DAType(MemRef.OFF_HEAP, false, false, true, true);
+    /**
+     * Like OFF_HEAP, but it will load from and flush to disc if the equivalent methods are called.
+     */
+    public static final DAType OFF_HEAP_STORE = new DAType(MemRef.OFF_HEAP, true, false, true, true);
     /**
      * Memory mapped DA object. See MMapDataAccess.
      */
@@ -96,6 +105,8 @@ public class DAType {
             type = DAType.MMAP;
         else if (dataAccess.contains("UNSAFE"))
             throw new IllegalArgumentException("UNSAFE option is no longer supported, see #1620");
+        else if (dataAccess.contains("OFF_HEAP"))
+            type = dataAccess.contains("STORE") ? DAType.OFF_HEAP_STORE : DAType.OFF_HEAP;
         else if (dataAccess.equals("RAM"))
             type = DAType.RAM;
         else
@@ -104,7 +115,7 @@ public class DAType {
     }
 
     /**
-     * Memory mapped or purely in memory? default is HEAP
+     * Memory mapped, on or off the Java heap? default is HEAP
      */
     MemRef getMemRef() {
         return memRef;
@@ -125,6 +136,13 @@ public class DAType {
         return memRef == MemRef.MMAP;
     }
 
+    /**
+     * @return true if data resides in memory but outside of the JVM heap.
+     */
+    public boolean isOffHeap() {
+        return memRef == MemRef.OFF_HEAP;
+    }
+
     /**
      * Temporary data or store (with loading and storing)? default is false
      */
@@ -151,12 +169,14 @@ public class DAType {
         String str;
         if (getMemRef() == MemRef.MMAP)
             str = "MMAP";
+        else if (getMemRef() == MemRef.OFF_HEAP)
+            str = "OFF_HEAP";
         else
             str = "RAM";
 
         if (isInteg())
             str += "_INT";
-        if (isSingleSegment())
+        if (isSingleSegment() && getMemRef() == MemRef.HEAP)
             str += "_1SEG";
         if (isStoring())
             str += "_STORE";
@@ -192,6 +212,6 @@ public class DAType {
     }
 
     public enum MemRef {
-        HEAP, MMAP
+        HEAP, MMAP, OFF_HEAP
     }
 }
@@ -0,0 +1,264 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps the data outside of the Java heap in a single contiguous {@link MemorySegment}, so unlike RAMDataAccess large
+ * graphs do not put pressure on the garbage collector and reads do not have to handle segment boundaries. Like
+ * RAMInt1SegmentDataAccess resizing requires copying the whole data, but the size is not limited to 2B integers. To
+ * avoid copying the data for every new segment the memory grows by at least half of its size, while the capacity
+ * still grows by segments.
+ * The data can be saved on flush() and is read into memory on loadExisting(), i.e. it does not depend on the page
+ * cache like MMapDataAccess. Read thread-safe.
+ */
+public class OffHeapDataAccess extends AbstractDataAccess {
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private Arena arena;
+    private MemorySegment segment = MemorySegment.NULL;
+    // the used part of the segment, which is a multiple of the segment size
+    private long capacity;
+    private final boolean store;
+
+    public OffHeapDataAccess(String name, String location, boolean store, int segmentSize) {
+        super(name, location, segmentSize);
+        this.store = store;
+    }
+
+    @Override
+    public OffHeapDataAccess create(long bytes) {
+        if (capacity > 0)
+            throw new IllegalThreadStateException("already created");
+        ensureCapacity(Math.max(10 * 4, bytes));
+        return this;
+    }
+
+    @Override
+    public boolean ensureCapacity(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("new capacity has to be strictly positive");
+
+        long cap = getCapacity();
+        if (bytes <= cap)
+            return false;
+
+        // round up to segment size for compatibility with the file format used by other DataAccess implementations
+        long newCap = bytes;
+        if (newCap % segmentSizeInBytes != 0)
+            newCap = (newCap / segmentSizeInBytes + 1) * segmentSizeInBytes;
+        if (newCap > segment.byteSize()) {
+            try {
+                resize(Math.max(newCap, segment.byteSize() + segment.byteSize() / 2));
+            } catch (OutOfMemoryError err) {
+                throw new OutOfMemoryError(err.getMessage() + " - problem when allocating new off-heap memory. Old capacity: "
+                        + cap + ", requested bytes:" + bytes);
+            }
+        } else {
+            // the unused part of the segment is zero-filled, unless data was written beyond the capacity
+            segment.asSlice(cap, newCap - cap).fill((byte) 0);
+        }
+        capacity = newCap;
+        return true;
+    }
+
+    /**
+     * Allocates a new segment with the specified size (which is zero-filled), copies the used data into it and
+     * releases the old segment. The capacity is not changed.
+     */
+    private void resize(long newSize) {
+        Arena newArena = Arena.ofShared();
+        MemorySegment newSegment = newArena.allocate(newSize, Long.BYTES);
+        MemorySegment.copy(segment, 0, newSegment, 0, Math.min(capacity, newSize));
+        long oldCapacity = capacity;
+        release();
+        arena = newArena;
+        segment = newSegment;
+        capacity = oldCapacity;
+    }
+
+    private void release() {
+        if (arena != null)
+            arena.close();
+        arena = null;
+        segment = MemorySegment.NULL;
+        capacity = 0;
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (capacity > 0)
+            throw new IllegalStateException("already initialized");
+
+        if (isClosed())
+            throw new IllegalStateException("already closed");
+
+        if (!store)
+            return false;
+
+        File file = new File(getFullName());
+        if (!file.exists() || file.length() == 0)
+            return false;
+
+        try {
+            try (RandomAccessFile raFile = new RandomAccessFile(getFullName(), "r")) {
+                long byteCount = readHeader(raFile) - HEADER_OFFSET;
+                if (byteCount < 0)
+                    return false;
+
+                long segmentCount = byteCount / segmentSizeInBytes;
+                if (byteCount % segmentSizeInBytes != 0)
+                    segmentCount++;
+
+                resize(segmentCount * segmentSizeInBytes);
+                capacity = segmentCount * segmentSizeInBytes;
+                long length = Math.min(byteCount, raFile.length() - HEADER_OFFSET);
+                if (length > 0)
+                    // the mapping is only temporary and released together with the confined arena
+                    try (Arena tmpArena = Arena.ofConfined()) {
+                        MemorySegment mapped = raFile.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_OFFSET, length, tmpArena);
+                        MemorySegment.copy(mapped, 0, segment, 0, length);
+                    }
+                return true;
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Problem while loading " + getFullName(), ex);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (closed)
+            throw new IllegalStateException("already closed");
+
+        if (!store)
+            return;
+
+        try {
+            try (RandomAccessFile raFile = new RandomAccessFile(getFullName(), "rw")) {
+                long len = getCapacity();
+                writeHeader(raFile, HEADER_OFFSET + len, segmentSizeInBytes);
+                if (len > 0)
+                    try (Arena tmpArena = Arena.ofConfined()) {
+                        MemorySegment mapped = raFile.getChannel().map(FileChannel.MapMode.READ_WRITE, HEADER_OFFSET, len, tmpArena);
+                        MemorySegment.copy(segment, 0, mapped, 0, len);
+                        mapped.force();
+                    }
+                raFile.setLength(HEADER_OFFSET + len);
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException("Couldn't store bytes to " + toString(), ex);
+        }
+    }
+
+    @Override
+    public final void setInt(long bytePos, int value) {
+        segment.set(INT, bytePos, value);
+    }
+
+    @Override
+    public final int getInt(long bytePos) {
+        return segment.get(INT, bytePos);
+    }
+
+    @Override
+    public final void setShort(long bytePos, short value) {
+        segment.set(SHORT, bytePos, value);
+    }
+
+    @Override
+    public final short getShort(long bytePos) {
+        return segment.get(SHORT, bytePos);
+    }
+
+    @Override
+    public void setBytes(long bytePos, byte[] values, int length) {
+        MemorySegment.copy(values, 0, segment, ValueLayout.JAVA_BYTE, bytePos, length);
+    }
+
+    @Override
+    public void getBytes(long bytePos, byte[] values, int length) {
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, bytePos, values, 0, length);
+    }
+
+    @Override
+    public final void setByte(long bytePos, byte value) {
+        segment.set(ValueLayout.JAVA_BYTE, bytePos, value);
+    }
+
+    @Override
+    public final byte getByte(long bytePos) {
+        return segment.get(ValueLayout.JAVA_BYTE, bytePos);
+    }
+
+    @Override
+    public void trimTo(long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative");
+        if (capacity > getCapacity())
+            throw new IllegalArgumentException("capacity cannot be larger than the current capacity: " + capacity + " > " + getCapacity());
+
+        long newSegmentCount = capacity / segmentSizeInBytes;
+        if (capacity % segmentSizeInBytes != 0)
+            newSegmentCount++;
+
+        long newCapacity = newSegmentCount * segmentSizeInBytes;
+        if (newCapacity == 0)
+            release();
+        else if (newCapacity < segment.byteSize()) {
+            this.capacity = newCapacity;
+            resize(newCapacity);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        release();
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getSegments() {
+        return (int) (getCapacity() / segmentSizeInBytes);
+    }
+
+    @Override
+    public boolean isStoring() {
+        return store;
+    }
+
+    @Override
+    public DAType getType() {
+        if (isStoring())
+            return DAType.OFF_HEAP_STORE;
+        return DAType.OFF_HEAP;
+    }
+}
@@ -39,6 +39,22 @@ public interface RoutingCHGraph {
      */
     RoutingCHEdgeExplorer createOutEdgeExplorer();
 
+    /**
+     * Like {@link #createInEdgeExplorer()}, but this explorer also includes the base edges coming from lower level
+     * nodes even if the graph uses a layout that only stores the edges needed for upward searches, see
+     * {@link CHUpwardStorage}. Edge-based CH queries need these edges for the first step of the search.
+     */
+    default RoutingCHEdgeExplorer createAllInEdgeExplorer() {
+        return createInEdgeExplorer();
+    }
+
+    /**
+     * @see #createAllInEdgeExplorer() but here the shortcuts/edges are going out of the given node.
+     */
+    default RoutingCHEdgeExplorer createAllOutEdgeExplorer() {
+        return createOutEdgeExplorer();
+    }
+
     RoutingCHEdgeIteratorState getEdgeIteratorState(int chEdge, int adjNode);
 
     int getLevel(int node);
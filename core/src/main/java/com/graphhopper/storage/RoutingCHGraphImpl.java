@@ -23,17 +23,34 @@ import com.graphhopper.routing.weighting.Weighting;
 public class RoutingCHGraphImpl implements RoutingCHGraph {
     private final BaseGraph baseGraph;
     private final CHStorage chStorage;
+    private final CHUpwardStorage chUpwardStorage;
     private final Weighting weighting;
 
     public static RoutingCHGraph fromGraph(BaseGraph baseGraph, CHStorage chStorage, CHConfig chConfig) {
         return new RoutingCHGraphImpl(baseGraph, chStorage, chConfig.getWeighting());
     }
 
+    public static RoutingCHGraph fromGraph(BaseGraph baseGraph, CHStorage chStorage, CHUpwardStorage chUpwardStorage, CHConfig chConfig) {
+        return new RoutingCHGraphImpl(baseGraph, chStorage, chUpwardStorage, chConfig.getWeighting());
+    }
+
     public RoutingCHGraphImpl(BaseGraph baseGraph, CHStorage chStorage, Weighting weighting) {
+        this(baseGraph, chStorage, null, weighting);
+    }
+
+    /**
+     * @param chUpwardStorage if this is not null the edge explorers only return the edges leading to nodes with a
+     *                        higher (or equal) CH level, which is sufficient for the CH routing algorithms,
+     *                        see {@link CHUpwardStorage}
+     */
+    public RoutingCHGraphImpl(BaseGraph baseGraph, CHStorage chStorage, CHUpwardStorage chUpwardStorage, Weighting weighting) {
         if (weighting.hasTurnCosts() && !chStorage.isEdgeBased())
             throw new IllegalArgumentException("Weighting has turn costs, but CHStorage is node-based");
+        if (chUpwardStorage != null && (chUpwardStorage.isEdgeBased() != chStorage.isEdgeBased() || chUpwardStorage.getNodes() != chStorage.getNodes()))
+            throw new IllegalArgumentException("CHUpwardStorage does not match CHStorage");
         this.baseGraph = baseGraph;
         this.chStorage = chStorage;
+        this.chUpwardStorage = chUpwardStorage;
         this.weighting = weighting;
     }
 
@@ -54,11 +71,25 @@ public class RoutingCHGraphImpl implements RoutingCHGraph {
 
     @Override
     public RoutingCHEdgeExplorer createInEdgeExplorer() {
+        if (chUpwardStorage != null)
+            return CHUpwardEdgeIterator.inEdges(chUpwardStorage, chStorage, baseGraph);
         return RoutingCHEdgeIteratorImpl.inEdges(chStorage, baseGraph, weighting);
     }
 
     @Override
     public RoutingCHEdgeExplorer createOutEdgeExplorer() {
+        if (chUpwardStorage != null)
+            return CHUpwardEdgeIterator.outEdges(chUpwardStorage, chStorage, baseGraph);
+        return RoutingCHEdgeIteratorImpl.outEdges(chStorage, baseGraph, weighting);
+    }
+
+    @Override
+    public RoutingCHEdgeExplorer createAllInEdgeExplorer() {
+        return RoutingCHEdgeIteratorImpl.inEdges(chStorage, baseGraph, weighting);
+    }
+
+    @Override
+    public RoutingCHEdgeExplorer createAllOutEdgeExplorer() {
         return RoutingCHEdgeIteratorImpl.outEdges(chStorage, baseGraph, weighting);
     }
 
@@ -106,10 +137,19 @@ public class RoutingCHGraphImpl implements RoutingCHGraph {
     public void close() {
         if (!baseGraph.isClosed()) baseGraph.close();
         chStorage.close();
+        if (chUpwardStorage != null)
+            chUpwardStorage.close();
     }
 
     public CHStorage getCHStorage() {
         return chStorage;
     }
 
+    /**
+     * @return the upward layout of the CH graph or null if there is none
+     */
+    public CHUpwardStorage getCHUpwardStorage() {
+        return chUpwardStorage;
+    }
+
 }
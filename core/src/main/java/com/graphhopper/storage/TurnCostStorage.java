@@ -31,6 +31,11 @@ import java.util.function.IntUnaryOperator;
 /**
  * A key/value store, where the unique keys are triples (fromEdge, viaNode, toEdge) and the values
  * are integers that can be used to store encoded values.
+ * <p>
+ * New entries are prepended to a linked list per via node. Calling {@link #sortNodes()} (which happens when the
+ * graph is frozen) stores the entries of each via node in a contiguous block sorted by (fromEdge, toEdge), so they
+ * can be found using binary search. In this sorted mode the 'next' field of each entry holds the (exclusive) end
+ * of its block. Adding another entry converts the storage back to the linked lists.
  *
  * @author Karl Hübner
  * @author Peter Karich
@@ -49,6 +54,7 @@ public class TurnCostStorage {
     private final DataAccess turnCosts;
     private final EdgeIntAccess edgeIntAccess = createEdgeIntAccess();
     private int turnCostsCount;
+    private boolean sorted;
 
     public TurnCostStorage(BaseGraph baseGraph, DataAccess turnCosts) {
         this.baseGraph = baseGraph;
@@ -64,6 +70,7 @@ public class TurnCostStorage {
         turnCosts.setHeader(0, Constants.VERSION_TURN_COSTS);
         turnCosts.setHeader(4, BYTES_PER_ENTRY);
         turnCosts.setHeader(2 * 4, turnCostsCount);
+        turnCosts.setHeader(3 * 4, sorted ? 1 : 0);
         turnCosts.flush();
     }
 
@@ -84,6 +91,7 @@ public class TurnCostStorage {
             throw new IllegalStateException("Number of bytes per turn cost entry does not match the current configuration: " + turnCosts.getHeader(0) + " vs. " + BYTES_PER_ENTRY);
         }
         turnCostsCount = turnCosts.getHeader(8);
+        sorted = turnCosts.getHeader(12) == 1;
         return true;
     }
 
@@ -107,6 +115,8 @@ public class TurnCostStorage {
     private int findOrCreateTurnCostEntry(int fromEdge, int viaNode, int toEdge) {
         int index = findIndex(fromEdge, viaNode, toEdge);
         if (index < 0) {
+            if (sorted)
+                toLinkedLists();
             // create a new entry
             index = turnCostsCount;
             ensureTurnCostIndex(index);
@@ -159,8 +169,11 @@ public class TurnCostStorage {
         if (viaNode < 0)
             throw new IllegalArgumentException("via node cannot be negative");
 
-        final int maxEntries = 1000;
         int index = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
+        if (sorted)
+            return index == NO_TURN_ENTRY ? -1 : binarySearch(index, fromEdge, toEdge);
+
+        final int maxEntries = 1000;
         for (int i = 0; i < maxEntries; ++i) {
             if (index == NO_TURN_ENTRY) return -1;
             long pointer = toPointer(index);
@@ -171,7 +184,55 @@ public class TurnCostStorage {
         throw new IllegalStateException("Turn cost list for node: " + viaNode + " is longer than expected, max: " + maxEntries);
     }
 
+    private int binarySearch(int firstIndex, int fromEdge, int toEdge) {
+        int low = firstIndex;
+        int high = turnCosts.getInt(toPointer(firstIndex) + TC_NEXT) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long pointer = toPointer(mid);
+            int cmp = compare(turnCosts.getInt(pointer + TC_FROM), turnCosts.getInt(pointer + TC_TO), fromEdge, toEdge);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private static int compare(int fromEdge1, int toEdge1, int fromEdge2, int toEdge2) {
+        int cmp = Integer.compare(fromEdge1, fromEdge2);
+        return cmp != 0 ? cmp : Integer.compare(toEdge1, toEdge2);
+    }
+
+    /**
+     * @return the index of the entry following the given one for the same via node or NO_TURN_ENTRY
+     */
+    private int nextIndex(int index) {
+        int next = turnCosts.getInt(toPointer(index) + TC_NEXT);
+        if (!sorted)
+            return next;
+        // in sorted mode next is the end of the block
+        return index + 1 < next ? index + 1 : NO_TURN_ENTRY;
+    }
+
+    /**
+     * Converts the sorted blocks back to linked lists. The order of the entries does not change.
+     */
+    private void toLinkedLists() {
+        for (int i = 0; i < turnCostsCount; i++) {
+            long pointer = toPointer(i);
+            int end = turnCosts.getInt(pointer + TC_NEXT);
+            turnCosts.setInt(pointer + TC_NEXT, i + 1 < end ? i + 1 : NO_TURN_ENTRY);
+        }
+        sorted = false;
+    }
+
     public void sortEdges(IntUnaryOperator getNewEdgeForOldEdge) {
+        // the new edge ids would break the order within the blocks
+        if (sorted)
+            toLinkedLists();
         for (int i = 0; i < turnCostsCount; i++) {
             long pointer = toPointer(i);
             turnCosts.setInt(pointer + TC_FROM, getNewEdgeForOldEdge.applyAsInt(turnCosts.getInt(pointer + TC_FROM)));
@@ -191,8 +252,7 @@ public class TurnCostStorage {
         int index = baseGraph.getNodeAccess().getTurnCostIndex(node);
         int count = 0;
         while (index != NO_TURN_ENTRY) {
-            long pointer = toPointer(index);
-            index = turnCosts.getInt(pointer + TC_NEXT);
+            index = nextIndex(index);
             count++;
         }
         return count;
@@ -219,6 +279,14 @@ public class TurnCostStorage {
         return new Itr();
     }
 
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Stores the entries of each via node contiguously, ordered by via node and then by (fromEdge, toEdge), such
+     * that the lookups can use binary search.
+     */
     public void sortNodes() {
         IntArrayList tcFroms = new IntArrayList();
         IntArrayList tcTos = new IntArrayList();
@@ -229,30 +297,41 @@ public class TurnCostStorage {
             tcFroms.add(turnCosts.getInt(pointer + TC_FROM));
             tcTos.add(turnCosts.getInt(pointer + TC_TO));
             tcFlags.add(turnCosts.getInt(pointer + TC_FLAGS));
-            tcNexts.add(turnCosts.getInt(pointer + TC_NEXT));
+            tcNexts.add(nextIndex(i));
         }
         long turnCostsCountBefore = turnCostsCount;
         turnCostsCount = 0;
+        IntArrayList block = new IntArrayList();
         for (int node = 0; node < baseGraph.getNodes(); node++) {
-            boolean firstForNode = true;
+            block.clear();
             int turnCostIndex = baseGraph.getNodeAccess().getTurnCostIndex(node);
             while (turnCostIndex != NO_TURN_ENTRY) {
-                if (firstForNode) {
-                    baseGraph.getNodeAccess().setTurnCostIndex(node, turnCostsCount);
-                } else {
-                    long prevPointer = toPointer(turnCostsCount - 1);
-                    turnCosts.setInt(prevPointer + TC_NEXT, turnCostsCount);
-                }
+                block.add(turnCostIndex);
+                turnCostIndex = tcNexts.get(turnCostIndex);
+            }
+            if (block.isEmpty())
+                continue;
+            // insertion sort, because there are only a few entries per node
+            for (int i = 1; i < block.size(); i++) {
+                int index = block.get(i);
+                int j = i - 1;
+                for (; j >= 0 && compare(tcFroms.get(block.get(j)), tcTos.get(block.get(j)), tcFroms.get(index), tcTos.get(index)) > 0; j--)
+                    block.set(j + 1, block.get(j));
+                block.set(j + 1, index);
+            }
+            baseGraph.getNodeAccess().setTurnCostIndex(node, turnCostsCount);
+            int end = turnCostsCount + block.size();
+            for (int i = 0; i < block.size(); i++) {
+                int index = block.get(i);
                 long pointer = toPointer(turnCostsCount);
-                turnCosts.setInt(pointer + TC_FROM, tcFroms.get(turnCostIndex));
-                turnCosts.setInt(pointer + TC_TO, tcTos.get(turnCostIndex));
-                turnCosts.setInt(pointer + TC_FLAGS, tcFlags.get(turnCostIndex));
-                turnCosts.setInt(pointer + TC_NEXT, NO_TURN_ENTRY);
+                turnCosts.setInt(pointer + TC_FROM, tcFroms.get(index));
+                turnCosts.setInt(pointer + TC_TO, tcTos.get(index));
+                turnCosts.setInt(pointer + TC_FLAGS, tcFlags.get(index));
+                turnCosts.setInt(pointer + TC_NEXT, end);
                 turnCostsCount++;
-                firstForNode = false;
-                turnCostIndex = tcNexts.get(turnCostIndex);
             }
         }
+        sorted = true;
         if (turnCostsCountBefore != turnCostsCount)
             throw new IllegalStateException("Turn cost count changed unexpectedly: " + turnCostsCountBefore + " -> " + turnCostsCount);
     }
@@ -337,7 +416,7 @@ public class TurnCostStorage {
             if (turnCostIndex == NO_TURN_ENTRY) {
                 return false;
             }
-            turnCostIndex = turnCosts.getInt(turnCostPtr() + TC_NEXT);
+            turnCostIndex = nextIndex(turnCostIndex);
             if (turnCostIndex == NO_TURN_ENTRY) {
                 return false;
             }
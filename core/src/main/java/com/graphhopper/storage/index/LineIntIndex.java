@@ -20,6 +20,7 @@ package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.LongObjectHashMap;
 import com.graphhopper.geohash.SpatialKeyAlgo;
 import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.DataAccess;
@@ -158,6 +159,24 @@ public class LineIntIndex {
         }
     }
 
+    private void fillIDs(long keyPart, TileCache tileCache, IntConsumer consumer) {
+        if (tileCache == null) {
+            fillIDs(keyPart, consumer);
+            return;
+        }
+        int[] edgeIds = tileCache.tiles.get(keyPart);
+        if (edgeIds == null) {
+            IntArrayList list = new IntArrayList();
+            fillIDs(keyPart, list::add);
+            edgeIds = list.toArray();
+            if (tileCache.tiles.size() >= tileCache.maxTiles)
+                tileCache.tiles.clear();
+            tileCache.tiles.put(keyPart, edgeIds);
+        }
+        for (int edgeId : edgeIds)
+            consumer.accept(edgeId);
+    }
+
     public void query(BBox queryShape, final LocationIndex.Visitor function) {
         query(LocationIndex.createBBoxTileFilter(queryShape), function);
     }
@@ -240,6 +259,14 @@ public class LineIntIndex {
      * <p>
      */
     public void findEdgeIdsInNeighborhood(double queryLat, double queryLon, int iteration, IntConsumer foundEntries) {
+        findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, null, foundEntries);
+    }
+
+    /**
+     * Same as {@link #findEdgeIdsInNeighborhood(double, double, int, IntConsumer)}, but the edge ids of the visited
+     * tiles are taken from (and added to) the given cache if it is not null.
+     */
+    public void findEdgeIdsInNeighborhood(double queryLat, double queryLon, int iteration, TileCache tileCache, IntConsumer foundEntries) {
         int x = keyAlgo.x(queryLon);
         int y = keyAlgo.y(queryLat);
         for (int yreg = -iteration; yreg <= iteration; yreg++) {
@@ -248,11 +275,11 @@ public class LineIntIndex {
             int subqueryXB = x + iteration;
             if (subqueryXA >= 0 && subqueryY >= 0 && subqueryXA < indexStructureInfo.getParts() && subqueryY < indexStructureInfo.getParts()) {
                 long keyPart = keyAlgo.encode(subqueryXA, subqueryY) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(keyPart, tileCache, foundEntries);
             }
             if (iteration > 0 && subqueryXB >= 0 && subqueryY >= 0 && subqueryXB < indexStructureInfo.getParts() && subqueryY < indexStructureInfo.getParts()) {
                 long keyPart = keyAlgo.encode(subqueryXB, subqueryY) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(keyPart, tileCache, foundEntries);
             }
         }
 
@@ -262,15 +289,35 @@ public class LineIntIndex {
             int subqueryYB = y + iteration;
             if (subqueryX >= 0 && subqueryYA >= 0 && subqueryX < indexStructureInfo.getParts() && subqueryYA < indexStructureInfo.getParts()) {
                 long keyPart = keyAlgo.encode(subqueryX, subqueryYA) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(keyPart, tileCache, foundEntries);
             }
             if (subqueryX >= 0 && subqueryYB >= 0 && subqueryX < indexStructureInfo.getParts() && subqueryYB < indexStructureInfo.getParts()) {
                 long keyPart = keyAlgo.encode(subqueryX, subqueryYB) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(keyPart, tileCache, foundEntries);
             }
         }
     }
 
+    /**
+     * Stores the edge ids of recently visited tiles, so they do not have to be read from the index again when nearby
+     * points are looked up one after the other. Once the maximum number of tiles is reached the cache is cleared.
+     * This class is not thread-safe.
+     */
+    public static class TileCache {
+        private final LongObjectHashMap<int[]> tiles = new LongObjectHashMap<>();
+        private final int maxTiles;
+
+        public TileCache(int maxTiles) {
+            if (maxTiles <= 0)
+                throw new IllegalArgumentException("maxTiles must be positive, but was: " + maxTiles);
+            this.maxTiles = maxTiles;
+        }
+
+        public int size() {
+            return tiles.size();
+        }
+    }
+
     public int getChecksum() {
         return checksum;
     }
@@ -20,6 +20,9 @@ package com.graphhopper.storage.index;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.util.shapes.BBox;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Provides a way to map real world data "lat,lon" to internal ids/indices of a memory efficient graph
  * - often just implemented as an array.
@@ -46,6 +49,21 @@ public interface LocationIndex {
      */
     Snap findClosest(double lat, double lon, EdgeFilter edgeFilter);
 
+    /**
+     * Finds the closest Snap for each of the given points, see {@link #findClosest(double, double, EdgeFilter)}.
+     * Implementations can do this more efficiently than snapping the points one by one.
+     *
+     * @return the snaps in the order of the given points
+     */
+    default List<Snap> findClosest(double[] lats, double[] lons, EdgeFilter edgeFilter) {
+        if (lats.length != lons.length)
+            throw new IllegalArgumentException("The number of latitudes and longitudes must be equal: " + lats.length + " vs. " + lons.length);
+        List<Snap> snaps = new ArrayList<>(lats.length);
+        for (int i = 0; i < lats.length; i++)
+            snaps.add(findClosest(lats[i], lons[i], edgeFilter));
+        return snaps;
+    }
+
     /**
      * This method explores the LocationIndex with the specified Visitor. It visits only the stored edges (and only once)
      * and limited by the queryBBox. Also (a few) more edges slightly outside of queryBBox could be
@@ -18,6 +18,7 @@
 package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.Directory;
@@ -29,6 +30,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
+import java.util.List;
 
 import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
 
@@ -273,11 +275,64 @@ public class LocationIndexTree implements LocationIndex {
     public Snap findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter) {
         if (isClosed())
             throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        return findClosest(queryLat, queryLon, edgeFilter, null);
+    }
+
+    @Override
+    public List<Snap> findClosest(double[] queryLats, double[] queryLons, EdgeFilter edgeFilter) {
+        return findClosest(queryLats, queryLons, edgeFilter, 1);
+    }
+
+    /**
+     * Finds the closest Snap for each of the given points. The points are processed in the order of their spatial
+     * keys (i.e. along a Z-order curve) and the edge ids of the recently visited tiles are reused for the following
+     * points, which is faster than calling {@link #findClosest(double, double, EdgeFilter)} for every point.
+     *
+     * @param threads the sorted points are split into this number of chunks that are processed in parallel. The
+     *                edge filter must be thread-safe if this is larger than one.
+     * @return the snaps in the order of the given points
+     */
+    public List<Snap> findClosest(double[] queryLats, double[] queryLons, EdgeFilter edgeFilter, int threads) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (queryLats.length != queryLons.length)
+            throw new IllegalArgumentException("The number of latitudes and longitudes must be equal: " + queryLats.length + " vs. " + queryLons.length);
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads must be positive, but was: " + threads);
+        final int points = queryLats.length;
+        long[] keys = new long[points];
+        for (int i = 0; i < points; i++)
+            keys[i] = indexStructureInfo.getKeyAlgo().encodeLatLon(queryLats[i], queryLons[i]);
+        int[] order = IndirectSort.mergesort(0, points, (a, b) -> Long.compare(keys[a], keys[b]));
+        Snap[] snaps = new Snap[points];
+        int chunks = Math.max(1, Math.min(threads, points));
+        int chunkSize = (points + chunks - 1) / chunks;
+        Runnable[] runnables = new Runnable[chunks];
+        for (int c = 0; c < chunks; c++) {
+            int from = c * chunkSize;
+            int to = Math.min(points, from + chunkSize);
+            runnables[c] = () -> {
+                // a single lookup visits up to (2 * maxRegionSearch - 1)^2 tiles, keep enough of them for a few neighboring points
+                int searchWidth = 2 * maxRegionSearch - 1;
+                LineIntIndex.TileCache tileCache = new LineIntIndex.TileCache(4 * searchWidth * searchWidth);
+                for (int i = from; i < to; i++) {
+                    int point = order[i];
+                    snaps[point] = findClosest(queryLats[point], queryLons[point], edgeFilter, tileCache);
+                }
+            };
+        }
+        if (chunks == 1)
+            runnables[0].run();
+        else
+            GHUtility.runConcurrently(Arrays.stream(runnables), chunks);
+        return Arrays.asList(snaps);
+    }
 
+    private Snap findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter, LineIntIndex.TileCache tileCache) {
         final Snap closestMatch = new Snap(queryLat, queryLon);
         IntHashSet seenEdges = new IntHashSet();
         for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
-            lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeId -> {
+            lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, tileCache, edgeId -> {
                 EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeId * 2);
                 if (seenEdges.add(edgeId) && edgeFilter.accept(edgeIteratorState)) { // TODO: or reverse?
                     traverseEdge(queryLat, queryLon, edgeIteratorState, (node, normedDist, wayIndex, pos) -> {
@@ -64,8 +64,9 @@ public class Constants {
     public static final int VERSION_EM = 4;
     public static final int VERSION_SHORTCUT = 11;
     public static final int VERSION_NODE_CH = 0;
+    public static final int VERSION_CH_UPWARD = 1;
     public static final int VERSION_GEOMETRY = 9;
-    public static final int VERSION_TURN_COSTS = 0;
+    public static final int VERSION_TURN_COSTS = 1;
     public static final int VERSION_LOCATION_IDX = 5;
     public static final int VERSION_KV_STORAGE = 2;
     /**
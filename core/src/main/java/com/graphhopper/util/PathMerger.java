@@ -57,6 +57,8 @@ public class PathMerger {
     private PathDetailsBuilderFactory pathBuilderFactory;
     private List<String> requestedPathDetails = Collections.emptyList();
     private double favoredHeading = Double.NaN;
+    private long instructionsNanos;
+    private long pathDetailsNanos;
 
     public PathMerger(Graph graph, Weighting weighting) {
         this.graph = graph;
@@ -117,7 +119,9 @@ public class PathMerger {
             fullDistance_mm += path.getDistance_mm();
             fullWeight += path.getWeight();
             if (enableInstructions) {
+                long start = System.nanoTime();
                 InstructionList il = InstructionsFromEdges.calcInstructions(path, graph, weighting, evLookup, tr);
+                instructionsNanos += System.nanoTime() - start;
 
                 if (!il.isEmpty()) {
                     fullInstructions.addAll(il);
@@ -142,7 +146,9 @@ public class PathMerger {
                 }
 
                 fullPoints.add(tmpPoints);
+                long start = System.nanoTime();
                 responsePath.addPathDetails(PathDetailsFromEdges.calcDetails(path, evLookup, weighting, requestedPathDetails, pathBuilderFactory, origPoints, graph));
+                pathDetailsNanos += System.nanoTime() - start;
                 wayPointIndices.add(origPoints);
                 if (pathIndex == paths.size() - 1)
                     wayPointIndices.add(fullPoints.size() - 1);
@@ -156,7 +162,9 @@ public class PathMerger {
             calcAscendDescend(responsePath, fullPoints);
 
         if (enableInstructions) {
+            long start = System.nanoTime();
             fullInstructions = updateInstructionsWithContext(fullInstructions);
+            instructionsNanos += System.nanoTime() - start;
             responsePath.setInstructions(fullInstructions);
         }
 
@@ -187,6 +195,20 @@ public class PathMerger {
         return responsePath;
     }
 
+    /**
+     * @return the time spent for the instructions in all calls of {@link #doWork}
+     */
+    public long getInstructionsNanos() {
+        return instructionsNanos;
+    }
+
+    /**
+     * @return the time spent for the path details in all calls of {@link #doWork}
+     */
+    public long getPathDetailsNanos() {
+        return pathDetailsNanos;
+    }
+
     /**
      * This method iterates over all instructions and uses the available context to improve the instructions.
      * If the requests contains a heading, this method can transform the first continue to a u-turn if the heading
@@ -17,17 +17,23 @@
  */
 package com.graphhopper;
 
+import com.carrotsearch.hppc.cursors.LongCursor;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.dem.SkadiProvider;
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.osm.OSMChangeApplier;
+import com.graphhopper.reader.osm.OSMInput;
+import com.graphhopper.reader.osm.SkipOptions;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.IntsRef;
@@ -55,6 +61,8 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -140,6 +148,369 @@ public class GraphHopperTest {
         assertTrue(rsp.getErrors().toString().contains("ConnectionNotFoundException"), rsp.getErrors().toString());
     }
 
+    @Test
+    public void testRouteCache() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setStoreOnFlush(true);
+        hopper.getRouterConfig().setRouteCacheSize(10);
+        hopper.importOrLoad();
+        GHResponse rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(0, hopper.getRouteCache().getHits());
+        assertEquals(1, hopper.getRouteCache().getSize());
+
+        GHResponse cachedRsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile"));
+        assertNotSame(rsp, cachedRsp);
+        assertEquals(rsp.getBest().getDistance(), cachedRsp.getBest().getDistance(), 1.e-6);
+        assertEquals(rsp.getBest().getPoints(), cachedRsp.getBest().getPoints());
+        assertEquals(rsp.getBest().getInstructions().size(), cachedRsp.getBest().getInstructions().size());
+        assertEquals(1, hopper.getRouteCache().getHits());
+        // the hints and debug info belong to the current request
+        assertTrue(rsp.getHints().getInt("visited_nodes.sum", 0) > 0);
+        assertEquals(0, cachedRsp.getHints().getInt("visited_nodes.sum", -1));
+        assertTrue(cachedRsp.getDebugInfo().contains("routeCache:hit"), cachedRsp.getDebugInfo());
+        assertEquals("", cachedRsp.getBest().getDebugInfo());
+        // modifying a cached response does not affect the next one
+        cachedRsp.getBest().addDebugInfo("modified");
+        assertEquals("", hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile"))
+                .getBest().getDebugInfo());
+        assertEquals(2, hopper.getRouteCache().getHits());
+
+        // a different snapped point results in a different geometry and must not share the response
+        hopper.route(new GHRequest(43.727688, 7.418737, 43.74958, 7.436566).setProfile("profile"));
+        assertEquals(2, hopper.getRouteCache().getHits());
+
+        // ... but not if a parameter differs
+        GHResponse otherRsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile")
+                .setPathDetails(List.of("street_name")));
+        assertEquals(2, hopper.getRouteCache().getHits());
+        assertEquals(rsp.getBest().getDistance(), otherRsp.getBest().getDistance(), 1.e-6);
+        assertEquals(3, hopper.getRouteCache().getSize());
+
+        // errors are not cached
+        GHResponse errorRsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile")
+                .putHint(TIMEOUT_MS, -1));
+        assertTrue(errorRsp.hasErrors());
+        assertEquals(3, hopper.getRouteCache().getSize());
+        hopper.close();
+
+        // loading the graph again creates a new cache
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car"));
+        hopper.getRouterConfig().setRouteCacheSize(10);
+        hopper.importOrLoad();
+        assertEquals(0, hopper.getRouteCache().getSize());
+        hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile"));
+        assertEquals(0, hopper.getRouteCache().getHits());
+        hopper.close();
+    }
+
+    @Test
+    public void testMatrixWithPointsNotFound() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        // only search close to the points
+        ((LocationIndexTree) hopper.getLocationIndex()).setMaxRegionSearch(1);
+        GHPoint found1 = new GHPoint(43.727687, 7.418737);
+        GHPoint found2 = new GHPoint(43.74958, 7.436566);
+        // within the bounds, but in the sea and far away from any road
+        GHPoint notFound = new GHPoint(43.7220, 7.4390);
+        assertFalse(hopper.getLocationIndex().findClosest(notFound.lat, notFound.lon, EdgeFilter.ALL_EDGES).isValid());
+
+        // a 1x1 matrix is enough, even when only two of the points are found
+        GHMatrixResponse rsp = hopper.matrix(new GHMatrixRequest().setProfile("profile").setFailFast(false).
+                setFromPoints(List.of(found1, notFound)).setToPoints(List.of(notFound, found2)).setOutArrays(List.of("distances")));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(List.of(1), rsp.getInvalidFromPoints());
+        assertEquals(List.of(0), rsp.getInvalidToPoints());
+        assertTrue(rsp.getDistances()[0][1] > 0);
+
+        // the same for a symmetric matrix with a single point left
+        rsp = hopper.matrix(new GHMatrixRequest().setProfile("profile").setFailFast(false).
+                setPoints(List.of(notFound, found1)).setOutArrays(List.of("distances")));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(0, rsp.getDistances()[1][1]);
+
+        // two points are found, but both are from points
+        rsp = hopper.matrix(new GHMatrixRequest().setProfile("profile").setFailFast(false).
+                setFromPoints(List.of(found1, found2)).setToPoints(List.of(notFound)).setOutArrays(List.of("distances")));
+        assertTrue(rsp.hasErrors());
+        assertTrue(rsp.getErrors().get(0).getMessage().contains("At least one of the from and one of the to points has to be found"), rsp.getErrors().toString());
+        hopper.close();
+    }
+
+    @Test
+    public void testApplyOSMChanges() throws Exception {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed, osm_way_id, road_class").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        hopper.setMinNetworkSize(0);
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile").
+                setPathDetails(List.of("osm_way_id"));
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        double distance = rsp.getBest().getDistance();
+        List<PathDetail> wayIds = rsp.getBest().getPathDetails().get("osm_way_id");
+        long deletedWay = ((Number) wayIds.get(wayIds.size() / 2).getValue()).longValue();
+
+        // the unknown way is counted, but it cannot be applied
+        File changeFile = new File(GH_LOCATION, "changes.osc");
+        Files.writeString(changeFile.toPath(), "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<osmChange version=\"0.6\">\n" +
+                " <delete>\n" +
+                "  <way id=\"" + deletedWay + "\" version=\"2\"/>\n" +
+                " </delete>\n" +
+                " <create>\n" +
+                "  <node id=\"99999999999\" lat=\"43.74\" lon=\"7.42\" version=\"1\"/>\n" +
+                " </create>\n" +
+                "</osmChange>\n");
+        OSMChangeApplier.Result result = hopper.applyOSMChanges(changeFile);
+        assertEquals(1, result.ways());
+        assertTrue(result.removedEdges() > 0);
+        assertEquals(0, result.updatedEdges());
+        assertEquals(1, result.unsupportedNodes());
+        assertFalse(result.isComplete());
+
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertTrue(rsp.getBest().getDistance() > distance, rsp.getBest().getDistance() + " vs. " + distance);
+        assertTrue(rsp.getBest().getPathDetails().get("osm_way_id").stream().noneMatch(pd -> ((Number) pd.getValue()).longValue() == deletedWay));
+        double changedDistance = rsp.getBest().getDistance();
+        // the same route without CH
+        req.putHint(CH.DISABLE, true);
+        assertEquals(changedDistance, hopper.route(req).getBest().getDistance(), 1.e-6);
+        req.putHint(CH.DISABLE, false);
+        hopper.close();
+
+        // the changes were stored
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setEncodedValuesString("car_access, car_average_speed, osm_way_id, road_class").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        assertNotNull(hopper.getProperties().get("datareader.changes.date"));
+        assertEquals(changedDistance, hopper.route(req).getBest().getDistance(), 1.e-6);
+
+        // a modified way is parsed again
+        StringBuilder nodeRefs = new StringBuilder();
+        for (LongCursor node : readWay(MONACO, deletedWay).getNodes())
+            nodeRefs.append("   <nd ref=\"").append(node.value).append("\"/>\n");
+        Files.writeString(changeFile.toPath(), "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<osmChange version=\"0.6\">\n" +
+                " <modify>\n" +
+                "  <way id=\"" + deletedWay + "\" version=\"3\">\n" +
+                nodeRefs +
+                "   <tag k=\"highway\" v=\"residential\"/>\n" +
+                "  </way>\n" +
+                " </modify>\n" +
+                "</osmChange>\n");
+        result = hopper.applyOSMChanges(changeFile);
+        assertEquals(1, result.ways());
+        assertTrue(result.updatedEdges() > 0);
+        assertEquals(0, result.removedEdges());
+        assertTrue(result.isComplete());
+        EnumEncodedValue<RoadClass> roadClassEnc = hopper.getEncodingManager().getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        IntEncodedValue osmWayIdEnc = hopper.getEncodingManager().getIntEncodedValue(OSMWayID.KEY);
+        BooleanEncodedValue accessEnc = hopper.getEncodingManager().getBooleanEncodedValue(VehicleAccess.key("car"));
+        AllEdgesIterator iter = hopper.getBaseGraph().getAllEdges();
+        int edges = 0;
+        while (iter.next()) {
+            if (iter.get(osmWayIdEnc) == deletedWay) {
+                assertEquals(RoadClass.RESIDENTIAL, iter.get(roadClassEnc));
+                assertTrue(iter.get(accessEnc));
+                edges++;
+            }
+        }
+        assertEquals(result.updatedEdges(), edges);
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        // the residential road might be too slow to be used again
+        assertTrue(rsp.getBest().getDistance() <= changedDistance, rsp.getBest().getDistance() + " vs. " + changedDistance);
+
+        // a way whose nodes changed cannot be applied to the existing edges
+        Files.writeString(changeFile.toPath(), "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<osmChange version=\"0.6\">\n" +
+                " <modify>\n" +
+                "  <way id=\"" + deletedWay + "\" version=\"4\">\n" +
+                "   <nd ref=\"1\"/>\n" +
+                "   <nd ref=\"2\"/>\n" +
+                "   <tag k=\"highway\" v=\"primary\"/>\n" +
+                "  </way>\n" +
+                " </modify>\n" +
+                "</osmChange>\n");
+        result = hopper.applyOSMChanges(changeFile);
+        assertEquals(1, result.ways());
+        assertEquals(0, result.updatedEdges());
+        assertEquals(1, result.unsupportedWays());
+        assertFalse(result.isComplete());
+        iter = hopper.getBaseGraph().getAllEdges();
+        while (iter.next()) {
+            if (iter.get(osmWayIdEnc) == deletedWay)
+                assertEquals(RoadClass.RESIDENTIAL, iter.get(roadClassEnc));
+        }
+        hopper.close();
+    }
+
+    @Test
+    public void testApplyOSMChangesKeepsDataThatIsNotPartOfTheChangeFile() throws Exception {
+        new File(GH_LOCATION).mkdirs();
+        File osmFile = new File(GH_LOCATION, "changes-test.osm");
+        Files.writeString(osmFile.toPath(), "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<osm version=\"0.6\">\n" +
+                " <node id=\"1\" lat=\"50.000\" lon=\"10.000\" version=\"1\"/>\n" +
+                " <node id=\"2\" lat=\"50.001\" lon=\"10.000\" version=\"1\">\n" +
+                "  <tag k=\"barrier\" v=\"gate\"/>\n" +
+                "  <tag k=\"access\" v=\"no\"/>\n" +
+                " </node>\n" +
+                " <node id=\"3\" lat=\"50.002\" lon=\"10.000\" version=\"1\"/>\n" +
+                " <node id=\"4\" lat=\"50.100\" lon=\"10.000\" version=\"1\"/>\n" +
+                " <node id=\"5\" lat=\"50.000\" lon=\"10.010\" version=\"1\">\n" +
+                "  <tag k=\"highway\" v=\"motorway_junction\"/>\n" +
+                "  <tag k=\"name\" v=\"Exit 1\"/>\n" +
+                " </node>\n" +
+                " <node id=\"6\" lat=\"50.000\" lon=\"10.020\" version=\"1\"/>\n" +
+                " <way id=\"10\" version=\"1\">\n" +
+                "  <nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/>\n" +
+                "  <tag k=\"highway\" v=\"residential\"/>\n" +
+                " </way>\n" +
+                " <way id=\"11\" version=\"1\">\n" +
+                "  <nd ref=\"3\"/><nd ref=\"4\"/>\n" +
+                "  <tag k=\"route\" v=\"ferry\"/>\n" +
+                "  <tag k=\"motorcar\" v=\"yes\"/>\n" +
+                "  <tag k=\"duration\" v=\"00:30\"/>\n" +
+                " </way>\n" +
+                " <way id=\"12\" version=\"1\">\n" +
+                "  <nd ref=\"5\"/><nd ref=\"6\"/>\n" +
+                "  <tag k=\"highway\" v=\"motorway\"/>\n" +
+                "  <tag k=\"oneway\" v=\"yes\"/>\n" +
+                " </way>\n" +
+                " <relation id=\"20\" version=\"1\">\n" +
+                "  <member type=\"way\" ref=\"10\" role=\"\"/>\n" +
+                "  <tag k=\"type\" v=\"route\"/>\n" +
+                "  <tag k=\"route\" v=\"bicycle\"/>\n" +
+                "  <tag k=\"network\" v=\"rcn\"/>\n" +
+                " </relation>\n" +
+                "</osm>\n");
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(osmFile.getAbsolutePath()).
+                setEncodedValuesString("car_access, car_average_speed, ferry_speed, osm_way_id, road_class, bike_network").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setMinNetworkSize(0);
+        hopper.importOrLoad();
+        EncodingManager em = hopper.getEncodingManager();
+        IntEncodedValue osmWayIdEnc = em.getIntEncodedValue(OSMWayID.KEY);
+        BooleanEncodedValue accessEnc = em.getBooleanEncodedValue(VehicleAccess.key("car"));
+        DecimalEncodedValue ferrySpeedEnc = em.getDecimalEncodedValue(FerrySpeed.KEY);
+        EnumEncodedValue<RoadClass> roadClassEnc = em.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        EnumEncodedValue<RouteNetwork> bikeNetworkEnc = em.getEnumEncodedValue(BikeNetwork.KEY, RouteNetwork.class);
+        EdgeIteratorState ferry = findEdges(hopper, osmWayIdEnc, 11).get(0);
+        double ferrySpeed = ferry.get(ferrySpeedEnc);
+        assertEquals(11, ferrySpeed, 1);
+
+        File changeFile = new File(GH_LOCATION, "changes.osc");
+        Files.writeString(changeFile.toPath(), "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<osmChange version=\"0.6\">\n" +
+                " <modify>\n" +
+                "  <way id=\"10\" version=\"2\">\n" +
+                "   <nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/>\n" +
+                "   <tag k=\"highway\" v=\"tertiary\"/>\n" +
+                "  </way>\n" +
+                "  <way id=\"11\" version=\"2\">\n" +
+                "   <nd ref=\"3\"/><nd ref=\"4\"/>\n" +
+                "   <tag k=\"route\" v=\"ferry\"/>\n" +
+                "   <tag k=\"motorcar\" v=\"yes\"/>\n" +
+                "   <tag k=\"duration\" v=\"00:20\"/>\n" +
+                "  </way>\n" +
+                "  <way id=\"12\" version=\"2\">\n" +
+                "   <nd ref=\"5\"/><nd ref=\"6\"/>\n" +
+                "   <tag k=\"highway\" v=\"motorway\"/>\n" +
+                "   <tag k=\"oneway\" v=\"yes\"/>\n" +
+                "   <tag k=\"ref\" v=\"A1\"/>\n" +
+                "  </way>\n" +
+                " </modify>\n" +
+                "</osmChange>\n");
+        OSMChangeApplier.Result result = hopper.applyOSMChanges(changeFile);
+        assertEquals(3, result.ways());
+        // the two edges next to the barrier edge and the motorway
+        assertEquals(3, result.updatedEdges());
+        // the length of the ferry cannot be calculated without its nodes
+        assertEquals(1, result.unsupportedWays());
+
+        List<EdgeIteratorState> edges = findEdges(hopper, osmWayIdEnc, 10);
+        assertEquals(3, edges.size());
+        for (EdgeIteratorState edge : edges) {
+            // the barrier edge keeps all its flags, because the tags of the gate are not known
+            boolean barrierEdge = edge.getDistance() < 1;
+            assertEquals(barrierEdge ? RoadClass.RESIDENTIAL : RoadClass.TERTIARY, edge.get(roadClassEnc));
+            assertEquals(!barrierEdge, edge.get(accessEnc));
+            assertEquals(!barrierEdge, edge.getReverse(accessEnc));
+            // the relation is not part of the change file, but the network is kept
+            assertEquals(RouteNetwork.REGIONAL, edge.get(bikeNetworkEnc));
+        }
+        assertEquals(1, edges.stream().filter(e -> e.getDistance() < 1).count());
+        assertEquals(ferrySpeed, findEdges(hopper, osmWayIdEnc, 11).get(0).get(ferrySpeedEnc));
+        EdgeIteratorState motorway = findEdges(hopper, osmWayIdEnc, 12).get(0);
+        assertEquals("A1", motorway.getValue(Parameters.Details.STREET_REF));
+        assertEquals("Exit 1", motorway.getValue(Parameters.Details.MOTORWAY_JUNCTION));
+
+        // the ferry can be applied if the change file contains all its nodes
+        Files.writeString(changeFile.toPath(), "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<osmChange version=\"0.6\">\n" +
+                " <modify>\n" +
+                "  <node id=\"3\" lat=\"50.002\" lon=\"10.000\" version=\"2\"/>\n" +
+                "  <node id=\"4\" lat=\"50.100\" lon=\"10.000\" version=\"2\"/>\n" +
+                "  <way id=\"11\" version=\"3\">\n" +
+                "   <nd ref=\"3\"/><nd ref=\"4\"/>\n" +
+                "   <tag k=\"route\" v=\"ferry\"/>\n" +
+                "   <tag k=\"motorcar\" v=\"yes\"/>\n" +
+                "   <tag k=\"duration\" v=\"00:20\"/>\n" +
+                "  </way>\n" +
+                " </modify>\n" +
+                "</osmChange>\n");
+        result = hopper.applyOSMChanges(changeFile);
+        assertEquals(1, result.updatedEdges());
+        assertEquals(0, result.unsupportedWays());
+        assertEquals(2, result.unsupportedNodes());
+        assertEquals(13, findEdges(hopper, osmWayIdEnc, 11).get(0).get(ferrySpeedEnc), 1);
+        hopper.close();
+    }
+
+    private static List<EdgeIteratorState> findEdges(GraphHopper hopper, IntEncodedValue osmWayIdEnc, long wayId) {
+        List<EdgeIteratorState> edges = new ArrayList<>();
+        AllEdgesIterator iter = hopper.getBaseGraph().getAllEdges();
+        while (iter.next())
+            if (iter.get(osmWayIdEnc) == wayId)
+                edges.add(iter.detach(false));
+        return edges;
+    }
+
+    private static ReaderWay readWay(String osmFile, long wayId) throws Exception {
+        try (OSMInput input = OSMInput.open(new File(osmFile), 1, new SkipOptions(true, false, true))) {
+            ReaderElement element;
+            while ((element = input.getNext()) != null)
+                if (element instanceof ReaderWay way && way.getId() == wayId)
+                    return way;
+        }
+        throw new IllegalArgumentException("Way " + wayId + " not found in " + osmFile);
+    }
+
     @Test
     public void testMonacoWithInstructions() {
         final String profile = "profile";
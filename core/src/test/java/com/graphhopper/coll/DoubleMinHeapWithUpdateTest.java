@@ -0,0 +1,94 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.coll;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DoubleMinHeapWithUpdateTest implements BinaryHeapTestInterface {
+
+    private DoubleMinHeapWithUpdate heap;
+
+    @Override
+    public void create(int capacity) {
+        heap = new DoubleMinHeapWithUpdate(capacity);
+    }
+
+    @Override
+    public int size() {
+        return heap.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return heap.isEmpty();
+    }
+
+    @Override
+    public void push(int id, float val) {
+        heap.push(id, val);
+    }
+
+    @Override
+    public int peekId() {
+        return heap.peekId();
+    }
+
+    @Override
+    public float peekVal() {
+        return (float) heap.peekValue();
+    }
+
+    @Override
+    public void update(int id, float val) {
+        heap.update(id, val);
+    }
+
+    @Override
+    public int poll() {
+        return heap.poll();
+    }
+
+    @Override
+    public void clear() {
+        heap.clear();
+    }
+
+    @Test
+    public void outOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new DoubleMinHeapWithUpdate(4).push(4, 1.2));
+        assertThrows(IllegalArgumentException.class, () -> new DoubleMinHeapWithUpdate(4).push(-1, 1.2));
+    }
+
+    @Test
+    public void valuesThatAreEqualAsFloats() {
+        // as floats both values are 16777216
+        create(3);
+        heap.push(0, 16_777_217);
+        heap.push(1, 16_777_216);
+        assertEquals(16_777_216, heap.peekValue());
+        assertEquals(1, heap.poll());
+        assertEquals(0, heap.poll());
+        heap.push(1, 16_777_217);
+        heap.push(2, 16_777_218);
+        heap.update(2, 16_777_216.5);
+        assertEquals(2, heap.poll());
+    }
+}
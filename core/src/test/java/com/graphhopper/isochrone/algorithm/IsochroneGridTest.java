@@ -0,0 +1,139 @@
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.json.Statement;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.SimpleBooleanEncodedValue;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.TurnCostProvider;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.*;
+
+import java.util.Collections;
+
+import static com.graphhopper.json.Statement.If;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IsochroneGridTest {
+
+    private final BooleanEncodedValue accessEnc = new SimpleBooleanEncodedValue("access", true);
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, false);
+    private final EncodingManager encodingManager = EncodingManager.start().add(accessEnc).add(speedEnc).build();
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+    private BaseGraph graph;
+
+    @BeforeEach
+    public void setUp() {
+        graph = new BaseGraph.Builder(encodingManager).create();
+        // a block of roughly 1km x 1km, with a road leaving it to the east
+        // 3---2
+        // |   |
+        // 0---1---4
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 50.000, 10.000);
+        na.setNode(1, 50.000, 10.014);
+        na.setNode(2, 50.009, 10.014);
+        na.setNode(3, 50.009, 10.000);
+        na.setNode(4, 50.000, 10.028);
+        GHUtility.setSpeed(30, true, true, accessEnc, speedEnc, graph.edge(0, 1).setDistance(1000));
+        GHUtility.setSpeed(30, true, true, accessEnc, speedEnc, graph.edge(1, 2).setDistance(1000));
+        GHUtility.setSpeed(30, true, true, accessEnc, speedEnc, graph.edge(2, 3).setDistance(1000));
+        GHUtility.setSpeed(30, true, true, accessEnc, speedEnc, graph.edge(3, 0).setDistance(1000));
+        GHUtility.setSpeed(30, true, true, accessEnc, speedEnc, graph.edge(1, 4).setDistance(1000));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        graph.close();
+    }
+
+    private IsochroneGrid createGrid(double timeLimit, double cellSize) {
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("!" + accessEnc.getName(), Statement.Op.MULTIPLY, "0"));
+        customModel.addToSpeed(If("true", Statement.Op.LIMIT, speedEnc.getName()));
+        Weighting weighting = CustomModelParser.createWeighting(encodingManager, TurnCostProvider.NO_TURN_COST_PROVIDER, customModel);
+        QueryGraph queryGraph = QueryGraph.create(graph, Collections.emptyList());
+        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), false, TraversalMode.NODE_BASED);
+        shortestPathTree.setTimeLimit(timeLimit);
+        Snap snap = new Snap(50.000, 10.000);
+        snap.setClosestNode(0);
+        return IsochroneGrid.create(snap, queryGraph, shortestPathTree, l -> l.time, timeLimit, cellSize, 1_000_000);
+    }
+
+    private int valueAt(IsochroneGrid grid, double lat, double lon) {
+        int row = (int) Math.floor((grid.getNorth() - lat) / grid.getCellHeight());
+        int column = (int) Math.floor((lon - grid.getWest()) / grid.getCellWidth());
+        if (row < 0 || row >= grid.getHeight() || column < 0 || column >= grid.getWidth())
+            return IsochroneGrid.UNREACHED;
+        return grid.getValue(row, column);
+    }
+
+    @Test
+    public void testValuesAlongTheRoads() {
+        // 1000m at 30km/h take 120s
+        IsochroneGrid grid = createGrid(300_000, 50);
+        assertEquals(0, valueAt(grid, 50.000, 10.000));
+        assertEquals(60_000, valueAt(grid, 50.000, 10.007), 3_000);
+        assertEquals(120_000, valueAt(grid, 50.000, 10.014), 3_000);
+        assertEquals(180_000, valueAt(grid, 50.000, 10.021), 3_000);
+        assertEquals(180_000, valueAt(grid, 50.009, 10.007), 3_000, "half way around the block, from both sides");
+        assertEquals(IsochroneGrid.UNREACHED, valueAt(grid, 50.0045, 10.007), "inside the block, there are no roads");
+    }
+
+    @Test
+    public void testTimeLimit() {
+        IsochroneGrid grid = createGrid(60_000, 50);
+        assertEquals(0, valueAt(grid, 50.000, 10.000));
+        assertEquals(IsochroneGrid.UNREACHED, valueAt(grid, 50.000, 10.012));
+        assertEquals(IsochroneGrid.UNREACHED, valueAt(grid, 50.007, 10.000));
+        for (int row = 0; row < grid.getHeight(); row++)
+            for (int column = 0; column < grid.getWidth(); column++)
+                assertTrue(grid.getValue(row, column) == IsochroneGrid.UNREACHED || grid.getValue(row, column) <= 60_000);
+    }
+
+    @Test
+    public void testIsolineAroundTheBlockHasAHole() {
+        IsochroneGrid grid = createGrid(300_000, 50);
+        // the far corner of the block is 240s away
+        MultiPolygon isoline = grid.computeIsoline(250_000, geometryFactory);
+        assertEquals(1, isoline.getNumGeometries());
+        Polygon polygon = (Polygon) isoline.getGeometryN(0);
+        assertEquals(1, polygon.getNumInteriorRing());
+        assertTrue(polygon.isValid());
+        assertTrue(polygon.contains(geometryFactory.createPoint(new Coordinate(10.007, 50.009))));
+        assertTrue(polygon.contains(geometryFactory.createPoint(new Coordinate(10.021, 50.000))));
+        assertFalse(polygon.contains(geometryFactory.createPoint(new Coordinate(10.007, 50.0045))));
+        assertFalse(grid.computeIsoline(200_000, geometryFactory).contains(geometryFactory.createPoint(new Coordinate(10.027, 50.000))), "more than 200s away");
+    }
+
+    @Test
+    public void testNestedIsolines() {
+        IsochroneGrid grid = createGrid(300_000, 50);
+        MultiPolygon inner = grid.computeIsoline(60_000, geometryFactory);
+        MultiPolygon outer = grid.computeIsoline(120_000, geometryFactory);
+        assertTrue(inner.getArea() > 0);
+        assertTrue(outer.getArea() > inner.getArea());
+        assertTrue(outer.buffer(1e-9).contains(inner));
+        assertTrue(inner.contains(geometryFactory.createPoint(new Coordinate(10.000, 50.000))));
+        assertFalse(inner.contains(geometryFactory.createPoint(new Coordinate(10.014, 50.000))));
+        assertTrue(outer.contains(geometryFactory.createPoint(new Coordinate(10.0135, 50.000))));
+    }
+
+    @Test
+    public void testTooManyCells() {
+        assertThrows(IllegalArgumentException.class, () -> createGrid(300_000, 0.1));
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.graphhopper.routing;
 
+import com.graphhopper.routing.ch.CHParameters;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
 import com.graphhopper.routing.ch.NodeOrderingProvider;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
@@ -47,6 +48,7 @@ public class RandomCHRoutingTest {
         private final TraversalMode traversalMode;
         private final int maxTurnCosts;
         private final double uTurnCosts;
+        private final boolean upwardLayout;
         private final DecimalEncodedValue speedEnc;
         private final DecimalEncodedValue turnCostEnc;
         private Weighting weighting;
@@ -54,9 +56,14 @@ public class RandomCHRoutingTest {
         private CHConfig chConfig;
 
         Fixture(TraversalMode traversalMode, double uTurnCosts) {
+            this(traversalMode, uTurnCosts, false);
+        }
+
+        Fixture(TraversalMode traversalMode, double uTurnCosts, boolean upwardLayout) {
             this.traversalMode = traversalMode;
             this.maxTurnCosts = 10;
             this.uTurnCosts = uTurnCosts;
+            this.upwardLayout = upwardLayout;
             speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
             turnCostEnc = TurnCost.create("car", maxTurnCosts);
             EncodingManager encodingManager = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
@@ -73,7 +80,7 @@ public class RandomCHRoutingTest {
 
         @Override
         public String toString() {
-            return traversalMode + ", u-turn-costs=" + uTurnCosts;
+            return traversalMode + ", u-turn-costs=" + uTurnCosts + ", upward-layout=" + upwardLayout;
         }
     }
 
@@ -83,7 +90,9 @@ public class RandomCHRoutingTest {
             return Stream.of(
                             new Fixture(TraversalMode.NODE_BASED, Double.POSITIVE_INFINITY),
                             new Fixture(TraversalMode.EDGE_BASED, 40),
-                            new Fixture(TraversalMode.EDGE_BASED, Double.POSITIVE_INFINITY)
+                            new Fixture(TraversalMode.EDGE_BASED, Double.POSITIVE_INFINITY),
+                            new Fixture(TraversalMode.NODE_BASED, Double.POSITIVE_INFINITY, true),
+                            new Fixture(TraversalMode.EDGE_BASED, 40, true)
                     )
                     .map(Arguments::of);
         }
@@ -177,8 +186,9 @@ public class RandomCHRoutingTest {
 
         f.freeze();
         PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(f.graph, f.chConfig);
+        pch.setParams(new PMap().putObject(CHParameters.UPWARD_LAYOUT, f.upwardLayout));
         PrepareContractionHierarchies.Result res = pch.doWork();
-        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(f.graph, res.getCHStorage(), res.getCHConfig());
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(f.graph, res.getCHStorage(), res.getCHUpwardStorage(), res.getCHConfig());
 
         int numQueryGraph = 25;
         int numVirtualNodes = 20;
@@ -80,6 +80,7 @@ public class RandomizedRoutingTest {
                     FixtureSupplier.create(Algo.DIJKSTRA, false, false, NODE_BASED),
                     FixtureSupplier.create(Algo.ASTAR_UNIDIR, false, false, NODE_BASED),
                     FixtureSupplier.create(Algo.ASTAR_BIDIR, false, false, NODE_BASED),
+                    FixtureSupplier.create(Algo.ASTAR_BIDIR_ARRAY, false, false, NODE_BASED),
                     FixtureSupplier.create(Algo.CH_ASTAR, true, false, NODE_BASED),
                     FixtureSupplier.create(Algo.CH_DIJKSTRA, true, false, NODE_BASED),
                     FixtureSupplier.create(Algo.LM_UNIDIR, false, true, NODE_BASED),
@@ -87,10 +88,13 @@ public class RandomizedRoutingTest {
                     FixtureSupplier.create(Algo.DIJKSTRA, false, false, EDGE_BASED),
                     FixtureSupplier.create(Algo.ASTAR_UNIDIR, false, false, EDGE_BASED),
                     FixtureSupplier.create(Algo.ASTAR_BIDIR, false, false, EDGE_BASED),
+                    FixtureSupplier.create(Algo.ASTAR_BIDIR_ARRAY, false, false, EDGE_BASED),
                     FixtureSupplier.create(Algo.CH_ASTAR, true, false, EDGE_BASED),
                     FixtureSupplier.create(Algo.CH_DIJKSTRA, true, false, EDGE_BASED),
                     FixtureSupplier.create(Algo.LM_UNIDIR, false, true, EDGE_BASED),
                     FixtureSupplier.create(Algo.LM_BIDIR, false, true, EDGE_BASED),
+                    FixtureSupplier.create(Algo.LM_BIDIR_ARRAY, false, true, NODE_BASED),
+                    FixtureSupplier.create(Algo.LM_BIDIR_ARRAY, false, true, EDGE_BASED),
                     FixtureSupplier.create(Algo.PERFECT_ASTAR, false, false, NODE_BASED)
             ).map(Arguments::of);
         }
@@ -189,6 +193,8 @@ public class RandomizedRoutingTest {
                     return new AStar(graph, graph.wrapWeighting(weighting), traversalMode);
                 case ASTAR_BIDIR:
                     return new AStarBidirection(graph, graph.wrapWeighting(weighting), traversalMode);
+                case ASTAR_BIDIR_ARRAY:
+                    return new AStarBidirectionArray(graph, graph.wrapWeighting(weighting), traversalMode);
                 case CH_DIJKSTRA: {
                     CHRoutingAlgorithmFactory algoFactory = graph instanceof QueryGraph
                             ? new CHRoutingAlgorithmFactory(new QueryRoutingCHGraph(routingCHGraph, (QueryGraph) graph))
@@ -203,6 +209,8 @@ public class RandomizedRoutingTest {
                 }
                 case LM_BIDIR:
                     return new LMRoutingAlgorithmFactory(lm).createAlgo(graph, graph.wrapWeighting(weighting), new AlgorithmOptions().setAlgorithm(ASTAR_BI).setTraversalMode(traversalMode));
+                case LM_BIDIR_ARRAY:
+                    return new LMRoutingAlgorithmFactory(lm).setSearchStatePool(new SearchStatePool(2)).createAlgo(graph, graph.wrapWeighting(weighting), new AlgorithmOptions().setAlgorithm(ASTAR_BI).setTraversalMode(traversalMode));
                 case LM_UNIDIR:
                     return new LMRoutingAlgorithmFactory(lm).createAlgo(graph, graph.wrapWeighting(weighting), new AlgorithmOptions().setAlgorithm(ASTAR).setTraversalMode(traversalMode));
                 case PERFECT_ASTAR: {
@@ -220,10 +228,12 @@ public class RandomizedRoutingTest {
     private enum Algo {
         DIJKSTRA,
         ASTAR_BIDIR,
+        ASTAR_BIDIR_ARRAY,
         ASTAR_UNIDIR,
         CH_ASTAR,
         CH_DIJKSTRA,
         LM_BIDIR,
+        LM_BIDIR_ARRAY,
         LM_UNIDIR,
         PERFECT_ASTAR
     }
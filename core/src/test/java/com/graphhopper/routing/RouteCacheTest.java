@@ -0,0 +1,132 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteCacheTest {
+
+    private static RouteCache.Key key(String profile, int node) {
+        return new RouteCache.Key(profile, "", Locale.US, Collections.emptyMap(), List.of(), List.of(), List.of(), "",
+                List.of(new RouteCache.SnapKey(node, -1, -1, Snap.Position.TOWER, 0, 0)));
+    }
+
+    @Test
+    public void hitsAndMisses() {
+        RouteCache cache = new RouteCache(10, 1000);
+        GHResponse rsp = new GHResponse();
+        assertNull(cache.get(key("car", 1)));
+        cache.put(key("car", 1), rsp);
+        assertNotNull(cache.get(key("car", 1)));
+        assertNull(cache.get(key("car", 2)));
+        assertNull(cache.get(key("bike", 1)));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.getSize());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(key("car", 1)));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        RouteCache cache = new RouteCache(2, 1000);
+        cache.put(key("car", 1), new GHResponse());
+        cache.put(key("car", 2), new GHResponse());
+        // access the first entry, so the second one is evicted
+        assertNotNull(cache.get(key("car", 1)));
+        cache.put(key("car", 3), new GHResponse());
+        assertEquals(2, cache.getSize());
+        assertNotNull(cache.get(key("car", 1)));
+        assertNull(cache.get(key("car", 2)));
+        assertNotNull(cache.get(key("car", 3)));
+    }
+
+    @Test
+    public void expire() {
+        AtomicLong time = new AtomicLong();
+        RouteCache cache = new RouteCache(10, 100, time::get);
+        cache.put(key("car", 1), new GHResponse());
+        time.set(99);
+        assertNotNull(cache.get(key("car", 1)));
+        time.set(100);
+        assertNull(cache.get(key("car", 1)));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void returnCopies() {
+        RouteCache cache = new RouteCache(10, 1000);
+        PointList points = new PointList();
+        points.add(1, 2);
+        points.add(3, 4);
+        ResponsePath path = new ResponsePath().setPoints(points).setDistance(100);
+        path.addDebugInfo("request 1");
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+        rsp.addDebugInfo("request 1");
+        rsp.getHints().putObject("visited_nodes.sum", 42);
+        cache.put(key("car", 1), rsp);
+        // changing the original response must not change the cached one
+        points.add(5, 6);
+        path.addDebugInfo("changed");
+
+        GHResponse cachedRsp = cache.get(key("car", 1));
+        assertNotSame(rsp, cachedRsp);
+        assertNotSame(path, cachedRsp.getBest());
+        assertEquals(100, cachedRsp.getBest().getDistance());
+        assertEquals(2, cachedRsp.getBest().getPoints().size());
+        assertTrue(cachedRsp.getBest().getPoints().isImmutable());
+        assertEquals("", cachedRsp.getBest().getDebugInfo());
+        assertEquals("", cachedRsp.getDebugInfo());
+        assertFalse(cachedRsp.getHints().has("visited_nodes.sum"));
+
+        // ... and neither must changing the returned one
+        cachedRsp.addDebugInfo("request 2");
+        cachedRsp.getBest().addDebugInfo("request 2");
+        cachedRsp.getHints().putObject("visited_nodes.sum", 0);
+        GHResponse otherRsp = cache.get(key("car", 1));
+        assertNotSame(cachedRsp.getBest(), otherRsp.getBest());
+        assertEquals("", otherRsp.getBest().getDebugInfo());
+        assertEquals("", otherRsp.getDebugInfo());
+        assertFalse(otherRsp.getHints().has("visited_nodes.sum"));
+        // the immutable points are shared
+        assertSame(cachedRsp.getBest().getPoints(), otherRsp.getBest().getPoints());
+    }
+
+    @Test
+    public void doNotCacheErrors() {
+        RouteCache cache = new RouteCache(10, 1000);
+        GHResponse rsp = new GHResponse();
+        rsp.addError(new IllegalArgumentException("error"));
+        assertThrows(IllegalArgumentException.class, () -> cache.put(key("car", 1), rsp));
+        assertThrows(IllegalArgumentException.class, () -> new RouteCache(0, 1000));
+    }
+}
@@ -0,0 +1,82 @@
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.config.Profile;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.TranslationMap;
+import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouterMetricsTest {
+
+    private static class RecordingMetrics implements RouterMetrics {
+        final Map<String, Integer> stageCounts = new ConcurrentHashMap<>();
+        final List<Long> visitedNodes = new ArrayList<>();
+
+        @Override
+        public void recordStage(String profile, String mode, Stage stage, long nanos) {
+            assertTrue(nanos >= 0, stage + " took " + nanos + "ns");
+            stageCounts.merge(profile + "." + mode + "." + stage, 1, Integer::sum);
+        }
+
+        @Override
+        public void recordVisitedNodes(String profile, String mode, long visitedNodes) {
+            this.visitedNodes.add(visitedNodes);
+        }
+    }
+
+    @Test
+    public void testStagesAreRecorded() {
+        BooleanEncodedValue accessEnc = VehicleAccess.create("car");
+        DecimalEncodedValue speedEnc = VehicleSpeed.create("car", 5, 5, false);
+        EncodingManager encodingManager = new EncodingManager.Builder().add(accessEnc).add(speedEnc)
+                .add(RoadClass.create())
+                .add(RoadClassLink.create())
+                .add(RoadEnvironment.create())
+                .add(Roundabout.create())
+                .add(MaxSpeed.create())
+                .add(Subnetwork.create("profile")).build();
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        // 0---1---2
+        graph.getNodeAccess().setNode(0, 0.000, 0.000);
+        graph.getNodeAccess().setNode(1, 0.000, 0.001);
+        graph.getNodeAccess().setNode(2, 0.000, 0.002);
+        GHUtility.setSpeed(60, true, true, accessEnc, speedEnc, graph.edge(0, 1).setDistance(100));
+        GHUtility.setSpeed(60, true, true, accessEnc, speedEnc, graph.edge(1, 2).setDistance(100));
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        Map<String, Profile> profilesByName = new HashMap<>();
+        profilesByName.put("profile", TestProfiles.accessAndSpeed("profile", "car"));
+        RecordingMetrics metrics = new RecordingMetrics();
+        Router router = new Router(graph, encodingManager, locationIndex, profilesByName, new PathDetailsBuilderFactory(),
+                new TranslationMap().doImport(), new RouterConfig(), new DefaultWeightingFactory(graph, encodingManager),
+                Collections.emptyMap(), Collections.emptyMap()).setRouterMetrics(metrics);
+
+        GHRequest request = new GHRequest(new GHPoint(0.000, 0.0002), new GHPoint(0.000, 0.0018)).
+                setProfile("profile").
+                setPathDetails(Collections.singletonList("distance"));
+        GHResponse response = router.route(request);
+        assertFalse(response.hasErrors(), response.getErrors().toString());
+        for (RouterMetrics.Stage stage : RouterMetrics.Stage.values())
+            assertEquals(1, metrics.stageCounts.get("profile.flex." + stage), stage.toString());
+        assertEquals(List.of(response.getHints().getLong("visited_nodes.sum", -1)), metrics.visitedNodes);
+        assertTrue(metrics.visitedNodes.get(0) > 0);
+
+        router.route(request.setAlgorithm(Parameters.Algorithms.ALT_ROUTE));
+        assertEquals(2, metrics.stageCounts.get("profile.flex." + RouterMetrics.Stage.INSTRUCTIONS));
+        assertEquals(2, metrics.visitedNodes.size());
+        graph.close();
+    }
+}
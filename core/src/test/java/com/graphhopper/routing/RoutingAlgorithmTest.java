@@ -218,6 +218,10 @@ public class RoutingAlgorithmTest {
                     new Fixture(new AStarCalculator(), EDGE_BASED),
                     new Fixture(new BidirAStarCalculator(), NODE_BASED),
                     new Fixture(new BidirAStarCalculator(), EDGE_BASED),
+                    new Fixture(new BidirDijkstraArrayCalculator(), NODE_BASED),
+                    new Fixture(new BidirDijkstraArrayCalculator(), EDGE_BASED),
+                    new Fixture(new BidirAStarArrayCalculator(), NODE_BASED),
+                    new Fixture(new BidirAStarArrayCalculator(), EDGE_BASED),
                     // so far only supports node-based
                     new Fixture(new DijkstraOneToManyCalculator(), NODE_BASED),
                     new Fixture(new CHAStarCalculator(), NODE_BASED),
@@ -1241,6 +1245,33 @@ public class RoutingAlgorithmTest {
         }
     }
 
+    private static class BidirDijkstraArrayCalculator extends SimpleCalculator {
+        // the searches of all tests share the same states, even though the graphs are different
+        private final SearchStatePool searchStatePool = new SearchStatePool(2);
+
+        @Override
+        RoutingAlgorithm createAlgo(Graph graph, Weighting weighting, TraversalMode traversalMode) {
+            return new DijkstraBidirectionArray(graph, weighting, traversalMode).setSearchStatePool(searchStatePool);
+        }
+
+        @Override
+        public String toString() {
+            return "DIJKSTRA_BIDIR_ARRAY";
+        }
+    }
+
+    private static class BidirAStarArrayCalculator extends SimpleCalculator {
+        @Override
+        RoutingAlgorithm createAlgo(Graph graph, Weighting weighting, TraversalMode traversalMode) {
+            return new AStarBidirectionArray(graph, weighting, traversalMode);
+        }
+
+        @Override
+        public String toString() {
+            return "ASTAR_BIDIR_ARRAY";
+        }
+    }
+
     private static class DijkstraOneToManyCalculator extends SimpleCalculator {
         @Override
         RoutingAlgorithm createAlgo(Graph graph, Weighting weighting, TraversalMode traversalMode) {
@@ -0,0 +1,78 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.storage.BaseGraph;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchStatePoolTest {
+
+    @Test
+    public void testReuseAndMaxSize() {
+        SearchStatePool pool = new SearchStatePool(3);
+        AbstractArrayBidirAlgo.SearchState state1 = pool.acquire();
+        AbstractArrayBidirAlgo.SearchState state2 = pool.acquire();
+        assertNotSame(state1, state2);
+        assertEquals(0, pool.getSize());
+        // two states are in use, so there is no room for the two states of another search
+        assertFalse(pool.hasCapacity());
+        pool.release(state1);
+        assertTrue(pool.hasCapacity());
+        assertSame(state1, pool.acquire());
+
+        List<AbstractArrayBidirAlgo.SearchState> states = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            states.add(pool.acquire());
+        states.forEach(pool::release);
+        // the two states of the first search are still in use
+        assertEquals(1, pool.getSize());
+        pool.release(state1);
+        pool.release(state2);
+        assertEquals(3, pool.getSize());
+        pool.clear();
+        assertEquals(0, pool.getSize());
+        assertThrows(IllegalArgumentException.class, () -> new SearchStatePool(1));
+    }
+
+    @Test
+    public void testStatesAreReturnedAfterSearch() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        // 0-1-2
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        SearchStatePool pool = new SearchStatePool(4);
+        for (int i = 0; i < 3; i++) {
+            DijkstraBidirectionArray algo = new DijkstraBidirectionArray(graph, new SpeedWeighting(speedEnc), TraversalMode.NODE_BASED);
+            algo.setSearchStatePool(pool);
+            assertEquals(200, algo.calcPath(0, 2).getWeight(), 1.e-6);
+            assertEquals(2, pool.getSize());
+        }
+        graph.close();
+    }
+}
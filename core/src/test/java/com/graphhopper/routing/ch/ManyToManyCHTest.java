@@ -0,0 +1,172 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.shapes.BBox;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManyToManyCHTest {
+
+    @Test
+    void simpleGraph() {
+        // 0 - 1 - 2 -> 3
+        //     |       |
+        //     4 ----- 5
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 10, 0);
+        graph.edge(1, 4).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(4, 5).setDistance(300).set(speedEnc, 10, 10);
+        graph.edge(5, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph, new SpeedWeighting(speedEnc));
+
+        ManyToManyCH.Result result = new ManyToManyCH(chGraph).calcMatrix(new int[]{0, 3}, new int[]{3, 0, 5});
+        assertEquals(300, result.getDistance(0, 0), 1.e-6);
+        assertEquals(30_000, result.getTime(0, 0));
+        assertEquals(0, result.getDistance(0, 1), 1.e-6);
+        assertEquals(400, result.getDistance(0, 2), 1.e-6);
+        // 3 -> 2 is a one-way, so we need to take the detour via 5
+        assertEquals(0, result.getDistance(1, 0), 1.e-6);
+        assertEquals(600, result.getDistance(1, 1), 1.e-6);
+        assertEquals(100, result.getDistance(1, 2), 1.e-6);
+    }
+
+    @Test
+    void disconnected() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph, new SpeedWeighting(speedEnc));
+        ManyToManyCH.Result result = new ManyToManyCH(chGraph).calcMatrix(new int[]{0}, new int[]{1, 3});
+        assertTrue(result.isConnected(0, 0));
+        assertFalse(result.isConnected(0, 1));
+        assertEquals(Long.MAX_VALUE, result.getTime(0, 1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3, 4, 5})
+    void random(long seed) {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, speedEnc, null, 0.8, 0.8);
+        graph.freeze();
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        RoutingCHGraph chGraph = prepareCH(graph, weighting);
+        LocationIndexTree index = new LocationIndexTree(graph, graph.getDirectory());
+        index.prepareIndex();
+
+        BBox bbox = graph.getBounds();
+        List<Snap> snaps = GHUtility.createRandomSnaps(bbox, index, rnd, 20, true, EdgeFilter.ALL_EDGES);
+        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        int[] sources = snaps.subList(0, 10).stream().mapToInt(Snap::getClosestNode).toArray();
+        int[] targets = snaps.subList(10, 20).stream().mapToInt(Snap::getClosestNode).toArray();
+        ManyToManyCH.Result result = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph)).calcMatrix(sources, targets);
+        for (int s = 0; s < sources.length; s++) {
+            for (int t = 0; t < targets.length; t++) {
+                Path refPath = new Dijkstra(queryGraph, queryGraph.wrapWeighting(weighting), TraversalMode.NODE_BASED).calcPath(sources[s], targets[t]);
+                String msg = "seed: " + seed + ", " + sources[s] + " -> " + targets[t];
+                assertEquals(refPath.isFound(), result.isConnected(s, t), msg);
+                if (!refPath.isFound())
+                    continue;
+                assertEquals(refPath.getWeight(), result.getWeight(s, t), 1.e-1, msg);
+                // the paths might differ in case there are multiple shortest paths, but they should be very similar
+                assertEquals(refPath.getDistance(), result.getDistance(s, t), refPath.getDistance() * 0.1 + 1, msg);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3, 4, 5})
+    void randomAsymmetricTimes(long seed) {
+        // the weight is the same in both directions, but the time is not. so the shortcuts are bidirectional and the
+        // forward and backward searches must not share the unpacked times
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, false, speedEnc, null, 1, 0.8);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            iter.set(speedEnc, 10, 50);
+        graph.freeze();
+        Weighting weighting = new SpeedWeighting(speedEnc) {
+            @Override
+            public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+                return Weighting.roundWeight(edgeState.getDistance());
+            }
+        };
+        RoutingCHGraph chGraph = prepareCH(graph, weighting);
+
+        int[] sources = rnd.ints(10, 0, graph.getNodes()).toArray();
+        int[] targets = rnd.ints(10, 0, graph.getNodes()).toArray();
+        ManyToManyCH.Result result = new ManyToManyCH(chGraph).calcMatrix(sources, targets);
+        for (int s = 0; s < sources.length; s++) {
+            for (int t = 0; t < targets.length; t++) {
+                Path refPath = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(sources[s], targets[t]);
+                String msg = "seed: " + seed + ", " + sources[s] + " -> " + targets[t];
+                assertEquals(refPath.isFound(), result.isConnected(s, t), msg);
+                if (!refPath.isFound())
+                    continue;
+                assertEquals(refPath.getWeight(), result.getWeight(s, t), 1.e-1, msg);
+                assertEquals(refPath.getTime(), result.getTime(s, t), 10, msg);
+            }
+        }
+    }
+
+    private static RoutingCHGraph prepareCH(BaseGraph graph, Weighting weighting) {
+        CHConfig chConfig = CHConfig.nodeBased("p", weighting);
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OneToAllCHTest {
+
+    @Test
+    void simpleGraph() {
+        // 0 - 1 - 2 -> 3
+        //     |       |
+        //     4 ----- 5     6
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 10, 0);
+        graph.edge(1, 4).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(4, 5).setDistance(300).set(speedEnc, 10, 10);
+        graph.edge(5, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.getNodeAccess().setNode(6, 0, 0);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph, new SpeedWeighting(speedEnc), false);
+
+        OneToAllCH.Result result = new OneToAllCH(chGraph).calcOneToAll(0);
+        assertEquals(7, result.getNodes());
+        assertEquals(0, result.getDistance(0), 1.e-6);
+        assertEquals(EdgeIterator.NO_EDGE, result.getEdge(0));
+        assertEquals(300, result.getDistance(3), 1.e-6);
+        assertEquals(30_000, result.getTime(3));
+        assertEquals(2, result.getEdge(3));
+        assertEquals(400, result.getDistance(5), 1.e-6);
+        assertFalse(result.isReached(6));
+        assertEquals(Long.MAX_VALUE, result.getTime(6));
+
+        // 3 -> 2 is a one-way, so we need to take the detour via 5
+        result = new OneToAllCH(chGraph).calcOneToAll(3);
+        assertEquals(600, result.getDistance(0), 1.e-6);
+        assertEquals(0, result.getEdge(0));
+        // ... but with reverse flow we calculate the paths to 3
+        result = new OneToAllCH(chGraph).setReverseFlow(true).calcOneToAll(3);
+        assertEquals(300, result.getDistance(0), 1.e-6);
+        assertEquals(0, result.getEdge(0));
+
+        result = new OneToAllCH(chGraph).setWeightLimit(250).calcOneToAll(0);
+        assertEquals(200, result.getDistance(2), 1.e-6);
+        assertFalse(result.isReached(3));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "1,false,false",
+            "2,false,true",
+            "3,true,false",
+            "4,true,true",
+            "5,false,false",
+    })
+    void random(long seed, boolean reverseFlow, boolean upwardLayout) {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, speedEnc, null, 0.8, 0.8);
+        graph.freeze();
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        RoutingCHGraph chGraph = prepareCH(graph, weighting, upwardLayout);
+        LocationIndexTree index = new LocationIndexTree(graph, graph.getDirectory());
+        index.prepareIndex();
+        int[] sweepOrder = OneToAllCH.calcSweepOrder(chGraph);
+
+        for (int i = 0; i < 10; i++) {
+            // the start node can be virtual
+            List<Snap> snaps = GHUtility.createRandomSnaps(graph.getBounds(), index, rnd, 1, true, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            int start = snaps.get(0).getClosestNode();
+            OneToAllCH.Result result = new OneToAllCH(new QueryRoutingCHGraph(chGraph, queryGraph), sweepOrder).setReverseFlow(reverseFlow).calcOneToAll(start);
+            assertEquals(queryGraph.getNodes(), result.getNodes());
+            for (int node = 0; node < queryGraph.getNodes(); node++) {
+                Dijkstra dijkstra = new Dijkstra(queryGraph, queryGraph.wrapWeighting(weighting), TraversalMode.NODE_BASED);
+                Path refPath = reverseFlow ? dijkstra.calcPath(node, start) : dijkstra.calcPath(start, node);
+                String msg = "seed: " + seed + ", " + start + (reverseFlow ? " <- " : " -> ") + node;
+                assertEquals(refPath.isFound(), result.isReached(node), msg);
+                if (!refPath.isFound())
+                    continue;
+                assertEquals(refPath.getWeight(), result.getWeight(node), 1.e-1, msg);
+                // the distances might differ in case there are multiple shortest paths, but the times should not
+                assertEquals(refPath.getTime(), result.getTime(node), 100, msg);
+                assertTrue(Double.isFinite(result.getDistance(node)), msg);
+                if (node != start) {
+                    int edge = result.getEdge(node);
+                    assertTrue(queryGraph.isAdjacentToNode(edge, node), msg);
+                }
+            }
+        }
+    }
+
+    @Test
+    void reuseForBothDirections() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        GHUtility.buildRandomGraph(graph, new Random(42), 100, 2.2, true, speedEnc, null, 0.8, 0.8);
+        graph.freeze();
+        // the weights are the same in both directions, but the times are not
+        Weighting weighting = new SpeedWeighting(speedEnc) {
+            @Override
+            public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+                double weight = super.calcEdgeWeight(edgeState, reverse);
+                return Double.isInfinite(weight) ? weight : Weighting.roundWeight(edgeState.getDistance());
+            }
+        };
+        RoutingCHGraph chGraph = prepareCH(graph, weighting, false);
+        assertTrue(chGraph.getShortcuts() > 0);
+        // the cached shortcuts of one direction must not be used for the other
+        OneToAllCH oneToAllCH = new OneToAllCH(chGraph);
+        for (int start = 0; start < graph.getNodes(); start++) {
+            for (boolean reverseFlow : new boolean[]{false, true}) {
+                OneToAllCH.Result result = oneToAllCH.setReverseFlow(reverseFlow).calcOneToAll(start);
+                OneToAllCH.Result expected = new OneToAllCH(chGraph).setReverseFlow(reverseFlow).calcOneToAll(start);
+                for (int node = 0; node < graph.getNodes(); node++)
+                    assertEquals(expected.getTime(node), result.getTime(node), "start: " + start + ", node: " + node + ", reverse: " + reverseFlow);
+            }
+        }
+    }
+
+    @Test
+    void invalidSweepOrder() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph, new SpeedWeighting(speedEnc), false);
+        int[] sweepOrder = OneToAllCH.calcSweepOrder(chGraph);
+        assertEquals(3, sweepOrder.length);
+        for (int i = 1; i < sweepOrder.length; i++)
+            assertTrue(chGraph.getLevel(sweepOrder[i - 1]) >= chGraph.getLevel(sweepOrder[i]));
+        assertThrows(IllegalArgumentException.class, () -> new OneToAllCH(chGraph, new int[2]));
+    }
+
+    @Test
+    void edgeBasedNotSupported() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 10);
+        EncodingManager em = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        CHConfig chConfig = CHConfig.edgeBased("p", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+        assertThrows(IllegalArgumentException.class, () -> new OneToAllCH(chGraph));
+    }
+
+    private static RoutingCHGraph prepareCH(BaseGraph graph, Weighting weighting, boolean upwardLayout) {
+        CHConfig chConfig = CHConfig.nodeBased("p", weighting);
+        PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(graph, chConfig);
+        pch.setParams(new PMap().putObject(CHParameters.UPWARD_LAYOUT, upwardLayout));
+        PrepareContractionHierarchies.Result res = pch.doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHUpwardStorage(), res.getCHConfig());
+    }
+}
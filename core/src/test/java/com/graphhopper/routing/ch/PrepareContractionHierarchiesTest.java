@@ -568,6 +568,34 @@ public class PrepareContractionHierarchiesTest {
         }
     }
 
+    @Test
+    public void testParallelContraction() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        int numNodes = 1_000;
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, numNodes, 2.5, true, speedEnc, null, 0.8, 0.8);
+        graph.freeze();
+
+        PrepareContractionHierarchies.Result sequential = PrepareContractionHierarchies.fromGraph(graph, CHConfig.nodeBased("seq", weighting)).doWork();
+        PrepareContractionHierarchies.Result parallel = PrepareContractionHierarchies.fromGraph(graph, CHConfig.nodeBased("par", weighting))
+                .setParams(new PMap().putObject(CHParameters.CONTRACTION_THREADS, 4))
+                .doWork();
+        // ignoring the other nodes of a batch leads to more shortcuts, but there should not be many more
+        assertTrue(parallel.getShortcuts() < 2 * sequential.getShortcuts(),
+                "too many shortcuts: " + parallel.getShortcuts() + " vs. " + sequential.getShortcuts() + ", seed: " + seed);
+
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, parallel.getCHStorage(), parallel.getCHConfig());
+        for (int i = 0; i < 100; ++i) {
+            int from = rnd.nextInt(numNodes);
+            int to = rnd.nextInt(numNodes);
+            Path refPath = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            Path chPath = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(from, to);
+            assertEquals(refPath.isFound(), chPath.isFound(), "seed: " + seed + ", " + from + " -> " + to);
+            assertEquals(refPath.getWeight(), chPath.getWeight(), 1.e-1, "seed: " + seed + ", " + from + " -> " + to);
+        }
+    }
+
     private void checkPath(BaseGraph g, CHConfig c, int expShortcuts, double expDistance, IntIndexedContainer expNodes, int[] nodeOrdering) {
         PrepareContractionHierarchies prepare = createPrepareContractionHierarchies(g, c);
         useNodeOrdering(prepare, nodeOrdering);
@@ -0,0 +1,204 @@
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.Polygon;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.routing.util.EdgeFilter.ALL_EDGES;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AreaEdgeCacheTest {
+
+    private final BooleanEncodedValue accessEnc = VehicleAccess.create("car");
+    private final DecimalEncodedValue avgSpeedEnc = VehicleSpeed.create("car", 5, 5, false);
+    private final EncodingManager encodingManager = new EncodingManager.Builder().add(accessEnc).add(avgSpeedEnc).build();
+    private BaseGraph graph;
+    private LocationIndexTree locationIndex;
+
+    @BeforeEach
+    public void setup() {
+        graph = new BaseGraph.Builder(encodingManager).create();
+        // 0 - 1 - 2 - 3
+        //     |
+        //     4
+        graph.getNodeAccess().setNode(0, 50.00, 10.00);
+        graph.getNodeAccess().setNode(1, 50.00, 10.01);
+        graph.getNodeAccess().setNode(2, 50.00, 10.02);
+        graph.getNodeAccess().setNode(3, 50.00, 10.03);
+        graph.getNodeAccess().setNode(4, 49.99, 10.01);
+        graph.edge(0, 1).setDistance(700).set(accessEnc, true, true).set(avgSpeedEnc, 60);
+        graph.edge(1, 2).setDistance(700).set(accessEnc, true, true).set(avgSpeedEnc, 60);
+        graph.edge(2, 3).setDistance(700).set(accessEnc, true, true).set(avgSpeedEnc, 60);
+        graph.edge(1, 4).setDistance(1100).set(accessEnc, true, true).set(avgSpeedEnc, 60);
+        locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        graph.close();
+    }
+
+    private static JsonFeature createArea(String id, double minLon, double maxLon) {
+        return new JsonFeature(id, "Feature", null, new GeometryFactory().createPolygon(new Coordinate[]{
+                new Coordinate(minLon, 49.995), new Coordinate(maxLon, 49.995), new Coordinate(maxLon, 50.005),
+                new Coordinate(minLon, 50.005), new Coordinate(minLon, 49.995)}), new HashMap<>());
+    }
+
+    private static Polygon createPolygon(JsonFeature area) {
+        return new Polygon(new PreparedPolygon((org.locationtech.jts.geom.Polygon) area.getGeometry()));
+    }
+
+    @Test
+    public void testGet() {
+        AreaEdgeCache cache = new AreaEdgeCache(graph, locationIndex, 10, 1000);
+        // the area touches the edges 0-1, 1-2 and 1-4, but not 2-3
+        JsonFeature area = createArea("area", 10.005, 10.015);
+        AreaEdgeCache.AreaEdges areaEdges = cache.get(area.getGeometry(), createPolygon(area));
+        assertEquals(3, areaEdges.size());
+        assertTrue(areaEdges.contains(0));
+        assertTrue(areaEdges.contains(1));
+        assertFalse(areaEdges.contains(2));
+        assertTrue(areaEdges.contains(3));
+        assertTrue(areaEdges.covers(3));
+        assertFalse(areaEdges.covers(4));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // an area with the same coordinates, e.g. from another request, shares the entry
+        JsonFeature sameArea = createArea("other", 10.005, 10.015);
+        assertSame(areaEdges, cache.get(sameArea.getGeometry(), createPolygon(sameArea)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getSize());
+
+        JsonFeature emptyArea = createArea("empty", 10.1, 10.2);
+        AreaEdgeCache.AreaEdges noEdges = cache.get(emptyArea.getGeometry(), createPolygon(emptyArea));
+        assertEquals(0, noEdges.size());
+        for (int edge = 0; edge < graph.getEdges(); edge++)
+            assertFalse(noEdges.contains(edge));
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void testEviction() {
+        AreaEdgeCache cache = new AreaEdgeCache(graph, locationIndex, 1, 1000);
+        JsonFeature area1 = createArea("area1", 10.005, 10.015);
+        JsonFeature area2 = createArea("area2", 10.025, 10.035);
+        AreaEdgeCache.AreaEdges areaEdges1 = cache.get(area1.getGeometry(), createPolygon(area1));
+        assertEquals(1, cache.get(area2.getGeometry(), createPolygon(area2)).size());
+        assertEquals(1, cache.getSize());
+        assertNotSame(areaEdges1, cache.get(area1.getGeometry(), createPolygon(area1)));
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertThrows(IllegalArgumentException.class, () -> new AreaEdgeCache(graph, locationIndex, 0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new AreaEdgeCache(graph, locationIndex, 1, 0));
+    }
+
+    @Test
+    public void testEvictionByBytes() {
+        // the edges 0-1, 1-2 and 1-4 need one long of a bit set, the edge 2-3 is stored as array
+        AreaEdgeCache cache = new AreaEdgeCache(graph, locationIndex, 10, 10);
+        JsonFeature area1 = createArea("area1", 10.005, 10.015);
+        JsonFeature area2 = createArea("area2", 10.025, 10.035);
+        AreaEdgeCache.AreaEdges areaEdges1 = cache.get(area1.getGeometry(), createPolygon(area1));
+        assertFalse(areaEdges1.isSparse());
+        assertEquals(8, areaEdges1.getBytes());
+        assertEquals(8, cache.getBytes());
+        assertEquals(4, cache.get(area2.getGeometry(), createPolygon(area2)).getBytes());
+        assertEquals(1, cache.getSize());
+        assertEquals(4, cache.getBytes());
+        cache.clear();
+        assertEquals(0, cache.getBytes());
+
+        // an area that needs more than the maximum is not cached
+        cache = new AreaEdgeCache(graph, locationIndex, 10, 5);
+        assertEquals(3, cache.get(area1.getGeometry(), createPolygon(area1)).size());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testSparseEdges() {
+        BaseGraph sparseGraph = new BaseGraph.Builder(encodingManager).create();
+        NodeAccess na = sparseGraph.getNodeAccess();
+        // the first and the last edge are within the area, all edges in between are outside
+        na.setNode(0, 50.00, 10.00);
+        na.setNode(1, 50.00, 10.01);
+        sparseGraph.edge(0, 1).setDistance(700).set(accessEnc, true, true).set(avgSpeedEnc, 60);
+        for (int i = 0; i < 1000; i++) {
+            na.setNode(2 + 2 * i, 49.90, 10.00 + i * 0.001);
+            na.setNode(3 + 2 * i, 49.91, 10.00 + i * 0.001);
+            sparseGraph.edge(2 + 2 * i, 3 + 2 * i).setDistance(1100).set(accessEnc, true, true).set(avgSpeedEnc, 60);
+        }
+        int lastEdge = sparseGraph.edge(1, 0).setDistance(700).set(accessEnc, true, true).set(avgSpeedEnc, 60).getEdge();
+        LocationIndexTree sparseIndex = new LocationIndexTree(sparseGraph, sparseGraph.getDirectory());
+        sparseIndex.prepareIndex();
+
+        AreaEdgeCache cache = new AreaEdgeCache(sparseGraph, sparseIndex, 10, 1000);
+        JsonFeature area = createArea("area", 9.995, 10.015);
+        AreaEdgeCache.AreaEdges areaEdges = cache.get(area.getGeometry(), createPolygon(area));
+        assertTrue(areaEdges.isSparse());
+        assertEquals(2, areaEdges.size());
+        assertEquals(8, areaEdges.getBytes());
+        assertTrue(areaEdges.contains(0));
+        assertTrue(areaEdges.contains(lastEdge));
+        for (int edge = 1; edge < lastEdge; edge++)
+            assertFalse(areaEdges.contains(edge));
+        sparseGraph.close();
+    }
+
+    @Test
+    public void testSameSpeedsWithAndWithoutCache() {
+        JsonFeatureCollection areas = new JsonFeatureCollection();
+        areas.getFeatures().add(createArea("area", 10.005, 10.015));
+        CustomModel customModel = new CustomModel();
+        customModel.setAreas(areas);
+        customModel.addToSpeed(If("true", LIMIT, avgSpeedEnc.getName()));
+        customModel.addToSpeed(If("in_area", LIMIT, "20"));
+
+        AreaEdgeCache cache = new AreaEdgeCache(graph, locationIndex, 10, 1000);
+        CustomWeighting.EdgeToDoubleMapping withCache = CustomModelParser.createWeightingParameters(customModel, encodingManager, cache).getEdgeToSpeedMapping();
+        CustomWeighting.EdgeToDoubleMapping withoutCache = CustomModelParser.createWeightingParameters(customModel, encodingManager).getEdgeToSpeedMapping();
+        assertEquals(1, cache.getSize());
+
+        // snapping on the edges 1-2 and 2-3 creates virtual edges, which are checked against the polygon instead
+        Snap snap = locationIndex.findClosest(50.00, 10.012, ALL_EDGES);
+        Snap outsideSnap = locationIndex.findClosest(50.00, 10.025, ALL_EDGES);
+        QueryGraph queryGraph = QueryGraph.create(graph, List.of(snap, outsideSnap));
+        EdgeExplorer explorer = queryGraph.createEdgeExplorer();
+        int virtualEdges = 0;
+        for (int node = 0; node < queryGraph.getNodes(); node++) {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (iter.getEdge() >= graph.getEdges())
+                    virtualEdges++;
+                assertEquals(withoutCache.get(iter, false), withCache.get(iter, false), 1.e-6, "edge " + iter.getEdge());
+                assertEquals(withoutCache.get(iter, true), withCache.get(iter, true), 1.e-6, "edge " + iter.getEdge());
+            }
+        }
+        assertTrue(virtualEdges > 0);
+        assertEquals(20, withCache.get(graph.getEdgeIteratorState(0, Integer.MIN_VALUE), false), 1.e-6);
+        assertEquals(60, withCache.get(graph.getEdgeIteratorState(2, Integer.MIN_VALUE), false), 1.e-6);
+
+        // the next request uses the cached edges
+        CustomModelParser.createWeightingParameters(customModel, encodingManager, cache);
+        assertEquals(1, cache.getHits());
+    }
+}
@@ -65,7 +65,7 @@ public class ConditionalExpressionVisitorTest {
         assertEquals("toll == Toll.NO || road_class == RoadClass.NO", parse("toll == NO || road_class == NO", validVariable, k -> k.equals("toll") ? "Toll" : "RoadClass").converted.toString());
 
         // convert in_area variable to function call:
-        assertEquals(CustomWeightingHelper.class.getSimpleName() + ".in(this.in_custom_1, edge)",
+        assertEquals(CustomWeightingHelper.class.getSimpleName() + ".in(this.in_custom_1, this.edges_in_custom_1, edge)",
                 parse("in_custom_1", validVariable, k -> "").converted.toString());
 
         // no need to inject:
@@ -0,0 +1,86 @@
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.RandomGraph;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CHUpwardStorageTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void sameUpwardEdgesAsCHStorage(boolean edgeBased, @TempDir Path path) {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 10);
+        EncodingManager em = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        GHDirectory dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_STORE);
+        BaseGraph graph = new BaseGraph.Builder(em).setDir(dir).withTurnCosts(true).create();
+        long seed = 123;
+        RandomGraph.start().seed(seed).nodes(100).speedZero(0.1).fill(graph, speedEnc);
+        if (edgeBased)
+            GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+        graph.freeze();
+        CHConfig chConfig = edgeBased
+                ? CHConfig.edgeBased("p", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40))
+                : CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        CHStorage chStorage = res.getCHStorage();
+        CHUpwardStorage upwardStorage = CHUpwardStorage.fromCHStorage(graph, chStorage, chConfig.getWeighting(), chConfig.getName());
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, chStorage, chConfig);
+        RoutingCHGraph upwardCHGraph = RoutingCHGraphImpl.fromGraph(graph, chStorage, upwardStorage, chConfig);
+        assertEquals(graph.getEdges() + chStorage.getShortcuts(), upwardCHGraph.getEdges());
+        assertUpwardEdges(chGraph, upwardCHGraph);
+
+        upwardStorage.flush();
+        CHUpwardStorage loaded = new CHUpwardStorage(new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_STORE), chConfig.getName(), edgeBased);
+        assertTrue(loaded.loadExisting());
+        assertEquals(upwardStorage.getEdges(), loaded.getEdges());
+        assertEquals(graph.getNodes(), loaded.getNodes());
+        assertUpwardEdges(chGraph, RoutingCHGraphImpl.fromGraph(graph, chStorage, loaded, chConfig));
+        CHUpwardStorage wrongType = new CHUpwardStorage(new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_STORE), chConfig.getName(), !edgeBased);
+        assertThrows(IllegalStateException.class, wrongType::loadExisting);
+    }
+
+    private static void assertUpwardEdges(RoutingCHGraph chGraph, RoutingCHGraph upwardCHGraph) {
+        for (int node = 0; node < chGraph.getNodes(); node++) {
+            assertEquals(upwardEdges(chGraph, chGraph.createOutEdgeExplorer(), node, false),
+                    upwardEdges(upwardCHGraph, upwardCHGraph.createOutEdgeExplorer(), node, false));
+            assertEquals(upwardEdges(chGraph, chGraph.createInEdgeExplorer(), node, true),
+                    upwardEdges(upwardCHGraph, upwardCHGraph.createInEdgeExplorer(), node, true));
+        }
+    }
+
+    private static List<String> upwardEdges(RoutingCHGraph chGraph, RoutingCHEdgeExplorer explorer, int node, boolean reverse) {
+        List<String> result = new ArrayList<>();
+        RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (chGraph.getLevel(iter.getAdjNode()) < chGraph.getLevel(node) || Double.isInfinite(iter.getWeight(reverse)))
+                continue;
+            assertEquals(node, iter.getBaseNode());
+            String edge = iter.getEdge() + ":" + iter.getAdjNode() + ":" + iter.getWeight(reverse);
+            if (iter.isShortcut())
+                edge += ":" + iter.getSkippedEdge1() + ":" + iter.getSkippedEdge2();
+            else
+                edge += ":" + iter.getOrigEdge();
+            // the orig edge keys are only defined for base edges and edge-based shortcuts
+            if (!iter.isShortcut() || chGraph.isEdgeBased())
+                edge += ":" + iter.getOrigEdgeKeyFirst() + ":" + iter.getOrigEdgeKeyLast();
+            result.add(edge);
+        }
+        result.sort(String::compareTo);
+        return result;
+    }
+}
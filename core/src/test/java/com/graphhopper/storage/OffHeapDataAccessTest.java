@@ -0,0 +1,88 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapDataAccessTest extends DataAccessTest {
+    @Override
+    public DataAccess createDataAccess(String name, int segmentSize) {
+        return new OffHeapDataAccess(name, directory, true, segmentSize);
+    }
+
+    @Test
+    public void testLoadFromRAMDataAccess() {
+        DataAccess da = new RAMDataAccess(name, directory, true, 128);
+        da.create(300);
+        da.setInt(127, 123_456);
+        da.setHeader(4, 7);
+        da.flush();
+        da.close();
+
+        da = createDataAccess(name);
+        assertEquals(DAType.OFF_HEAP_STORE, da.getType());
+        assertEquals(true, da.loadExisting());
+        assertEquals(3, da.getSegments());
+        assertEquals(123_456, da.getInt(127));
+        assertEquals(7, da.getHeader(4));
+        da.close();
+    }
+
+    @Test
+    public void testGrowBySegments() {
+        DataAccess da = createDataAccess(name, 128);
+        da.create(128);
+        for (int i = 1; i < 50; i++) {
+            assertEquals(i, da.getSegments());
+            da.ensureCapacity((i + 1) * 128L);
+            assertEquals((i + 1) * 128L, da.getCapacity());
+            assertEquals(0, da.getInt(i * 128L));
+            da.setInt(i * 128L, i);
+        }
+        for (int i = 1; i < 50; i++)
+            assertEquals(i, da.getInt(i * 128L));
+
+        da.trimTo(10 * 128);
+        assertEquals(10, da.getSegments());
+        assertEquals(9, da.getInt(9 * 128));
+        da.ensureCapacity(11 * 128);
+        assertEquals(0, da.getInt(10 * 128));
+        da.flush();
+        da.close();
+
+        // only the capacity is stored, not the memory that is reserved for growing
+        assertEquals(11 * 128 + AbstractDataAccess.HEADER_OFFSET, new File(directory + name).length());
+        da = createDataAccess(name, 128);
+        assertTrue(da.loadExisting());
+        assertEquals(11, da.getSegments());
+        assertEquals(9, da.getInt(9 * 128));
+        da.close();
+    }
+
+    @Test
+    public void testDAType() {
+        assertEquals(DAType.OFF_HEAP, DAType.fromString("off_heap"));
+        assertEquals(DAType.OFF_HEAP_STORE, DAType.fromString("OFF_HEAP_STORE"));
+        assertEquals("OFF_HEAP_STORE", DAType.OFF_HEAP_STORE.toString());
+    }
+}
@@ -20,19 +20,19 @@ package com.graphhopper.storage;
 
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.RandomGraph;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.IntStream;
 
 import static com.graphhopper.util.GHUtility.getEdge;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TurnCostStorageTest {
 
@@ -185,4 +185,62 @@ public class TurnCostStorageTest {
         assertFalse(iterator.next());
     }
 
+    @Test
+    public void sortedLookup() {
+        BaseGraph g = new BaseGraph.Builder(manager).withTurnCosts(true).create();
+        RandomGraph.start().seed(123).nodes(200).fill(g, speedEnc);
+        TurnCostStorage turnCostStorage = g.getTurnCostStorage();
+        GHUtility.addRandomTurnCosts(g, 123, null, carTurnCostEnc, 3, turnCostStorage);
+        Map<List<Integer>, Double> expected = getAllTurnCosts(turnCostStorage);
+        assertFalse(expected.isEmpty());
+        assertFalse(turnCostStorage.isSorted());
+
+        g.freeze();
+        assertTrue(turnCostStorage.isSorted());
+        assertEquals(expected, getAllTurnCosts(turnCostStorage));
+        assertEquals(turnCostStorage.getTurnCostsCount(), IntStream.range(0, g.getNodes()).map(turnCostStorage::getTurnCostsCount).sum());
+        for (int node = 0; node < g.getNodes(); node++) {
+            EdgeIterator inIter = g.createEdgeExplorer().setBaseNode(node);
+            while (inIter.next()) {
+                EdgeIterator outIter = g.createEdgeExplorer().setBaseNode(node);
+                while (outIter.next()) {
+                    List<Integer> key = Arrays.asList(inIter.getEdge(), node, outIter.getEdge());
+                    assertEquals(expected.getOrDefault(key, 0.0), turnCostStorage.get(carTurnCostEnc, inIter.getEdge(), node, outIter.getEdge()), key.toString());
+                }
+            }
+        }
+
+        // modifying existing entries keeps the order, adding new ones does not
+        List<Integer> first = expected.keySet().iterator().next();
+        turnCostStorage.set(carTurnCostEnc, first.get(0), first.get(1), first.get(2), 2);
+        expected.put(first, 2.0);
+        assertTrue(turnCostStorage.isSorted());
+        int node = first.get(1);
+        EdgeIterator iter = g.createEdgeExplorer().setBaseNode(node);
+        while (iter.next()) {
+            List<Integer> key = Arrays.asList(iter.getEdge(), node, iter.getEdge());
+            if (!expected.containsKey(key)) {
+                turnCostStorage.set(carTurnCostEnc, iter.getEdge(), node, iter.getEdge(), 1);
+                expected.put(key, 1.0);
+            }
+        }
+        assertFalse(turnCostStorage.isSorted());
+        assertEquals(expected, getAllTurnCosts(turnCostStorage));
+        assertEquals(expected.size(), turnCostStorage.getTurnCostsCount());
+        turnCostStorage.sortNodes();
+        assertEquals(expected, getAllTurnCosts(turnCostStorage));
+    }
+
+    private Map<List<Integer>, Double> getAllTurnCosts(TurnCostStorage turnCostStorage) {
+        Map<List<Integer>, Double> result = new HashMap<>();
+        TurnCostStorage.Iterator iterator = turnCostStorage.getAllTurnCosts();
+        while (iterator.next()) {
+            List<Integer> key = Arrays.asList(iterator.getFromEdge(), iterator.getViaNode(), iterator.getToEdge());
+            double cost = iterator.getCost(carTurnCostEnc);
+            assertEquals(cost, turnCostStorage.get(carTurnCostEnc, key.get(0), key.get(1), key.get(2)));
+            result.put(key, cost);
+        }
+        return result;
+    }
+
 }
@@ -679,4 +679,35 @@ public class LocationIndexTreeTest {
                     "1, 78, 1, PILLAR"), output);
         }
     }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void batchFindClosest(int threads) {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        RandomGraph.start().seed(42).nodes(500).curviness(0.2).fill(graph, speedEnc);
+        LocationIndexTree index = new LocationIndexTree(graph, graph.getDirectory());
+        index.setMinResolutionInMeter(50).prepareIndex();
+        BBox bounds = graph.getBounds();
+        Random rnd = new Random(42);
+        int points = 1000;
+        double[] lats = new double[points];
+        double[] lons = new double[points];
+        for (int i = 0; i < points; i++) {
+            lats[i] = bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat);
+            lons[i] = bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon);
+        }
+        EdgeFilter edgeFilter = edge -> edge.getEdge() % 3 != 0;
+        List<Snap> snaps = index.findClosest(lats, lons, edgeFilter, threads);
+        assertEquals(points, snaps.size());
+        for (int i = 0; i < points; i++) {
+            Snap expected = index.findClosest(lats[i], lons[i], edgeFilter);
+            Snap snap = snaps.get(i);
+            assertTrue(snap.isValid());
+            assertEquals(expected.getClosestNode(), snap.getClosestNode());
+            assertEquals(expected.getClosestEdge().getEdge(), snap.getClosestEdge().getEdge());
+            assertEquals(expected.getWayIndex(), snap.getWayIndex());
+            assertEquals(expected.getSnappedPosition(), snap.getSnappedPosition());
+            assertEquals(expected.getQueryDistance(), snap.getQueryDistance(), 1.e-6);
+        }
+    }
 }
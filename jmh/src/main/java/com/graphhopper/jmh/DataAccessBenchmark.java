@@ -0,0 +1,90 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jmh;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.util.Helper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading ints from the different {@link DataAccess} implementations, sequentially and at random positions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DataAccessBenchmark {
+    private static final int READS = 1 << 16;
+
+    @Param({"RAM_STORE", "MMAP", "OFF_HEAP_STORE"})
+    public String daType;
+    @Param("jmh/target/data-access")
+    public String location;
+    @Param("10000000")
+    public int ints;
+
+    private Directory dir;
+    private DataAccess da;
+    private long[] randomPositions;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Helper.removeDir(new File(location));
+        dir = new GHDirectory(location, DAType.fromString(daType)).create();
+        da = dir.create("ints").create(4L * ints);
+        for (int i = 0; i < ints; i++)
+            da.setInt(4L * i, i);
+        Random rnd = new Random(123);
+        randomPositions = new long[READS];
+        for (int i = 0; i < READS; i++)
+            randomPositions[i] = 4L * rnd.nextInt(ints);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dir.close();
+        Helper.removeDir(new File(location));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READS)
+    public long getIntSequential() {
+        long sum = 0;
+        for (int i = 0; i < READS; i++)
+            sum += da.getInt(4L * i);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READS)
+    public long getIntRandom() {
+        long sum = 0;
+        for (long pos : randomPositions)
+            sum += da.getInt(pos);
+        return sum;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jmh;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures iterating the edges of the {@link com.graphhopper.storage.BaseGraph} and calculating their weights. The
+ * results are given per full pass over the graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GraphBenchmark {
+
+    private EdgeExplorer explorer;
+
+    @Setup(Level.Trial)
+    public void setup(GraphHopperState state) {
+        explorer = state.graph.createEdgeExplorer();
+    }
+
+    @Benchmark
+    public long edgeExplorer(GraphHopperState state) {
+        long sum = 0;
+        for (int node = 0; node < state.graph.getNodes(); node++) {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+                sum += iter.getAdjNode();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double allEdgesDistance(GraphHopperState state) {
+        double sum = 0;
+        AllEdgesIterator iter = state.graph.getAllEdges();
+        while (iter.next())
+            sum += iter.getDistance();
+        return sum;
+    }
+
+    @Benchmark
+    public double calcEdgeWeight(GraphHopperState state) {
+        double sum = 0;
+        AllEdgesIterator iter = state.graph.getAllEdges();
+        while (iter.next()) {
+            double fwd = state.weighting.calcEdgeWeight(iter, false);
+            double bwd = state.weighting.calcEdgeWeight(iter, true);
+            // inaccessible edges have an infinite weight
+            if (Double.isFinite(fwd)) sum += fwd;
+            if (Double.isFinite(bwd)) sum += bwd;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jmh;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.Profile;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHStorage;
+import com.graphhopper.storage.CHUpwardStorage;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.BBox;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+
+/**
+ * Imports (or loads) the given OSM file with a car profile including CH once per fork. All benchmarks using this state
+ * share the same random query points, so the numbers are comparable between runs and commits. By default the Andorra
+ * extract bundled with the core module is used, which requires running the benchmarks from the repository root.
+ */
+@State(Scope.Benchmark)
+public class GraphHopperState {
+    public static final int POINTS = 1000;
+
+    @Param("core/files/andorra.osm.pbf")
+    public String osmFile;
+    @Param("jmh/target/graph-cache")
+    public String graphLocation;
+
+    public GraphHopper hopper;
+    public BaseGraph graph;
+    public LocationIndexTree locationIndex;
+    public Weighting weighting;
+    public RoutingCHGraph chGraph;
+    // the same CH graph, but using the upward layout
+    public RoutingCHGraph chUpwardGraph;
+    public double[] lats;
+    public double[] lons;
+    public Snap[] snaps;
+    // the tower nodes closest to the query points
+    public int[] nodes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        hopper = new GraphHopper();
+        hopper.setOSMFile(osmFile);
+        hopper.setGraphHopperLocation(graphLocation);
+        hopper.setEncodedValuesString("car_access, car_average_speed, road_access, road_environment, max_speed, ferry_speed");
+        Profile profile = new Profile("car").setCustomModel(GHUtility.loadCustomModelFromJar("car.json"));
+        hopper.setProfiles(profile);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.getRouterConfig().setSearchStatePoolSize(2);
+        hopper.importOrLoad();
+
+        graph = hopper.getBaseGraph();
+        locationIndex = (LocationIndexTree) hopper.getLocationIndex();
+        weighting = hopper.createWeighting(profile, new PMap());
+        chGraph = hopper.getCHGraphs().get("car");
+        CHStorage chStorage = ((RoutingCHGraphImpl) chGraph).getCHStorage();
+        CHUpwardStorage chUpwardStorage = CHUpwardStorage.fromCHStorage(graph, chStorage, chGraph.getWeighting(), "car");
+        chUpwardGraph = new RoutingCHGraphImpl(graph, chStorage, chUpwardStorage, chGraph.getWeighting());
+
+        Random rnd = new Random(123);
+        BBox bounds = graph.getBounds();
+        lats = new double[POINTS];
+        lons = new double[POINTS];
+        snaps = new Snap[POINTS];
+        nodes = new int[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            Snap snap;
+            do {
+                lats[i] = bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat);
+                lons[i] = bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon);
+                snap = locationIndex.findClosest(lats[i], lons[i], EdgeFilter.ALL_EDGES);
+            } while (!snap.isValid());
+            snaps[i] = snap;
+            nodes[i] = snap.getClosestNode();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hopper.close();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jmh;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.index.Snap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.graphhopper.jmh.GraphHopperState.POINTS;
+
+/**
+ * Measures {@link com.graphhopper.storage.index.LocationIndexTree#findClosest} for random points within the bounds
+ * of the graph. The results are given per lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LocationIndexBenchmark {
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public int findClosest(GraphHopperState state) {
+        int sum = 0;
+        for (int i = 0; i < POINTS; i++)
+            sum += state.locationIndex.findClosest(state.lats[i], state.lons[i], EdgeFilter.ALL_EDGES).getClosestNode();
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public int findClosestBatch(GraphHopperState state) {
+        int sum = 0;
+        List<Snap> snaps = state.locationIndex.findClosest(state.lats, state.lons, EdgeFilter.ALL_EDGES);
+        for (Snap snap : snaps)
+            sum += snap.getClosestNode();
+        return sum;
+    }
+}
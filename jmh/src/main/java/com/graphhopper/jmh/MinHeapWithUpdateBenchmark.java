@@ -0,0 +1,80 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jmh;
+
+import com.graphhopper.coll.MinHeapWithUpdate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MinHeapWithUpdate} by pushing, updating and polling a fixed set of random values. The results are
+ * given per element.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MinHeapWithUpdateBenchmark {
+    private static final int SIZE = 100_000;
+
+    private MinHeapWithUpdate heap;
+    private float[] values;
+    private float[] updatedValues;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        heap = new MinHeapWithUpdate(SIZE);
+        Random rnd = new Random(123);
+        values = new float[SIZE];
+        updatedValues = new float[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            values[i] = rnd.nextFloat() * 1000;
+            updatedValues[i] = values[i] * rnd.nextFloat();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int pushPoll() {
+        heap.clear();
+        for (int i = 0; i < SIZE; i++)
+            heap.push(i, values[i]);
+        int sum = 0;
+        while (!heap.isEmpty())
+            sum += heap.poll();
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int pushUpdatePoll() {
+        heap.clear();
+        for (int i = 0; i < SIZE; i++)
+            heap.push(i, values[i]);
+        for (int i = 0; i < SIZE; i++)
+            heap.update(i, updatedValues[i]);
+        int sum = 0;
+        while (!heap.isEmpty())
+            sum += heap.poll();
+        return sum;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jmh;
+
+import com.graphhopper.routing.AStarBidirection;
+import com.graphhopper.routing.AStarBidirectionArray;
+import com.graphhopper.routing.DijkstraBidirectionCH;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.TraversalMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.graphhopper.jmh.GraphHopperState.POINTS;
+
+/**
+ * Measures route calculations between the query points of {@link GraphHopperState}. The routing algorithms run on the
+ * base graph between the tower nodes closest to the query points, so they can be compared independently of the
+ * creation of the {@link QueryGraph}, which is measured separately. The results are given per query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RoutingBenchmark {
+    private static final int QUERIES = POINTS / 2;
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public double aStarBidirection(GraphHopperState state) {
+        double sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            AStarBidirection algo = new AStarBidirection(state.graph, state.weighting, TraversalMode.NODE_BASED);
+            sum += algo.calcPath(state.nodes[2 * i], state.nodes[2 * i + 1]).getWeight();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public double aStarBidirectionArray(GraphHopperState state) {
+        double sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            AStarBidirectionArray algo = new AStarBidirectionArray(state.graph, state.weighting, TraversalMode.NODE_BASED);
+            algo.setSearchStatePool(state.hopper.getSearchStatePool());
+            sum += algo.calcPath(state.nodes[2 * i], state.nodes[2 * i + 1]).getWeight();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public double dijkstraBidirectionCH(GraphHopperState state) {
+        double sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            DijkstraBidirectionCH algo = new DijkstraBidirectionCH(state.chGraph);
+            sum += algo.calcPath(state.nodes[2 * i], state.nodes[2 * i + 1]).getWeight();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public double dijkstraBidirectionCHUpward(GraphHopperState state) {
+        double sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            DijkstraBidirectionCH algo = new DijkstraBidirectionCH(state.chUpwardGraph);
+            sum += algo.calcPath(state.nodes[2 * i], state.nodes[2 * i + 1]).getWeight();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int createQueryGraph(GraphHopperState state) {
+        int sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            QueryGraph queryGraph = QueryGraph.create(state.graph, state.snaps[2 * i], state.snaps[2 * i + 1]);
+            sum += queryGraph.getNodes();
+        }
+        return sum;
+    }
+}
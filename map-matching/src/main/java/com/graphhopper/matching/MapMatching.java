@@ -42,6 +42,10 @@ import com.graphhopper.util.shapes.BBox;
 import org.locationtech.jts.geom.Envelope;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -66,12 +70,18 @@ import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
  * @author kodonnell
  */
 public class MapMatching {
+    /**
+     * Newson and Krumm discard transitions whose route is more than 2km longer than the linear distance between the
+     * observations. Their transition probability is negligible anyway, so the routers do not need to look further.
+     */
+    static final double MAX_TRANSITION_DETOUR = 2000;
     private final BaseGraph graph;
     private final Router router;
     private final LocationIndexTree locationIndex;
     private double measurementErrorSigma = 10.0;
     private double transitionProbabilityBeta = 2.0;
     private double uTurnCost = 40.0;
+    private ExecutorService transitionExecutor;
     private final DistanceCalc distanceCalc = new DistancePlaneProjection();
     private QueryGraph queryGraph;
     private boolean collectDebugInfo = false;
@@ -126,6 +136,11 @@ public class MapMatching {
         BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileStr));
         DefaultSnapFilter snapFilter = new DefaultSnapFilter(weighting, inSubnetworkEnc);
         int maxVisitedNodes = hints.getInt(Parameters.Routing.MAX_VISITED_NODES, Integer.MAX_VALUE);
+        boolean oneToMany = hints.getBool(Parameters.MapMatching.ONE_TO_MANY, false);
+        // the goal-directed search of LM cannot be used for multiple targets
+        if (oneToMany && landmarks != null)
+            throw new IllegalArgumentException(Parameters.MapMatching.ONE_TO_MANY + " cannot be used with LM, use "
+                    + Parameters.Landmark.DISABLE + "=true");
 
         Router router = new Router() {
             QueryGraph queryGraph;
@@ -151,7 +166,18 @@ public class MapMatching {
 
             @Override
             public List<Path> calcPaths(int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges) {
+                return calcPaths(fromNode, fromOutEdge, toNodes, toInEdges, Double.POSITIVE_INFINITY);
+            }
+
+            @Override
+            public List<Path> calcPaths(int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges, double maxDistance) {
                 assert (toNodes.length == toInEdges.length);
+                if (oneToMany) {
+                    MatchCandidateDijkstra dijkstra = new MatchCandidateDijkstra(queryGraph, queryGraphWeighting);
+                    dijkstra.setMaxVisitedNodes(maxVisitedNodes);
+                    dijkstra.setMaxDistance(maxDistance);
+                    return dijkstra.calcPaths(fromNode, fromOutEdge, toNodes, toInEdges);
+                }
                 List<Path> result = new ArrayList<>();
                 for (int i = 0; i < toNodes.length; i++) {
                     result.add(calcOnePath(fromNode, toNodes[i], fromOutEdge, toInEdges[i]));
@@ -214,6 +240,17 @@ public class MapMatching {
         this.uTurnCost = uTurnCost;
     }
 
+    /**
+     * Sets the executor that calculates the transitions from the candidates of one time step to the candidates of the
+     * next time step concurrently. Per default (null) they are calculated by the calling thread. The executor is not
+     * shut down, so it can be shared by several instances and should have a bounded number of threads. The
+     * {@link Router} must be thread-safe if an executor is set, which is the case for the router created by
+     * {@link #routerFromGraphHopper}. The result does not depend on the executor.
+     */
+    public void setTransitionExecutor(ExecutorService transitionExecutor) {
+        this.transitionExecutor = transitionExecutor;
+    }
+
     public void setCollectDebugInfo(boolean collectDebugInfo) {
         this.collectDebugInfo = collectDebugInfo;
     }
@@ -222,6 +259,26 @@ public class MapMatching {
         return debugInfo;
     }
 
+    BaseGraph getGraph() {
+        return graph;
+    }
+
+    Router getRouter() {
+        return router;
+    }
+
+    double getMeasurementErrorSigma() {
+        return measurementErrorSigma;
+    }
+
+    double getTransitionProbabilityBeta() {
+        return transitionProbabilityBeta;
+    }
+
+    double getUTurnCost() {
+        return uTurnCost;
+    }
+
     public MatchResult match(List<Observation> observations) {
         List<Observation> filteredObservations = filterObservations(observations);
         statistics.put("filteredObservations", filteredObservations.size());
@@ -495,32 +552,7 @@ public class MapMatching {
             Collection<Snap> splits = splitsPerObservation.get(i);
             List<State> candidates = new ArrayList<>();
             for (Snap split : splits) {
-                if (queryGraph.isVirtualNode(split.getClosestNode())) {
-                    List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
-                    EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
-                    while (iter.next()) {
-                        if (!queryGraph.isVirtualEdge(iter.getEdge())) {
-                            throw new RuntimeException("Virtual nodes must only have virtual edges "
-                                    + "to adjacent nodes.");
-                        }
-                        virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
-                    }
-                    if (virtualEdges.size() != 2) {
-                        throw new RuntimeException("Each virtual node must have exactly 2 "
-                                + "virtual edges (reverse virtual edges are not returned by the "
-                                + "EdgeIterator");
-                    }
-
-                    // Create a directed candidate for each of the two possible directions through
-                    // the virtual node. We need to add candidates for both directions because
-                    // we don't know yet which is the correct one. This will be figured
-                    // out by the Viterbi algorithm.
-                    candidates.add(new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)));
-                    candidates.add(new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
-                } else {
-                    // Create an undirected candidate for the real node.
-                    candidates.add(new State(observation, split));
-                }
+                addCandidates(queryGraph, observation, split, candidates);
             }
 
             timeSteps.add(new ObservationWithCandidateStates(observation, candidates));
@@ -528,6 +560,39 @@ public class MapMatching {
         return timeSteps;
     }
 
+    /**
+     * Adds the candidates for the given snap, which must be part of the given query graph: two directed candidates for
+     * a virtual node and an undirected candidate for a real node.
+     */
+    static void addCandidates(QueryGraph queryGraph, Observation observation, Snap split, List<State> candidates) {
+        if (queryGraph.isVirtualNode(split.getClosestNode())) {
+            List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
+            EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
+            while (iter.next()) {
+                if (!queryGraph.isVirtualEdge(iter.getEdge())) {
+                    throw new RuntimeException("Virtual nodes must only have virtual edges "
+                            + "to adjacent nodes.");
+                }
+                virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
+            }
+            if (virtualEdges.size() != 2) {
+                throw new RuntimeException("Each virtual node must have exactly 2 "
+                        + "virtual edges (reverse virtual edges are not returned by the "
+                        + "EdgeIterator");
+            }
+
+            // Create a directed candidate for each of the two possible directions through
+            // the virtual node. We need to add candidates for both directions because
+            // we don't know yet which is the correct one. This will be figured
+            // out by the Viterbi algorithm.
+            candidates.add(new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)));
+            candidates.add(new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
+        } else {
+            // Create an undirected candidate for the real node.
+            candidates.add(new State(observation, split));
+        }
+    }
+
     static class Label {
         int timeStep;
         State state;
@@ -577,6 +642,8 @@ public class MapMatching {
         final HmmProbabilities probabilities = new HmmProbabilities(measurementErrorSigma, transitionProbabilityBeta);
         final Map<State, Label> labels = new HashMap<>();
         Map<Transition<State>, Path> roadPaths = new HashMap<>();
+        // the transitions are deterministic, so we can keep them in case a candidate is reached again with a better label
+        final Map<State, List<Path>> transitionPaths = new HashMap<>();
 
         PriorityQueue<Label> q = new PriorityQueue<>(Comparator.comparing(qe -> qe.minusLogProbability));
         for (State candidate : timeSteps.get(0).candidates) {
@@ -620,11 +687,20 @@ public class MapMatching {
             final double linearDistance = distanceCalc.calcDist(timeStep.observation.getPoint().lat, timeStep.observation.getPoint().lon,
                     nextTimeStep.observation.getPoint().lat, nextTimeStep.observation.getPoint().lon)
                     + nextTimeStep.observation.getAccumulatedLinearDistanceToPrevious();
-            int fromNode = from.getSnap().getClosestNode();
-            int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
-            int[] toNodes = nextTimeStep.candidates.stream().mapToInt(c -> c.getSnap().getClosestNode()).toArray();
-            int[] toInEdges = nextTimeStep.candidates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
-            List<Path> paths = router.calcPaths(fromNode, fromOutEdge, toNodes, toInEdges);
+            List<Path> paths;
+            if (transitionExecutor == null) {
+                paths = calcTransitionPaths(from, nextTimeStep, linearDistance);
+            } else {
+                paths = transitionPaths.get(from);
+                if (paths == null) {
+                    // calculate the transitions of all the candidates of this time step we reached so far at once
+                    List<State> batch = timeStep.candidates.stream().filter(c -> c == from || labels.containsKey(c) && !transitionPaths.containsKey(c)).toList();
+                    List<List<Path>> batchPaths = calcTransitionPathsConcurrently(batch, nextTimeStep, linearDistance);
+                    for (int i = 0; i < batch.size(); i++)
+                        transitionPaths.put(batch.get(i), batchPaths.get(i));
+                    paths = transitionPaths.get(from);
+                }
+            }
             for (int i = 0; i < nextTimeStep.candidates.size(); i++) {
                 State to = nextTimeStep.candidates.get(i);
                 Path path = paths.get(i);
@@ -679,6 +755,35 @@ public class MapMatching {
         return result;
     }
 
+    private List<Path> calcTransitionPaths(State from, ObservationWithCandidateStates nextTimeStep, double linearDistance) {
+        int fromNode = from.getSnap().getClosestNode();
+        int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
+        int[] toNodes = nextTimeStep.candidates.stream().mapToInt(c -> c.getSnap().getClosestNode()).toArray();
+        int[] toInEdges = nextTimeStep.candidates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
+        return router.calcPaths(fromNode, fromOutEdge, toNodes, toInEdges, linearDistance + MAX_TRANSITION_DETOUR);
+    }
+
+    private List<List<Path>> calcTransitionPathsConcurrently(List<State> fromStates, ObservationWithCandidateStates nextTimeStep, double linearDistance) {
+        if (fromStates.size() == 1)
+            return List.of(calcTransitionPaths(fromStates.get(0), nextTimeStep, linearDistance));
+        List<Callable<List<Path>>> tasks = new ArrayList<>(fromStates.size());
+        for (State from : fromStates)
+            tasks.add(() -> calcTransitionPaths(from, nextTimeStep, linearDistance));
+        try {
+            List<List<Path>> result = new ArrayList<>(tasks.size());
+            for (Future<List<Path>> future : transitionExecutor.invokeAll(tasks))
+                result.add(future.get());
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     private List<EdgeMatch> prepareEdgeMatches(List<SequenceState<State, Observation, Path>> seq) {
         // This creates a list of directed edges (EdgeIteratorState instances turned the right way),
         // each associated with 0 or more of the observations.
@@ -795,8 +900,20 @@ public class MapMatching {
 
         void setQueryGraph(QueryGraph queryGraph, Weighting queryGraphWeighting);
 
+        /**
+         * Calculates the paths from one candidate to all candidates of the next time step. This is called from
+         * multiple threads if a transition executor is set, see {@link #setTransitionExecutor}.
+         */
         List<Path> calcPaths(int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges);
 
+        /**
+         * Like {@link #calcPaths(int, int, int[], int[])}, but paths that are longer than the given distance are not
+         * needed. This allows the router to stop early if some candidates cannot be reached.
+         */
+        default List<Path> calcPaths(int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges, double maxDistance) {
+            return calcPaths(fromNode, fromOutEdge, toNodes, toInEdges);
+        }
+
         default long getVisitedNodes() {
             return 0L;
         }
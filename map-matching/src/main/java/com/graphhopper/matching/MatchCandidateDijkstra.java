@@ -0,0 +1,156 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.ObjectDoubleIdentityHashMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.PathExtractor;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * An edge-based Dijkstra that calculates the paths from one start to several targets with a single search. Just like
+ * for {@link com.graphhopper.routing.EdgeToEdgeRoutingAlgorithm} the first edge of the paths and the last edge of
+ * every path can be restricted.
+ * <p>
+ * Without a limit a target that cannot be reached has us explore the whole graph, so the search should be bounded by
+ * {@link #setMaxDistance} or {@link #setMaxVisitedNodes}.
+ */
+class MatchCandidateDijkstra extends Dijkstra {
+    private int fromOutEdge = ANY_EDGE;
+    private int[] toInEdges;
+    private SPTEntry[] targetEntries;
+    private IntObjectMap<IntArrayList> targetsByNode;
+    private int remainingTargets;
+    private double maxDistance = Double.POSITIVE_INFINITY;
+    // the distances of the entries, only used if the maximum distance is set
+    private ObjectDoubleIdentityHashMap<SPTEntry> distances;
+
+    MatchCandidateDijkstra(Graph graph, Weighting weighting) {
+        super(graph, weighting, TraversalMode.EDGE_BASED);
+    }
+
+    @Override
+    protected void initCollections(int size) {
+        super.initCollections(50);
+    }
+
+    /**
+     * Paths that are longer than the given distance are not explored. Note that this is not the same as a weight
+     * limit, i.e. if the shortest (minimum weight) path to a target is too long we might find a longer (in terms of
+     * weight) path that is shorter than the maximum distance.
+     */
+    void setMaxDistance(double maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * @return the paths to the given targets, in the same order. Paths to targets that cannot be reached (within the
+     * maximum number of visited nodes or the maximum distance) are not found.
+     */
+    List<Path> calcPaths(int from, int fromOutEdge, int[] toNodes, int[] toInEdges) {
+        if (toNodes.length != toInEdges.length)
+            throw new IllegalArgumentException("toNodes and toInEdges must have the same length");
+        checkAlreadyRun();
+        setupFinishTime();
+        this.fromOutEdge = fromOutEdge;
+        this.toInEdges = toInEdges;
+        targetEntries = new SPTEntry[toNodes.length];
+        targetsByNode = new GHIntObjectHashMap<>(toNodes.length);
+        remainingTargets = 0;
+        for (int i = 0; i < toNodes.length; i++) {
+            // a target that can only be reached via an edge we are not allowed to use would have us explore the whole
+            // graph (or up to the maximum number of visited nodes). this happens e.g. for candidates on one-ways.
+            if (toInEdges[i] != ANY_EDGE && Double.isInfinite(weighting.calcEdgeWeight(graph.getEdgeIteratorState(toInEdges[i], toNodes[i]), false)))
+                continue;
+            remainingTargets++;
+            IntArrayList targets = targetsByNode.get(toNodes[i]);
+            if (targets == null) {
+                targets = new IntArrayList(2);
+                targetsByNode.put(toNodes[i], targets);
+            }
+            targets.add(i);
+        }
+
+        currEdge = new SPTEntry(from, 0);
+        if (Double.isFinite(maxDistance)) {
+            distances = new ObjectDoubleIdentityHashMap<>(50);
+            distances.put(currEdge, 0);
+        }
+        if (!finished()) {
+            fromHeap.add(currEdge);
+            runAlgo();
+        }
+        List<Path> paths = new ArrayList<>(toNodes.length);
+        for (SPTEntry entry : targetEntries)
+            paths.add(entry == null ? createEmptyPath() : PathExtractor.extractPath(graph, weighting, entry));
+        return paths;
+    }
+
+    @Override
+    protected boolean accept(EdgeIteratorState iter, int prevOrNextEdgeId) {
+        // only the start entry has no parent
+        if (currEdge.parent == null && fromOutEdge != ANY_EDGE && iter.getEdge() != fromOutEdge)
+            return false;
+        if (distances != null && distances.get(currEdge) + iter.getDistance() > maxDistance)
+            return false;
+        return super.accept(iter, prevOrNextEdgeId);
+    }
+
+    @Override
+    protected void updateBestPath(EdgeIteratorState edgeState, SPTEntry bestSPTEntry, int traversalId) {
+        if (distances != null)
+            distances.put(bestSPTEntry, distances.get(bestSPTEntry.parent) + edgeState.getDistance());
+    }
+
+    @Override
+    protected boolean finished() {
+        IntArrayList targets = targetsByNode.get(currEdge.adjNode);
+        if (targets != null) {
+            for (IntCursor target : targets) {
+                if (targetEntries[target.value] != null)
+                    continue;
+                int toInEdge = toInEdges[target.value];
+                // just like for the bidirectional algorithms the start node is only reached without any edges if
+                // neither the out edge nor the in edge is restricted
+                boolean reached = toInEdge == ANY_EDGE
+                        ? currEdge.edge != NO_EDGE || fromOutEdge == ANY_EDGE
+                        : currEdge.edge == toInEdge;
+                if (reached) {
+                    targetEntries[target.value] = currEdge;
+                    remainingTargets--;
+                }
+            }
+        }
+        return remainingTargets == 0;
+    }
+}
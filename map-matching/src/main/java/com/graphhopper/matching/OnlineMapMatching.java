@@ -0,0 +1,419 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.*;
+
+/**
+ * Matches the observations of a trace one at a time, e.g. for a live GPS feed, instead of the whole trace at once like
+ * {@link MapMatching#match}. It uses the same hidden Markov model, but the Viterbi algorithm only runs forward: the
+ * candidates of a new observation are connected to the candidates of the previous one, using a query graph that only
+ * contains the snaps of these two observations.
+ * <p>
+ * The edge matches are finalized as soon as the most likely paths to all current candidates share a common beginning,
+ * because this part of the match cannot change anymore. To bound the latency and the memory usage at most
+ * {@link #setWindowSize window size} observations are kept undecided. If the candidates did not converge by then, the
+ * older part of the currently most likely path is finalized.
+ * <p>
+ * This class is not thread-safe, use one instance per trace.
+ */
+public class OnlineMapMatching {
+    private final MapMatching mapMatching;
+    private final BaseGraph graph;
+    private final MapMatching.Router router;
+    private final HmmProbabilities probabilities;
+    private final double measurementErrorSigma;
+    private final double uTurnCost;
+    private final DistanceCalc distanceCalc = new DistancePlaneProjection();
+    private int windowSize = 20;
+
+    private int timeStep = -1;
+    // the last observation that was used for matching, its (unmodified) snaps and the best labels of its candidates
+    private Observation lastObservation;
+    private List<Snap> lastSnaps;
+    private List<Label> labels = new ArrayList<>();
+    // the last observation if it was skipped, and the linear distance since the last observation used for matching
+    private Observation prevObservation;
+    private Observation skippedObservation;
+    private double accumulatedDistance;
+    private Label finalized;
+    // the last edge match is only complete once the path continues on another edge
+    private EdgeIteratorState openEdge;
+    private List<State> openStates = new ArrayList<>();
+    // the next edge match starts a new segment, i.e. it does not continue the previous one
+    private boolean segmentStart = true;
+    private final Set<EdgeMatch> segmentStarts = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Uses the router and the settings of the given map matching, changing them afterwards has no effect.
+     */
+    public OnlineMapMatching(MapMatching mapMatching) {
+        this.mapMatching = mapMatching;
+        this.graph = mapMatching.getGraph();
+        this.router = mapMatching.getRouter();
+        this.measurementErrorSigma = mapMatching.getMeasurementErrorSigma();
+        this.uTurnCost = mapMatching.getUTurnCost();
+        this.probabilities = new HmmProbabilities(measurementErrorSigma, mapMatching.getTransitionProbabilityBeta());
+    }
+
+    /**
+     * The maximum number of observations that are not finalized yet. A larger window makes it more likely that the
+     * result is the same as for {@link MapMatching#match}, but increases the delay until edges are finalized.
+     */
+    public OnlineMapMatching setWindowSize(int windowSize) {
+        if (windowSize < 1)
+            throw new IllegalArgumentException("windowSize must be positive, but was: " + windowSize);
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    /**
+     * Adds the next observation of the trace. Just like for {@link MapMatching#filterObservations} observations that
+     * are too close to the previous one are skipped, and so are observations without any road nearby.
+     *
+     * @return the edge matches that were finalized due to this observation, in the order of the trace. This is often
+     * empty, because it takes a few observations until it is clear which candidate was the right one.
+     */
+    public List<EdgeMatch> add(Observation observation) {
+        List<EdgeMatch> result = new ArrayList<>();
+        segmentStarts.clear();
+        if (lastObservation != null) {
+            accumulatedDistance += calcDist(prevObservation, observation);
+            prevObservation = observation;
+            if (calcDist(lastObservation, observation) <= 2 * measurementErrorSigma) {
+                skippedObservation = observation;
+                return result;
+            }
+        }
+        addTimeStep(observation, result);
+        return result;
+    }
+
+    /**
+     * Finalizes the match of all observations added so far. Afterwards this object can be used for the next trace.
+     *
+     * @return the remaining edge matches
+     */
+    public List<EdgeMatch> finish() {
+        List<EdgeMatch> result = new ArrayList<>();
+        segmentStarts.clear();
+        // we always use the last observation, see MapMatching#filterObservations
+        if (skippedObservation != null)
+            addTimeStep(skippedObservation, result);
+        if (!labels.isEmpty())
+            finalizeUntil(getBestLabel(), result);
+        closeEdgeMatch(result);
+        segmentStart = true;
+
+        timeStep = -1;
+        lastObservation = null;
+        lastSnaps = null;
+        labels = new ArrayList<>();
+        prevObservation = null;
+        skippedObservation = null;
+        accumulatedDistance = 0;
+        finalized = null;
+        return result;
+    }
+
+    /**
+     * The match starts over if none of the candidates of an observation can be reached from the previous ones, see
+     * {@link #add}, and so does the next trace after {@link #finish}.
+     *
+     * @return true if the given edge match, which must have been returned by the last call of {@link #add} or
+     * {@link #finish}, is the first one of the trace or the first one after the match started over
+     */
+    public boolean isSegmentStart(EdgeMatch edgeMatch) {
+        return segmentStarts.contains(edgeMatch);
+    }
+
+    /**
+     * @return the most likely candidate of the last observation, which is not final yet, or null if there is none
+     */
+    public State getCurrentState() {
+        return labels.isEmpty() ? null : getBestLabel().state;
+    }
+
+    private void addTimeStep(Observation observation, List<EdgeMatch> result) {
+        List<Snap> snaps = mapMatching.findCandidateSnaps(observation.getPoint().lat, observation.getPoint().lon);
+        skippedObservation = null;
+        if (snaps.isEmpty())
+            return;
+        timeStep++;
+        List<Label> nextLabels = Collections.emptyList();
+        if (lastObservation != null) {
+            observation.setAccumulatedLinearDistanceToPrevious(accumulatedDistance - calcDist(lastObservation, observation));
+            nextLabels = calcLabels(observation, snaps);
+            if (nextLabels.isEmpty()) {
+                // none of the candidates can be reached from the previous ones. instead of failing like
+                // MapMatching#match we finish the current match and start over with this observation.
+                finalizeUntil(getBestLabel(), result);
+                closeEdgeMatch(result);
+                segmentStart = true;
+                finalized = null;
+            }
+        }
+        if (nextLabels.isEmpty()) {
+            observation.setAccumulatedLinearDistanceToPrevious(0);
+            nextLabels = calcInitialLabels(observation, snaps);
+        }
+        labels = nextLabels;
+        lastObservation = observation;
+        lastSnaps = snaps;
+        prevObservation = observation;
+        accumulatedDistance = 0;
+        finalizeConverged(result);
+    }
+
+    private List<Label> calcInitialLabels(Observation observation, List<Snap> snaps) {
+        List<Snap> copies = copySnaps(snaps);
+        QueryGraph queryGraph = QueryGraph.create(graph, copies);
+        List<State> candidates = createCandidates(queryGraph, observation, copies);
+        Label[] result = new Label[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            State candidate = candidates.get(i);
+            result[i] = new Label(candidate, copies.indexOf(candidate.getSnap()), timeStep, null,
+                    -probabilities.emissionLogProbability(candidate.getSnap().getQueryDistance()), null);
+        }
+        return addUTurns(candidates, copies, result);
+    }
+
+    private List<Label> calcLabels(Observation observation, List<Snap> snaps) {
+        // the query graph modifies the snaps, and we need the snaps of the last observation again for the next one
+        List<Snap> fromSnaps = copySnaps(lastSnaps);
+        List<Snap> toSnaps = copySnaps(snaps);
+        List<Snap> allSnaps = new ArrayList<>(fromSnaps);
+        allSnaps.addAll(toSnaps);
+        QueryGraph queryGraph = QueryGraph.create(graph, allSnaps);
+        router.setQueryGraph(queryGraph, queryGraph.wrapWeighting(router.getWeighting()));
+        List<State> fromCandidates = createCandidates(queryGraph, lastObservation, fromSnaps);
+        List<State> toCandidates = createCandidates(queryGraph, observation, toSnaps);
+        int[] toNodes = toCandidates.stream().mapToInt(c -> c.getSnap().getClosestNode()).toArray();
+        int[] toInEdges = toCandidates.stream().mapToInt(c -> c.isOnDirectedEdge() ? c.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
+        double linearDistance = calcDist(lastObservation, observation) + observation.getAccumulatedLinearDistanceToPrevious();
+
+        Label[] result = new Label[toCandidates.size()];
+        for (Label label : labels) {
+            // the candidate of the last observation within the new query graph
+            State from = findCandidate(fromCandidates, fromSnaps, label);
+            if (from == null)
+                continue;
+            int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
+            List<Path> paths = router.calcPaths(from.getSnap().getClosestNode(), fromOutEdge, toNodes, toInEdges,
+                    linearDistance + MapMatching.MAX_TRANSITION_DETOUR);
+            for (int i = 0; i < toCandidates.size(); i++) {
+                Path path = paths.get(i);
+                if (!path.isFound())
+                    continue;
+                State to = toCandidates.get(i);
+                double minusLogProbability = label.minusLogProbability
+                        - probabilities.emissionLogProbability(to.getSnap().getQueryDistance())
+                        - probabilities.transitionLogProbability(path.getDistance(), linearDistance);
+                if (result[i] == null || minusLogProbability < result[i].minusLogProbability)
+                    result[i] = new Label(to, toSnaps.indexOf(to.getSnap()), timeStep, label, minusLogProbability, path);
+            }
+        }
+        return addUTurns(toCandidates, toSnaps, result);
+    }
+
+    /**
+     * Allows a U-turn between the two directed candidates of the same snap, see MapMatching#computeViterbiSequence.
+     *
+     * @return the labels that are not null
+     */
+    private List<Label> addUTurns(List<State> candidates, List<Snap> snaps, Label[] labels) {
+        for (int a = 0; a < candidates.size(); a++) {
+            if (!candidates.get(a).isOnDirectedEdge()) continue;
+            for (int b = a + 1; b < candidates.size(); b++) {
+                if (!candidates.get(b).isOnDirectedEdge() || candidates.get(a).getSnap().getClosestNode() != candidates.get(b).getSnap().getClosestNode())
+                    continue;
+                Label labelA = labels[a], labelB = labels[b];
+                if (labelA != null && (labelB == null || labelA.minusLogProbability + uTurnCost < labelB.minusLogProbability))
+                    labels[b] = new Label(candidates.get(b), snaps.indexOf(candidates.get(b).getSnap()), timeStep, labelA, labelA.minusLogProbability + uTurnCost, null);
+                else if (labelB != null && (labelA == null || labelB.minusLogProbability + uTurnCost < labelA.minusLogProbability))
+                    labels[a] = new Label(candidates.get(a), snaps.indexOf(candidates.get(a).getSnap()), timeStep, labelB, labelB.minusLogProbability + uTurnCost, null);
+            }
+        }
+        List<Label> result = new ArrayList<>(labels.length);
+        for (Label label : labels)
+            if (label != null)
+                result.add(label);
+        return result;
+    }
+
+    private void finalizeConverged(List<EdgeMatch> result) {
+        // the newest label that all current labels go back to
+        Map<Label, Integer> counts = new IdentityHashMap<>();
+        for (Label label : labels)
+            for (Label l = label; l != null; l = l.back)
+                counts.merge(l, 1, Integer::sum);
+        for (Label l = labels.get(0); l != null; l = l.back) {
+            if (counts.get(l) == labels.size()) {
+                finalizeUntil(l, result);
+                break;
+            }
+        }
+
+        Label best = getBestLabel();
+        Label oldest = null;
+        for (Label l = best; l != null && l != finalized; l = l.back) {
+            if (l.timeStep <= timeStep - windowSize) {
+                oldest = l;
+                break;
+            }
+        }
+        if (oldest != null) {
+            finalizeUntil(oldest, result);
+            // the candidates that do not agree with the finalized edges are no longer possible
+            final Label newFinalized = oldest;
+            labels.removeIf(label -> !reaches(label, newFinalized));
+        }
+    }
+
+    private static boolean reaches(Label label, Label target) {
+        for (Label l = label; l != null; l = l.back)
+            if (l == target)
+                return true;
+        return false;
+    }
+
+    private void finalizeUntil(Label label, List<EdgeMatch> result) {
+        List<Label> newLabels = new ArrayList<>();
+        for (Label l = label; l != null && l != finalized; l = l.back)
+            newLabels.add(l);
+        Collections.reverse(newLabels);
+        // see MapMatching#prepareEdgeMatches
+        for (Label l : newLabels) {
+            if (l.path != null)
+                for (EdgeIteratorState edge : l.path.calcEdges())
+                    addEdge(resolveToRealEdge(edge), result);
+            if (l.state.isOnDirectedEdge())
+                addEdge(resolveToRealEdge(l.state.getOutgoingVirtualEdge()), result);
+            openStates.add(l.state);
+        }
+        // we no longer need the older labels
+        label.back = null;
+        finalized = label;
+    }
+
+    private void addEdge(EdgeIteratorState edge, List<EdgeMatch> result) {
+        if (openEdge != null && !(openEdge.getEdge() == edge.getEdge() && openEdge.getBaseNode() == edge.getBaseNode() && openEdge.getAdjNode() == edge.getAdjNode())) {
+            addEdgeMatch(result);
+            openStates = new ArrayList<>();
+        }
+        openEdge = edge;
+    }
+
+    private void closeEdgeMatch(List<EdgeMatch> result) {
+        if (openEdge != null)
+            addEdgeMatch(result);
+        openEdge = null;
+        openStates = new ArrayList<>();
+    }
+
+    private void addEdgeMatch(List<EdgeMatch> result) {
+        EdgeMatch edgeMatch = new EdgeMatch(openEdge, openStates);
+        if (segmentStart)
+            segmentStarts.add(edgeMatch);
+        segmentStart = false;
+        result.add(edgeMatch);
+    }
+
+    private EdgeIteratorState resolveToRealEdge(EdgeIteratorState edge) {
+        return edge instanceof VirtualEdgeIteratorState
+                ? graph.getEdgeIteratorStateForKey(((VirtualEdgeIteratorState) edge).getOriginalEdgeKey())
+                : edge;
+    }
+
+    private Label getBestLabel() {
+        return Collections.min(labels, Comparator.comparingDouble(l -> l.minusLogProbability));
+    }
+
+    private static List<State> createCandidates(QueryGraph queryGraph, Observation observation, List<Snap> snaps) {
+        List<State> candidates = new ArrayList<>();
+        for (Snap snap : snaps)
+            MapMatching.addCandidates(queryGraph, observation, snap, candidates);
+        return candidates;
+    }
+
+    /**
+     * Finds the candidate with the same snap and the same direction as the candidate of the given label, which was
+     * created for another query graph.
+     */
+    private static State findCandidate(List<State> candidates, List<Snap> snaps, Label label) {
+        Snap snap = snaps.get(label.snapIndex);
+        int direction = getDirection(label.state);
+        for (State candidate : candidates)
+            if (candidate.getSnap() == snap && getDirection(candidate) == direction)
+                return candidate;
+        return null;
+    }
+
+    private static int getDirection(State state) {
+        return state.isOnDirectedEdge() ? ((VirtualEdgeIteratorState) state.getOutgoingVirtualEdge()).getOriginalEdgeKey() : -1;
+    }
+
+    private static List<Snap> copySnaps(List<Snap> snaps) {
+        List<Snap> copies = new ArrayList<>(snaps.size());
+        for (Snap snap : snaps) {
+            Snap copy = new Snap(snap.getQueryPoint().lat, snap.getQueryPoint().lon);
+            copy.setClosestNode(snap.getClosestNode());
+            copy.setClosestEdge(snap.getClosestEdge());
+            copy.setQueryDistance(snap.getQueryDistance());
+            copy.setWayIndex(snap.getWayIndex());
+            copy.setSnappedPosition(snap.getSnappedPosition());
+            copy.setSnappedPoint(snap.getSnappedPoint());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private double calcDist(Observation a, Observation b) {
+        return distanceCalc.calcDist(a.getPoint().lat, a.getPoint().lon, b.getPoint().lat, b.getPoint().lon);
+    }
+
+    private static class Label {
+        final State state;
+        // the index of the snap of the state within the snaps of its observation
+        final int snapIndex;
+        final int timeStep;
+        final double minusLogProbability;
+        // the path from the state of the previous label, null for the first observation and for U-turns
+        final Path path;
+        Label back;
+
+        Label(State state, int snapIndex, int timeStep, Label back, double minusLogProbability, Path path) {
+            this.state = state;
+            this.snapIndex = snapIndex;
+            this.timeStep = timeStep;
+            this.back = back;
+            this.minusLogProbability = minusLogProbability;
+            this.path = path;
+        }
+    }
+}
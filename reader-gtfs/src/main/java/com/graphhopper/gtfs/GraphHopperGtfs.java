@@ -71,6 +71,8 @@ public class GraphHopperGtfs extends GraphHopper {
         ptGraph = new PtGraph(getBaseGraph().getDirectory(), 100);
         gtfsStorage = new GtfsStorage(getBaseGraph().getDirectory());
         gtfsStorage.setPtGraph(ptGraph);
+        gtfsStorage.setStationReachabilityCache(new StationReachabilityCache(ghConfig.getInt("gtfs.station_reachability_cache_size", 1000)));
+        gtfsStorage.setSearchThreads(ghConfig.getInt("gtfs.search_threads", Runtime.getRuntime().availableProcessors()));
         LineIntIndex stopIndex = new LineIntIndex(new BBox(-180.0, 180.0, -90.0, 90.0), getBaseGraph().getDirectory(), "stop_index");
         if (getGtfsStorage().loadExisting()) {
             ptGraph.loadExisting();
@@ -79,7 +81,10 @@ public class GraphHopperGtfs extends GraphHopper {
                 for (String trafficDayString : ghConfig.getString("gtfs.schedule_day", null).split(",")) {
                     LocalDate trafficDay = LocalDate.parse(trafficDayString);
                     LOGGER.info("Loading trip-based transfers for pt router. Schedule day: {}", trafficDay);
-                    gtfsStorage.tripTransfers.getTripTransfers().put(trafficDay, gtfsStorage.deserializeTripTransfersMap("trip_transfers_" + trafficDayString));
+                    TripTransfers tripTransfers = new TripTransfers(getBaseGraph().getDirectory(), "trip_transfers_" + trafficDayString);
+                    if (!tripTransfers.loadExisting())
+                        throw new IllegalStateException("Trip-based transfers were not computed for schedule day " + trafficDay + ", please re-import");
+                    gtfsStorage.tripTransfers.getTripTransfers().put(trafficDay, tripTransfers);
                 }
                 for (Map.Entry<String, GTFSFeed> entry : this.gtfsStorage.getGtfsFeeds().entrySet()) {
                     for (Stop stop : entry.getValue().stops.values()) {
@@ -126,10 +131,10 @@ public class GraphHopperGtfs extends GraphHopper {
                     for (String trafficDayString : ghConfig.getString("gtfs.schedule_day", null).split(",")) {
                         LocalDate trafficDay = LocalDate.parse(trafficDayString);
                         LOGGER.info("Computing trip-based transfers for pt router. Schedule day: {}", trafficDay);
-                        Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> tripTransfersMap = gtfsStorage.tripTransfers.getTripTransfers(trafficDay);
-                        gtfsStorage.tripTransfers.findAllTripTransfersInto(tripTransfersMap, trafficDay, allTransfers, stopsForStationNode);
-                        LOGGER.info("Writing. Schedule day: {}", trafficDay);
-                        gtfsStorage.serializeTripTransfersMap("trip_transfers_" + trafficDayString, tripTransfersMap);
+                        TripTransfers tripTransfers = new TripTransfers(getBaseGraph().getDirectory(), "trip_transfers_" + trafficDayString);
+                        gtfsStorage.tripTransfers.findAllTripTransfersInto(tripTransfers, trafficDay, allTransfers, stopsForStationNode);
+                        LOGGER.info("Writing {} trip transfers. Schedule day: {}", tripTransfers.getTransferCount(), trafficDay);
+                        tripTransfers.flush();
                     }
                 }
             } catch (Exception e) {
@@ -193,9 +198,7 @@ public class GraphHopperGtfs extends GraphHopper {
         List<Integer> transferEdgeIds = toFeedReader.insertTransferEdges(label.node.ptNode, (int) (label.streetTime / 1000L), toPlatformDescriptor);
         if (skippedEdgesForTransfer.length > 0) { // TODO: Elsewhere, we distinguish empty path ("at" a node) from no path
             assert isValidPath(skippedEdgesForTransfer);
-            for (Integer transferEdgeId : transferEdgeIds) {
-                gtfsStorage.getSkippedEdgesForTransfer().put(transferEdgeId, skippedEdgesForTransfer);
-            }
+            gtfsStorage.getSkippedEdgesForTransfer().put(transferEdgeIds, skippedEdgesForTransfer);
         }
     }
 
@@ -18,10 +18,6 @@
 
 package com.graphhopper.gtfs;
 
-import com.carrotsearch.hppc.IntIntHashMap;
-import com.carrotsearch.hppc.IntObjectHashMap;
-import com.carrotsearch.hppc.cursors.IntIntCursor;
-import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.conveyal.gtfs.GTFSFeed;
 import com.conveyal.gtfs.model.Fare;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -44,6 +40,8 @@ import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GtfsStorage {
 
@@ -71,7 +69,7 @@ public class GtfsStorage {
         this.ptGraph = ptGraph;
     }
 
-	public IntObjectHashMap<int[]> getSkippedEdgesForTransfer() {
+	public SkippedEdgesForTransfer getSkippedEdgesForTransfer() {
 		return skippedEdgesForTransfer;
 	}
 
@@ -165,10 +163,12 @@ public class GtfsStorage {
 	private Map<String, GTFSFeed> gtfsFeeds = new HashMap<>();
 	private Map<String, Map<String, Fare>> faresByFeed;
 	private Map<FeedIdWithStopId, Integer> stationNodes;
-	private IntObjectHashMap<int[]> skippedEdgesForTransfer;
+	private final SkippedEdgesForTransfer skippedEdgesForTransfer;
 
-	private IntIntHashMap ptToStreet;
-	private IntIntHashMap streetToPt;
+	private final NodeMapping ptToStreet;
+	private final NodeMapping streetToPt;
+	private StationReachabilityCache stationReachabilityCache = new StationReachabilityCache(1000);
+	private ExecutorService searchExecutor = createSearchExecutor(Runtime.getRuntime().availableProcessors());
 
 	public enum EdgeType {
 		HIGHWAY, ENTER_TIME_EXPANDED_NETWORK, LEAVE_TIME_EXPANDED_NETWORK, ENTER_PT, EXIT_PT, HOP, DWELL, BOARD, ALIGHT, OVERNIGHT, TRANSFER, WAIT, WAIT_ARRIVAL
@@ -178,6 +178,9 @@ public class GtfsStorage {
 
 	public GtfsStorage(Directory dir) {
 		this.dir = dir;
+		this.ptToStreet = new NodeMapping(dir, "pt_to_street");
+		this.streetToPt = new NodeMapping(dir, "street_to_pt");
+		this.skippedEdgesForTransfer = new SkippedEdgesForTransfer(dir, "skipped_edges_for_transfer");
 	}
 
 	boolean loadExisting() {
@@ -200,9 +203,8 @@ public class GtfsStorage {
             GTFSFeed feed = new GTFSFeed(dbFile);
             this.gtfsFeeds.put(gtfsFeedId, feed);
         }
-		ptToStreet = deserializeIntoIntIntHashMap("pt_to_street");
-		streetToPt = deserializeIntoIntIntHashMap("street_to_pt");
-		skippedEdgesForTransfer = deserializeIntoIntObjectHashMap("skipped_edges_for_transfer");
+		if (!ptToStreet.loadExisting() || !streetToPt.loadExisting() || !skippedEdgesForTransfer.loadExisting())
+			throw new IllegalStateException("The pt node mappings are missing in " + dir.getLocation() + ", please re-import");
 		try (InputStream is = Files.newInputStream(Paths.get(dir.getLocation() + "interpolated_transfers"))) {
 			MappingIterator<JsonNode> objectMappingIterator = ionMapper.reader(JsonNode.class).readValues(is);
 			objectMappingIterator.forEachRemaining(e -> {
@@ -223,40 +225,6 @@ public class GtfsStorage {
 		return true;
 	}
 
-	private IntIntHashMap deserializeIntoIntIntHashMap(String filename) {
-		try (FileInputStream in = new FileInputStream(dir.getLocation() + filename)) {
-			ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in));
-			int size = ois.readInt();
-			IntIntHashMap result = new IntIntHashMap();
-			for (int i = 0; i < size; i++) {
-				result.put(ois.readInt(), ois.readInt());
-			}
-			return result;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	public IntObjectHashMap<int[]> deserializeIntoIntObjectHashMap(String filename) {
-		try (FileInputStream in = new FileInputStream(dir.getLocation() + filename)) {
-			ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in));
-			int size = ois.readInt();
-			IntObjectHashMap<int[]> result = new IntObjectHashMap<>(size);
-			for (int i = 0; i < size; i++) {
-				int key = ois.readInt();
-				int n = ois.readInt();
-				int[] ints = new int[n];
-				for (int j = 0; j < n; j++) {
-					ints[j] = ois.readInt();
-				}
-				result.put(key, ints);
-			}
-			return result;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
 	void create() {
 		this.dir.create();
 		final File file = new File(dir.getLocation() + "/transit_schedule");
@@ -267,14 +235,14 @@ public class GtfsStorage {
 		}
 		this.data = DBMaker.newFileDB(file).transactionDisable().mmapFileEnable().asyncWriteEnable().make();
 		init();
+		ptToStreet.create();
+		streetToPt.create();
+		skippedEdgesForTransfer.create();
 	}
 
     private void init() {
 		this.gtfsFeedIds = data.getHashSet("gtfsFeeds");
 		this.stationNodes = data.getHashMap("stationNodes");
-		this.ptToStreet = new IntIntHashMap();
-		this.streetToPt = new IntIntHashMap();
-		this.skippedEdgesForTransfer = new IntObjectHashMap<>();
 	}
 
 	void loadGtfsFromZipFileOrDirectory(String id, File zipFileOrDirectory) {
@@ -303,7 +271,14 @@ public class GtfsStorage {
 	public void close() {
 		if (!isClosed) {
 			isClosed = true;
+			searchExecutor.shutdownNow();
 			data.close();
+			ptToStreet.close();
+			streetToPt.close();
+			skippedEdgesForTransfer.close();
+			if (tripTransfers != null) {
+				tripTransfers.getTripTransfers().values().forEach(TripTransfers::close);
+			}
 			for (GTFSFeed feed : gtfsFeeds.values()) {
 				feed.close();
 			}
@@ -314,11 +289,51 @@ public class GtfsStorage {
 		return faresByFeed;
 	}
 
-	public IntIntHashMap getPtToStreet() {
+	public StationReachabilityCache getStationReachabilityCache() {
+		return stationReachabilityCache;
+	}
+
+	public void setStationReachabilityCache(StationReachabilityCache stationReachabilityCache) {
+		this.stationReachabilityCache = stationReachabilityCache;
+	}
+
+	/**
+	 * @return the executor for street searches that run in parallel to the search of the request thread, e.g. the
+	 * egress search of the trip-based router
+	 */
+	public Executor getSearchExecutor() {
+		return searchExecutor;
+	}
+
+	/**
+	 * @param threads the maximum number of street searches that run in parallel to the request threads. If all of them
+	 *                are busy, the request thread runs the search itself.
+	 */
+	public void setSearchThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		ExecutorService old = searchExecutor;
+		searchExecutor = createSearchExecutor(threads);
+		old.shutdown();
+	}
+
+	private static ExecutorService createSearchExecutor(int threads) {
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "pt-search-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		// the threads are only started when needed, e.g. not during the import
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	public NodeMapping getPtToStreet() {
 		return ptToStreet;
 	}
 
-	public IntIntHashMap getStreetToPt() {
+	public NodeMapping getStreetToPt() {
 		return streetToPt;
 	}
 
@@ -331,9 +346,9 @@ public class GtfsStorage {
 	}
 
 	public void flush() {
-		serialize("pt_to_street", ptToStreet);
-		serialize("street_to_pt", streetToPt);
-		serialize("skipped_edges_for_transfer", skippedEdgesForTransfer);
+		ptToStreet.flush();
+		streetToPt.flush();
+		skippedEdgesForTransfer.flush();
 		try (OutputStream os = Files.newOutputStream(Paths.get(dir.getLocation() + "interpolated_transfers"))) {
 			SequenceWriter sequenceWriter = ionMapper.writer().writeValuesAsArray(os);
 			for (Map.Entry<FeedIdWithStopId, Collection<InterpolatedTransfer>> e : interpolatedTransfers.asMap().entrySet()) {
@@ -345,72 +360,6 @@ public class GtfsStorage {
 		}
 	}
 
-	public void serializeTripTransfersMap(String filename, Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> data) {
-		try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + filename))))) {
-			oos.writeInt(data.size());
-			for (Map.Entry<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> entry : data.entrySet()) {
-				oos.writeInt(entry.getKey().tripIdx);
-				oos.writeInt(entry.getKey().stop_sequence);
-				oos.writeInt(entry.getValue().size());
-				for (Trips.TripAtStopTime tripAtStopTime : entry.getValue()) {
-					oos.writeInt(tripAtStopTime.tripIdx);
-					oos.writeInt(tripAtStopTime.stop_sequence);
-				}
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	public Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> deserializeTripTransfersMap(String filename) {
-		try (FileInputStream in = new FileInputStream(dir.getLocation() + filename)) {
-			ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in));
-			int size = ois.readInt();
-			Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> result = new TreeMap<>();
-			for (int i = 0; i < size; i++) {
-				Trips.TripAtStopTime origin = new Trips.TripAtStopTime(ois.readInt(), ois.readInt());
-				int nDestinations = ois.readInt();
-				List<Trips.TripAtStopTime> destinations = new ArrayList<>(nDestinations);
-				for (int j = 0; j < nDestinations; j++) {
-					int tripIdxTo = ois.readInt();
-					int stop_sequenceTo = ois.readInt();
-					destinations.add(new Trips.TripAtStopTime(tripIdxTo, stop_sequenceTo));
-				}
-				result.put(origin, destinations);
-			}
-			return result;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	public void serialize(String filename, IntObjectHashMap<int[]> data) {
-		try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + filename))))) {
-			oos.writeInt(data.size());
-			for (IntObjectCursor<int[]> e : data) {
-				oos.writeInt(e.key);
-				oos.writeInt(e.value.length);
-				for (int v : e.value) {
-					oos.writeInt(v);
-				}
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	private void serialize(String filename, IntIntHashMap data) {
-		try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + filename))))) {
-			oos.writeInt(data.size());
-			for (IntIntCursor e : data) {
-				oos.writeInt(e.key);
-				oos.writeInt(e.value);
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
 	public abstract static class PlatformDescriptor implements Serializable {
 		public String feed_id;
 		public String stop_id;
@@ -0,0 +1,81 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+/**
+ * Maps the nodes of one graph to the nodes of another one, e.g. the pt nodes to the street nodes. The node ids are
+ * dense, so this is just an int array indexed by node, stored in a DataAccess. Unmapped nodes are -1.
+ */
+public class NodeMapping {
+
+    private final DataAccess da;
+    private int size;
+
+    public NodeMapping(Directory dir, String name) {
+        da = dir.create(name, dir.getDefaultType(name, true), -1);
+    }
+
+    public void create() {
+        da.create(1000);
+        size = 0;
+    }
+
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        size = da.getHeader(0);
+        return true;
+    }
+
+    public void flush() {
+        da.setHeader(0, size);
+        da.flush();
+    }
+
+    public void close() {
+        da.close();
+    }
+
+    public void put(int node, int mappedNode) {
+        if (node < 0 || mappedNode < 0)
+            throw new IllegalArgumentException("nodes must not be negative: " + node + " -> " + mappedNode);
+        if (node >= size) {
+            da.ensureCapacity(4L * (node + 1));
+            for (int n = size; n < node; n++)
+                da.setInt(4L * n, -1);
+            size = node + 1;
+        }
+        da.setInt(4L * node, mappedNode);
+    }
+
+    public int getOrDefault(int node, int defaultValue) {
+        // e.g. virtual nodes of a query graph are not mapped
+        if (node < 0 || node >= size)
+            return defaultValue;
+        int mappedNode = da.getInt(4L * node);
+        return mappedNode < 0 ? defaultValue : mappedNode;
+    }
+
+    public boolean containsKey(int node) {
+        return getOrDefault(node, -1) >= 0;
+    }
+}
@@ -24,6 +24,8 @@ import com.graphhopper.storage.Directory;
 import com.graphhopper.util.EdgeIterator;
 
 import java.io.*;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.function.Consumer;
 
@@ -44,6 +46,8 @@ public class PtGraph implements GtfsReader.PtGraphOut {
     private int edgeCount;
 
     private final DataAccess attrs;
+    // the shared objects that the edge attributes refer to
+    private final DataAccess extra;
     private final static GtfsStorage.EdgeType[] edgeTypeValues = GtfsStorage.EdgeType.values();
 
     public PtGraph(Directory dir, int firstNode) {
@@ -52,6 +56,8 @@ public class PtGraph implements GtfsReader.PtGraphOut {
         nodes = dir.create("pt_nodes", dir.getDefaultType("pt_nodes", true), -1);
         edges = dir.create("pt_edges", dir.getDefaultType("pt_edges", true), -1);
         attrs = dir.create("pt_edge_attrs", dir.getDefaultType("pt_edge_attrs", true), -1);
+        // we store bytes here, so we cannot use the int based DataAccess
+        extra = dir.create("pt_extra", dir.getDefaultType("pt_extra", false), -1);
 
         nodeEntryBytes = 8;
 
@@ -68,18 +74,19 @@ public class PtGraph implements GtfsReader.PtGraphOut {
         nodes.create(initSize);
         edges.create(initSize);
         attrs.create(initSize);
+        extra.create(initSize);
     }
 
     public boolean loadExisting() {
-        if (!nodes.loadExisting() || !edges.loadExisting() || !attrs.loadExisting())
+        if (!nodes.loadExisting() || !edges.loadExisting() || !attrs.loadExisting() || !extra.loadExisting())
             return false;
 
         nodeCount = nodes.getHeader(2 * 4);
         edgeCount = edges.getHeader(2 * 4);
         try {
-            deserializeExtraStuff();
-        } catch (IOException | ClassNotFoundException e) {
-            throw new RuntimeException(e);
+            readExtra();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         return true;
     }
@@ -92,16 +99,18 @@ public class PtGraph implements GtfsReader.PtGraphOut {
         nodes.flush();
         attrs.flush();
         try {
-            serializeExtraStuff();
+            writeExtra();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
+        extra.flush();
     }
 
     public void close() {
         edges.close();
         nodes.close();
         attrs.flush();
+        extra.close();
     }
 
     public int getNodeCount() {
@@ -258,21 +267,94 @@ public class PtGraph implements GtfsReader.PtGraphOut {
     Map<GtfsStorage.FeedIdWithTimezone, Integer> feedIdWithTimezones = new HashMap<>();
     List<GtfsStorage.FeedIdWithTimezone> feedIdWithTimezoneList = new ArrayList<>();
 
-    private void serializeExtraStuff() throws IOException {
-        try (ObjectOutputStream os = new ObjectOutputStream(new FileOutputStream(dir.getLocation() + "/pt_extra"))) {
-            os.writeObject(validityList);
-            os.writeObject(platformDescriptorList);
-            os.writeObject(tripDescriptorList);
-            os.writeObject(feedIdWithTimezoneList);
+    /**
+     * Writes the validities, platform descriptors, trip descriptors and feed time zones in a plain binary format, so
+     * we do not need Java serialization (which is slow and keeps the class layout in the graph cache).
+     */
+    private void writeExtra() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(validityList.size());
+            for (GtfsStorage.Validity validity : validityList) {
+                long[] words = validity.validity.toLongArray();
+                out.writeInt(words.length);
+                for (long word : words)
+                    out.writeLong(word);
+                out.writeUTF(validity.zoneId.getId());
+                out.writeLong(validity.start.toEpochDay());
+            }
+            out.writeInt(platformDescriptorList.size());
+            for (GtfsStorage.PlatformDescriptor platformDescriptor : platformDescriptorList) {
+                out.writeUTF(platformDescriptor.feed_id);
+                out.writeUTF(platformDescriptor.stop_id);
+                if (platformDescriptor instanceof GtfsStorage.RoutePlatform) {
+                    out.writeBoolean(true);
+                    out.writeUTF(((GtfsStorage.RoutePlatform) platformDescriptor).route_id);
+                } else {
+                    out.writeBoolean(false);
+                    out.writeInt(((GtfsStorage.RouteTypePlatform) platformDescriptor).route_type);
+                }
+            }
+            out.writeInt(tripDescriptorList.size());
+            for (GtfsRealtime.TripDescriptor tripDescriptor : tripDescriptorList) {
+                byte[] message = tripDescriptor.toByteArray();
+                out.writeInt(message.length);
+                out.write(message);
+            }
+            out.writeInt(feedIdWithTimezoneList.size());
+            for (GtfsStorage.FeedIdWithTimezone feedIdWithTimezone : feedIdWithTimezoneList) {
+                out.writeUTF(feedIdWithTimezone.feedId);
+                out.writeUTF(feedIdWithTimezone.zoneId.getId());
+            }
         }
+        byte[] buffer = bytes.toByteArray();
+        extra.ensureCapacity(buffer.length);
+        byte[] chunk = new byte[Math.min(buffer.length, extra.getSegmentSize())];
+        for (int pos = 0; pos < buffer.length; pos += chunk.length) {
+            int length = Math.min(chunk.length, buffer.length - pos);
+            System.arraycopy(buffer, pos, chunk, 0, length);
+            extra.setBytes(pos, chunk, length);
+        }
+        extra.setHeader(0, buffer.length);
     }
 
-    private void deserializeExtraStuff() throws IOException, ClassNotFoundException {
-        try (ObjectInputStream is = new ObjectInputStream(new FileInputStream(dir.getLocation() + "/pt_extra"))) {
-            validityList = ((List<GtfsStorage.Validity>) is.readObject());
-            platformDescriptorList = ((List<GtfsStorage.PlatformDescriptor>) is.readObject());
-            tripDescriptorList = ((List<GtfsRealtime.TripDescriptor>) is.readObject());
-            feedIdWithTimezoneList = ((List<GtfsStorage.FeedIdWithTimezone>) is.readObject());
+    private void readExtra() throws IOException {
+        byte[] buffer = new byte[extra.getHeader(0)];
+        byte[] chunk = new byte[Math.min(buffer.length, extra.getSegmentSize())];
+        for (int pos = 0; pos < buffer.length; pos += chunk.length) {
+            int length = Math.min(chunk.length, buffer.length - pos);
+            extra.getBytes(pos, chunk, length);
+            System.arraycopy(chunk, 0, buffer, pos, length);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer))) {
+            int validityCount = in.readInt();
+            validityList = new ArrayList<>(validityCount);
+            for (int i = 0; i < validityCount; i++) {
+                long[] words = new long[in.readInt()];
+                for (int w = 0; w < words.length; w++)
+                    words[w] = in.readLong();
+                validityList.add(new GtfsStorage.Validity(BitSet.valueOf(words), ZoneId.of(in.readUTF()), LocalDate.ofEpochDay(in.readLong())));
+            }
+            int platformDescriptorCount = in.readInt();
+            platformDescriptorList = new ArrayList<>(platformDescriptorCount);
+            for (int i = 0; i < platformDescriptorCount; i++) {
+                String feedId = in.readUTF();
+                String stopId = in.readUTF();
+                platformDescriptorList.add(in.readBoolean()
+                        ? GtfsStorage.PlatformDescriptor.route(feedId, stopId, in.readUTF())
+                        : GtfsStorage.PlatformDescriptor.routeType(feedId, stopId, in.readInt()));
+            }
+            int tripDescriptorCount = in.readInt();
+            tripDescriptorList = new ArrayList<>(tripDescriptorCount);
+            for (int i = 0; i < tripDescriptorCount; i++) {
+                byte[] message = new byte[in.readInt()];
+                in.readFully(message);
+                tripDescriptorList.add(GtfsRealtime.TripDescriptor.parseFrom(message));
+            }
+            int feedIdWithTimezoneCount = in.readInt();
+            feedIdWithTimezoneList = new ArrayList<>(feedIdWithTimezoneCount);
+            for (int i = 0; i < feedIdWithTimezoneCount; i++)
+                feedIdWithTimezoneList.add(new GtfsStorage.FeedIdWithTimezone(in.readUTF(), ZoneId.of(in.readUTF())));
         }
     }
 
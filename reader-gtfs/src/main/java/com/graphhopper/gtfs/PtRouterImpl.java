@@ -104,7 +104,11 @@ public final class PtRouterImpl implements PtRouter {
         public PtRouter createWith(GtfsRealtime.FeedMessage realtimeFeed) {
             Map<String, GtfsRealtime.FeedMessage> realtimeFeeds = new HashMap<>();
             realtimeFeeds.put("gtfs_0", realtimeFeed);
-            return new PtRouterImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, RealtimeFeed.fromProtobuf(gtfsStorage, this.transfers, realtimeFeeds), new PathDetailsBuilderFactory());
+            return createWith(RealtimeFeed.fromProtobuf(gtfsStorage, this.transfers, realtimeFeeds));
+        }
+
+        public PtRouter createWith(RealtimeFeed realtimeFeed) {
+            return new PtRouterImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, realtimeFeed, new PathDetailsBuilderFactory());
         }
 
         public PtRouter createWithoutRealtimeFeed() {
@@ -51,6 +51,8 @@ import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
@@ -97,6 +99,7 @@ public final class PtRouterTripBasedImpl implements PtRouter {
         private final boolean profileQuery;
         private final boolean arriveBy;
         private final boolean ignoreTransfers;
+        private final boolean rangeRaptor;
         private final double betaTransfers;
         private final double betaStreetTime;
         private final double walkSpeedKmH;
@@ -132,6 +135,9 @@ public final class PtRouterTripBasedImpl implements PtRouter {
             maxVisitedNodesForRequest = request.getMaxVisitedNodes();
             profileQuery = request.isProfileQuery();
             ignoreTransfers = Optional.ofNullable(request.getIgnoreTransfers()).orElse(false);
+            rangeRaptor = request.isRangeRaptor();
+            if (rangeRaptor && request.isArriveBy())
+                throw new IllegalArgumentException("pt.range_raptor does not support pt.arrive_by");
             betaTransfers = request.getBetaTransfers();
             betaStreetTime = request.getBetaStreetTime();
             limitSolutions = Optional.ofNullable(request.getLimitSolutions()).orElse(profileQuery ? 50 : ignoreTransfers ? 1 : Integer.MAX_VALUE);
@@ -168,22 +174,46 @@ public final class PtRouterTripBasedImpl implements PtRouter {
 
             StopWatch stopWatch1 = new StopWatch().start();
 
-            accessStationLabels = access(startNode, destNode);
+            // The two searches are independent, so the egress search runs while we do the access search.
+            CompletableFuture<StationReachabilityCache.Reachability> egressFuture = CompletableFuture.supplyAsync(() -> egress(result, startNode, destNode), gtfsStorage.getSearchExecutor());
+            StationReachabilityCache.Reachability access = access(result, startNode, destNode);
+            StationReachabilityCache.Reachability egress;
+            try {
+                egress = egressFuture.join();
+            } catch (CompletionException e) {
+                // e.g. an IllegalArgumentException has to reach the caller as it is
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw e;
+            }
+            visitedNodes += access.visitedNodes + egress.visitedNodes;
+            walkDestLabel = access.directLabel;
+            accessStationLabels = access.stationLabels;
             accessStations = accessStationLabels.stream()
                     .map(l -> stopWithTimeDelta(l.edge.getPlatformDescriptor(), l.currentTime - initialTime.toEpochMilli()))
                     .collect(Collectors.toList());
             for (TripBasedRouter.StopWithTimeDelta accessStation : accessStations) {
                 logger.debug("access {}", accessStation);
             }
-            egressStationLabels = egress(startNode, destNode);
+            egressStationLabels = egress.stationLabels;
             egressStations = egressStationLabels.stream()
                     .map(l -> stopWithTimeDelta(l.edge.getPlatformDescriptor(), initialTime.toEpochMilli() - l.currentTime))
                     .collect(Collectors.toList());
             response.addDebugInfo("access/egress routing:" + stopWatch1.stop().getSeconds() + "s");
 
-            TripBasedRouter tripBasedRouter = new TripBasedRouter(gtfsStorage, gtfsStorage.tripTransfers);
-            List<TripBasedRouter.ResultLabel> routes;
-            routes = tripBasedRouter.routeNaiveProfileWithNaiveBetas(new TripBasedRouter.Parameters(accessStations, egressStations, initialTime, maxProfileDuration, trip -> (blockedRouteTypes & (1 << trip.routeType)) == 0, betaAccessTime, betaEgressTime, betaTransfers, transferPenaltiesByRouteType));
+            TripBasedRouter.Parameters parameters = new TripBasedRouter.Parameters(accessStations, egressStations, initialTime, maxProfileDuration, trip -> (blockedRouteTypes & (1 << trip.routeType)) == 0, betaAccessTime, betaEgressTime, betaTransfers, transferPenaltiesByRouteType);
+            List<RaptorRouter.Journey> routes;
+            StopWatch stopWatch2 = new StopWatch().start();
+            // RAPTOR optimizes arrival time and transfers, we need the trip-based search for anything else
+            if (rangeRaptor && betaTransfers == 0.0 && betaAccessTime == 1.0 && betaEgressTime == 1.0 && transferPenaltiesByRouteType.isEmpty()) {
+                routes = new RaptorRouter(gtfsStorage, gtfsStorage.tripTransfers.getRaptorNetwork()).route(parameters);
+            } else {
+                TripBasedRouter tripBasedRouter = new TripBasedRouter(gtfsStorage, gtfsStorage.tripTransfers);
+                routes = tripBasedRouter.routeNaiveProfileWithNaiveBetas(parameters).stream()
+                        .map(route -> new RaptorRouter.Journey(route.enqueuedTripSegment, route.stopTime, route.destination))
+                        .collect(Collectors.toList());
+            }
+            response.addDebugInfo("transit routing:" + stopWatch2.stop().getSeconds() + "s");
 
             tripFromLabel = new TripFromLabel(queryGraph, encodingManager, gtfsStorage, RealtimeFeed.empty(), pathDetailsBuilderFactory, walkSpeedKmH);
             if (walkDestLabel != null) {
@@ -194,7 +224,7 @@ public final class PtRouterTripBasedImpl implements PtRouter {
                 walkResponsePath.setRouteWeight(walkResponsePath.getTime() * betaAccessTime);
                 response.add(walkResponsePath);
             }
-            for (TripBasedRouter.ResultLabel route : routes) {
+            for (RaptorRouter.Journey route : routes) {
                 ResponsePath responsePath = extractResponse(route, result);
                 if (walkResponsePath != null) {
                     Instant departureTime = responsePath.getLegs().get(0).getDepartureTime().toInstant();
@@ -235,47 +265,58 @@ public final class PtRouterTripBasedImpl implements PtRouter {
             return response;
         }
 
-        private List<Label> access(Label.NodeId startNode, Label.NodeId destNode) {
-            final GraphExplorer accessEgressGraphExplorer = new GraphExplorer(queryGraph, ptGraph, accessWeighting, gtfsStorage, RealtimeFeed.empty(), false, true, false, walkSpeedKmH, false, blockedRouteTypes);
-            MultiCriteriaLabelSetting stationRouter = new MultiCriteriaLabelSetting(accessEgressGraphExplorer, false, false, false, 0, new ArrayList<>());
-            stationRouter.setBetaStreetTime(betaStreetTime);
-            stationRouter.setLimitStreetTime(limitStreetTime);
-            List<Label> stationLabels = new ArrayList<>();
-            for (Label label : stationRouter.calcLabels(startNode, initialTime)) {
-                visitedNodes++;
-                if (label.node.equals(destNode)) {
-                    walkDestLabel = label;
-                    break;
-                } else if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.ENTER_PT) {
-                    stationLabels.add(label);
+        private StationReachabilityCache.Reachability access(PtLocationSnapper.Result snapResult, Label.NodeId startNode, Label.NodeId destNode) {
+            StationReachabilityCache.Key key = new StationReachabilityCache.Key(snapResult.points, snapResult.nodes, false, accessProfile.getName(), walkSpeedKmH, betaStreetTime, limitStreetTime, blockedRouteTypes);
+            return gtfsStorage.getStationReachabilityCache().get(key, initialTime.toEpochMilli(), () -> {
+                final GraphExplorer accessEgressGraphExplorer = new GraphExplorer(queryGraph, ptGraph, accessWeighting, gtfsStorage, RealtimeFeed.empty(), false, true, false, walkSpeedKmH, false, blockedRouteTypes);
+                MultiCriteriaLabelSetting stationRouter = new MultiCriteriaLabelSetting(accessEgressGraphExplorer, false, false, false, 0, new ArrayList<>());
+                stationRouter.setBetaStreetTime(betaStreetTime);
+                stationRouter.setLimitStreetTime(limitStreetTime);
+                List<Label> stationLabels = new ArrayList<>();
+                Label walkDestLabel = null;
+                int visitedNodes = 0;
+                for (Label label : stationRouter.calcLabels(startNode, initialTime)) {
+                    visitedNodes++;
+                    if (label.node.equals(destNode)) {
+                        walkDestLabel = label;
+                        break;
+                    } else if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.ENTER_PT) {
+                        stationLabels.add(label);
+                    }
                 }
-            }
-            return stationLabels;
+                return new StationReachabilityCache.Reachability(initialTime.toEpochMilli(), stationLabels, walkDestLabel, visitedNodes);
+            });
         }
 
-        private List<Label> egress(Label.NodeId startNode, Label.NodeId destNode) {
-            final GraphExplorer accessEgressGraphExplorer = new GraphExplorer(queryGraph, ptGraph, egressWeighting, gtfsStorage, RealtimeFeed.empty(), true, true, false, walkSpeedKmH, false, blockedRouteTypes);
-            MultiCriteriaLabelSetting stationRouter = new MultiCriteriaLabelSetting(accessEgressGraphExplorer, true, false, false, 0, new ArrayList<>());
-            stationRouter.setBetaStreetTime(betaStreetTime);
-            stationRouter.setLimitStreetTime(limitStreetTime);
-            List<Label> stationLabels = new ArrayList<>();
-            for (Label label : stationRouter.calcLabels(destNode, initialTime)) {
-                visitedNodes++;
-                if (label.node.equals(startNode)) {
-                    break;
-                } else if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
-                    stationLabels.add(label);
+        private StationReachabilityCache.Reachability egress(PtLocationSnapper.Result snapResult, Label.NodeId startNode, Label.NodeId destNode) {
+            StationReachabilityCache.Key key = new StationReachabilityCache.Key(snapResult.points, snapResult.nodes, true, egressProfile.getName(), walkSpeedKmH, betaStreetTime, limitStreetTime, blockedRouteTypes);
+            return gtfsStorage.getStationReachabilityCache().get(key, initialTime.toEpochMilli(), () -> {
+                final GraphExplorer accessEgressGraphExplorer = new GraphExplorer(queryGraph, ptGraph, egressWeighting, gtfsStorage, RealtimeFeed.empty(), true, true, false, walkSpeedKmH, false, blockedRouteTypes);
+                MultiCriteriaLabelSetting stationRouter = new MultiCriteriaLabelSetting(accessEgressGraphExplorer, true, false, false, 0, new ArrayList<>());
+                stationRouter.setBetaStreetTime(betaStreetTime);
+                stationRouter.setLimitStreetTime(limitStreetTime);
+                List<Label> stationLabels = new ArrayList<>();
+                Label walkStartLabel = null;
+                int visitedNodes = 0;
+                for (Label label : stationRouter.calcLabels(destNode, initialTime)) {
+                    visitedNodes++;
+                    if (label.node.equals(startNode)) {
+                        walkStartLabel = label;
+                        break;
+                    } else if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
+                        stationLabels.add(label);
+                    }
                 }
-            }
-            return stationLabels;
+                return new StationReachabilityCache.Reachability(initialTime.toEpochMilli(), stationLabels, walkStartLabel, visitedNodes);
+            });
         }
 
-        private ResponsePath extractResponse(TripBasedRouter.ResultLabel route, PtLocationSnapper.Result snapResult) {
+        private ResponsePath extractResponse(RaptorRouter.Journey route, PtLocationSnapper.Result snapResult) {
             logger.debug("{}", route);
             GeometryFactory geometryFactory = new GeometryFactory();
 
             List<TripBasedRouter.EnqueuedTripSegment> segments = new ArrayList<>();
-            TripBasedRouter.EnqueuedTripSegment enqueuedTripSegment = route.enqueuedTripSegment;
+            TripBasedRouter.EnqueuedTripSegment enqueuedTripSegment = route.lastSegment;
             while (enqueuedTripSegment != null) {
                 segments.add(enqueuedTripSegment);
                 enqueuedTripSegment = enqueuedTripSegment.parent;
@@ -284,7 +325,7 @@ public final class PtRouterTripBasedImpl implements PtRouter {
 
             long routeWeight = 0;
             List<Trip.Leg> legs = new ArrayList<>();
-            Optional<Trip.Leg> maybeAccessLeg = extractAccessLeg(route, snapResult);
+            Optional<Trip.Leg> maybeAccessLeg = extractAccessLeg(segments.get(0).accessStation, snapResult);
             logger.debug(" {}", maybeAccessLeg);
             if (maybeAccessLeg.isPresent()) {
                 Trip.Leg accessLeg = maybeAccessLeg.get();
@@ -300,7 +341,7 @@ public final class PtRouterTripBasedImpl implements PtRouter {
                 com.conveyal.gtfs.model.Trip trip = segment.tripPointer.trip;
                 int untilStopSequence;
                 if (i == segments.size() - 1)
-                    untilStopSequence = route.stopTime;
+                    untilStopSequence = route.alightStopSequence;
                 else
                     untilStopSequence = segments.get(i+1).transferOrigin.stop_sequence;
                 List<Trip.Stop> stops = segment.tripPointer.stopTimes.stream().filter(st -> st != null && st.stop_sequence >= segment.tripAtStopTime.stop_sequence && st.stop_sequence <= untilStopSequence)
@@ -349,8 +390,8 @@ public final class PtRouterTripBasedImpl implements PtRouter {
             return responsePath;
         }
 
-        private Optional<Trip.Leg> extractAccessLeg(TripBasedRouter.ResultLabel route, PtLocationSnapper.Result snapResult) {
-            Label accessLabel = accessStationLabels.get(accessStations.indexOf(route.getAccessStop()));
+        private Optional<Trip.Leg> extractAccessLeg(TripBasedRouter.StopWithTimeDelta accessStation, PtLocationSnapper.Result snapResult) {
+            Label accessLabel = accessStationLabels.get(accessStations.indexOf(accessStation));
             List<Label.Transition> accessTransitions = Label.getTransitions(accessLabel, false);
             List<List<Label.Transition>> accessPartitions = tripFromLabel.parsePathToPartitions(accessTransitions);
             List<Trip.Leg> accessPath = tripFromLabel.parsePartitionToLegs(accessPartitions.get(0), snapResult.queryGraph, encodingManager, accessWeighting, translation, requestedPathDetails);
@@ -361,7 +402,7 @@ public final class PtRouterTripBasedImpl implements PtRouter {
             }
         }
 
-        private Optional<Trip.Leg> extractEgressLeg(TripBasedRouter.ResultLabel route, PtLocationSnapper.Result snapResult) {
+        private Optional<Trip.Leg> extractEgressLeg(RaptorRouter.Journey route, PtLocationSnapper.Result snapResult) {
             Label egressLabel = egressStationLabels.get(egressStations.indexOf(route.destination));
             List<Label.Transition> egressTransitions = Label.getTransitions(egressLabel, true);
             List<List<Label.Transition>> egressPartitions = tripFromLabel.parsePathToPartitions(egressTransitions);
@@ -0,0 +1,376 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.cursors.LongIntCursor;
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.Stop;
+import com.conveyal.gtfs.model.StopTime;
+import com.conveyal.gtfs.model.Transfer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The timetable of {@link Trips} as flat arrays, like RAPTOR needs them: every pattern is a sequence of stops, and
+ * the trips of a pattern are consecutive trip indices with one arrival and departure per pattern position. Stops are
+ * connected by footpaths derived from transfers.txt, stops sharing a station node and the interpolated transfers.
+ * This is built once, when it is first needed.
+ */
+public class RaptorNetwork {
+
+    // requests usually ask for today or the next few days, and a profile query needs at most two service days
+    private static final int MAX_CACHED_SERVICE_DAYS = 16;
+
+    private final Trips trips;
+    private final Map<GtfsStorage.FeedIdWithStopId, Integer> stopIndex = new HashMap<>();
+    private final List<String> feedIds;
+    private final int[] tripFeed;
+
+    // the stops of every pattern
+    private final int[] patternStopsOffset;
+    private final int[] patternStops;
+    private final int[] patternFirstTrip;
+
+    // the times of every trip by pattern position
+    private final int[] tripTimesOffset;
+    private final int[] arrivals;
+    private final int[] departures;
+    private final int[] stopSequences;
+
+    // the patterns visiting a stop, together with the position of the stop in the pattern
+    private final int[] stopPatternsOffset;
+    private final int[] stopPatterns;
+    private final int[] stopPatternPositions;
+
+    private final int[] changeTimes;
+    private final Map<Long, RouteSpecificTransfers> routeSpecificTransfers = new HashMap<>();
+    private final int[] footpathsOffset;
+    private final int[] footpathTargets;
+    private final int[] footpathTimes;
+
+    private final Cache<LocalDate, BitSet> activeTripsByDay = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_SERVICE_DAYS).build();
+
+    public RaptorNetwork(Trips trips, GtfsStorage gtfsStorage) {
+        this.trips = trips;
+        feedIds = new ArrayList<>(gtfsStorage.getGtfsFeeds().keySet());
+        int tripCount = trips.trips.size();
+        tripFeed = new int[tripCount];
+        tripTimesOffset = new int[tripCount];
+        IntArrayList patternStopsOffsetList = new IntArrayList();
+        IntArrayList patternStopsList = new IntArrayList();
+        IntArrayList patternFirstTripList = new IntArrayList();
+        IntArrayList arrivalList = new IntArrayList(), departureList = new IntArrayList(), stopSequenceList = new IntArrayList();
+        // trips of the same pattern have consecutive indices, see Trips
+        for (int firstTrip = 0; firstTrip < tripCount; firstTrip = trips.getTrip(firstTrip).endIdxOfPattern) {
+            GTFSFeed.StopTimesForTripWithTripPatternKey first = trips.getTrip(firstTrip);
+            patternStopsOffsetList.add(patternStopsList.size());
+            patternFirstTripList.add(firstTrip);
+            for (StopTime stopTime : first.stopTimes)
+                if (stopTime != null)
+                    patternStopsList.add(stopIndex.computeIfAbsent(new GtfsStorage.FeedIdWithStopId(first.feedId, stopTime.stop_id), k -> stopIndex.size()));
+            for (int tripIdx = firstTrip; tripIdx < first.endIdxOfPattern; tripIdx++) {
+                GTFSFeed.StopTimesForTripWithTripPatternKey trip = trips.getTrip(tripIdx);
+                tripFeed[tripIdx] = feedIds.indexOf(trip.feedId);
+                tripTimesOffset[tripIdx] = arrivalList.size();
+                for (StopTime stopTime : trip.stopTimes) {
+                    if (stopTime != null) {
+                        arrivalList.add(stopTime.arrival_time);
+                        departureList.add(stopTime.departure_time);
+                        stopSequenceList.add(stopTime.stop_sequence);
+                    }
+                }
+            }
+        }
+        patternStopsOffsetList.add(patternStopsList.size());
+        patternFirstTripList.add(tripCount);
+        patternStopsOffset = patternStopsOffsetList.toArray();
+        patternStops = patternStopsList.toArray();
+        patternFirstTrip = patternFirstTripList.toArray();
+        arrivals = arrivalList.toArray();
+        departures = departureList.toArray();
+        stopSequences = stopSequenceList.toArray();
+
+        int stopCount = stopIndex.size();
+        stopPatternsOffset = new int[stopCount + 1];
+        for (int stop : patternStops)
+            stopPatternsOffset[stop + 1]++;
+        for (int stop = 0; stop < stopCount; stop++)
+            stopPatternsOffset[stop + 1] += stopPatternsOffset[stop];
+        stopPatterns = new int[patternStops.length];
+        stopPatternPositions = new int[patternStops.length];
+        int[] next = Arrays.copyOf(stopPatternsOffset, stopCount);
+        for (int pattern = 0; pattern < getPatternCount(); pattern++) {
+            for (int i = patternStopsOffset[pattern]; i < patternStopsOffset[pattern + 1]; i++) {
+                int stop = patternStops[i];
+                stopPatterns[next[stop]] = pattern;
+                stopPatternPositions[next[stop]++] = i - patternStopsOffset[pattern];
+            }
+        }
+
+        changeTimes = new int[stopCount];
+        Arrays.fill(changeTimes, -1);
+        LongIntHashMap footpaths = findFootpaths(gtfsStorage);
+        footpathsOffset = new int[stopCount + 1];
+        for (LongIntCursor c : footpaths)
+            footpathsOffset[(int) (c.key >>> 32) + 1]++;
+        for (int stop = 0; stop < stopCount; stop++)
+            footpathsOffset[stop + 1] += footpathsOffset[stop];
+        footpathTargets = new int[footpaths.size()];
+        footpathTimes = new int[footpaths.size()];
+        next = Arrays.copyOf(footpathsOffset, stopCount);
+        for (LongIntCursor c : footpaths) {
+            int from = (int) (c.key >>> 32);
+            footpathTargets[next[from]] = (int) c.key;
+            footpathTimes[next[from]++] = c.value;
+        }
+    }
+
+    private LongIntHashMap findFootpaths(GtfsStorage gtfsStorage) {
+        LongIntHashMap footpaths = new LongIntHashMap();
+        for (Map.Entry<String, GTFSFeed> entry : gtfsStorage.getGtfsFeeds().entrySet()) {
+            GTFSFeed feed = entry.getValue();
+            Map<String, List<String>> platformsByStation = new HashMap<>();
+            for (Stop stop : feed.stops.values())
+                if (stop.location_type == 0 && stop.parent_station != null)
+                    platformsByStation.computeIfAbsent(stop.parent_station, k -> new ArrayList<>()).add(stop.stop_id);
+            Map<Long, List<Transfer>> rulesByStops = new HashMap<>();
+            for (Transfer transfer : feed.transfers.values()) {
+                if (transfer.transfer_type != 0 && transfer.transfer_type != 2)
+                    continue;
+                for (String fromStop : platformsByStation.getOrDefault(transfer.from_stop_id, Collections.singletonList(transfer.from_stop_id))) {
+                    for (String toStop : platformsByStation.getOrDefault(transfer.to_stop_id, Collections.singletonList(transfer.to_stop_id))) {
+                        int from = stopIndex.getOrDefault(new GtfsStorage.FeedIdWithStopId(entry.getKey(), fromStop), -1);
+                        int to = stopIndex.getOrDefault(new GtfsStorage.FeedIdWithStopId(entry.getKey(), toStop), -1);
+                        if (from >= 0 && to >= 0)
+                            rulesByStops.computeIfAbsent(((long) from << 32) | to, k -> new ArrayList<>()).add(transfer);
+                    }
+                }
+            }
+            rulesByStops.forEach((key, rules) -> {
+                int from = (int) (key >>> 32);
+                int to = (int) (long) key;
+                int seconds = rules.stream().mapToInt(rule -> rule.min_transfer_time).min().getAsInt();
+                if (rules.stream().anyMatch(rule -> rule.from_route_id != null || rule.to_route_id != null)) {
+                    routeSpecificTransfers.put(key, new RouteSpecificTransfers(rules));
+                    // we don't know the routes yet, so this has to be a lower bound
+                    if (from == to)
+                        seconds = 0;
+                }
+                addFootpath(footpaths, from, to, seconds);
+            });
+        }
+        Map<Integer, List<GtfsStorage.FeedIdWithStopId>> stopsByStationNode = new HashMap<>();
+        gtfsStorage.getStationNodes().forEach((stop, node) -> stopsByStationNode.computeIfAbsent(node, k -> new ArrayList<>()).add(stop));
+        for (List<GtfsStorage.FeedIdWithStopId> stops : stopsByStationNode.values())
+            for (GtfsStorage.FeedIdWithStopId from : stops)
+                for (GtfsStorage.FeedIdWithStopId to : stops)
+                    if (!from.equals(to))
+                        addOtherFootpath(footpaths, from, to, 0);
+        gtfsStorage.interpolatedTransfers.forEach((from, transfer) -> addOtherFootpath(footpaths, from, transfer.toPlatformDescriptor, transfer.streetTime));
+        return footpaths;
+    }
+
+    private void addOtherFootpath(LongIntHashMap footpaths, GtfsStorage.FeedIdWithStopId fromStop, GtfsStorage.FeedIdWithStopId toStop, int seconds) {
+        int from = stopIndex.getOrDefault(fromStop, -1);
+        int to = stopIndex.getOrDefault(toStop, -1);
+        if (from < 0 || to < 0)
+            return;
+        RouteSpecificTransfers transfers = routeSpecificTransfers.get(((long) from << 32) | to);
+        if (transfers != null)
+            transfers.otherSeconds = Math.min(transfers.otherSeconds, seconds);
+        addFootpath(footpaths, from, to, seconds);
+    }
+
+    private void addFootpath(LongIntHashMap footpaths, int from, int to, int seconds) {
+        if (from == to) {
+            changeTimes[from] = changeTimes[from] < 0 ? seconds : Math.min(changeTimes[from], seconds);
+            return;
+        }
+        long key = ((long) from << 32) | to;
+        int index = footpaths.indexOf(key);
+        if (footpaths.indexExists(index))
+            footpaths.indexReplace(index, Math.min(footpaths.indexGet(index), seconds));
+        else
+            footpaths.indexInsert(index, key, seconds);
+    }
+
+    public Trips getTrips() {
+        return trips;
+    }
+
+    /**
+     * @return the stop index of the given stop or -1 if no trip visits it
+     */
+    public int getStop(GtfsStorage.FeedIdWithStopId stopId) {
+        return stopIndex.getOrDefault(stopId, -1);
+    }
+
+    public int getStopCount() {
+        return stopIndex.size();
+    }
+
+    public List<String> getFeedIds() {
+        return feedIds;
+    }
+
+    public int getFeed(int tripIdx) {
+        return tripFeed[tripIdx];
+    }
+
+    public int getPatternCount() {
+        return patternFirstTrip.length - 1;
+    }
+
+    public int getPatternSize(int pattern) {
+        return patternStopsOffset[pattern + 1] - patternStopsOffset[pattern];
+    }
+
+    public int getPatternStop(int pattern, int position) {
+        return patternStops[patternStopsOffset[pattern] + position];
+    }
+
+    public int getFirstTrip(int pattern) {
+        return patternFirstTrip[pattern];
+    }
+
+    /**
+     * @return the trip after the last trip of the given pattern (exclusive)
+     */
+    public int getEndTrip(int pattern) {
+        return patternFirstTrip[pattern + 1];
+    }
+
+    public int getArrival(int tripIdx, int position) {
+        return arrivals[tripTimesOffset[tripIdx] + position];
+    }
+
+    public int getDeparture(int tripIdx, int position) {
+        return departures[tripTimesOffset[tripIdx] + position];
+    }
+
+    public int getStopSequence(int tripIdx, int position) {
+        return stopSequences[tripTimesOffset[tripIdx] + position];
+    }
+
+    public int getFirstStopPattern(int stop) {
+        return stopPatternsOffset[stop];
+    }
+
+    public int getEndStopPattern(int stop) {
+        return stopPatternsOffset[stop + 1];
+    }
+
+    public int getStopPattern(int stopPattern) {
+        return stopPatterns[stopPattern];
+    }
+
+    public int getStopPatternPosition(int stopPattern) {
+        return stopPatternPositions[stopPattern];
+    }
+
+    /**
+     * @return the minimum time in seconds to change trips at the given stop
+     */
+    public int getChangeTime(int stop) {
+        return Math.max(0, changeTimes[stop]);
+    }
+
+    /**
+     * The change and footpath times are lower bounds where transfers.txt has route specific rules, check those when
+     * boarding.
+     */
+    public boolean hasRouteSpecificTransfers(int fromStop, int toStop) {
+        return routeSpecificTransfers.containsKey(((long) fromStop << 32) | toStop);
+    }
+
+    /**
+     * @return the time to transfer between the given stops and routes, following the most specific rule, or
+     * Integer.MAX_VALUE if we can't transfer there
+     */
+    public int getRouteSpecificTransferTime(int fromStop, int toStop, String fromRouteId, String toRouteId) {
+        RouteSpecificTransfers transfers = routeSpecificTransfers.get(((long) fromStop << 32) | toStop);
+        Transfer mostSpecificRule = null;
+        int mostSpecificScore = -1;
+        for (Transfer rule : transfers.rules) {
+            if (rule.from_route_id != null && !rule.from_route_id.equals(fromRouteId))
+                continue;
+            int score = (rule.from_route_id != null ? 1 : 0) + (toRouteId.equals(rule.to_route_id) ? 1 : 0);
+            if (score > mostSpecificScore) {
+                mostSpecificRule = rule;
+                mostSpecificScore = score;
+            }
+        }
+        // like the trip-based transfers, we can always stay at the same stop, even without a rule
+        int seconds = mostSpecificRule != null ? mostSpecificRule.min_transfer_time : fromStop == toStop ? 0 : Integer.MAX_VALUE;
+        return Math.min(seconds, transfers.otherSeconds);
+    }
+
+    public int getFirstFootpath(int stop) {
+        return footpathsOffset[stop];
+    }
+
+    public int getEndFootpath(int stop) {
+        return footpathsOffset[stop + 1];
+    }
+
+    public int getFootpathTarget(int footpath) {
+        return footpathTargets[footpath];
+    }
+
+    public int getFootpathTime(int footpath) {
+        return footpathTimes[footpath];
+    }
+
+    public String getRouteId(int tripIdx) {
+        return trips.getTrip(tripIdx).trip.route_id;
+    }
+
+    /**
+     * @return the trips that run on the given service day
+     */
+    public BitSet getActiveTrips(LocalDate serviceDay) {
+        try {
+            return activeTripsByDay.get(serviceDay, () -> {
+                BitSet activeTrips = new BitSet(trips.trips.size());
+                for (GTFSFeed.StopTimesForTripWithTripPatternKey trip : trips.trips)
+                    if (trip.service.activeOn(serviceDay))
+                        activeTrips.set(trip.idx);
+                return activeTrips;
+            });
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static class RouteSpecificTransfers {
+        final List<Transfer> rules;
+        // from station nodes or interpolated transfers, which apply regardless of the rules
+        int otherSeconds = Integer.MAX_VALUE;
+
+        RouteSpecificTransfers(List<Transfer> rules) {
+            this.rules = rules;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.conveyal.gtfs.GTFSFeed;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A range RAPTOR query (Delling, Pajor, Werneck: Round-Based Public Transit Routing) on a {@link RaptorNetwork}.
+ * Instead of repeating an earliest arrival search for every minute of the profile, we run one RAPTOR search per
+ * departure from an access station, latest first, and keep the labels between the searches: a journey found for a
+ * later departure is still a valid journey for an earlier one. The result contains the journeys that are Pareto
+ * optimal with respect to departure time, arrival time and number of transfers.
+ * <p>
+ * Times are in seconds from the start of the service day in the time zone of the first access station. A profile
+ * spanning midnight is searched once per service day. Like {@link TripBasedRouter}, we assume that trips of a pattern
+ * don't overtake each other.
+ */
+public class RaptorRouter {
+
+    static final int MAX_TRIPS = 9;
+    private static final int INF = Integer.MAX_VALUE;
+
+    private final RaptorNetwork network;
+    private final Trips trips;
+    private final GtfsStorage gtfsStorage;
+
+    // earliest arrival at a stop by at most k trips, when alighting
+    private int[][] arrival;
+    private int[][] arrivalRecord;
+    // earliest time we can board at a stop after at most k trips, i.e. after changing or walking
+    private int[][] ready;
+    private int[][] readyRecord;
+    private int[] targetArrival;
+
+    // one record per alighting, pointing back to the record we boarded from or to the access station
+    private final IntArrayList recordTrip = new IntArrayList();
+    private final IntArrayList recordBoardPosition = new IntArrayList();
+    private final IntArrayList recordAlightPosition = new IntArrayList();
+    private final IntArrayList recordStop = new IntArrayList();
+    private final IntArrayList recordArrival = new IntArrayList();
+    private final IntArrayList recordParent = new IntArrayList();
+
+    private final List<Candidate> candidates = new ArrayList<>();
+
+    public RaptorRouter(GtfsStorage gtfsStorage, RaptorNetwork network) {
+        this.gtfsStorage = gtfsStorage;
+        this.network = network;
+        this.trips = network.getTrips();
+    }
+
+    public List<Journey> route(TripBasedRouter.Parameters parameters) {
+        List<TripBasedRouter.StopWithTimeDelta> accessStations = parameters.getAccessStations();
+        List<TripBasedRouter.StopWithTimeDelta> egressStations = parameters.getEgressStations();
+        if (!accessStations.isEmpty() && !egressStations.isEmpty()) {
+            ZoneId zoneId = accessStations.get(0).zoneId;
+            long profileStart = parameters.getProfileStartTime().getEpochSecond();
+            long profileEnd = profileStart + parameters.getProfileLength().getSeconds();
+            // one search per service day, latest first
+            LocalDate firstDay = Instant.ofEpochSecond(profileStart).atZone(zoneId).toLocalDate();
+            for (LocalDate day = Instant.ofEpochSecond(profileEnd).atZone(zoneId).toLocalDate(); !day.isBefore(firstDay); day = day.minusDays(1)) {
+                long startOfDay = day.atStartOfDay(zoneId).toEpochSecond();
+                long endOfDay = day.plusDays(1).atStartOfDay(zoneId).toEpochSecond();
+                routeServiceDay(parameters, day, startOfDay, (int) (Math.max(profileStart, startOfDay) - startOfDay), (int) (Math.min(profileEnd, endOfDay) - startOfDay));
+            }
+        }
+        return candidates.stream().map(c -> c.journey).collect(Collectors.toList());
+    }
+
+    private void routeServiceDay(TripBasedRouter.Parameters parameters, LocalDate serviceDay, long startOfDay, int profileStart, int profileEnd) {
+        List<TripBasedRouter.StopWithTimeDelta> accessStations = parameters.getAccessStations();
+        List<TripBasedRouter.StopWithTimeDelta> egressStations = parameters.getEgressStations();
+        int[] feedOffsets = new int[network.getFeedIds().size()];
+        for (int feed = 0; feed < feedOffsets.length; feed++) {
+            GTFSFeed gtfsFeed = gtfsStorage.getGtfsFeeds().get(network.getFeedIds().get(feed));
+            ZoneId feedZoneId = ZoneId.of(gtfsFeed.agency.values().stream().findFirst().get().agency_timezone);
+            feedOffsets[feed] = (int) (serviceDay.atStartOfDay(feedZoneId).toEpochSecond() - startOfDay);
+        }
+        BitSet activeTrips = network.getActiveTrips(serviceDay);
+        Predicate<GTFSFeed.StopTimesForTripWithTripPatternKey> tripFilter = parameters.getTripFilter();
+
+        int stopCount = network.getStopCount();
+        if (arrival == null) {
+            arrival = new int[MAX_TRIPS + 1][stopCount];
+            arrivalRecord = new int[MAX_TRIPS + 1][stopCount];
+            ready = new int[MAX_TRIPS + 1][stopCount];
+            readyRecord = new int[MAX_TRIPS + 1][stopCount];
+            targetArrival = new int[MAX_TRIPS + 1];
+        }
+        for (int k = 0; k <= MAX_TRIPS; k++) {
+            Arrays.fill(arrival[k], INF);
+            Arrays.fill(ready[k], INF);
+        }
+        Arrays.fill(targetArrival, INF);
+
+        int[] accessStops = new int[accessStations.size()];
+        int[] accessSeconds = new int[accessStations.size()];
+        for (int i = 0; i < accessStations.size(); i++) {
+            accessStops[i] = network.getStop(accessStations.get(i).stopId);
+            accessSeconds[i] = (int) ((accessStations.get(i).timeDelta + 999) / 1000);
+        }
+        int[] egressStops = new int[egressStations.size()];
+        int[] egressSeconds = new int[egressStations.size()];
+        for (int i = 0; i < egressStations.size(); i++) {
+            egressStops[i] = network.getStop(egressStations.get(i).stopId);
+            egressSeconds[i] = (int) (egressStations.get(i).timeDelta / 1000);
+        }
+
+        int[] departureTimes = findDepartureTimes(accessStops, accessSeconds, feedOffsets, activeTrips, tripFilter, profileStart, profileEnd);
+        BitSet markedForBoarding = new BitSet(stopCount);
+        BitSet markedArrivals = new BitSet(stopCount);
+        int[] patternStart = new int[network.getPatternCount()];
+        Arrays.fill(patternStart, INF);
+        IntArrayList patterns = new IntArrayList();
+        // latest departure first, so we can keep the labels
+        for (int d = departureTimes.length - 1; d >= 0; d--) {
+            int departureTime = departureTimes[d];
+            for (int i = 0; i < accessStops.length; i++) {
+                if (accessStops[i] >= 0 && improveReady(0, accessStops[i], departureTime + accessSeconds[i], -(i + 1)))
+                    markedForBoarding.set(accessStops[i]);
+            }
+            for (int k = 1; k <= MAX_TRIPS && !markedForBoarding.isEmpty(); k++) {
+                for (int stop = markedForBoarding.nextSetBit(0); stop >= 0; stop = markedForBoarding.nextSetBit(stop + 1)) {
+                    for (int sp = network.getFirstStopPattern(stop); sp < network.getEndStopPattern(stop); sp++) {
+                        int pattern = network.getStopPattern(sp);
+                        if (patternStart[pattern] == INF)
+                            patterns.add(pattern);
+                        patternStart[pattern] = Math.min(patternStart[pattern], network.getStopPatternPosition(sp));
+                    }
+                }
+                markedForBoarding.clear();
+                for (int i = 0; i < patterns.size(); i++) {
+                    int pattern = patterns.get(i);
+                    scanPattern(k, pattern, patternStart[pattern], feedOffsets[network.getFeed(network.getFirstTrip(pattern))], activeTrips, tripFilter, markedArrivals);
+                    patternStart[pattern] = INF;
+                }
+                patterns.clear();
+
+                for (int i = 0; i < egressStops.length; i++) {
+                    int stop = egressStops[i];
+                    if (stop < 0 || !markedArrivals.get(stop))
+                        continue;
+                    int targetTime = arrival[k][stop] + egressSeconds[i];
+                    if (targetTime < targetArrival[k]) {
+                        for (int j = k; j <= MAX_TRIPS && targetTime < targetArrival[j]; j++)
+                            targetArrival[j] = targetTime;
+                        addJourney(arrivalRecord[k][stop], egressStations.get(i), accessStations, accessSeconds, serviceDay, startOfDay, feedOffsets, targetTime);
+                    }
+                }
+
+                for (int stop = markedArrivals.nextSetBit(0); stop >= 0; stop = markedArrivals.nextSetBit(stop + 1)) {
+                    int time = arrival[k][stop];
+                    int record = arrivalRecord[k][stop];
+                    if (improveReady(k, stop, time + network.getChangeTime(stop), record))
+                        markedForBoarding.set(stop);
+                    for (int f = network.getFirstFootpath(stop); f < network.getEndFootpath(stop); f++) {
+                        int footpathTarget = network.getFootpathTarget(f);
+                        if (improveReady(k, footpathTarget, time + network.getFootpathTime(f), record))
+                            markedForBoarding.set(footpathTarget);
+                    }
+                }
+                markedArrivals.clear();
+            }
+            markedForBoarding.clear();
+        }
+    }
+
+    /**
+     * @return all times within the profile at which we can leave to catch a trip at one of the access stations, plus
+     * the end of the profile, sorted
+     */
+    private int[] findDepartureTimes(int[] accessStops, int[] accessSeconds, int[] feedOffsets, BitSet activeTrips, Predicate<GTFSFeed.StopTimesForTripWithTripPatternKey> tripFilter, int profileStart, int profileEnd) {
+        IntArrayList departureTimes = new IntArrayList();
+        departureTimes.add(profileEnd);
+        for (int i = 0; i < accessStops.length; i++) {
+            int stop = accessStops[i];
+            if (stop < 0)
+                continue;
+            for (int sp = network.getFirstStopPattern(stop); sp < network.getEndStopPattern(stop); sp++) {
+                int pattern = network.getStopPattern(sp);
+                int position = network.getStopPatternPosition(sp);
+                for (int tripIdx = network.getFirstTrip(pattern); tripIdx < network.getEndTrip(pattern); tripIdx++) {
+                    int departureTime = network.getDeparture(tripIdx, position) + feedOffsets[network.getFeed(tripIdx)] - accessSeconds[i];
+                    if (departureTime >= profileStart && departureTime < profileEnd && activeTrips.get(tripIdx) && tripFilter.test(trips.getTrip(tripIdx)))
+                        departureTimes.add(departureTime);
+                }
+            }
+        }
+        int[] result = departureTimes.toArray();
+        Arrays.sort(result);
+        int size = 0;
+        for (int i = 0; i < result.length; i++)
+            if (size == 0 || result[size - 1] != result[i])
+                result[size++] = result[i];
+        return Arrays.copyOf(result, size);
+    }
+
+    private void scanPattern(int k, int pattern, int startPosition, int feedOffset, BitSet activeTrips, Predicate<GTFSFeed.StopTimesForTripWithTripPatternKey> tripFilter, BitSet markedArrivals) {
+        int tripIdx = -1;
+        int boardPosition = -1;
+        int boardRecord = 0;
+        for (int position = startPosition; position < network.getPatternSize(pattern); position++) {
+            int stop = network.getPatternStop(pattern, position);
+            if (tripIdx >= 0) {
+                int time = network.getArrival(tripIdx, position) + feedOffset;
+                if (time < arrival[k][stop] && time < targetArrival[k]) {
+                    int record = addRecord(tripIdx, boardPosition, position, stop, time, boardRecord);
+                    for (int j = k; j <= MAX_TRIPS && time < arrival[j][stop]; j++) {
+                        arrival[j][stop] = time;
+                        arrivalRecord[j][stop] = record;
+                    }
+                    markedArrivals.set(stop);
+                }
+            }
+            int readyTime = ready[k - 1][stop];
+            if (readyTime == INF || tripIdx >= 0 && readyTime > network.getDeparture(tripIdx, position) + feedOffset)
+                continue;
+            int earlierTrip = findEarliestTrip(pattern, position, stop, readyTime, readyRecord[k - 1][stop], feedOffset, tripIdx >= 0 ? tripIdx : network.getEndTrip(pattern), activeTrips, tripFilter);
+            if (earlierTrip >= 0) {
+                tripIdx = earlierTrip;
+                boardPosition = position;
+                boardRecord = readyRecord[k - 1][stop];
+            }
+        }
+    }
+
+    /**
+     * @return the first trip before endTrip of the pattern that we can board at the given position, or -1 if there is
+     * none
+     */
+    private int findEarliestTrip(int pattern, int position, int stop, int readyTime, int readyRecord, int feedOffset, int endTrip, BitSet activeTrips, Predicate<GTFSFeed.StopTimesForTripWithTripPatternKey> tripFilter) {
+        int low = network.getFirstTrip(pattern);
+        int high = endTrip;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (network.getDeparture(mid, position) + feedOffset < readyTime)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        boolean routeSpecific = readyRecord >= 0 && network.hasRouteSpecificTransfers(recordStop.get(readyRecord), stop);
+        for (int tripIdx = low; tripIdx < endTrip; tripIdx++) {
+            if (!activeTrips.get(tripIdx) || !tripFilter.test(trips.getTrip(tripIdx)))
+                continue;
+            if (routeSpecific) {
+                int transferTime = network.getRouteSpecificTransferTime(recordStop.get(readyRecord), stop, network.getRouteId(recordTrip.get(readyRecord)), network.getRouteId(tripIdx));
+                if (transferTime == INF || network.getDeparture(tripIdx, position) + feedOffset < recordArrival.get(readyRecord) + transferTime)
+                    continue;
+            }
+            return tripIdx;
+        }
+        return -1;
+    }
+
+    private boolean improveReady(int k, int stop, int time, int record) {
+        if (time >= ready[k][stop])
+            return false;
+        for (int j = k; j <= MAX_TRIPS && time < ready[j][stop]; j++) {
+            ready[j][stop] = time;
+            readyRecord[j][stop] = record;
+        }
+        return true;
+    }
+
+    private int addRecord(int tripIdx, int boardPosition, int alightPosition, int stop, int time, int parent) {
+        recordTrip.add(tripIdx);
+        recordBoardPosition.add(boardPosition);
+        recordAlightPosition.add(alightPosition);
+        recordStop.add(stop);
+        recordArrival.add(time);
+        recordParent.add(parent);
+        return recordTrip.size() - 1;
+    }
+
+    private void addJourney(int record, TripBasedRouter.StopWithTimeDelta destination, List<TripBasedRouter.StopWithTimeDelta> accessStations, int[] accessSeconds, LocalDate serviceDay, long startOfDay, int[] feedOffsets, int arrivalTime) {
+        IntArrayList records = new IntArrayList();
+        int r = record;
+        while (r >= 0) {
+            records.add(r);
+            r = recordParent.get(r);
+        }
+        int accessStation = -r - 1;
+        TripBasedRouter.EnqueuedTripSegment segment = null;
+        int departureTime = 0;
+        int realTransfers = 0;
+        for (int i = records.size() - 1; i >= 0; i--) {
+            int current = records.get(i);
+            int tripIdx = recordTrip.get(current);
+            int boardPosition = recordBoardPosition.get(current);
+            Trips.TripAtStopTime transferOrigin = null;
+            if (segment == null) {
+                departureTime = network.getDeparture(tripIdx, boardPosition) + feedOffsets[network.getFeed(tripIdx)] - accessSeconds[accessStation];
+            } else {
+                int previousTripIdx = recordTrip.get(records.get(i + 1));
+                transferOrigin = new Trips.TripAtStopTime(previousTripIdx, network.getStopSequence(previousTripIdx, recordAlightPosition.get(records.get(i + 1))));
+                // staying in the same vehicle is not a transfer
+                String blockId = trips.getTrip(tripIdx).trip.block_id;
+                if (blockId == null || !blockId.equals(trips.getTrip(previousTripIdx).trip.block_id))
+                    realTransfers++;
+            }
+            segment = new TripBasedRouter.EnqueuedTripSegment(trips.getTrip(tripIdx), new Trips.TripAtStopTime(tripIdx, network.getStopSequence(tripIdx, boardPosition)),
+                    INF, serviceDay, transferOrigin, segment, accessStations.get(accessStation));
+        }
+        Candidate candidate = new Candidate(new Journey(segment, network.getStopSequence(recordTrip.get(record), recordAlightPosition.get(record)), destination),
+                startOfDay + departureTime, startOfDay + arrivalTime, realTransfers);
+        if (candidates.stream().anyMatch(old -> old.dominates(candidate)))
+            return;
+        candidates.removeIf(candidate::dominates);
+        candidates.add(candidate);
+    }
+
+    private static class Candidate {
+        final Journey journey;
+        final long departureTime;
+        final long arrivalTime;
+        final int realTransfers;
+
+        Candidate(Journey journey, long departureTime, long arrivalTime, int realTransfers) {
+            this.journey = journey;
+            this.departureTime = departureTime;
+            this.arrivalTime = arrivalTime;
+            this.realTransfers = realTransfers;
+        }
+
+        boolean dominates(Candidate other) {
+            return departureTime >= other.departureTime && arrivalTime <= other.arrivalTime && realTransfers <= other.realTransfers;
+        }
+    }
+
+    public static class Journey {
+        final TripBasedRouter.EnqueuedTripSegment lastSegment;
+        final int alightStopSequence;
+        final TripBasedRouter.StopWithTimeDelta destination;
+
+        Journey(TripBasedRouter.EnqueuedTripSegment lastSegment, int alightStopSequence, TripBasedRouter.StopWithTimeDelta destination) {
+            this.lastSegment = lastSegment;
+            this.alightStopSequence = alightStopSequence;
+            this.destination = destination;
+        }
+
+        @Override
+        public String toString() {
+            return "Journey{" +
+                    "lastSegment=" + lastSegment +
+                    ", alightStopSequence=" + alightStopSequence +
+                    ", destination=" + destination +
+                    '}';
+        }
+    }
+}
@@ -45,6 +45,12 @@ import static com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeUpdate
 import static com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SKIPPED;
 import static java.time.temporal.ChronoUnit.DAYS;
 
+/**
+ * The realtime updates on top of the static pt graph: blocked edges, delays and an overlay graph of additional edges
+ * for delayed departures and added trips. Instances are immutable, so they can be used by any number of requests
+ * while the next one is prepared. Use {@link #update} to create the next one: it only recomputes the trip updates
+ * that changed, and the overlay graph only of feeds whose delayed departures or added trips changed.
+ */
 public class RealtimeFeed {
     private static final Logger logger = LoggerFactory.getLogger(RealtimeFeed.class);
     private final IntHashSet blockedEdges;
@@ -53,10 +59,12 @@ public class RealtimeFeed {
     private final TreeSet<PtGraph.PtEdge> additionalEdgesByBaseNode;
     private final TreeSet<PtGraph.PtEdge> additionalEdgesByAdjNode;
     public final Map<String, GtfsRealtime.FeedMessage> feedMessages;
+    private final Map<String, FeedState> feedStates;
 
-    private RealtimeFeed(Map<String, GtfsRealtime.FeedMessage> feedMessages, IntHashSet blockedEdges,
+    private RealtimeFeed(Map<String, GtfsRealtime.FeedMessage> feedMessages, Map<String, FeedState> feedStates, IntHashSet blockedEdges,
                          IntLongHashMap delaysForBoardEdges, IntLongHashMap delaysForAlightEdges, List<PtGraph.PtEdge> additionalEdges) {
         this.feedMessages = feedMessages;
+        this.feedStates = feedStates;
         this.blockedEdges = blockedEdges;
         this.delaysForBoardEdges = delaysForBoardEdges;
         this.delaysForAlightEdges = delaysForAlightEdges;
@@ -67,84 +75,123 @@ public class RealtimeFeed {
     }
 
     public static RealtimeFeed empty() {
-        return new RealtimeFeed(Collections.emptyMap(), new IntHashSet(), new IntLongHashMap(), new IntLongHashMap(), Collections.emptyList());
+        return new RealtimeFeed(Collections.emptyMap(), Collections.emptyMap(), new IntHashSet(), new IntLongHashMap(), new IntLongHashMap(), Collections.emptyList());
     }
 
     public static RealtimeFeed fromProtobuf(GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
-        final IntHashSet blockedEdges = new IntHashSet();
-        final IntLongHashMap delaysForBoardEdges = new IntLongHashMap();
-        final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
-        final LinkedList<PtGraph.PtEdge> additionalEdges = new LinkedList<>();
-        final GtfsReader.PtGraphOut overlayGraph = new GtfsReader.PtGraphOut() {
-            int nextEdge = staticGtfs.getPtGraph().getEdgeCount();
-            int nextNode = staticGtfs.getPtGraph().getNodeCount();
-
-            @Override
-            public int createEdge(int src, int dest, PtEdgeAttributes attrs) {
-                int edgeId = nextEdge++;
-                PtGraph.PtEdge e = new PtGraph.PtEdge(edgeId, src, dest, attrs);
-                assert canBeAdded(e);
-                additionalEdges.add(e);
-                return edgeId;
-            }
-
-            private boolean canBeAdded(PtGraph.PtEdge e) {
-                if (e.getType() != GtfsStorage.EdgeType.ENTER_PT) {
-                    if (staticGtfs.getPtToStreet().containsKey(e.getBaseNode())) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-
-            @Override
-            public int createNode() {
-                return nextNode++;
-            }
-
-        };
+        return empty().update(staticGtfs, transfers, feedMessages);
+    }
 
+    /**
+     * Applies the given feed messages to the state of this feed. This feed is not changed, so requests using it
+     * can continue while the result is created.
+     *
+     * @return a realtime feed for the given feed messages, this one if nothing changed
+     */
+    public RealtimeFeed update(GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
+        if (feedMessages.equals(this.feedMessages))
+            return this;
+        Map<String, FeedState> newFeedStates = new HashMap<>();
+        Map<String, List<DelayedDeparture>> delayedDeparturesByFeed = new HashMap<>();
+        Map<String, List<GtfsRealtime.TripUpdate>> addedTripsByFeed = new HashMap<>();
+        Map<String, LocalDate> daysByFeed = new HashMap<>();
+        // first the trip updates, reusing what we know about unchanged ones
         feedMessages.forEach((feedKey, feedMessage) -> {
             GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
             ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
-            PtGraph ptGraphNodesAndEdges = staticGtfs.getPtGraph();
-            final GtfsReader gtfsReader = new GtfsReader(feedKey, ptGraphNodesAndEdges, overlayGraph, staticGtfs, null, transfers.get(feedKey), null);
-            Instant timestamp = Instant.ofEpochSecond(feedMessage.getHeader().getTimestamp());
-            LocalDate dateToChange = timestamp.atZone(timezone).toLocalDate(); //FIXME
-            BitSet validOnDay = new BitSet();
-            LocalDate startDate = feed.getStartDate();
-            validOnDay.set((int) DAYS.between(startDate, dateToChange));
+            FeedState oldState = feedStates.get(feedKey);
+            Map<GtfsRealtime.TripUpdate, TripUpdateEffect> effects = new HashMap<>();
+            Map<GtfsRealtime.TripDescriptor, int[][]> tripEdges = new HashMap<>();
+            List<DelayedDeparture> delayedDepartures = new ArrayList<>();
             feedMessage.getEntityList().stream()
                     .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
                     .map(GtfsRealtime.FeedEntity::getTripUpdate)
                     .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED)
-                    .forEach(tripUpdate -> maybeUpdateScheduledTrip(staticGtfs, feedKey, tripUpdate, feed, blockedEdges, delaysForAlightEdges, ptGraphNodesAndEdges, gtfsReader, timezone, validOnDay, delaysForBoardEdges));
-            feedMessage.getEntityList().stream()
+                    .forEach(tripUpdate -> {
+                        TripUpdateEffect effect = oldState != null ? oldState.effects.get(tripUpdate) : null;
+                        if (effect == null)
+                            effect = effects.get(tripUpdate);
+                        if (effect == null) {
+                            int[][] boardAndAlightEdges = findBoardAndAlightEdges(staticGtfs, feedKey, feed, tripUpdate.getTrip(), oldState, tripEdges);
+                            effect = boardAndAlightEdges == null ? TripUpdateEffect.NONE : computeEffect(staticGtfs, tripUpdate, feed, boardAndAlightEdges[0], boardAndAlightEdges[1]);
+                        }
+                        effects.put(tripUpdate, effect);
+                        delayedDepartures.addAll(effect.delayedDepartures);
+                    });
+            delayedDeparturesByFeed.put(feedKey, delayedDepartures);
+            addedTripsByFeed.put(feedKey, feedMessage.getEntityList().stream()
                     .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
                     .map(GtfsRealtime.FeedEntity::getTripUpdate)
                     .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED)
-                    .forEach(tripUpdate -> maybeAddExtraTrip(staticGtfs, feedKey, tripUpdate, timezone, validOnDay, gtfsReader));
-            gtfsReader.wireUpAdditionalDeparturesAndArrivals(timezone);
+                    .collect(Collectors.toList()));
+            daysByFeed.put(feedKey, Instant.ofEpochSecond(feedMessage.getHeader().getTimestamp()).atZone(timezone).toLocalDate()); //FIXME
+            newFeedStates.put(feedKey, new FeedState(effects, tripEdges));
         });
 
-        return new RealtimeFeed(feedMessages, blockedEdges, delaysForBoardEdges, delaysForAlightEdges, additionalEdges);
+        // then the overlay graphs. The ones we keep stay where they are, new ones get ids after all of them.
+        int nextEdge = staticGtfs.getPtGraph().getEdgeCount();
+        int nextNode = staticGtfs.getPtGraph().getNodeCount();
+        for (Map.Entry<String, FeedState> e : newFeedStates.entrySet()) {
+            FeedState oldState = feedStates.get(e.getKey());
+            if (oldState != null && oldState.hasOverlayFor(daysByFeed.get(e.getKey()), delayedDeparturesByFeed.get(e.getKey()), addedTripsByFeed.get(e.getKey()))) {
+                e.getValue().setOverlay(oldState);
+                nextEdge = Math.max(nextEdge, oldState.endEdge);
+                nextNode = Math.max(nextNode, oldState.endNode);
+            }
+        }
+        for (Map.Entry<String, FeedState> e : newFeedStates.entrySet()) {
+            if (e.getValue().overlayEdges == null) {
+                String feedKey = e.getKey();
+                FeedState state = e.getValue();
+                createOverlay(staticGtfs, transfers, feedKey, daysByFeed.get(feedKey), delayedDeparturesByFeed.get(feedKey), addedTripsByFeed.get(feedKey), nextEdge, nextNode, state);
+                nextEdge = state.endEdge;
+                nextNode = state.endNode;
+            }
+        }
+
+        final IntHashSet blockedEdges = new IntHashSet();
+        final IntLongHashMap delaysForBoardEdges = new IntLongHashMap();
+        final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
+        final List<PtGraph.PtEdge> additionalEdges = new ArrayList<>();
+        for (FeedState state : newFeedStates.values()) {
+            for (TripUpdateEffect effect : state.effects.values()) {
+                blockedEdges.addAll(effect.blockedEdges);
+                delaysForAlightEdges.putAll(effect.delaysForAlightEdges);
+            }
+            delaysForBoardEdges.putAll(state.delaysForBoardEdges);
+            additionalEdges.addAll(state.overlayEdges);
+        }
+        return new RealtimeFeed(feedMessages, newFeedStates, blockedEdges, delaysForBoardEdges, delaysForAlightEdges, additionalEdges);
     }
 
-    private static void maybeUpdateScheduledTrip(GtfsStorage staticGtfs, String feedKey, GtfsRealtime.TripUpdate tripUpdate, GTFSFeed feed, IntHashSet blockedEdges, IntLongHashMap delaysForAlightEdges, PtGraph ptGraphNodesAndEdges, GtfsReader gtfsReader, ZoneId timezone, BitSet validOnDay, IntLongHashMap delaysForBoardEdges) {
+    private static int[][] findBoardAndAlightEdges(GtfsStorage staticGtfs, String feedKey, GTFSFeed feed, GtfsRealtime.TripDescriptor tripDescriptor, FeedState oldState, Map<GtfsRealtime.TripDescriptor, int[][]> tripEdges) {
+        // the static graph doesn't change, so we can keep these as long as the trip has updates
+        int[][] boardAndAlightEdges = oldState != null ? oldState.tripEdges.get(tripDescriptor) : null;
+        if (boardAndAlightEdges == null)
+            boardAndAlightEdges = tripEdges.get(tripDescriptor);
+        if (boardAndAlightEdges == null) {
+            final int[] boardEdges = findBoardEdgesForTrip(staticGtfs, feedKey, feed, tripDescriptor);
+            final int[] leaveEdges = findAlightEdgesForTrip(staticGtfs, feedKey, feed, tripDescriptor);
+            if (boardEdges == null || leaveEdges == null) {
+                logger.warn("Trip not found: {}", tripDescriptor);
+                return null;
+            }
+            boardAndAlightEdges = new int[][]{boardEdges, leaveEdges};
+        }
+        tripEdges.put(tripDescriptor, boardAndAlightEdges);
+        return boardAndAlightEdges;
+    }
+
+    private static TripUpdateEffect computeEffect(GtfsStorage staticGtfs, GtfsRealtime.TripUpdate tripUpdate, GTFSFeed feed, int[] boardEdges, int[] leaveEdges) {
         Collection<Frequency> frequencies = feed.getFrequencies(tripUpdate.getTrip().getTripId());
         int timeOffset = (tripUpdate.getTrip().hasStartTime() && !frequencies.isEmpty()) ? LocalTime.parse(tripUpdate.getTrip().getStartTime()).toSecondOfDay() : 0;
-        final int[] boardEdges = findBoardEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate.getTrip());
-        final int[] leaveEdges = findAlightEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate.getTrip());
-        if (boardEdges == null || leaveEdges == null) {
-            logger.warn("Trip not found: {}", tripUpdate.getTrip());
-            return;
-        }
+        TripUpdateEffect effect = new TripUpdateEffect();
         tripUpdate.getStopTimeUpdateList().stream()
                 .filter(stopTimeUpdate -> stopTimeUpdate.getScheduleRelationship() == SKIPPED)
                 .mapToInt(GtfsRealtime.TripUpdate.StopTimeUpdate::getStopSequence)
                 .forEach(skippedStopSequenceNumber -> {
-                    blockedEdges.add(boardEdges[skippedStopSequenceNumber]);
-                    blockedEdges.add(leaveEdges[skippedStopSequenceNumber]);
+                    effect.blockedEdges.add(boardEdges[skippedStopSequenceNumber]);
+                    effect.blockedEdges.add(leaveEdges[skippedStopSequenceNumber]);
                 });
         GtfsReader.TripWithStopTimes tripWithStopTimes = toTripWithStopTimes(feed, tripUpdate);
         tripWithStopTimes.stopTimes.forEach(stopTime -> {
@@ -154,15 +201,141 @@ public class RealtimeFeed {
             }
             final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence));
             int arrivalDelay = stopTime.arrival_time - originalStopTime.arrival_time;
-            delaysForAlightEdges.put(leaveEdges[stopTime.stop_sequence], arrivalDelay * 1000);
+            effect.delaysForAlightEdges.put(leaveEdges[stopTime.stop_sequence], arrivalDelay * 1000);
             int departureDelay = stopTime.departure_time - originalStopTime.departure_time;
             if (departureDelay > 0) {
                 int boardEdge = boardEdges[stopTime.stop_sequence];
-                int departureNode = ptGraphNodesAndEdges.edge(boardEdge).getAdjNode();
-                int delayedBoardEdge = gtfsReader.addDelayedBoardEdge(timezone, tripUpdate.getTrip(), stopTime.stop_sequence, stopTime.departure_time + timeOffset, departureNode, validOnDay);
-                delaysForBoardEdges.put(delayedBoardEdge, departureDelay * 1000);
+                int departureNode = staticGtfs.getPtGraph().edge(boardEdge).getAdjNode();
+                effect.delayedDepartures.add(new DelayedDeparture(tripUpdate.getTrip(), stopTime.stop_sequence, stopTime.departure_time + timeOffset, departureNode, departureDelay));
             }
         });
+        return effect;
+    }
+
+    private static void createOverlay(GtfsStorage staticGtfs, Map<String, Transfers> transfers, String feedKey, LocalDate dateToChange, List<DelayedDeparture> delayedDepartures, List<GtfsRealtime.TripUpdate> addedTrips, int firstEdge, int firstNode, FeedState state) {
+        final List<PtGraph.PtEdge> additionalEdges = new ArrayList<>();
+        final IntLongHashMap delaysForBoardEdges = new IntLongHashMap();
+        final int[] next = {firstEdge, firstNode};
+        final GtfsReader.PtGraphOut overlayGraph = new GtfsReader.PtGraphOut() {
+            @Override
+            public int createEdge(int src, int dest, PtEdgeAttributes attrs) {
+                int edgeId = next[0]++;
+                PtGraph.PtEdge e = new PtGraph.PtEdge(edgeId, src, dest, attrs);
+                assert canBeAdded(e);
+                additionalEdges.add(e);
+                return edgeId;
+            }
+
+            private boolean canBeAdded(PtGraph.PtEdge e) {
+                if (e.getType() != GtfsStorage.EdgeType.ENTER_PT) {
+                    if (staticGtfs.getPtToStreet().containsKey(e.getBaseNode())) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public int createNode() {
+                return next[1]++;
+            }
+
+        };
+        GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
+        ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
+        final GtfsReader gtfsReader = new GtfsReader(feedKey, staticGtfs.getPtGraph(), overlayGraph, staticGtfs, null, transfers.get(feedKey), null);
+        BitSet validOnDay = new BitSet();
+        LocalDate startDate = feed.getStartDate();
+        validOnDay.set((int) DAYS.between(startDate, dateToChange));
+        for (DelayedDeparture delayedDeparture : delayedDepartures) {
+            int delayedBoardEdge = gtfsReader.addDelayedBoardEdge(timezone, delayedDeparture.tripDescriptor, delayedDeparture.stopSequence, delayedDeparture.departureTime, delayedDeparture.departureNode, validOnDay);
+            delaysForBoardEdges.put(delayedBoardEdge, delayedDeparture.delay * 1000L);
+        }
+        addedTrips.forEach(tripUpdate -> maybeAddExtraTrip(staticGtfs, feedKey, tripUpdate, timezone, validOnDay, gtfsReader));
+        gtfsReader.wireUpAdditionalDeparturesAndArrivals(timezone);
+        state.day = dateToChange;
+        state.delayedDepartures = delayedDepartures;
+        state.addedTrips = addedTrips;
+        state.overlayEdges = additionalEdges;
+        state.delaysForBoardEdges = delaysForBoardEdges;
+        state.endEdge = next[0];
+        state.endNode = next[1];
+    }
+
+    /**
+     * What a scheduled trip update does outside of the overlay graph, and the delayed departures it adds to it.
+     */
+    private static class TripUpdateEffect {
+        static final TripUpdateEffect NONE = new TripUpdateEffect();
+
+        final IntHashSet blockedEdges = new IntHashSet();
+        final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
+        final List<DelayedDeparture> delayedDepartures = new ArrayList<>();
+    }
+
+    private static class DelayedDeparture {
+        final GtfsRealtime.TripDescriptor tripDescriptor;
+        final int stopSequence;
+        final int departureTime;
+        final int departureNode;
+        final int delay;
+
+        DelayedDeparture(GtfsRealtime.TripDescriptor tripDescriptor, int stopSequence, int departureTime, int departureNode, int delay) {
+            this.tripDescriptor = tripDescriptor;
+            this.stopSequence = stopSequence;
+            this.departureTime = departureTime;
+            this.departureNode = departureNode;
+            this.delay = delay;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            DelayedDeparture that = (DelayedDeparture) o;
+            return stopSequence == that.stopSequence && departureTime == that.departureTime && departureNode == that.departureNode
+                    && delay == that.delay && tripDescriptor.equals(that.tripDescriptor);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tripDescriptor, stopSequence, departureTime, departureNode, delay);
+        }
+    }
+
+    /**
+     * Everything we computed for one feed message, so the next one only needs to compute what changed. The overlay
+     * graph of a feed occupies the node and edge ids up to endNode and endEdge.
+     */
+    private static class FeedState {
+        final Map<GtfsRealtime.TripUpdate, TripUpdateEffect> effects;
+        final Map<GtfsRealtime.TripDescriptor, int[][]> tripEdges;
+        LocalDate day;
+        List<DelayedDeparture> delayedDepartures;
+        List<GtfsRealtime.TripUpdate> addedTrips;
+        List<PtGraph.PtEdge> overlayEdges;
+        IntLongHashMap delaysForBoardEdges;
+        int endEdge;
+        int endNode;
+
+        FeedState(Map<GtfsRealtime.TripUpdate, TripUpdateEffect> effects, Map<GtfsRealtime.TripDescriptor, int[][]> tripEdges) {
+            this.effects = effects;
+            this.tripEdges = tripEdges;
+        }
+
+        boolean hasOverlayFor(LocalDate day, List<DelayedDeparture> delayedDepartures, List<GtfsRealtime.TripUpdate> addedTrips) {
+            return this.day.equals(day) && this.delayedDepartures.equals(delayedDepartures) && this.addedTrips.equals(addedTrips);
+        }
+
+        void setOverlay(FeedState other) {
+            day = other.day;
+            delayedDepartures = other.delayedDepartures;
+            addedTrips = other.addedTrips;
+            overlayEdges = other.overlayEdges;
+            delaysForBoardEdges = other.delaysForBoardEdges;
+            endEdge = other.endEdge;
+            endNode = other.endNode;
+        }
     }
 
     private static void maybeAddExtraTrip(GtfsStorage staticGtfs, String feedKey, GtfsRealtime.TripUpdate tripUpdate, ZoneId timezone, BitSet validOnDay, GtfsReader gtfsReader) {
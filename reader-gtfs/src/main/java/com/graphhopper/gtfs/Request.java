@@ -30,6 +30,7 @@ public class Request {
     private Instant earliestDepartureTime;
     private int maxVisitedNodes = 4_000_000;
     private boolean profileQuery;
+    private boolean rangeRaptor;
     private Boolean ignoreTransfers;
     private double betaTransfers = 0.0;
     private double betaStreetTime = 1.0;
@@ -73,6 +74,19 @@ public class Request {
         this.profileQuery = profileQuery;
     }
 
+    public boolean isRangeRaptor() {
+        return rangeRaptor;
+    }
+
+    /**
+     * Use a range RAPTOR search over all departures within the profile duration instead of repeating the search for
+     * every minute. Only supported by the trip-based router, which falls back to the per-minute search for requests
+     * with transfer or access/egress betas or boarding penalties. Queries by arrival time are rejected.
+     */
+    public void setRangeRaptor(boolean rangeRaptor) {
+        this.rangeRaptor = rangeRaptor;
+    }
+
     public Boolean getIgnoreTransfers() {
         return ignoreTransfers;
     }
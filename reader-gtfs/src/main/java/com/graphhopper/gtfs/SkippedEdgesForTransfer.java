@@ -0,0 +1,108 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.util.List;
+
+/**
+ * The street edges (as edge keys) that an interpolated transfer edge of the pt graph walks along. For every transfer
+ * edge we store a pointer into a list of edge key arrays, so transfer edges inserted for the same walk share their
+ * edge keys:
+ * <pre>
+ * edges: int[transfer edge count]  1 + the index of the edge keys in the list, or 0 if there are none
+ * list:  int length, int[length] edge keys, ...
+ * </pre>
+ */
+public class SkippedEdgesForTransfer {
+
+    private final DataAccess edges;
+    private final DataAccess list;
+    private int edgeCount;
+    private int listSize;
+
+    public SkippedEdgesForTransfer(Directory dir, String name) {
+        edges = dir.create(name, dir.getDefaultType(name, true), -1);
+        list = dir.create(name + "_list", dir.getDefaultType(name + "_list", true), -1);
+    }
+
+    public void create() {
+        edges.create(1000);
+        list.create(1000);
+        edgeCount = 0;
+        listSize = 0;
+    }
+
+    public boolean loadExisting() {
+        if (!edges.loadExisting() || !list.loadExisting())
+            return false;
+        edgeCount = edges.getHeader(0);
+        listSize = list.getHeader(0);
+        return true;
+    }
+
+    public void flush() {
+        edges.setHeader(0, edgeCount);
+        edges.flush();
+        list.setHeader(0, listSize);
+        list.flush();
+    }
+
+    public void close() {
+        edges.close();
+        list.close();
+    }
+
+    public void put(List<Integer> transferEdges, int[] skippedEdges) {
+        if (listSize + 1L + skippedEdges.length >= Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many skipped edges for transfers: " + listSize);
+        int index = listSize;
+        list.ensureCapacity(4L * (listSize + 1 + skippedEdges.length));
+        list.setInt(4L * listSize++, skippedEdges.length);
+        for (int skippedEdge : skippedEdges)
+            list.setInt(4L * listSize++, skippedEdge);
+
+        for (int transferEdge : transferEdges) {
+            if (transferEdge >= edgeCount) {
+                edges.ensureCapacity(4L * (transferEdge + 1));
+                for (int e = edgeCount; e < transferEdge; e++)
+                    edges.setInt(4L * e, 0);
+                edgeCount = transferEdge + 1;
+            }
+            edges.setInt(4L * transferEdge, index + 1);
+        }
+    }
+
+    /**
+     * @return the edge keys of the street edges for the given transfer edge or null if there are none
+     */
+    public int[] get(int transferEdge) {
+        if (transferEdge < 0 || transferEdge >= edgeCount)
+            return null;
+        int index = edges.getInt(4L * transferEdge) - 1;
+        if (index < 0)
+            return null;
+        int[] skippedEdges = new int[list.getInt(4L * index)];
+        for (int i = 0; i < skippedEdges.length; i++)
+            skippedEdges[i] = list.getInt(4L * (index + 1 + i));
+        return skippedEdges;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Caches the stations reachable by walking (or whatever the access and egress profiles do) from the snapped request
+ * locations. Walking doesn't depend on the time of day, so the labels of one search can be reused for a later request
+ * by shifting them in time. The labels refer to the virtual nodes and edges of the query graph, so the key contains
+ * all snapped locations of the request, not just the one the search starts from.
+ */
+public class StationReachabilityCache {
+
+    private final Cache<Key, Reachability> cache;
+
+    /**
+     * @param maximumSize the number of searches to keep, 0 disables the cache
+     */
+    public StationReachabilityCache(long maximumSize) {
+        if (maximumSize < 0)
+            throw new IllegalArgumentException("maximumSize must not be negative: " + maximumSize);
+        cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * @param search the search to run if there is no cached result for the key, at the given time
+     * @return the result of the search for the key, at the given time
+     */
+    Reachability get(Key key, long time, Supplier<Reachability> search) {
+        try {
+            return cache.get(key, search::get).at(time);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    static class Key {
+        private final List<GHPoint> snappedPoints = new ArrayList<>();
+        private final List<Label.NodeId> snappedNodes;
+        private final boolean egress;
+        private final String profile;
+        private final double walkSpeedKmH;
+        private final double betaStreetTime;
+        private final long limitStreetTime;
+        private final int blockedRouteTypes;
+
+        Key(PointList snappedPoints, List<Label.NodeId> snappedNodes, boolean egress, String profile, double walkSpeedKmH, double betaStreetTime, long limitStreetTime, int blockedRouteTypes) {
+            for (int i = 0; i < snappedPoints.size(); i++)
+                this.snappedPoints.add(snappedPoints.get(i));
+            this.snappedNodes = new ArrayList<>(snappedNodes);
+            this.egress = egress;
+            this.profile = profile;
+            this.walkSpeedKmH = walkSpeedKmH;
+            this.betaStreetTime = betaStreetTime;
+            this.limitStreetTime = limitStreetTime;
+            this.blockedRouteTypes = blockedRouteTypes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return egress == key.egress && Double.compare(walkSpeedKmH, key.walkSpeedKmH) == 0 && Double.compare(betaStreetTime, key.betaStreetTime) == 0
+                    && limitStreetTime == key.limitStreetTime && blockedRouteTypes == key.blockedRouteTypes
+                    && snappedPoints.equals(key.snappedPoints) && snappedNodes.equals(key.snappedNodes) && profile.equals(key.profile);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(snappedPoints, snappedNodes, egress, profile, walkSpeedKmH, betaStreetTime, limitStreetTime, blockedRouteTypes);
+        }
+    }
+
+    /**
+     * The result of an access or egress search started at the given time: the labels of the stations in the order
+     * they were settled, and the label of the other request location if it can be reached directly.
+     */
+    static class Reachability {
+        final long time;
+        final List<Label> stationLabels;
+        final Label directLabel;
+        final int visitedNodes;
+
+        Reachability(long time, List<Label> stationLabels, Label directLabel, int visitedNodes) {
+            this.time = time;
+            this.stationLabels = stationLabels;
+            this.directLabel = directLabel;
+            this.visitedNodes = visitedNodes;
+        }
+
+        Reachability at(long time) {
+            if (time == this.time)
+                return this;
+            long diff = time - this.time;
+            // station labels share most of their parents, so we shift each label only once
+            Map<Label, Label> shifted = new IdentityHashMap<>();
+            List<Label> shiftedStationLabels = new ArrayList<>(stationLabels.size());
+            for (Label stationLabel : stationLabels)
+                shiftedStationLabels.add(shift(stationLabel, diff, shifted));
+            return new Reachability(time, shiftedStationLabels, shift(directLabel, diff, shifted), visitedNodes);
+        }
+
+        private static Label shift(Label label, long diff, Map<Label, Label> shifted) {
+            if (label == null)
+                return null;
+            Deque<Label> unshifted = new ArrayDeque<>();
+            Label l = label;
+            while (l != null && !shifted.containsKey(l)) {
+                unshifted.push(l);
+                l = l.parent;
+            }
+            Label parent = l == null ? null : shifted.get(l);
+            while (!unshifted.isEmpty()) {
+                l = unshifted.pop();
+                parent = new Label(l.currentTime + diff, l.edge, l.node, l.nTransfers, l.departureTime != null ? l.departureTime + diff : null, l.streetTime, l.extraWeight, l.residualDelay, l.impossible, parent);
+                shifted.put(l, parent);
+            }
+            return parent;
+        }
+    }
+
+}
@@ -175,6 +175,8 @@ public class TripBasedRouter {
         List<EnqueuedTripSegment> queue1 = new ArrayList<>();
         for (EnqueuedTripSegment enqueuedTripSegment : queue0) {
             logger.debug("{}", enqueuedTripSegment);
+            TripTransfers tripTransfersForDay = tripTransfers.getTripTransfers(enqueuedTripSegment.serviceDay);
+            if (tripTransfersForDay == null) continue; // currently if we didn't build the service day.
             GTFSFeed sourceFeed = gtfsStorage.getGtfsFeeds().get(enqueuedTripSegment.tripPointer.feedId);
             ZoneId sourceZoneId = ZoneId.of(sourceFeed.agency.values().stream().findFirst().get().agency_timezone);
             int toStopSequence = Math.min(enqueuedTripSegment.toStopSequence, enqueuedTripSegment.tripPointer.stopTimes.size());
@@ -183,19 +185,24 @@ public class TripBasedRouter {
                 if (stopTime == null) continue;
                 if (! (getArrivalTime(enqueuedTripSegment, stopTime, 0) < earliestArrivalTime[round]))
                     break;
-                Trips.TripAtStopTime transferOrigin = new Trips.TripAtStopTime(enqueuedTripSegment.tripPointer.idx, stopTime.stop_sequence);
-                logger.debug("  {}", print(transferOrigin, tripTransfers, ARRIVAL));
-                Collection<Trips.TripAtStopTime> transferDestinations = gtfsStorage.tripTransfers.getTripTransfers(enqueuedTripSegment.serviceDay).get(transferOrigin);
-                if (transferDestinations == null) continue; // currently if we didn't build the service day.
-                for (Trips.TripAtStopTime transferDestination : transferDestinations) {
-                    GTFSFeed.StopTimesForTripWithTripPatternKey destinationTripPointer = tripTransfers.getTrip(transferDestination.tripIdx);
+                // the transfer origin is only created when we actually enqueue a transfer from it
+                Trips.TripAtStopTime transferOrigin = null;
+                if (logger.isDebugEnabled())
+                    logger.debug("  {}", print(new Trips.TripAtStopTime(enqueuedTripSegment.tripPointer.idx, stopTime.stop_sequence), tripTransfers, ARRIVAL));
+                int endTransfer = tripTransfersForDay.getEndTransfer(enqueuedTripSegment.tripPointer.idx, stopTime.stop_sequence);
+                for (int transfer = tripTransfersForDay.getFirstTransfer(enqueuedTripSegment.tripPointer.idx, stopTime.stop_sequence); transfer < endTransfer; transfer++) {
+                    GTFSFeed.StopTimesForTripWithTripPatternKey destinationTripPointer = tripTransfers.getTrip(tripTransfersForDay.getTripIdx(transfer));
                     GTFSFeed destinationFeed = gtfsStorage.getGtfsFeeds().get(destinationTripPointer.feedId);
                     ZoneId destinationZoneId = ZoneId.of(destinationFeed.agency.values().stream().findFirst().get().agency_timezone);
-                    StopTime transferStopTime = destinationTripPointer.stopTimes.get(transferDestination.stop_sequence);
+                    int destinationStopSequence = tripTransfersForDay.getStopSequence(transfer);
+                    StopTime transferStopTime = destinationTripPointer.stopTimes.get(destinationStopSequence);
                     LocalDateTime scheduleArrivalTime = enqueuedTripSegment.serviceDay.atStartOfDay().plusSeconds(stopTime.arrival_time);
                     int timeZoneOffset = (int) (scheduleArrivalTime.atZone(sourceZoneId).toEpochSecond() - scheduleArrivalTime.atZone(destinationZoneId).toEpochSecond());
                     if (transferStopTime.departure_time >= stopTime.arrival_time + timeZoneOffset && destinationTripPointer.service.activeOn(enqueuedTripSegment.serviceDay) && parameters.getTripFilter().test(destinationTripPointer)) {
+                        Trips.TripAtStopTime transferDestination = new Trips.TripAtStopTime(destinationTripPointer.idx, destinationStopSequence);
                         logger.debug("    {}", transferDestination);
+                        if (transferOrigin == null)
+                            transferOrigin = new Trips.TripAtStopTime(enqueuedTripSegment.tripPointer.idx, stopTime.stop_sequence);
                         enqueue(queue1, destinationTripPointer, transferDestination, transferOrigin, enqueuedTripSegment, enqueuedTripSegment.serviceDay, enqueuedTripSegment.accessStation, round + 1);
                     }
                 }
@@ -0,0 +1,167 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The trip transfers of one service day, see {@link Trips#findAllTripTransfersInto}. They are stored in a compressed
+ * sparse row layout, so they can be memory-mapped and iterated without creating any objects:
+ * <pre>
+ * int[tripCount + 1]     the first row of each trip, a trip has one row per stop sequence
+ * int[rowCount + 1]      the first transfer of each row
+ * int[2 * transferCount] the trip index and the stop sequence of each transfer destination
+ * </pre>
+ * The transfers from a trip at a stop sequence are
+ * {@code getFirstTransfer(tripIdx, stopSequence) <= transfer < getEndTransfer(tripIdx, stopSequence)}.
+ */
+public class TripTransfers {
+
+    private final DataAccess da;
+    private int tripCount;
+    private int rowCount;
+    private int transferCount;
+    private long rowsPointer;
+    private long transfersPointer;
+
+    public TripTransfers(Directory dir, String name) {
+        da = dir.create(name, dir.getDefaultType(name, true), -1);
+    }
+
+    /**
+     * @param transfers the transfer destinations for every trip index and stop sequence, as pairs of trip index and
+     *                  stop sequence. Trips without transfers on this day can be null.
+     */
+    public void create(int[][][] transfers) {
+        long rows = 0;
+        long transferInts = 0;
+        for (int[][] transfersOfTrip : transfers) {
+            if (transfersOfTrip == null)
+                continue;
+            rows += transfersOfTrip.length;
+            for (int[] transfersAtStop : transfersOfTrip)
+                if (transfersAtStop != null)
+                    transferInts += transfersAtStop.length;
+        }
+        if (rows >= Integer.MAX_VALUE || transferInts / 2 >= Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many trip transfers: " + rows + " origins, " + transferInts / 2 + " destinations");
+        tripCount = transfers.length;
+        rowCount = (int) rows;
+        transferCount = (int) (transferInts / 2);
+        initPointers();
+        da.create(1000);
+        da.ensureCapacity(transfersPointer + 8L * transferCount);
+
+        int row = 0;
+        int transfer = 0;
+        for (int tripIdx = 0; tripIdx < tripCount; tripIdx++) {
+            da.setInt(4L * tripIdx, row);
+            int[][] transfersOfTrip = transfers[tripIdx];
+            if (transfersOfTrip == null)
+                continue;
+            for (int[] transfersAtStop : transfersOfTrip) {
+                da.setInt(rowsPointer + 4L * row++, transfer);
+                if (transfersAtStop == null)
+                    continue;
+                for (int i = 0; i < transfersAtStop.length; i += 2) {
+                    da.setInt(transfersPointer + 8L * transfer, transfersAtStop[i]);
+                    da.setInt(transfersPointer + 8L * transfer + 4, transfersAtStop[i + 1]);
+                    transfer++;
+                }
+            }
+        }
+        da.setInt(4L * tripCount, row);
+        da.setInt(rowsPointer + 4L * row, transfer);
+    }
+
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        tripCount = da.getHeader(0);
+        rowCount = da.getHeader(4);
+        transferCount = da.getHeader(2 * 4);
+        initPointers();
+        return true;
+    }
+
+    private void initPointers() {
+        rowsPointer = 4L * (tripCount + 1);
+        transfersPointer = rowsPointer + 4L * (rowCount + 1);
+    }
+
+    public void flush() {
+        da.setHeader(0, tripCount);
+        da.setHeader(4, rowCount);
+        da.setHeader(2 * 4, transferCount);
+        da.flush();
+    }
+
+    public void close() {
+        da.close();
+    }
+
+    public int getTransferCount() {
+        return transferCount;
+    }
+
+    public int getFirstTransfer(int tripIdx, int stopSequence) {
+        int row = getRow(tripIdx, stopSequence);
+        return row < 0 ? 0 : da.getInt(rowsPointer + 4L * row);
+    }
+
+    /**
+     * @return the transfer after the last transfer from the given trip and stop sequence (exclusive)
+     */
+    public int getEndTransfer(int tripIdx, int stopSequence) {
+        int row = getRow(tripIdx, stopSequence);
+        return row < 0 ? 0 : da.getInt(rowsPointer + 4L * (row + 1));
+    }
+
+    private int getRow(int tripIdx, int stopSequence) {
+        if (tripIdx >= tripCount)
+            return -1;
+        int firstRow = da.getInt(4L * tripIdx);
+        int row = firstRow + stopSequence;
+        return row < da.getInt(4L * (tripIdx + 1)) ? row : -1;
+    }
+
+    public int getTripIdx(int transfer) {
+        return da.getInt(transfersPointer + 8L * transfer);
+    }
+
+    public int getStopSequence(int transfer) {
+        return da.getInt(transfersPointer + 8L * transfer + 4);
+    }
+
+    /**
+     * Convenience method that collects the transfer destinations into a list, use the transfer iteration where
+     * performance matters.
+     */
+    public List<Trips.TripAtStopTime> getTransferDestinations(Trips.TripAtStopTime origin) {
+        int end = getEndTransfer(origin.tripIdx, origin.stop_sequence);
+        List<Trips.TripAtStopTime> result = new ArrayList<>();
+        for (int transfer = getFirstTransfer(origin.tripIdx, origin.stop_sequence); transfer < end; transfer++)
+            result.add(new Trips.TripAtStopTime(getTripIdx(transfer), getStopSequence(transfer)));
+        return result;
+    }
+}
@@ -19,8 +19,9 @@ public class Trips {
 
     public final List<GTFSFeed.StopTimesForTripWithTripPatternKey> trips;
     private Map<GtfsStorage.FeedIdWithStopId, Map<String, List<TripAtStopTime>>> boardingsForStopByPattern = new ConcurrentHashMap<>();
-    private Map<LocalDate, Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>>> tripTransfersPerDay = new ConcurrentHashMap<>();
+    private Map<LocalDate, TripTransfers> tripTransfersPerDay = new ConcurrentHashMap<>();
     public int idx;
+    private volatile RaptorNetwork raptorNetwork;
 
     public Trips(GtfsStorage gtfsStorage) {
         this.gtfsStorage = gtfsStorage;
@@ -109,9 +110,13 @@ public class Trips {
 
     GtfsStorage gtfsStorage;
 
-    private Map<TripAtStopTime, Collection<TripAtStopTime>> findTripTransfers(GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer, String feedKey, LocalDate trafficDay, Map<String, Transfers> transfers, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode) {
+    /**
+     * @return the transfer destinations for every stop sequence of the given trip, as pairs of trip index and stop
+     * sequence
+     */
+    private int[][] findTripTransfers(GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer, String feedKey, LocalDate trafficDay, Map<String, Transfers> transfers, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode) {
         Transfers transfersForFeed = transfers.get(feedKey);
-        Map<TripAtStopTime, Collection<TripAtStopTime>> result = new HashMap<>();
+        int[][] result = new int[tripPointer.stopTimes.size()][];
         List<StopTime> stopTimesExceptFirst = tripPointer.stopTimes.subList(1, tripPointer.stopTimes.size());
         ObjectIntHashMap<GtfsStorage.FeedIdWithStopId> arrivalTimes = new ObjectIntHashMap<>();
         for (StopTime stopTime : Lists.reverse(stopTimesExceptFirst)) {
@@ -128,7 +133,6 @@ public class Trips {
         for (StopTime stopTime : Lists.reverse(stopTimesExceptFirst)) {
             if (stopTime == null)
                 continue;
-            TripAtStopTime origin = new TripAtStopTime(tripPointer.idx, stopTime.stop_sequence);
             List<TripAtStopTime> destinations = new ArrayList<>();
             GtfsStorage.FeedIdWithStopId stopId = new GtfsStorage.FeedIdWithStopId(feedKey, stopTime.stop_id);
             List<Transfer> transfersFromStop = transfersForFeed.getTransfersFromStop(stopId.stopId, tripPointer.trip.route_id);
@@ -150,7 +154,12 @@ public class Trips {
             for (GtfsStorage.InterpolatedTransfer it : gtfsStorage.interpolatedTransfers.get(stopId)) {
                 insertTripTransfers(trafficDay, arrivalTimes, feedKey, stopTime, destinations, it.toPlatformDescriptor, it.streetTime, Collections.emptyList());
             }
-            result.put(origin, destinations);
+            int[] destinationInts = new int[2 * destinations.size()];
+            for (int i = 0; i < destinations.size(); i++) {
+                destinationInts[2 * i] = destinations.get(i).tripIdx;
+                destinationInts[2 * i + 1] = destinations.get(i).stop_sequence;
+            }
+            result[stopTime.stop_sequence] = destinationInts;
         }
         return result;
     }
@@ -207,23 +216,40 @@ public class Trips {
         }
     }
 
-    public void findAllTripTransfersInto(Map<TripAtStopTime, Collection<TripAtStopTime>> result, LocalDate trafficDay, Map<String, Transfers> transfers, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode) {
-        Map<TripAtStopTime, Collection<TripAtStopTime>> r = Collections.synchronizedMap(result);
+    public void findAllTripTransfersInto(TripTransfers result, LocalDate trafficDay, Map<String, Transfers> transfers, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode) {
+        int[][][] transfersByTrip = new int[trips.size()][][];
         trips.stream()
             .filter(trip -> trip.service.activeOn(trafficDay))
             .parallel()
-            .forEach(tripPointer -> {
-                Map<TripAtStopTime, Collection<TripAtStopTime>> reducedTripTransfers = findTripTransfers(tripPointer, tripPointer.feedId, trafficDay, transfers, stopsForStationNode);
-                r.putAll(reducedTripTransfers);
-            });
+            .forEach(tripPointer -> transfersByTrip[tripPointer.idx] = findTripTransfers(tripPointer, tripPointer.feedId, trafficDay, transfers, stopsForStationNode));
+        result.create(transfersByTrip);
+        tripTransfersPerDay.put(trafficDay, result);
     }
 
-    public Map<LocalDate, Map<TripAtStopTime, Collection<TripAtStopTime>>> getTripTransfers() {
+    public Map<LocalDate, TripTransfers> getTripTransfers() {
         return tripTransfersPerDay;
     }
 
-    public Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> getTripTransfers(LocalDate trafficDay) {
-        return tripTransfersPerDay.computeIfAbsent(trafficDay, k -> new TreeMap<>());
+    /**
+     * @return the trip transfers of the given service day, or null if they were not computed for this day
+     */
+    public TripTransfers getTripTransfers(LocalDate trafficDay) {
+        return tripTransfersPerDay.get(trafficDay);
+    }
+
+    /**
+     * @return the timetable as pattern arrays for {@link RaptorRouter}, built on first use
+     */
+    public RaptorNetwork getRaptorNetwork() {
+        RaptorNetwork result = raptorNetwork;
+        if (result == null) {
+            synchronized (this) {
+                result = raptorNetwork;
+                if (result == null)
+                    raptorNetwork = result = new RaptorNetwork(this, gtfsStorage);
+            }
+        }
+        return result;
     }
 
     public GTFSFeed.StopTimesForTripWithTripPatternKey getTrip(int tripIdx) {
@@ -102,7 +102,7 @@ public interface AnotherAgencyIT<T extends PtRouter> {
         public void testMuseum() {
             Trips tripTransfers = graphHopperGtfs().getGtfsStorage().tripTransfers;
             int tripIdx = findTrip("MUSEUMAIRPORT1", LocalTime.of(10, 40), 2, ARRIVAL);
-            Collection<Trips.TripAtStopTime> transferDestinations = tripTransfers.getTripTransfers(LocalDate.of(2007, 1, 1)).get(new Trips.TripAtStopTime(tripIdx, 2));
+            Collection<Trips.TripAtStopTime> transferDestinations = tripTransfers.getTripTransfers(LocalDate.of(2007, 1, 1)).getTransferDestinations(new Trips.TripAtStopTime(tripIdx, 2));
             assertThat(transferDestinations).extracting(td -> print(td, tripTransfers, DEPARTURE)).contains("8 AB3_NO_BLOCK @ 1 BEATTY_AIRPORT 50400");
         }
 
@@ -124,6 +124,49 @@ public interface AnotherAgencyIT<T extends PtRouter> {
         }
     }
 
+    class RangeRaptorPtRouterTest implements AnotherAgencyIT<PtRouter> {
+
+        private static GraphHopperGtfs graphHopperGtfs;
+        static PtRouter ptRouter;
+
+        @BeforeAll
+        static void init() {
+            GraphHopperConfig ghConfig = new GraphHopperConfig();
+            ghConfig.putObject("graph.location", GRAPH_LOC);
+            ghConfig.putObject("import.osm.ignored_highways", "");
+            ghConfig.putObject("datareader.file", "files/beatty.osm");
+            ghConfig.putObject("gtfs.file", "files/sample-feed,files/another-sample-feed");
+            ghConfig.putObject("gtfs.trip_based", true);
+            ghConfig.putObject("gtfs.schedule_day", "2007-01-01,2007-01-02,2007-01-06,2007-01-07");
+            ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+            ghConfig.setProfiles(List.of(
+                    TestProfiles.accessSpeedAndPriority("foot"),
+                    TestProfiles.accessAndSpeed("car")));
+            Helper.removeDir(new File(GRAPH_LOC));
+            graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+            graphHopperGtfs.init(ghConfig);
+            graphHopperGtfs.importOrLoad();
+            PtRouterTripBasedImpl tripBasedRouter = new PtRouterTripBasedImpl(graphHopperGtfs, ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage(), graphHopperGtfs.getPathDetailsBuilderFactory());
+            ptRouter = request -> {
+                request.setRangeRaptor(true);
+                return tripBasedRouter.route(request);
+            };
+        }
+
+        public GraphHopperGtfs graphHopperGtfs() {
+            return graphHopperGtfs;
+        }
+
+        public PtRouter ptRouter() {
+            return ptRouter;
+        }
+
+        @AfterAll
+        public static void close() {
+            graphHopperGtfs.close();
+        }
+    }
+
     class DefaultPtRouterTest implements AnotherAgencyIT<PtRouterImpl> {
 
         private static GraphHopperGtfs graphHopperGtfs;
@@ -104,10 +104,41 @@ public interface GraphHopperGtfsIT<T extends PtRouter> {
         public void testTransferForRoute5IsAvailable() {
             Trips tripTransfers = graphHopperGtfs().getGtfsStorage().tripTransfers;
             int tripIdx = findTrip("STBA", LocalTime.of(7, 50), 2, ARRIVAL);
-            Collection<Trips.TripAtStopTime> transferDestinations = tripTransfers.getTripTransfers(LocalDate.of(2007, 1, 1)).get(new Trips.TripAtStopTime(tripIdx, 2));
+            Collection<Trips.TripAtStopTime> transferDestinations = tripTransfers.getTripTransfers(LocalDate.of(2007, 1, 1)).getTransferDestinations(new Trips.TripAtStopTime(tripIdx, 2));
             assertThat(transferDestinations).extracting(td -> print(td, tripTransfers, DEPARTURE)).contains("4 AB1 @ 1 BEATTY_AIRPORT 28800");
         }
 
+        @Test
+        public void testAccessAndEgressAreReusedForLaterDepartures() {
+            GtfsStorage gtfsStorage = graphHopperGtfs().getGtfsStorage();
+            try {
+                gtfsStorage.setStationReachabilityCache(new StationReachabilityCache(100));
+                Request request = new Request(36.914893, -116.76821, 36.914944, -116.761472);
+                request.setEarliestDepartureTime(LocalDateTime.of(2007, 1, 1, 6, 44).atZone(zoneId).toInstant());
+                ptRouter().route(request);
+                assertEquals(2, gtfsStorage.getStationReachabilityCache().size(), "one access and one egress search");
+
+                Request laterRequest = new Request(36.914893, -116.76821, 36.914944, -116.761472);
+                laterRequest.setEarliestDepartureTime(LocalDateTime.of(2007, 1, 1, 7, 44).atZone(zoneId).toInstant());
+                GHResponse cachedResponse = ptRouter().route(laterRequest);
+                assertEquals(2, gtfsStorage.getStationReachabilityCache().size(), "the same searches, just later");
+
+                gtfsStorage.setStationReachabilityCache(new StationReachabilityCache(0));
+                GHResponse response = ptRouter().route(laterRequest);
+                assertFalse(response.getAll().isEmpty());
+                assertEquals(legTimes(response), legTimes(cachedResponse));
+            } finally {
+                gtfsStorage.setStationReachabilityCache(new StationReachabilityCache(1000));
+            }
+        }
+
+        private List<String> legTimes(GHResponse response) {
+            return response.getAll().stream()
+                    .flatMap(p -> p.getLegs().stream())
+                    .map(l -> l.type + " " + l.getDepartureTime().toInstant() + " " + l.getArrivalTime().toInstant() + " " + l.getDistance())
+                    .collect(Collectors.toList());
+        }
+
         private int findTrip(String tripId, LocalTime time, int stopSequence, Trips.TripAtStopTime.ArrivalDeparture arrivalDeparture) {
             Trips tripTransfers = graphHopperGtfs().getGtfsStorage().tripTransfers;
             int tripIdx = 0;
@@ -126,6 +157,66 @@ public interface GraphHopperGtfsIT<T extends PtRouter> {
         }
     }
 
+    class RangeRaptorPtRouterTest implements GraphHopperGtfsIT<PtRouter> {
+
+        private static GraphHopperGtfs graphHopperGtfs;
+        static PtRouter ptRouter;
+
+        @BeforeAll
+        static void init() {
+            Helper.removeDir(new File(GRAPH_LOC));
+            GraphHopperConfig ghConfig = new GraphHopperConfig();
+            ghConfig.putObject("graph.location", GRAPH_LOC);
+            ghConfig.putObject("import.osm.ignored_highways", "");
+            ghConfig.putObject("gtfs.file", "files/sample-feed");
+            ghConfig.putObject("gtfs.trip_based", true);
+            ghConfig.putObject("gtfs.trip_based.max_transfer_time", 24 * 60 * 60);
+            ghConfig.putObject("gtfs.schedule_day", "2007-01-01,2007-01-02,2007-01-06,2007-01-07");
+            ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+            ghConfig.setProfiles(List.of(
+                    TestProfiles.accessSpeedAndPriority("foot"),
+                    TestProfiles.accessAndSpeed("car")));
+            graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+            graphHopperGtfs.init(ghConfig);
+            graphHopperGtfs.importOrLoad();
+            PtRouterTripBasedImpl tripBasedRouter = new PtRouterTripBasedImpl(graphHopperGtfs, ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage(), graphHopperGtfs.getPathDetailsBuilderFactory());
+            ptRouter = request -> {
+                request.setRangeRaptor(true);
+                return tripBasedRouter.route(request);
+            };
+        }
+
+        public GraphHopperGtfs graphHopperGtfs() {
+            return graphHopperGtfs;
+        }
+
+        public PtRouter ptRouter() {
+            return ptRouter;
+        }
+
+        @Override
+        public GHResponse route(Request request) {
+            assumeFalse(request.isArriveBy(), "We are excused from queries by arrival time so far");
+            return ptRouter().route(request);
+        }
+
+        @Test
+        public void testArriveByIsRejected() {
+            Request request = new Request(Arrays.asList(
+                    new GHStationLocation("NADAV"),
+                    new GHStationLocation("NANAA")),
+                    LocalDateTime.of(2007, 1, 1, 6, 49).atZone(zoneId).toInstant());
+            request.setArriveBy(true);
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ptRouter().route(request));
+            assertEquals("pt.range_raptor does not support pt.arrive_by", e.getMessage());
+        }
+
+        @AfterAll
+        public static void close() {
+            graphHopperGtfs.close();
+        }
+    }
+
     class DefaultPtRouterTest implements GraphHopperGtfsIT<PtRouterImpl> {
 
         private static GraphHopperGtfs graphHopperGtfs;
@@ -19,10 +19,7 @@
 package com.graphhopper;
 
 import com.google.transit.realtime.GtfsRealtime;
-import com.graphhopper.gtfs.GraphHopperGtfs;
-import com.graphhopper.gtfs.PtRouter;
-import com.graphhopper.gtfs.PtRouterImpl;
-import com.graphhopper.gtfs.Request;
+import com.graphhopper.gtfs.*;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.TranslationMap;
@@ -34,6 +31,8 @@ import java.io.File;
 import java.math.BigDecimal;
 import java.time.*;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static com.google.transit.realtime.GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED;
 import static com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SCHEDULED;
@@ -758,6 +757,53 @@ public class RealtimeIT {
         checkDelayAtEnd(feedMessage);
     }
 
+    @Test
+    public void testUpdate() {
+        Request ghRequest = new Request(36.914893, -116.76821, 36.914944, -116.761472); // NADAV to NANAA
+        ghRequest.setEarliestDepartureTime(LocalDateTime.of(2007, 1, 1, 6, 44).atZone(zoneId).toInstant());
+
+        final GtfsRealtime.FeedMessage.Builder skipped = GtfsRealtime.FeedMessage.newBuilder();
+        skipped.setHeader(header());
+        skipped.addEntityBuilder()
+                .setId("1")
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00"))
+                .addStopTimeUpdateBuilder()
+                .setStopSequence(3)
+                .setScheduleRelationship(SKIPPED);
+        final GtfsRealtime.FeedMessage.Builder delayed = GtfsRealtime.FeedMessage.newBuilder();
+        delayed.setHeader(header());
+        delayed.addEntityBuilder()
+                .setId("1")
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00"))
+                .addStopTimeUpdateBuilder()
+                .setScheduleRelationship(SCHEDULED)
+                .setStopSequence(3)
+                .setDeparture(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setDelay(3600).build());
+
+        Map<String, Transfers> transfers = Map.of("gtfs_0", new Transfers(graphHopperGtfs.getGtfsStorage().getGtfsFeeds().get("gtfs_0")));
+        RealtimeFeed realtimeFeed = RealtimeFeed.empty();
+        for (GtfsRealtime.FeedMessage feedMessage : List.of(skipped.build(), delayed.build(), delayed.build(), skipped.build())) {
+            RealtimeFeed updatedFeed = realtimeFeed.update(graphHopperGtfs.getGtfsStorage(), transfers, Map.of("gtfs_0", feedMessage));
+            if (realtimeFeed.feedMessages.equals(Map.of("gtfs_0", feedMessage)))
+                assertSame(realtimeFeed, updatedFeed, "Nothing changed, so we keep using the same feed");
+            realtimeFeed = updatedFeed;
+            GHResponse expected = graphHopperFactory.createWith(feedMessage).route(ghRequest);
+            GHResponse actual = graphHopperFactory.createWith(realtimeFeed).route(ghRequest);
+            assertEquals(describe(expected), describe(actual), "An updated feed routes like a new one");
+        }
+    }
+
+    private static List<String> describe(GHResponse response) {
+        return response.getAll().stream()
+                .map(p -> p.getTime() + " " + p.isImpossible() + " " + p.getLegs().stream()
+                        .filter(l -> l instanceof Trip.PtLeg)
+                        .map(l -> ((Trip.PtLeg) l).stops.stream().map(s -> s.plannedDepartureTime + "/" + s.predictedDepartureTime + "/" + s.departureCancelled).collect(Collectors.toList()).toString())
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
     public GtfsRealtime.FeedHeader.Builder header() {
         return GtfsRealtime.FeedHeader.newBuilder()
                 .setGtfsRealtimeVersion("1")
@@ -0,0 +1,84 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeMappingTest {
+
+    @Test
+    void createAndLoad(@TempDir Path path) {
+        NodeMapping mapping = new NodeMapping(new GHDirectory(path.toString(), DAType.RAM_STORE), "pt_to_street");
+        mapping.create();
+        mapping.put(3, 0);
+        mapping.put(1, 7);
+        // grows beyond the initial capacity
+        mapping.put(5000, 42);
+        mapping.flush();
+        mapping.close();
+
+        NodeMapping loaded = new NodeMapping(new GHDirectory(path.toString(), DAType.RAM_STORE), "pt_to_street");
+        assertTrue(loaded.loadExisting());
+        assertEquals(0, loaded.getOrDefault(3, -1));
+        assertEquals(7, loaded.getOrDefault(1, -1));
+        assertEquals(42, loaded.getOrDefault(5000, -1));
+        // the gaps and the nodes beyond the last mapped node are not mapped
+        assertFalse(loaded.containsKey(0));
+        assertFalse(loaded.containsKey(2));
+        assertFalse(loaded.containsKey(4999));
+        assertFalse(loaded.containsKey(5001));
+        assertFalse(loaded.containsKey(-1));
+        loaded.close();
+    }
+
+    @Test
+    void createAndLoadEmpty(@TempDir Path path) {
+        NodeMapping mapping = new NodeMapping(new GHDirectory(path.toString(), DAType.RAM_STORE), "pt_to_street");
+        mapping.create();
+        mapping.flush();
+        mapping.close();
+
+        NodeMapping loaded = new NodeMapping(new GHDirectory(path.toString(), DAType.RAM_STORE), "pt_to_street");
+        assertTrue(loaded.loadExisting());
+        assertFalse(loaded.containsKey(0));
+        assertEquals(-1, loaded.getOrDefault(0, -1));
+        loaded.close();
+    }
+
+    @Test
+    void loadMissing(@TempDir Path path) {
+        NodeMapping mapping = new NodeMapping(new GHDirectory(path.toString(), DAType.RAM_STORE), "pt_to_street");
+        assertFalse(mapping.loadExisting());
+    }
+
+    @Test
+    void negativeNodes() {
+        NodeMapping mapping = new NodeMapping(new GHDirectory("", DAType.RAM), "pt_to_street");
+        mapping.create();
+        assertThrows(IllegalArgumentException.class, () -> mapping.put(-1, 3));
+        assertThrows(IllegalArgumentException.class, () -> mapping.put(3, -1));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.google.transit.realtime.GtfsRealtime;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.BitSet;
+
+import static com.graphhopper.gtfs.GtfsStorage.EdgeType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PtGraphTest {
+
+    @Test
+    void createAndLoad(@TempDir Path path) {
+        BitSet days = new BitSet();
+        days.set(0, 5);
+        days.set(200);
+        GtfsStorage.Validity validity = new GtfsStorage.Validity(days, ZoneId.of("America/Los_Angeles"), LocalDate.of(2007, 1, 1));
+        GtfsRealtime.TripDescriptor trip = GtfsRealtime.TripDescriptor.newBuilder().setTripId("AB1").setRouteId("AB").setStartTime("08:00:00").build();
+        GtfsStorage.PlatformDescriptor routePlatform = GtfsStorage.PlatformDescriptor.route("gtfs_0", "BEATTY_AIRPORT", "AB");
+        GtfsStorage.PlatformDescriptor routeTypePlatform = GtfsStorage.PlatformDescriptor.routeType("gtfs_0", "STAGECOACH", 3);
+        GtfsStorage.FeedIdWithTimezone feed = new GtfsStorage.FeedIdWithTimezone("gtfs_0", ZoneId.of("America/Los_Angeles"));
+
+        PtGraph ptGraph = new PtGraph(new GHDirectory(path.toString(), DAType.RAM_STORE), 0);
+        ptGraph.create(100);
+        ptGraph.createEdge(0, 1, new PtEdgeAttributes(ENTER_TIME_EXPANDED_NETWORK, 10, null, -1, feed, 0, -1, null, null));
+        ptGraph.createEdge(1, 2, new PtEdgeAttributes(ENTER_PT, 0, null, 3, null, 0, -1, null, routePlatform));
+        ptGraph.createEdge(2, 3, new PtEdgeAttributes(BOARD, 0, validity, -1, null, 1, 4, trip, null));
+        ptGraph.createEdge(3, 4, new PtEdgeAttributes(HOP, 300, null, -1, null, 0, 4, null, null));
+        ptGraph.createEdge(4, 5, new PtEdgeAttributes(ALIGHT, 0, validity, -1, null, 0, 5, trip, null));
+        ptGraph.createEdge(5, 6, new PtEdgeAttributes(TRANSFER, 120, null, 3, null, 0, -1, null, routeTypePlatform));
+        ptGraph.createEdge(6, 7, new PtEdgeAttributes(LEAVE_TIME_EXPANDED_NETWORK, 20, null, -1, feed, 0, -1, null, null));
+        ptGraph.flush();
+        ptGraph.close();
+
+        PtGraph loaded = new PtGraph(new GHDirectory(path.toString(), DAType.RAM_STORE), 0);
+        assertTrue(loaded.loadExisting());
+        assertEquals(8, loaded.getNodeCount());
+        assertEquals(7, loaded.getEdgeCount());
+
+        PtEdgeAttributes attrs = loaded.edge(0).getAttrs();
+        assertEquals(ENTER_TIME_EXPANDED_NETWORK, attrs.type);
+        assertEquals(10, attrs.time);
+        assertEquals(feed, attrs.feedIdWithTimezone);
+
+        attrs = loaded.edge(1).getAttrs();
+        assertEquals(ENTER_PT, attrs.type);
+        assertEquals(3, attrs.route_type);
+        assertEquals(routePlatform, attrs.platformDescriptor);
+
+        attrs = loaded.edge(2).getAttrs();
+        assertEquals(BOARD, attrs.type);
+        assertEquals(validity, attrs.validity);
+        assertEquals(trip, attrs.tripDescriptor);
+        assertEquals(1, attrs.transfers);
+        assertEquals(4, attrs.stop_sequence);
+
+        attrs = loaded.edge(3).getAttrs();
+        assertEquals(HOP, attrs.type);
+        assertEquals(300, attrs.time);
+        assertEquals(4, attrs.stop_sequence);
+
+        attrs = loaded.edge(4).getAttrs();
+        assertEquals(ALIGHT, attrs.type);
+        assertEquals(validity, attrs.validity);
+        assertEquals(trip, attrs.tripDescriptor);
+        assertEquals(5, attrs.stop_sequence);
+
+        attrs = loaded.edge(5).getAttrs();
+        assertEquals(TRANSFER, attrs.type);
+        assertEquals(120, attrs.time);
+        assertEquals(routeTypePlatform, attrs.platformDescriptor);
+
+        attrs = loaded.edge(6).getAttrs();
+        assertEquals(LEAVE_TIME_EXPANDED_NETWORK, attrs.type);
+        assertEquals(feed, attrs.feedIdWithTimezone);
+
+        assertEquals(5, loaded.edgesAround(4).iterator().next().getAdjNode());
+        assertEquals(3, loaded.backEdgesAround(4).iterator().next().getAdjNode());
+        loaded.close();
+    }
+
+    @Test
+    void createAndLoadEmpty(@TempDir Path path) {
+        PtGraph ptGraph = new PtGraph(new GHDirectory(path.toString(), DAType.RAM_STORE), 0);
+        ptGraph.create(100);
+        ptGraph.flush();
+        ptGraph.close();
+
+        PtGraph loaded = new PtGraph(new GHDirectory(path.toString(), DAType.RAM_STORE), 0);
+        assertTrue(loaded.loadExisting());
+        assertEquals(0, loaded.getNodeCount());
+        assertEquals(0, loaded.getEdgeCount());
+        loaded.close();
+    }
+
+    @Test
+    void createAndLoadExtraSpanningSegments(@TempDir Path path) {
+        GtfsStorage.Validity validity = new GtfsStorage.Validity(new BitSet(), ZoneId.of("Europe/Berlin"), LocalDate.of(2024, 1, 1));
+        PtGraph ptGraph = new PtGraph(new GHDirectory(path.toString(), DAType.RAM_STORE), 0);
+        ptGraph.create(100);
+        // the trip descriptors alone need more than one segment of the underlying storage
+        int trips = 40_000;
+        for (int i = 0; i < trips; i++) {
+            GtfsRealtime.TripDescriptor trip = GtfsRealtime.TripDescriptor.newBuilder().setTripId("a_rather_long_trip_id_" + i).build();
+            ptGraph.createEdge(2 * i, 2 * i + 1, new PtEdgeAttributes(BOARD, 0, validity, -1, null, 0, 1, trip, null));
+        }
+        ptGraph.flush();
+        ptGraph.close();
+
+        PtGraph loaded = new PtGraph(new GHDirectory(path.toString(), DAType.RAM_STORE), 0);
+        assertTrue(loaded.loadExisting());
+        assertEquals(trips, loaded.getEdgeCount());
+        for (int i = 0; i < trips; i += 997)
+            assertEquals("a_rather_long_trip_id_" + i, loaded.edge(i).getAttrs().tripDescriptor.getTripId());
+        assertEquals("a_rather_long_trip_id_" + (trips - 1), loaded.edge(trips - 1).getAttrs().tripDescriptor.getTripId());
+        assertEquals(validity, loaded.edge(trips - 1).getAttrs().validity);
+        loaded.close();
+    }
+}
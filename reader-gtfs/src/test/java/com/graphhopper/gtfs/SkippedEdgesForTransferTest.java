@@ -0,0 +1,72 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SkippedEdgesForTransferTest {
+
+    @Test
+    void createAndLoad(@TempDir Path path) {
+        SkippedEdgesForTransfer skippedEdges = new SkippedEdgesForTransfer(new GHDirectory(path.toString(), DAType.RAM_STORE), "skipped");
+        skippedEdges.create();
+        skippedEdges.put(List.of(2, 4), new int[]{10, 11, 12});
+        skippedEdges.put(List.of(0), new int[]{});
+        // grows beyond the initial capacity
+        int[] many = new int[1000];
+        for (int i = 0; i < many.length; i++)
+            many[i] = 2 * i;
+        skippedEdges.put(List.of(3000), many);
+        skippedEdges.flush();
+        skippedEdges.close();
+
+        SkippedEdgesForTransfer loaded = new SkippedEdgesForTransfer(new GHDirectory(path.toString(), DAType.RAM_STORE), "skipped");
+        assertTrue(loaded.loadExisting());
+        assertArrayEquals(new int[]{10, 11, 12}, loaded.get(2));
+        assertArrayEquals(new int[]{10, 11, 12}, loaded.get(4));
+        assertArrayEquals(new int[]{}, loaded.get(0));
+        assertArrayEquals(many, loaded.get(3000));
+        assertNull(loaded.get(1));
+        assertNull(loaded.get(3));
+        assertNull(loaded.get(3001));
+        assertNull(loaded.get(-1));
+        loaded.close();
+    }
+
+    @Test
+    void createAndLoadEmpty(@TempDir Path path) {
+        SkippedEdgesForTransfer skippedEdges = new SkippedEdgesForTransfer(new GHDirectory(path.toString(), DAType.RAM_STORE), "skipped");
+        skippedEdges.create();
+        skippedEdges.flush();
+        skippedEdges.close();
+
+        SkippedEdgesForTransfer loaded = new SkippedEdgesForTransfer(new GHDirectory(path.toString(), DAType.RAM_STORE), "skipped");
+        assertTrue(loaded.loadExisting());
+        assertNull(loaded.get(0));
+        loaded.close();
+    }
+}
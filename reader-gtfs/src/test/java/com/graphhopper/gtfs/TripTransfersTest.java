@@ -0,0 +1,74 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.GHDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TripTransfersTest {
+
+    @Test
+    public void testCreateAndLoad(@TempDir Path path) {
+        Directory dir = new GHDirectory(path.toString(), DAType.RAM_STORE).create();
+        TripTransfers tripTransfers = new TripTransfers(dir, "trip_transfers_2007-01-01");
+        tripTransfers.create(new int[][][]{
+                {null, {2, 1, 3, 0}, {}},
+                null,
+                {null, {0, 2}},
+                {{1, 1}}
+        });
+        assertTransfers(tripTransfers);
+        tripTransfers.flush();
+        tripTransfers.close();
+
+        // load from a new directory, just like after a restart
+        dir = new GHDirectory(path.toString(), DAType.RAM_STORE);
+        tripTransfers = new TripTransfers(dir, "trip_transfers_2007-01-01");
+        assertTrue(tripTransfers.loadExisting());
+        assertTransfers(tripTransfers);
+        tripTransfers.close();
+
+        assertFalse(new TripTransfers(dir, "trip_transfers_2007-01-02").loadExisting());
+    }
+
+    private void assertTransfers(TripTransfers tripTransfers) {
+        assertEquals(4, tripTransfers.getTransferCount());
+        assertEquals(Arrays.asList(new Trips.TripAtStopTime(2, 1), new Trips.TripAtStopTime(3, 0)),
+                tripTransfers.getTransferDestinations(new Trips.TripAtStopTime(0, 1)));
+        assertEquals(Collections.singletonList(new Trips.TripAtStopTime(0, 2)),
+                tripTransfers.getTransferDestinations(new Trips.TripAtStopTime(2, 1)));
+        assertEquals(Collections.singletonList(new Trips.TripAtStopTime(1, 1)),
+                tripTransfers.getTransferDestinations(new Trips.TripAtStopTime(3, 0)));
+        // stop sequences and trips without transfers
+        assertTrue(tripTransfers.getTransferDestinations(new Trips.TripAtStopTime(0, 0)).isEmpty());
+        assertTrue(tripTransfers.getTransferDestinations(new Trips.TripAtStopTime(0, 2)).isEmpty());
+        assertTrue(tripTransfers.getTransferDestinations(new Trips.TripAtStopTime(0, 5)).isEmpty());
+        assertTrue(tripTransfers.getTransferDestinations(new Trips.TripAtStopTime(1, 0)).isEmpty());
+        assertTrue(tripTransfers.getTransferDestinations(new Trips.TripAtStopTime(4, 0)).isEmpty());
+    }
+}
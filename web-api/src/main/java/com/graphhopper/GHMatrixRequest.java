@@ -0,0 +1,189 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Request object to calculate the weights, times and/or distances between many points with GraphHopper. Either
+ * specify the points (symmetric matrix) or the from and to points.
+ */
+public class GHMatrixRequest {
+    private String profile = "";
+    private List<GHPoint> points;
+    private List<GHPoint> fromPoints;
+    private List<GHPoint> toPoints;
+    private List<String> pointHints = new ArrayList<>();
+    private List<String> fromPointHints = new ArrayList<>();
+    private List<String> toPointHints = new ArrayList<>();
+    private List<String> curbsides = new ArrayList<>();
+    private List<String> fromCurbsides = new ArrayList<>();
+    private List<String> toCurbsides = new ArrayList<>();
+    private List<String> snapPreventions;
+    private List<String> outArrays = new ArrayList<>(List.of("weights"));
+    private boolean failFast = true;
+    private final PMap hints = new PMap();
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public GHMatrixRequest setProfile(String profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    public List<GHPoint> getPoints() {
+        return points;
+    }
+
+    /**
+     * Sets the points for a symmetric matrix, i.e. these points will be used as from and as to points.
+     */
+    public GHMatrixRequest setPoints(List<GHPoint> points) {
+        this.points = points;
+        return this;
+    }
+
+    public List<GHPoint> getFromPoints() {
+        return points == null ? fromPoints : points;
+    }
+
+    public GHMatrixRequest setFromPoints(List<GHPoint> fromPoints) {
+        this.fromPoints = fromPoints;
+        return this;
+    }
+
+    public List<GHPoint> getToPoints() {
+        return points == null ? toPoints : points;
+    }
+
+    public GHMatrixRequest setToPoints(List<GHPoint> toPoints) {
+        this.toPoints = toPoints;
+        return this;
+    }
+
+    public GHMatrixRequest setPointHints(List<String> pointHints) {
+        this.pointHints = pointHints;
+        return this;
+    }
+
+    public List<String> getFromPointHints() {
+        return points == null ? fromPointHints : pointHints;
+    }
+
+    public GHMatrixRequest setFromPointHints(List<String> fromPointHints) {
+        this.fromPointHints = fromPointHints;
+        return this;
+    }
+
+    public List<String> getToPointHints() {
+        return points == null ? toPointHints : pointHints;
+    }
+
+    public GHMatrixRequest setToPointHints(List<String> toPointHints) {
+        this.toPointHints = toPointHints;
+        return this;
+    }
+
+    public GHMatrixRequest setCurbsides(List<String> curbsides) {
+        this.curbsides = curbsides;
+        return this;
+    }
+
+    public List<String> getFromCurbsides() {
+        return points == null ? fromCurbsides : curbsides;
+    }
+
+    public GHMatrixRequest setFromCurbsides(List<String> fromCurbsides) {
+        this.fromCurbsides = fromCurbsides;
+        return this;
+    }
+
+    public List<String> getToCurbsides() {
+        return points == null ? toCurbsides : curbsides;
+    }
+
+    public GHMatrixRequest setToCurbsides(List<String> toCurbsides) {
+        this.toCurbsides = toCurbsides;
+        return this;
+    }
+
+    public boolean hasSnapPreventions() {
+        return snapPreventions != null;
+    }
+
+    public GHMatrixRequest setSnapPreventions(List<String> snapPreventions) {
+        this.snapPreventions = snapPreventions;
+        return this;
+    }
+
+    public List<String> getSnapPreventions() {
+        if (snapPreventions == null) return Collections.emptyList();
+        return snapPreventions;
+    }
+
+    /**
+     * Specifies which arrays should be calculated: "weights", "times" and/or "distances"
+     */
+    public GHMatrixRequest setOutArrays(List<String> outArrays) {
+        this.outArrays = outArrays;
+        return this;
+    }
+
+    public List<String> getOutArrays() {
+        return outArrays;
+    }
+
+    /**
+     * @param failFast if false points that cannot be found and disconnected pairs of points do not lead to an error,
+     *                 but are reported in the response instead
+     */
+    public GHMatrixRequest setFailFast(boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+
+    public boolean getFailFast() {
+        return failFast;
+    }
+
+    public PMap getHints() {
+        return hints;
+    }
+
+    // a good trick to serialize unknown properties into the HintsMap
+    @JsonAnySetter
+    public GHMatrixRequest putHint(String fieldName, Object value) {
+        this.hints.putObject(fieldName, value);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        List<GHPoint> from = getFromPoints(), to = getToPoints();
+        return (from == null ? 0 : from.size()) + "x" + (to == null ? 0 : to.size()) + ", profile: " + profile
+                + ", out_arrays: " + outArrays + (hints.isEmpty() ? "" : " (Hints:" + hints + ")");
+    }
+}
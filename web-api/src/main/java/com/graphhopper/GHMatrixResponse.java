@@ -0,0 +1,129 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.util.PMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a {@link GHMatrixRequest}. The arrays are indexed by [fromIndex][toIndex] and are null if they were
+ * not requested. Pairs of points that are not connected have an infinite weight and distance and a time of
+ * Long.MAX_VALUE.
+ */
+public class GHMatrixResponse {
+    private final List<Throwable> errors = new ArrayList<>(4);
+    private final PMap hints = new PMap();
+    private final List<int[]> disconnectedPoints = new ArrayList<>();
+    private final List<Integer> invalidFromPoints = new ArrayList<>();
+    private final List<Integer> invalidToPoints = new ArrayList<>();
+    private double[][] weights;
+    private long[][] times;
+    private double[][] distances;
+    private String debugInfo = "";
+
+    public double[][] getWeights() {
+        return weights;
+    }
+
+    public GHMatrixResponse setWeights(double[][] weights) {
+        this.weights = weights;
+        return this;
+    }
+
+    /**
+     * @return the times in milliseconds
+     */
+    public long[][] getTimes() {
+        return times;
+    }
+
+    public GHMatrixResponse setTimes(long[][] times) {
+        this.times = times;
+        return this;
+    }
+
+    /**
+     * @return the distances in meters
+     */
+    public double[][] getDistances() {
+        return distances;
+    }
+
+    public GHMatrixResponse setDistances(double[][] distances) {
+        this.distances = distances;
+        return this;
+    }
+
+    /**
+     * @return the pairs of from and to indices for which no connection was found
+     */
+    public List<int[]> getDisconnectedPoints() {
+        return disconnectedPoints;
+    }
+
+    public void addDisconnectedPoints(int fromIndex, int toIndex) {
+        disconnectedPoints.add(new int[]{fromIndex, toIndex});
+    }
+
+    public List<Integer> getInvalidFromPoints() {
+        return invalidFromPoints;
+    }
+
+    public List<Integer> getInvalidToPoints() {
+        return invalidToPoints;
+    }
+
+    public PMap getHints() {
+        return hints;
+    }
+
+    public void addDebugInfo(String debugInfo) {
+        if (debugInfo == null)
+            throw new IllegalStateException("Debug information has to be none null");
+
+        if (!this.debugInfo.isEmpty())
+            this.debugInfo += "; ";
+
+        this.debugInfo += debugInfo;
+    }
+
+    public String getDebugInfo() {
+        return debugInfo;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    public List<Throwable> getErrors() {
+        return errors;
+    }
+
+    public GHMatrixResponse addError(Throwable error) {
+        errors.add(error);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "errors: " + errors + ", disconnected: " + disconnectedPoints.size()
+                + ", invalid from: " + invalidFromPoints + ", invalid to: " + invalidToPoints;
+    }
+}
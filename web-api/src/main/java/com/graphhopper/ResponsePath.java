@@ -255,6 +255,13 @@ public class ResponsePath {
         this.instructions = instructions;
     }
 
+    /**
+     * @return true if the creation of instructions was enabled for this path
+     */
+    public boolean hasInstructions() {
+        return instructions != null;
+    }
+
     /**
      * Adds the given PathDetails to the existing ones. If there are already PathDetails set, the number
      * details has to be equal to <code>details</code>.
@@ -0,0 +1,423 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jackson;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A compact binary alternative to the JSON response of {@link ResponsePathSerializer}, which avoids building and
+ * parsing text for clients that request many routes. The points are delta encoded integers like in the encoded
+ * polyline, the path details are stored as typed ranges and the instructions as records that refer to the points
+ * by their length. All integers are variable-length encoded and signed integers are zigzag encoded, so small values
+ * need only one byte.
+ * <p>
+ * The layout is: magic bytes and version, hints, info, paths. Every path contains the distance, weight, time,
+ * transfers, description, snapped waypoints and, if points were calculated, the points, ascend, descend,
+ * instructions and path details. The legs and the fare of public transit routes are not included. Errors are still
+ * returned as JSON.
+ */
+public class ResponsePathBinaryFormat {
+    public static final String MEDIA_TYPE = "application/x-graphhopper-route";
+    private static final byte[] MAGIC = {'G', 'H', 'R'};
+    private static final int VERSION = 1;
+
+    private static final int FLAG_POINTS = 1;
+    private static final int FLAG_ELEVATION = 1 << 1;
+    private static final int FLAG_INSTRUCTIONS = 1 << 2;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_FALSE = 1;
+    private static final int TYPE_TRUE = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_STRING = 5;
+    private static final int TYPE_LIST = 6;
+    private static final int TYPE_MAP = 7;
+
+    public static void write(GHResponse ghRsp, ResponsePathSerializer.Info info, boolean enableInstructions, boolean calcPoints,
+                             boolean enableElevation, double pointsMultiplier, OutputStream outputStream) throws IOException {
+        if (pointsMultiplier < 1)
+            throw new IllegalArgumentException("multiplier cannot be smaller than 1 but was " + pointsMultiplier + " for points");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        writeMap(out, ghRsp.getHints().toMap());
+        writeStrings(out, info.copyrights() == null ? Collections.emptyList() : info.copyrights());
+        writeVarLong(out, info.took());
+        writeString(out, info.roadDataTimestamp() == null ? "" : info.roadDataTimestamp());
+
+        writeVarLong(out, ghRsp.getAll().size());
+        for (ResponsePath p : ghRsp.getAll()) {
+            // the JSON rounds to millimeters, too
+            writeVarLong(out, Math.round(p.getDistance() * 1000));
+            out.writeDouble(p.getRouteWeight());
+            writeVarLong(out, p.getTime());
+            writeVarLong(out, p.getNumChanges());
+            writeStrings(out, p.getDescription() == null ? Collections.emptyList() : p.getDescription());
+            int flags = (calcPoints ? FLAG_POINTS : 0) | (enableElevation ? FLAG_ELEVATION : 0)
+                    | (calcPoints && enableInstructions ? FLAG_INSTRUCTIONS : 0);
+            out.writeByte(flags);
+            out.writeDouble(pointsMultiplier);
+            writePoints(out, p.getWaypoints(), enableElevation, pointsMultiplier);
+            if (calcPoints) {
+                writePoints(out, p.getPoints(), enableElevation, pointsMultiplier);
+                out.writeDouble(p.getAscend());
+                out.writeDouble(p.getDescend());
+                if (enableInstructions)
+                    writeInstructions(out, p.getInstructions());
+                writePathDetails(out, p.getPathDetails());
+            }
+        }
+        out.flush();
+    }
+
+    private static void writePoints(DataOutputStream out, PointList points, boolean includeElevation, double multiplier) throws IOException {
+        writeVarLong(out, points.size());
+        int prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0; i < points.size(); i++) {
+            int lat = (int) Math.round(points.getLat(i) * multiplier);
+            int lon = (int) Math.round(points.getLon(i) * multiplier);
+            writeSignedVarLong(out, lat - prevLat);
+            writeSignedVarLong(out, lon - prevLon);
+            prevLat = lat;
+            prevLon = lon;
+            if (includeElevation) {
+                int ele = (int) Math.round(points.getEle(i) * 100);
+                writeSignedVarLong(out, ele - prevEle);
+                prevEle = ele;
+            }
+        }
+    }
+
+    private static void writeInstructions(DataOutputStream out, InstructionList instructions) throws IOException {
+        writeVarLong(out, instructions.size());
+        for (Instruction instruction : instructions) {
+            writeSignedVarLong(out, instruction.getSign());
+            String text = Helper.firstBig(instruction.getTurnDescription(instructions.getTr()));
+            writeString(out, text == null ? "" : text);
+            writeString(out, instruction.getName() == null ? "" : instruction.getName());
+            writeVarLong(out, instruction.getTime());
+            writeVarLong(out, Math.round(instruction.getDistance() * 1000));
+            // the interval starts where the previous one ended, so we only need its length
+            writeVarLong(out, instruction.getLength());
+            writeMap(out, instruction.getExtraInfoJSON());
+        }
+    }
+
+    private static void writePathDetails(DataOutputStream out, Map<String, List<PathDetail>> pathDetails) throws IOException {
+        writeVarLong(out, pathDetails.size());
+        for (Map.Entry<String, List<PathDetail>> entry : pathDetails.entrySet()) {
+            writeString(out, entry.getKey());
+            writeVarLong(out, entry.getValue().size());
+            int prevLast = 0;
+            for (PathDetail detail : entry.getValue()) {
+                // the ranges are usually adjacent, i.e. the offset is zero
+                writeSignedVarLong(out, detail.getFirst() - prevLast);
+                writeVarLong(out, detail.getLength());
+                writeValue(out, detail.getValue());
+                prevLast = detail.getLast();
+            }
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TYPE_LONG);
+            writeSignedVarLong(out, ((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Collection) {
+            out.writeByte(TYPE_LIST);
+            writeVarLong(out, ((Collection<?>) value).size());
+            for (Object o : (Collection<?>) value)
+                writeValue(out, o);
+        } else if (value instanceof Map) {
+            out.writeByte(TYPE_MAP);
+            writeMap(out, (Map<?, ?>) value);
+        } else {
+            // e.g. enums are written as in the JSON
+            out.writeByte(TYPE_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<?, ?> map) throws IOException {
+        writeVarLong(out, map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeString(out, String.valueOf(entry.getKey()));
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        writeVarLong(out, strings.size());
+        for (String string : strings)
+            writeString(out, string);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeSignedVarLong(DataOutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * @param turnDescription if true the text of the instructions is the turn description, otherwise the street name,
+     *                        see {@link ResponsePathDeserializerHelper#createResponsePath}
+     */
+    public static GHResponse read(InputStream inputStream, boolean turnDescription) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic))
+            throw new IllegalStateException("Not a binary route response");
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IllegalStateException("Unsupported version of the binary route response: " + version + ", expected " + VERSION);
+
+        GHResponse ghRsp = new GHResponse();
+        for (Map.Entry<String, Object> hint : readMap(in).entrySet())
+            ghRsp.getHints().putObject(hint.getKey(), hint.getValue());
+        // the info is not part of the GHResponse, like for the JSON
+        readStrings(in);
+        readVarLong(in);
+        readString(in);
+
+        int paths = readSize(in);
+        for (int i = 0; i < paths; i++) {
+            ResponsePath path = new ResponsePath();
+            path.setDistance(readVarLong(in) / 1000.0);
+            path.setRouteWeight(in.readDouble());
+            path.setTime(readVarLong(in));
+            path.setNumChanges(readSize(in));
+            path.setDescription(readStrings(in));
+            int flags = in.readUnsignedByte();
+            boolean elevation = (flags & FLAG_ELEVATION) != 0;
+            double multiplier = in.readDouble();
+            PointList waypoints = readPoints(in, elevation, multiplier);
+            path.setWaypoints(waypoints);
+            List<Integer> pointsOrder = new ArrayList<>(waypoints.size());
+            for (int w = 0; w < waypoints.size(); w++)
+                pointsOrder.add(w);
+            path.setPointsOrder(pointsOrder);
+            if ((flags & FLAG_POINTS) != 0) {
+                PointList points = readPoints(in, elevation, multiplier);
+                path.setPoints(points);
+                path.setAscend(in.readDouble());
+                path.setDescend(in.readDouble());
+                if ((flags & FLAG_INSTRUCTIONS) != 0)
+                    path.setInstructions(readInstructions(in, points, turnDescription));
+                path.addPathDetails(readPathDetails(in));
+            }
+            ghRsp.add(path);
+        }
+        return ghRsp;
+    }
+
+    private static PointList readPoints(DataInputStream in, boolean elevation, double multiplier) throws IOException {
+        int size = readSize(in);
+        PointList points = new PointList(size, elevation);
+        int lat = 0, lon = 0, ele = 0;
+        for (int i = 0; i < size; i++) {
+            lat += (int) readSignedVarLong(in);
+            lon += (int) readSignedVarLong(in);
+            if (elevation) {
+                ele += (int) readSignedVarLong(in);
+                points.add(lat / multiplier, lon / multiplier, ele / 100.0);
+            } else {
+                points.add(lat / multiplier, lon / multiplier);
+            }
+        }
+        return points;
+    }
+
+    private static InstructionList readInstructions(DataInputStream in, PointList points, boolean turnDescription) throws IOException {
+        int size = readSize(in);
+        InstructionList il = new InstructionList(size, null);
+        int from = 0;
+        int viaCount = 1;
+        for (int i = 0; i < size; i++) {
+            int sign = (int) readSignedVarLong(in);
+            String text = readString(in);
+            String streetName = readString(in);
+            long time = readVarLong(in);
+            double distance = readVarLong(in) / 1000.0;
+            int to = from + readSize(in);
+            Map<String, Object> extraInfo = readMap(in);
+            if (to >= points.size())
+                throw new IllegalStateException("Instruction " + i + " refers to point " + to + ", but there are only " + points.size() + " points");
+            PointList instPL = new PointList(to - from, points.is3D());
+            for (int j = from; j <= to; j++)
+                instPL.add(points, j);
+            from = to;
+
+            String name = turnDescription ? text : streetName;
+            Instruction instr;
+            if (sign == Instruction.USE_ROUNDABOUT || sign == Instruction.LEAVE_ROUNDABOUT) {
+                RoundaboutInstruction ri = new RoundaboutInstruction(sign, name, instPL);
+                if (extraInfo.get("exit_number") instanceof Number)
+                    ri.setExitNumber(((Number) extraInfo.get("exit_number")).intValue());
+                if (Boolean.TRUE.equals(extraInfo.get("exited")))
+                    ri.setExited();
+                if (extraInfo.get("turn_angle") instanceof Number) {
+                    double angle = ((Number) extraInfo.get("turn_angle")).doubleValue();
+                    ri.setDirOfRotation(angle);
+                    ri.setRadian((angle < 0 ? -Math.PI : Math.PI) - angle);
+                }
+                instr = ri;
+            } else if (sign == Instruction.REACHED_VIA) {
+                ViaInstruction tmpInstr = new ViaInstruction(name, instPL);
+                tmpInstr.setViaCount(viaCount);
+                viaCount++;
+                instr = tmpInstr;
+            } else if (sign == Instruction.FINISH) {
+                instr = new FinishInstruction(name, instPL, 0);
+            } else {
+                instr = new Instruction(sign, name, instPL);
+                for (Map.Entry<String, Object> entry : extraInfo.entrySet())
+                    instr.setExtraInfo(entry.getKey(), entry.getValue());
+            }
+            if (turnDescription)
+                instr.setUseRawName();
+            instr.setDistance(distance).setTime(time);
+            il.add(instr);
+        }
+        return il;
+    }
+
+    private static Map<String, List<PathDetail>> readPathDetails(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        Map<String, List<PathDetail>> pathDetails = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = readString(in);
+            int count = readSize(in);
+            List<PathDetail> list = new ArrayList<>(count);
+            int prevLast = 0;
+            for (int j = 0; j < count; j++) {
+                int first = prevLast + (int) readSignedVarLong(in);
+                int last = first + readSize(in);
+                PathDetail pd = new PathDetail(readValue(in));
+                pd.setFirst(first);
+                pd.setLast(last);
+                list.add(pd);
+                prevLast = last;
+            }
+            pathDetails.put(name, list);
+        }
+        return pathDetails;
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_FALSE:
+                return false;
+            case TYPE_TRUE:
+                return true;
+            case TYPE_LONG:
+                return readSignedVarLong(in);
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_LIST:
+                int size = readSize(in);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    list.add(readValue(in));
+                return list;
+            case TYPE_MAP:
+                return readMap(in);
+            default:
+                throw new IllegalStateException("Unknown value type " + type + " in binary route response");
+        }
+    }
+
+    private static Map<String, Object> readMap(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        Map<String, Object> map = new LinkedHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            map.put(key, readValue(in));
+        }
+        return map;
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            strings.add(readString(in));
+        return strings;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readSize(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readSize(DataInputStream in) throws IOException {
+        long size = readVarLong(in);
+        if (size < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalStateException("Invalid size " + size + " in binary route response");
+        return (int) size;
+    }
+
+    private static long readSignedVarLong(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalStateException("Malformed variable-length integer in binary route response");
+    }
+}
@@ -99,6 +99,26 @@ public class Parameters {
         public static final String INIT_MAX_VISITED_NODES = ROUTING_INIT_PREFIX + "max_visited_nodes";
         public static final String TIMEOUT_MS = "timeout_ms";
         public static final String INIT_TIMEOUT_MS = ROUTING_INIT_PREFIX + "timeout_ms";
+        /**
+         * the maximum number of from and the maximum number of to points of a matrix request
+         */
+        public static final String INIT_MATRIX_MAX_LOCATIONS = ROUTING_INIT_PREFIX + "matrix.max_locations";
+        /**
+         * the maximum number of cached route responses (0 disables the cache) and their time to live
+         */
+        public static final String INIT_CACHE_SIZE = ROUTING_INIT_PREFIX + "cache.size";
+        public static final String INIT_CACHE_TTL_MS = ROUTING_INIT_PREFIX + "cache.ttl_ms";
+        /**
+         * the maximum number of custom model areas for which the edges within the area are cached (0 disables the cache)
+         * and the maximum memory of these edges
+         */
+        public static final String INIT_AREA_CACHE_SIZE = ROUTING_INIT_PREFIX + "area_cache.size";
+        public static final String INIT_AREA_CACHE_MAX_BYTES = ROUTING_INIT_PREFIX + "area_cache.max_bytes";
+        /**
+         * the maximum number of pooled search states of dijkstrabi and astarbi with array search state (0 disables the
+         * array search state)
+         */
+        public static final String INIT_SEARCH_STATE_POOL_SIZE = ROUTING_INIT_PREFIX + "search_state_pool.size";
         /**
          * if true the response will contain turn instructions
          */
@@ -196,6 +216,18 @@ public class Parameters {
         public static final String MAX_NON_CH_POINT_DISTANCE = ROUTING_INIT_PREFIX + NON_CH_PREFIX + "max_waypoint_distance";
     }
 
+    /**
+     * Parameters that can be passed as hints to map matching
+     */
+    public static final class MapMatching {
+        /**
+         * if true the transitions from a candidate to all candidates of the next time step are calculated with a single
+         * search instead of one search per pair. Only possible for Dijkstra, i.e. if there are no landmarks for the
+         * profile or lm.disable=true
+         */
+        public static final String ONE_TO_MANY = "one_to_many";
+    }
+
     /**
      * Properties for the details response
      */
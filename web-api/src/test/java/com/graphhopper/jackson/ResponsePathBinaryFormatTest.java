@@ -0,0 +1,195 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponsePathBinaryFormatTest {
+
+    private static PathDetail detail(Object value, int first, int last) {
+        PathDetail pd = new PathDetail(value);
+        pd.setFirst(first);
+        pd.setLast(last);
+        return pd;
+    }
+
+    private static GHResponse createResponse() {
+        PointList points = Helper.createPointList3D(52.514, 13.349, 35, 52.5135, 13.35, 36.5, 52.514, 13.351, 34,
+                52.515, 13.352, 33, 52.516, 13.353, 33);
+        ResponsePath path = new ResponsePath();
+        path.setPoints(points);
+        path.setWaypoints(Helper.createPointList3D(52.514, 13.349, 35, 52.516, 13.353, 33));
+        path.setDistance(456.1234).setTime(61_000).setRouteWeight(78.123456).setAscend(1.5).setDescend(3.5);
+        path.setDescription(List.of("a description"));
+
+        InstructionList il = new InstructionList(TR);
+        Instruction continueInstr = new Instruction(Instruction.CONTINUE_ON_STREET, "main street", points.copy(0, 2));
+        continueInstr.setExtraInfo("heading", 12.5);
+        continueInstr.setExtraInfo("street_ref", "B 96");
+        continueInstr.setDistance(100.5).setTime(20_000);
+        il.add(continueInstr);
+        RoundaboutInstruction roundabout = new RoundaboutInstruction(Instruction.USE_ROUNDABOUT, "ring", points.copy(2, 4))
+                .setDirOfRotation(-0.1)
+                .setRadian(-Math.PI + 1)
+                .setExitNumber(2)
+                .setExited();
+        roundabout.setDistance(355.623).setTime(41_000);
+        il.add(roundabout);
+        il.add(new FinishInstruction("ring", points, 4));
+        path.setInstructions(il);
+
+        Map<String, List<PathDetail>> details = new HashMap<>();
+        details.put("max_speed", List.of(detail(50.0, 0, 2), detail(null, 2, 4)));
+        details.put("road_class", List.of(detail("primary", 0, 3), detail("secondary", 3, 4)));
+        details.put("edge_id", List.of(detail(17L, 0, 1), detail(4L, 1, 4)));
+        // the ranges do not need to be adjacent
+        details.put("toll", List.of(detail(true, 1, 2), detail(false, 3, 4)));
+        path.addPathDetails(details);
+
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+        rsp.getHints().putObject("visited_nodes.sum", 42L);
+        rsp.getHints().putObject("visited_nodes.average", 42.0);
+        return rsp;
+    }
+
+    private static GHResponse writeAndRead(GHResponse rsp, boolean instructions, boolean calcPoints, boolean elevation,
+                                           boolean turnDescription) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponsePathBinaryFormat.write(rsp, new ResponsePathSerializer.Info(List.of("GraphHopper"), 5, null),
+                instructions, calcPoints, elevation, 1e6, out);
+        return ResponsePathBinaryFormat.read(new ByteArrayInputStream(out.toByteArray()), turnDescription);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        GHResponse rsp = createResponse();
+        ResponsePath expected = rsp.getBest();
+        GHResponse result = writeAndRead(rsp, true, true, true, true);
+        ResponsePath path = result.getBest();
+        assertEquals(expected.getDistance(), path.getDistance(), 1.e-3);
+        assertEquals(expected.getTime(), path.getTime());
+        assertEquals(expected.getRouteWeight(), path.getRouteWeight(), 1.e-6);
+        assertEquals(expected.getAscend(), path.getAscend(), 1.e-6);
+        assertEquals(expected.getDescend(), path.getDescend(), 1.e-6);
+        assertEquals(expected.getDescription(), path.getDescription());
+        assertEquals(expected.getPoints(), path.getPoints());
+        assertEquals(expected.getWaypoints(), path.getWaypoints());
+        assertEquals(List.of(0, 1), path.getPointsOrder());
+
+        InstructionList il = path.getInstructions();
+        assertEquals(3, il.size());
+        assertEquals(Instruction.CONTINUE_ON_STREET, il.get(0).getSign());
+        assertEquals("Continue_onto main street", il.get(0).getName());
+        assertEquals("Continue_onto main street", il.get(0).getTurnDescription(null));
+        assertEquals(12.5, il.get(0).getExtraInfoJSON().get("heading"));
+        assertEquals("B 96", il.get(0).getExtraInfoJSON().get("street_ref"));
+        assertEquals(100.5, il.get(0).getDistance(), 1.e-3);
+        assertEquals(20_000, il.get(0).getTime());
+        // like for the JSON the points of an instruction include the first point of the next instruction
+        assertEquals(points(expected.getPoints(), 0, 3), il.get(0).getPoints());
+        RoundaboutInstruction roundabout = (RoundaboutInstruction) il.get(1);
+        assertEquals(2, roundabout.getExitNumber());
+        assertTrue(roundabout.isExited());
+        // the turn angle is restored like from the JSON
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        ObjectNode json = ResponsePathSerializer.jsonObject(rsp, new ResponsePathSerializer.Info(List.of(), 5, null), true, true, true, true, 1e6);
+        ResponsePath jsonPath = ResponsePathDeserializerHelper.createResponsePath(objectMapper, objectMapper.readTree(objectMapper.writeValueAsString(json)).get("paths").get(0), true, true);
+        assertEquals(((RoundaboutInstruction) jsonPath.getInstructions().get(1)).getTurnAngle(), roundabout.getTurnAngle(), 1.e-6);
+        assertEquals(points(expected.getPoints(), 2, 5), roundabout.getPoints());
+        assertInstanceOf(FinishInstruction.class, il.get(2));
+
+        assertEquals(toString(expected.getPathDetails()), toString(path.getPathDetails()));
+        assertEquals(42L, result.getHints().getLong("visited_nodes.sum", 0));
+
+        il = writeAndRead(rsp, true, true, true, false).getBest().getInstructions();
+        assertEquals("main street", il.get(0).getName());
+        assertEquals("ring", il.get(1).getName());
+    }
+
+    private static PointList points(PointList points, int from, int end) {
+        return points.copy(from, end);
+    }
+
+    private static Map<String, String> toString(Map<String, List<PathDetail>> details) {
+        Map<String, String> result = new TreeMap<>();
+        details.forEach((key, value) -> result.put(key, value.toString()));
+        return result;
+    }
+
+    @Test
+    public void testWithoutPoints() throws IOException {
+        GHResponse rsp = writeAndRead(createResponse(), true, false, false, true);
+        ResponsePath path = rsp.getBest();
+        assertTrue(path.getPoints().isEmpty());
+        assertEquals(Helper.createPointList(52.514, 13.349, 52.516, 13.353), path.getWaypoints());
+        assertTrue(path.getPathDetails().isEmpty());
+        assertEquals(42L, rsp.getHints().getLong("visited_nodes.sum", 0));
+        assertEquals(42.0, rsp.getHints().getDouble("visited_nodes.average", 0));
+    }
+
+    @Test
+    public void testSmallerThanJson() throws IOException {
+        GHResponse rsp = createResponse();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(List.of("GraphHopper"), 5, null);
+        ResponsePathBinaryFormat.write(rsp, info, true, true, true, 1e6, out);
+        String json = Jackson.newObjectMapper().writeValueAsString(ResponsePathSerializer.jsonObject(rsp, info, true, true, true, true, 1e6));
+        assertTrue(out.size() < json.length() / 2, out.size() + " vs. " + json.length());
+    }
+
+    @Test
+    public void testInvalidInput() {
+        assertThrows(IllegalStateException.class, () -> ResponsePathBinaryFormat.read(new ByteArrayInputStream("{\"paths\":[]}".getBytes()), true));
+    }
+
+    private static final Translation TR = new Translation() {
+        @Override
+        public String tr(String key, Object... params) {
+            return params.length == 0 ? key : key + " " + params[0];
+        }
+
+        @Override
+        public Map<String, String> asMap() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Locale getLocale() {
+            return Locale.US;
+        }
+
+        @Override
+        public String getLanguage() {
+            return "en";
+        }
+    };
+}
@@ -0,0 +1,202 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.routing.Router;
+import com.graphhopper.util.shapes.GHPoint;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
+import static com.graphhopper.util.Parameters.Algorithms.ALT_ROUTE;
+import static com.graphhopper.util.Parameters.Algorithms.ROUND_TRIP;
+
+/**
+ * Limits the number of routing requests that are calculated at the same time, separately for cheap, medium and
+ * expensive requests. Without it a burst of expensive requests, e.g. long-distance requests in flexible mode, can
+ * occupy all server threads, and the cheap requests have to wait for them. A request that does not get a permit
+ * within the queue timeout is rejected with 503, so the client can retry later or elsewhere.
+ * <p>
+ * The cost of a request is estimated before the routing: CH requests are cheap, LM requests are medium and flexible
+ * requests are expensive, just like round trips, which are always calculated in flexible mode. Alternative routes, a
+ * custom model, a long beeline distance and many points each move the request to the next more expensive class.
+ */
+public class AdmissionController {
+
+    public enum CostClass {
+        CHEAP, MEDIUM, EXPENSIVE;
+
+        CostClass next() {
+            return this == CHEAP ? MEDIUM : EXPENSIVE;
+        }
+    }
+
+    private final Map<CostClass, Semaphore> semaphores = new EnumMap<>(CostClass.class);
+    private final Map<CostClass, Integer> limits = new EnumMap<>(CostClass.class);
+    private final Map<CostClass, LongAdder> rejected = new EnumMap<>(CostClass.class);
+    private final long queueTimeoutMillis;
+    private final double longDistance;
+    private final int manyPoints;
+
+    /**
+     * @param limits the maximum number of concurrent requests per class, classes without a positive limit are not
+     *               limited
+     */
+    public AdmissionController(Map<CostClass, Integer> limits, long queueTimeoutMillis, double longDistance, int manyPoints) {
+        if (queueTimeoutMillis < 0)
+            throw new IllegalArgumentException("The queue timeout must not be negative, but was: " + queueTimeoutMillis);
+        for (CostClass costClass : CostClass.values()) {
+            int limit = limits.getOrDefault(costClass, 0);
+            this.limits.put(costClass, limit);
+            if (limit > 0)
+                // fair, so the requests are admitted in the order they arrived
+                semaphores.put(costClass, new Semaphore(limit, true));
+            rejected.put(costClass, new LongAdder());
+        }
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.longDistance = longDistance;
+        this.manyPoints = manyPoints;
+    }
+
+    public static AdmissionController fromConfig(GraphHopperConfig config) {
+        Map<CostClass, Integer> limits = new EnumMap<>(CostClass.class);
+        for (CostClass costClass : CostClass.values())
+            limits.put(costClass, config.getInt("routing.admission.max_concurrent." + costClass.name().toLowerCase(Locale.ROOT), 0));
+        return new AdmissionController(limits,
+                config.getLong("routing.admission.queue_timeout_ms", 100),
+                config.getDouble("routing.admission.long_distance", 500_000),
+                config.getInt("routing.admission.many_points", 10));
+    }
+
+    public CostClass estimateCost(GHRequest request, GraphHopper graphHopper) {
+        return estimateCost(request, graphHopper.getCHGraphs().containsKey(request.getProfile()),
+                graphHopper.getLandmarks().containsKey(request.getProfile()));
+    }
+
+    CostClass estimateCost(GHRequest request, boolean hasCH, boolean hasLM) {
+        if (ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm()))
+            return CostClass.EXPENSIVE;
+        CostClass costClass = switch (Router.getMode(request, hasCH, hasLM)) {
+            case "ch" -> CostClass.CHEAP;
+            case "lm" -> CostClass.MEDIUM;
+            default -> CostClass.EXPENSIVE;
+        };
+
+        // several paths have to be calculated and compared
+        if (ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm()))
+            costClass = costClass.next();
+        // the weighting has to be created for every request with a custom model and it slows down LM
+        if (request.getCustomModel() != null)
+            costClass = costClass.next();
+        if (calcBeelineDistance(request.getPoints()) > longDistance)
+            costClass = costClass.next();
+        if (request.getPoints().size() > manyPoints)
+            costClass = costClass.next();
+        return costClass;
+    }
+
+    private static double calcBeelineDistance(List<GHPoint> points) {
+        double distance = 0;
+        for (int i = 1; i < points.size(); i++) {
+            GHPoint from = points.get(i - 1);
+            GHPoint to = points.get(i);
+            // invalid points are rejected later by the Router
+            if (from != null && to != null && from.isValid() && to.isValid())
+                distance += DIST_EARTH.calcDist(from.lat, from.lon, to.lat, to.lon);
+        }
+        return distance;
+    }
+
+    /**
+     * Waits for a permit for the cost class of the request. Use it in a try-with-resources block so the permit is
+     * released after the request was calculated.
+     *
+     * @throws WebApplicationException with status 503 if there was no permit within the queue timeout
+     */
+    public Permit acquire(GHRequest request, GraphHopper graphHopper) {
+        return acquire(estimateCost(request, graphHopper));
+    }
+
+    public Permit acquire(CostClass costClass) {
+        Semaphore semaphore = semaphores.get(costClass);
+        if (semaphore == null)
+            return new Permit(null);
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.get(costClass).increment();
+            throw new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE).
+                    entity(new JsonErrorEntity(List.of("Too many " + costClass.name().toLowerCase(Locale.ROOT) + " requests, please try again later"))).
+                    type(MediaType.APPLICATION_JSON).
+                    header("Retry-After", "1").
+                    build());
+        }
+        return new Permit(semaphore);
+    }
+
+    /**
+     * @return the number of requests of the given class that are calculated at the moment, or 0 if the class is not
+     * limited
+     */
+    public int getActive(CostClass costClass) {
+        Semaphore semaphore = semaphores.get(costClass);
+        return semaphore == null ? 0 : limits.get(costClass) - semaphore.availablePermits();
+    }
+
+    public int getQueued(CostClass costClass) {
+        Semaphore semaphore = semaphores.get(costClass);
+        return semaphore == null ? 0 : semaphore.getQueueLength();
+    }
+
+    public long getRejected(CostClass costClass) {
+        return rejected.get(costClass).sum();
+    }
+
+    public static final class Permit implements AutoCloseable {
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        @Override
+        public void close() {
+            if (semaphore != null && released.compareAndSet(false, true))
+                semaphore.release();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.routing.RouterMetrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the stages of the routing requests as timers named like routing.car.ch.algorithm and the visited nodes
+ * as histograms named like routing.car.ch.visited_nodes.
+ */
+public class DropwizardRouterMetrics implements RouterMetrics {
+    private final MetricRegistry registry;
+
+    public DropwizardRouterMetrics(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordStage(String profile, String mode, Stage stage, long nanos) {
+        // the registry caches the metrics by name, so we do not need to keep them here
+        registry.timer(MetricRegistry.name("routing", profile, mode, stage.name().toLowerCase(Locale.ROOT)))
+                .update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordVisitedNodes(String profile, String mode, long visitedNodes) {
+        registry.histogram(MetricRegistry.name("routing", profile, mode, "visited_nodes")).update(visitedNodes);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+/**
+ * Pins the current graph generation to every request, so the graph is not closed before the request finished even
+ * if it is replaced in the meantime, see {@link GraphHopperManaged#reload}.
+ */
+public class GraphGenerationListener implements ApplicationEventListener {
+
+    private final GraphHopperManaged graphHopperManaged;
+
+    public GraphGenerationListener(GraphHopperManaged graphHopperManaged) {
+        this.graphHopperManaged = graphHopperManaged;
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        // this is called when the request starts, i.e. before the resources are created
+        GraphHopperManaged.Generation generation = graphHopperManaged.acquire();
+        Thread thread = Thread.currentThread();
+        return event -> {
+            // The resources are created and invoked by the thread that started the request, afterwards the pin is no
+            // longer needed. For asynchronous responses FINISHED is fired by another thread, so we unpin the
+            // generation already when the resource method finished, and not only when the request finished.
+            if (Thread.currentThread() == thread && (event.getType() == RequestEvent.Type.RESOURCE_METHOD_FINISHED
+                    || event.getType() == RequestEvent.Type.FINISHED))
+                graphHopperManaged.unpin();
+            if (event.getType() == RequestEvent.Type.FINISHED)
+                graphHopperManaged.release(generation);
+        };
+    }
+}
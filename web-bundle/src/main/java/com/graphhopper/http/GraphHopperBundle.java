@@ -18,6 +18,7 @@
 
 package com.graphhopper.http;
 
+import com.codahale.metrics.Gauge;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
@@ -30,6 +31,7 @@ import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.matching.MapMatching;
 import com.graphhopper.resources.*;
+import com.graphhopper.routing.RouteCache;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.index.LocationIndex;
@@ -45,8 +47,44 @@ import org.apache.hc.client5.http.classic.HttpClient;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
+import java.util.Locale;
+
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
+    static class GraphHopperFactory implements Factory<GraphHopper> {
+
+        @Inject
+        GraphHopperManaged graphHopperManaged;
+
+        @Override
+        public GraphHopper provide() {
+            // the graph can be replaced at runtime, so we must not bind a single instance
+            return graphHopperManaged.getGraphHopper();
+        }
+
+        @Override
+        public void dispose(GraphHopper instance) {
+
+        }
+    }
+
+    static class MVTTileCacheFactory implements Factory<MVTTileCache> {
+
+        @Inject
+        GraphHopperManaged graphHopperManaged;
+
+        @Override
+        public MVTTileCache provide() {
+            // every graph generation has its own tile cache
+            return graphHopperManaged.getTileCache();
+        }
+
+        @Override
+        public void dispose(MVTTileCache instance) {
+
+        }
+    }
+
     static class TranslationMapFactory implements Factory<TranslationMap> {
 
         @Inject
@@ -82,11 +120,11 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
     static class GtfsStorageFactory implements Factory<GtfsStorage> {
 
         @Inject
-        GraphHopperGtfs graphHopper;
+        GraphHopper graphHopper;
 
         @Override
         public GtfsStorage provide() {
-            return graphHopper.getGtfsStorage();
+            return ((GraphHopperGtfs) graphHopper).getGtfsStorage();
         }
 
         @Override
@@ -274,14 +312,20 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
 
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
+        environment.jersey().register(new GraphGenerationListener(graphHopperManaged));
+        environment.admin().addTask(new ReloadGraphTask(graphHopperManaged));
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        final AdmissionController admissionController = AdmissionController.fromConfig(configuration.getGraphHopperConfiguration());
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(configuration.getGraphHopperConfiguration()).to(GraphHopperConfig.class);
-                bind(graphHopper).to(GraphHopper.class);
+                bind(graphHopperManaged).to(GraphHopperManaged.class);
+                bindFactory(GraphHopperFactory.class).to(GraphHopper.class);
 
                 bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
+                bindFactory(MVTTileCacheFactory.class).to(MVTTileCache.class);
+                bind(admissionController).to(AdmissionController.class);
                 bindFactory(MapMatchingRouterFactoryFactory.class).to(MapMatchingResource.MapMatchingRouterFactory.class);
                 bindFactory(PathDetailsBuilderFactoryFactory.class).to(PathDetailsBuilderFactory.class);
                 bindFactory(ProfileResolverFactory.class).to(ProfileResolver.class);
@@ -298,6 +342,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(MVTResource.class);
         environment.jersey().register(NearestResource.class);
         environment.jersey().register(RouteResource.class);
+        environment.jersey().register(MatrixResource.class);
         environment.jersey().register(IsochroneResource.class);
         environment.jersey().register(MapMatchingResource.class);
 
@@ -328,7 +373,31 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(SPTResource.class);
         environment.jersey().register(I18NResource.class);
         environment.jersey().register(InfoResource.class);
-        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopper));
+        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopperManaged::getGraphHopper));
+        // the route cache is only created when the graph is loaded and the graph can be replaced, so we have to look
+        // it up every time
+        environment.metrics().register("graph.generation", (Gauge<Integer>) graphHopperManaged::getGeneration);
+        graphHopperManaged.setRouterMetrics(new DropwizardRouterMetrics(environment.metrics()));
+        environment.metrics().register("route_cache.hits", (Gauge<Long>) () -> {
+            RouteCache cache = graphHopperManaged.getGraphHopper().getRouteCache();
+            return cache == null ? 0 : cache.getHits();
+        });
+        environment.metrics().register("route_cache.misses", (Gauge<Long>) () -> {
+            RouteCache cache = graphHopperManaged.getGraphHopper().getRouteCache();
+            return cache == null ? 0 : cache.getMisses();
+        });
+        environment.metrics().register("route_cache.size", (Gauge<Integer>) () -> {
+            RouteCache cache = graphHopperManaged.getGraphHopper().getRouteCache();
+            return cache == null ? 0 : cache.getSize();
+        });
+        environment.metrics().register("mvt_cache.hits", (Gauge<Long>) () -> graphHopperManaged.getTileCache().getHits());
+        environment.metrics().register("mvt_cache.misses", (Gauge<Long>) () -> graphHopperManaged.getTileCache().getMisses());
+        for (AdmissionController.CostClass costClass : AdmissionController.CostClass.values()) {
+            String prefix = "admission." + costClass.name().toLowerCase(Locale.ROOT);
+            environment.metrics().register(prefix + ".active", (Gauge<Integer>) () -> admissionController.getActive(costClass));
+            environment.metrics().register(prefix + ".queued", (Gauge<Integer>) () -> admissionController.getQueued(costClass));
+            environment.metrics().register(prefix + ".rejected", (Gauge<Long>) () -> admissionController.getRejected(costClass));
+        }
         environment.jersey().register(environment.healthChecks());
         environment.jersey().register(HealthCheckResource.class);
 
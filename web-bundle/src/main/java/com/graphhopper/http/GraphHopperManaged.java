@@ -18,29 +18,55 @@
 
 package com.graphhopper.http;
 
+import com.graphhopper.GHRequest;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.Profile;
 import com.graphhopper.gtfs.GraphHopperGtfs;
+import com.graphhopper.resources.MVTTileCache;
+import com.graphhopper.routing.RouterMetrics;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.StopWatch;
 import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Manages the GraphHopper instance of the web server. The graph can be replaced while the server is running, see
+ * {@link #reload}. Every instance is a generation of the graph, and requests keep using the generation that was
+ * current when they started, see {@link #acquire}. A replaced generation is closed once its last request finished.
+ */
 public class GraphHopperManaged implements Managed {
 
     private final static Logger logger = LoggerFactory.getLogger(GraphHopperManaged.class);
-    private final GraphHopper graphHopper;
+    // the generation a request uses, so all components injected into a request see the same graph
+    private static final ThreadLocal<Generation> PINNED = new ThreadLocal<>();
+    private final GraphHopperConfig configuration;
+    private volatile Generation current;
+    private volatile RouterMetrics routerMetrics = RouterMetrics.NOOP;
 
     public GraphHopperManaged(GraphHopperConfig configuration) {
+        this.configuration = configuration;
+        current = new Generation(createGraphHopper(configuration), MVTTileCache.fromConfig(configuration), 0);
+    }
+
+    private static GraphHopper createGraphHopper(GraphHopperConfig configuration) {
+        GraphHopper graphHopper;
         if (configuration.has("gtfs.file")) {
             graphHopper = new GraphHopperGtfs(configuration);
         } else {
             graphHopper = new GraphHopper();
         }
         graphHopper.init(configuration);
+        return graphHopper;
     }
 
     @Override
     public void start() {
+        GraphHopper graphHopper = current.graphHopper;
         graphHopper.importOrLoad();
         logger.info("loaded graph at:{}, data_reader_file:{}, encoded values:{}, {} bytes for edge flags, {}",
                 graphHopper.getGraphHopperLocation(), graphHopper.getOSMFile(),
@@ -49,14 +75,167 @@ public class GraphHopperManaged implements Managed {
                 graphHopper.getBaseGraph().toDetailsString());
     }
 
+    /**
+     * @return the generation of the current request or the current generation if there is no request
+     */
     public GraphHopper getGraphHopper() {
+        Generation pinned = PINNED.get();
+        return pinned != null ? pinned.graphHopper : current.graphHopper;
+    }
+
+    /**
+     * @return the tile cache of the generation of the current request or of the current generation if there is no
+     * request. Every generation has its own cache in its graph folder, so requests that still use the previous graph
+     * do not discard the tiles of the new one.
+     */
+    public MVTTileCache getTileCache() {
+        Generation pinned = PINNED.get();
+        return pinned != null ? pinned.tileCache : current.tileCache;
+    }
+
+    public int getGeneration() {
+        return current.number;
+    }
+
+    /**
+     * Sets the metrics for the routing requests of the current and all future generations.
+     */
+    public synchronized void setRouterMetrics(RouterMetrics routerMetrics) {
+        this.routerMetrics = routerMetrics;
+        current.graphHopper.setRouterMetrics(routerMetrics);
+    }
+
+    /**
+     * Loads the graph from the given folder, warms it up and makes it the current generation. The previous generation
+     * is closed once all requests that use it finished. The folder must contain a graph that was imported with the
+     * same configuration. This method blocks until the new graph is loaded, but requests are served from the previous
+     * graph in the meantime. Note that long-running requests, like the map matching of a live GPS feed, keep the
+     * previous generation open until they finished.
+     */
+    public synchronized GraphHopper reload(String graphLocation) {
+        if (configuration.has("gtfs.file"))
+            throw new IllegalStateException("Reloading the graph is not supported for public transit");
+        GraphHopperConfig newConfiguration = new GraphHopperConfig(configuration).putObject("graph.location", graphLocation);
+        GraphHopper graphHopper = createGraphHopper(newConfiguration);
+        StopWatch sw = new StopWatch().start();
+        try {
+            if (!graphHopper.load())
+                throw new IllegalArgumentException("No graph found at " + graphLocation);
+            warmUp(graphHopper, configuration.getInt("graph.reload.warmup_queries", 100));
+            // set after the warm up, whose requests should not show up in the metrics
+            graphHopper.setRouterMetrics(routerMetrics);
+        } catch (RuntimeException ex) {
+            graphHopper.close();
+            throw ex;
+        }
+        Generation previous = current;
+        current = new Generation(graphHopper, MVTTileCache.fromConfig(newConfiguration), previous.number + 1);
+        logger.info("switched to graph generation {} at {} after {}s, {}", current.number, graphLocation,
+                sw.stop().getSeconds(), graphHopper.getBaseGraph().toDetailsString());
+        // the previous generation is closed once the last request using it finished
+        previous.release();
         return graphHopper;
     }
 
+    /**
+     * Routes between random nodes to load the pages of memory mapped files and to compile the code for the new
+     * weightings before we serve requests with the new graph.
+     */
+    private static void warmUp(GraphHopper graphHopper, int queries) {
+        NodeAccess na = graphHopper.getBaseGraph().getNodeAccess();
+        int nodes = graphHopper.getBaseGraph().getNodes();
+        if (nodes == 0)
+            return;
+        Random random = new Random(123);
+        for (Profile profile : graphHopper.getProfiles()) {
+            for (int i = 0; i < queries; i++) {
+                int from = random.nextInt(nodes);
+                int to = random.nextInt(nodes);
+                // errors, e.g. for disconnected points, do not matter here
+                graphHopper.route(new GHRequest(na.getLat(from), na.getLon(from), na.getLat(to), na.getLon(to)).
+                        setProfile(profile.getName()));
+            }
+        }
+    }
+
+    /**
+     * Acquires the current generation, which is not closed until {@link #release} is called, and pins it to the
+     * calling thread until {@link #unpin} is called. While it is pinned {@link #getGraphHopper} and
+     * {@link #getTileCache} return the acquired generation.
+     */
+    public Generation acquire() {
+        while (true) {
+            Generation generation = current;
+            if (generation.tryAcquire()) {
+                PINNED.set(generation);
+                return generation;
+            }
+            // the generation was replaced and closed in the meantime, so we try again with the new one
+        }
+    }
+
+    /**
+     * Removes the generation that is pinned to the calling thread. This must be called by the thread that acquired
+     * the generation, also if the generation is released by another thread, e.g. for asynchronous responses.
+     * Otherwise, the thread keeps the generation pinned.
+     */
+    public void unpin() {
+        PINNED.remove();
+    }
+
+    /**
+     * Releases the given generation, which might happen on another thread than {@link #acquire}. A replaced generation
+     * is closed once it was released by all requests.
+     */
+    public void release(Generation generation) {
+        generation.release();
+    }
+
     @Override
     public void stop() {
-        graphHopper.close();
+        current.graphHopper.close();
     }
 
+    public static final class Generation {
+        private final GraphHopper graphHopper;
+        private final MVTTileCache tileCache;
+        private final int number;
+        // the current generation holds one reference itself, so it is only closed after it was replaced
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Generation(GraphHopper graphHopper, MVTTileCache tileCache, int number) {
+            this.graphHopper = graphHopper;
+            this.tileCache = tileCache;
+            this.number = number;
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                int count = references.get();
+                if (count == 0)
+                    return false;
+                if (references.compareAndSet(count, count + 1))
+                    return true;
+            }
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                logger.info("closing graph generation {} at {}", number, graphHopper.getGraphHopperLocation());
+                graphHopper.close();
+            }
+        }
+
+        public GraphHopper getGraphHopper() {
+            return graphHopper;
+        }
 
+        public MVTTileCache getTileCache() {
+            return tileCache;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+    }
 }
@@ -21,16 +21,26 @@ package com.graphhopper.http.health;
 import com.codahale.metrics.health.HealthCheck;
 import com.graphhopper.GraphHopper;
 
+import java.util.function.Supplier;
+
 public class GraphHopperHealthCheck extends HealthCheck {
 
-    private final GraphHopper graphHopper;
+    private final Supplier<GraphHopper> graphHopper;
 
     public GraphHopperHealthCheck(GraphHopper graphHopper) {
+        this(() -> graphHopper);
+    }
+
+    /**
+     * @param graphHopper supplies the current instance, which can change if the graph is replaced at runtime
+     */
+    public GraphHopperHealthCheck(Supplier<GraphHopper> graphHopper) {
         this.graphHopper = graphHopper;
     }
 
     @Override
     protected Result check() {
+        GraphHopper graphHopper = this.graphHopper.get();
         if (!graphHopper.getBaseGraph().getBounds().isValid()) {
             return Result.unhealthy("BaseGraph has invalid bounds.");
         }
@@ -8,15 +8,19 @@ import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.isochrone.algorithm.ContourBuilder;
+import com.graphhopper.isochrone.algorithm.IsochroneGrid;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
 import com.graphhopper.isochrone.algorithm.Triangulator;
+import com.graphhopper.routing.ch.OneToAllCH;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
@@ -32,13 +36,18 @@ import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
+import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
 import java.util.function.ToDoubleFunction;
 
 import static com.graphhopper.resources.IsochroneResource.ResponseType.geojson;
+import static com.graphhopper.resources.IsochroneResource.ResponseType.grid;
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
 import static com.graphhopper.routing.util.TraversalMode.EDGE_BASED;
 import static com.graphhopper.routing.util.TraversalMode.NODE_BASED;
@@ -63,10 +72,13 @@ public class IsochroneResource {
         this.osmDate = graphHopper.getProperties().get("datareader.data.date");
     }
 
-    public enum ResponseType {json, geojson}
+    public enum ResponseType {json, geojson, grid}
+
+    private static final double DEFAULT_GRID_CELL_SIZE = 50;
+    private static final int MAX_GRID_CELLS = 10_000_000;
 
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_OCTET_STREAM})
     public Response doGet(
             @Context UriInfo uriInfo,
             @QueryParam("profile") String profileName,
@@ -78,10 +90,12 @@ public class IsochroneResource {
             @QueryParam("weight_limit") @DefaultValue("-1") OptionalLong weightLimit,
             @QueryParam("type") @DefaultValue("json") ResponseType respType,
             @QueryParam("tolerance") @DefaultValue("0") double toleranceInMeter,
-            @QueryParam("full_geometry") @DefaultValue("false") boolean fullGeometry) {
+            @QueryParam("full_geometry") @DefaultValue("false") boolean fullGeometry,
+            @QueryParam("grid_cell_size") @DefaultValue("-1") double gridCellSizeInMeter) {
         StopWatch sw = new StopWatch().start();
         PMap hintsMap = new PMap();
         RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
+        boolean disableCH = hintsMap.getBool(Parameters.CH.DISABLE, false);
         hintsMap.putObject(Parameters.CH.DISABLE, true);
         hintsMap.putObject(Parameters.Landmark.DISABLE, true);
 
@@ -105,19 +119,27 @@ public class IsochroneResource {
         ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
 
         double limit;
+        double exploreLimit;
         ToDoubleFunction<ShortestPathTree.IsoLabel> fz;
+        Function<OneToAllCH.Result, IntToDoubleFunction> fzCH;
         if (weightLimit.orElseThrow(() -> new IllegalArgumentException("query param weight_limit is not a number.")) > 0) {
             limit = weightLimit.getAsLong();
-            shortestPathTree.setWeightLimit(limit + Math.max(limit * 0.14, 2000));
+            exploreLimit = limit + Math.max(limit * 0.14, 2000);
+            shortestPathTree.setWeightLimit(exploreLimit);
             fz = l -> l.weight;
+            fzCH = r -> r::getWeight;
         } else if (distanceLimitInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
             limit = distanceLimitInMeter.getAsLong();
-            shortestPathTree.setDistanceLimit(limit + Math.max(limit * 0.14, 2_000));
+            exploreLimit = limit + Math.max(limit * 0.14, 2_000);
+            shortestPathTree.setDistanceLimit(exploreLimit);
             fz = l -> l.distance;
+            fzCH = r -> r::getDistance;
         } else {
             limit = timeLimitInSeconds.orElseThrow(() -> new IllegalArgumentException("query param time_limit is not a number.")) * 1000d;
-            shortestPathTree.setTimeLimit(limit + Math.max(limit * 0.14, 200_000));
+            exploreLimit = limit + Math.max(limit * 0.14, 200_000);
+            shortestPathTree.setTimeLimit(exploreLimit);
             fz = l -> l.time;
+            fzCH = r -> r::getTime;
         }
         ArrayList<Double> zs = new ArrayList<>();
         double delta = limit / nBuckets.orElseThrow(() -> new IllegalArgumentException("query param buckets is not a number."));
@@ -125,13 +147,50 @@ public class IsochroneResource {
             zs.add((i + 1) * delta);
         }
 
-        Triangulator.Result result = triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter));
+        // Instead of a triangulation, we can draw the tree into a grid, which is much cheaper. That's all we need
+        // for type=grid, and we can also trace the contours in the grid.
+        boolean useGrid = respType == grid || gridCellSizeInMeter > 0;
+        double cellSize = gridCellSizeInMeter > 0 ? gridCellSizeInMeter : DEFAULT_GRID_CELL_SIZE;
+        double gridLimit = respType == grid ? limit : exploreLimit;
+
+        // for node-based CH profiles we can use a one-to-all CH search, which is much faster for large limits
+        RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profileName);
+        Triangulator.Result result = null;
+        IsochroneGrid isochroneGrid = null;
+        int visitedNodes;
+        if (!disableCH && chGraph != null && !chGraph.isEdgeBased()) {
+            // the sweep order is shared by all requests, we only create the state of this request
+            OneToAllCH oneToAllCH = new OneToAllCH(new QueryRoutingCHGraph(chGraph, queryGraph), graphHopper.getCHSweepOrder(profileName)).
+                    setReverseFlow(reverseFlow);
+            if (weightLimit.getAsLong() > 0)
+                oneToAllCH.setWeightLimit(exploreLimit);
+            OneToAllCH.Result oneToAllResult = oneToAllCH.calcOneToAll(snap.getClosestNode());
+            if (useGrid)
+                isochroneGrid = IsochroneGrid.create(queryGraph, oneToAllResult, fzCH.apply(oneToAllResult), gridLimit, cellSize, MAX_GRID_CELLS);
+            else
+                result = triangulator.triangulate(queryGraph, oneToAllResult, fzCH.apply(oneToAllResult), exploreLimit, degreesFromMeters(toleranceInMeter));
+            visitedNodes = oneToAllCH.getVisitedNodes();
+        } else {
+            if (useGrid)
+                isochroneGrid = IsochroneGrid.create(snap, queryGraph, shortestPathTree, fz, gridLimit, cellSize, MAX_GRID_CELLS);
+            else
+                result = triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter));
+            visitedNodes = shortestPathTree.getVisitedNodes();
+        }
+
+        if (respType == grid) {
+            sw.stop();
+            logger.info("took: " + sw.getSeconds() + ", visited nodes:" + visitedNodes);
+            return Response.ok(toBytes(isochroneGrid), MediaType.APPLICATION_OCTET_STREAM_TYPE).header("X-GH-Took", "" + sw.getSeconds() * 1000).
+                    build();
+        }
 
-        ContourBuilder contourBuilder = new ContourBuilder(result.triangulation);
+        GeometryFactory geometryFactory = new GeometryFactory();
+        ContourBuilder contourBuilder = result != null ? new ContourBuilder(result.triangulation) : null;
         ArrayList<Geometry> isochrones = new ArrayList<>();
         for (Double z : zs) {
             logger.info("Building contour z={}", z);
-            MultiPolygon isochrone = contourBuilder.computeIsoline(z, result.seedEdges);
+            MultiPolygon isochrone = contourBuilder != null ? contourBuilder.computeIsoline(z, result.seedEdges) : isochroneGrid.computeIsoline(z, geometryFactory);
             if (fullGeometry) {
                 isochrones.add(isochrone);
             } else {
@@ -168,11 +227,35 @@ public class IsochroneResource {
             finalJson = json;
         }
 
-        logger.info("took: " + sw.getSeconds() + ", visited nodes:" + shortestPathTree.getVisitedNodes());
+        logger.info("took: " + sw.getSeconds() + ", visited nodes:" + visitedNodes);
         return Response.ok(finalJson).header("X-GH-Took", "" + sw.getSeconds() * 1000).
                 build();
     }
 
+    /**
+     * The grid as big-endian binary: the ASCII characters "GHIG", the format version 1, the width and the height of
+     * the grid as ints, the western and northern border and the width and height of a cell in degrees as doubles,
+     * and then the value of each cell as int, row by row from the north-west corner. Unreached cells are -1.
+     */
+    static byte[] toBytes(IsochroneGrid grid) {
+        ByteBuffer buffer = ByteBuffer.allocate(48 + 4 * grid.getWidth() * grid.getHeight());
+        buffer.put("GHIG".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(1);
+        buffer.putInt(grid.getWidth());
+        buffer.putInt(grid.getHeight());
+        buffer.putDouble(grid.getWest());
+        buffer.putDouble(grid.getNorth());
+        buffer.putDouble(grid.getCellWidth());
+        buffer.putDouble(grid.getCellHeight());
+        for (int row = 0; row < grid.getHeight(); row++) {
+            for (int column = 0; column < grid.getWidth(); column++) {
+                int value = grid.getValue(row, column);
+                buffer.putInt(value == IsochroneGrid.UNREACHED ? -1 : value);
+            }
+        }
+        return buffer.array();
+    }
+
     private Polygon heuristicallyFindMainConnectedComponent(MultiPolygon multiPolygon, Point point) {
         int maxPoints = 0;
         Polygon maxPolygon = null;
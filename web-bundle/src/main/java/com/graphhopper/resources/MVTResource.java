@@ -1,22 +1,8 @@
 package com.graphhopper.resources;
 
 import com.graphhopper.GraphHopper;
-import com.graphhopper.routing.ev.*;
-import com.graphhopper.routing.util.EncodingManager;
-import com.graphhopper.search.KVStorage;
-import com.graphhopper.storage.NodeAccess;
-import com.graphhopper.storage.index.LocationIndexTree;
-import com.graphhopper.util.EdgeIteratorState;
-import com.graphhopper.util.FetchMode;
-import com.graphhopper.util.PointList;
+import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.util.StopWatch;
-import com.graphhopper.util.shapes.BBox;
-import no.ecc.vectortile.VectorTileEncoder;
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.LineString;
-import org.locationtech.jts.geom.util.AffineTransformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,9 +13,8 @@ import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Arrays;
+import java.util.List;
 
 @Path("mvt")
 public class MVTResource {
@@ -37,12 +22,22 @@ public class MVTResource {
     private static final Logger logger = LoggerFactory.getLogger(MVTResource.class);
     private static final MediaType PBF = new MediaType("application", "x-protobuf");
     private final GraphHopper graphHopper;
-    private final EncodingManager encodingManager;
+    private final MVTTileCache tileCache;
+    private final List<String> encodedValues;
 
     @Inject
-    public MVTResource(GraphHopper graphHopper, EncodingManager encodingManager) {
+    public MVTResource(GraphHopperConfig config, GraphHopper graphHopper, MVTTileCache tileCache) {
         this.graphHopper = graphHopper;
-        this.encodingManager = encodingManager;
+        this.tileCache = tileCache;
+        this.encodedValues = getEncodedValues(config);
+    }
+
+    /**
+     * @return the encoded values configured by mvt.encoded_values or an empty list if all encoded values shall be used
+     */
+    public static List<String> getEncodedValues(GraphHopperConfig config) {
+        return Arrays.stream(config.getString("mvt.encoded_values", "").split(","))
+                .map(String::trim).filter(s -> !s.isEmpty()).toList();
     }
 
     @GET
@@ -56,110 +51,27 @@ public class MVTResource {
             @PathParam("y") int yInfo,
             @QueryParam("render_all") @DefaultValue("false") Boolean renderAll) {
 
-        if (zInfo <= 9) {
-            byte[] bytes = new VectorTileEncoder().encode();
+        // the tile cache must not be filled with tiles that do not exist
+        MVTTileRenderer.checkTile(zInfo, xInfo, yInfo);
+        if (zInfo <= MVTTileRenderer.MAX_EMPTY_ZOOM) {
+            byte[] bytes = new MVTTileRenderer(graphHopper, encodedValues).render(zInfo, xInfo, yInfo, renderAll);
             return Response.fromResponse(Response.ok(bytes, PBF).build())
                     .header("X-GH-Took", "0")
                     .build();
         }
 
         StopWatch totalSW = new StopWatch().start();
-        Coordinate nw = num2deg(xInfo, yInfo, zInfo);
-        Coordinate se = num2deg(xInfo + 1, yInfo + 1, zInfo);
-        LocationIndexTree locationIndex = (LocationIndexTree) graphHopper.getLocationIndex();
-        final NodeAccess na = graphHopper.getBaseGraph().getNodeAccess();
-        BBox bbox = new BBox(nw.x, se.x, se.y, nw.y);
-        if (!bbox.isValid())
-            throw new IllegalStateException("Invalid bbox " + bbox);
-
-        final GeometryFactory geometryFactory = new GeometryFactory();
-        if (!encodingManager.hasEncodedValue(RoadClass.KEY))
-            throw new IllegalStateException("You need to configure GraphHopper to store road_class, e.g. graph.encoded_values: road_class,max_speed,... ");
-
-        final EnumEncodedValue<RoadClass> roadClassEnc = encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
-        final AtomicInteger edgeCounter = new AtomicInteger(0);
-
-        // 256x256 pixels per MVT. here we transform from the global coordinate system to the local one of the tile.
-        AffineTransformation affineTransformation = new AffineTransformation();
-        affineTransformation.translate(-nw.x, -se.y);
-        affineTransformation.scale(
-                256.0 / (se.x - nw.x),
-                -256.0 / (nw.y - se.y)
-        );
-        affineTransformation.translate(0, 256);
-
-        // if performance of the vector tile encoding becomes an issue it might be worth to get rid of the simplification
-        // and clipping in the no.ecc code? https://github.com/graphhopper/graphhopper/commit/0f96c2deddb24efa97109e35e0c05f1c91221f59#r90830001
-        VectorTileEncoder vectorTileEncoder = new VectorTileEncoder();
-        locationIndex.query(bbox, edgeId -> {
-            EdgeIteratorState edge = graphHopper.getBaseGraph().getEdgeIteratorStateForKey(edgeId * 2);
-            LineString lineString;
-            if (renderAll) {
-                PointList pl = edge.fetchWayGeometry(FetchMode.ALL);
-                lineString = pl.toLineString(false);
-            } else {
-                RoadClass rc = edge.get(roadClassEnc);
-                if (zInfo >= 14) {
-                    PointList pl = edge.fetchWayGeometry(FetchMode.ALL);
-                    lineString = pl.toLineString(false);
-                } else if (rc == RoadClass.MOTORWAY
-                        || zInfo > 10 && (rc == RoadClass.PRIMARY || rc == RoadClass.TRUNK)
-                        || zInfo > 11 && (rc == RoadClass.SECONDARY)
-                        || zInfo > 12) {
-                    double lat = na.getLat(edge.getBaseNode());
-                    double lon = na.getLon(edge.getBaseNode());
-                    double toLat = na.getLat(edge.getAdjNode());
-                    double toLon = na.getLon(edge.getAdjNode());
-                    lineString = geometryFactory.createLineString(new Coordinate[]{new Coordinate(lon, lat), new Coordinate(toLon, toLat)});
-                } else {
-                    // skip edge for certain zoom
-                    return;
-                }
-            }
-
-            edgeCounter.incrementAndGet();
-            Map<String, Object> map = new LinkedHashMap<>();
-            for (Map.Entry<String, KVStorage.KValue> e : edge.getKeyValues().entrySet()) {
-                map.put(e.getKey(), e.getValue().toString());
-            }
-            map.put("edge_id", edge.getEdge());
-            map.put("edge_key", edge.getEdgeKey());
-            map.put("base_node", edge.getBaseNode());
-            map.put("adj_node", edge.getAdjNode());
-            map.put("distance", edge.getDistance());
-            encodingManager.getEncodedValues().forEach(ev -> {
-                if (ev instanceof EnumEncodedValue)
-                    map.put(ev.getName(), edge.get((EnumEncodedValue) ev).toString() + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((EnumEncodedValue) ev).toString() : ""));
-                else if (ev instanceof DecimalEncodedValue)
-                    map.put(ev.getName(), edge.get((DecimalEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((DecimalEncodedValue) ev) : ""));
-                else if (ev instanceof BooleanEncodedValue)
-                    map.put(ev.getName(), edge.get((BooleanEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((BooleanEncodedValue) ev) : ""));
-                else if (ev instanceof StringEncodedValue)
-                    map.put(ev.getName(), edge.get((StringEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((StringEncodedValue) ev) : ""));
-                else if (ev instanceof IntEncodedValue)
-                    map.put(ev.getName(), edge.get((IntEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((IntEncodedValue) ev) : ""));
-            });
-            lineString.setUserData(map);
-
-            Geometry g = affineTransformation.transform(lineString);
-            vectorTileEncoder.addFeature("roads", map, g, edge.getEdge());
-        });
-
-
-        byte[] bytes = vectorTileEncoder.encode();
+        String graphVersion = tileCache.isEnabled() ? MVTTileCache.getGraphVersion(graphHopper, encodedValues) : null;
+        byte[] bytes = tileCache.isEnabled() ? tileCache.get(graphVersion, zInfo, xInfo, yInfo, renderAll) : null;
+        boolean cached = bytes != null;
+        if (!cached) {
+            bytes = new MVTTileRenderer(graphHopper, encodedValues).render(zInfo, xInfo, yInfo, renderAll);
+            if (tileCache.isEnabled())
+                tileCache.put(graphVersion, zInfo, xInfo, yInfo, renderAll, bytes);
+        }
         totalSW.stop();
-        logger.debug("took: " + totalSW.getMillis() + "ms, edges:" + edgeCounter.get());
+        logger.debug("took: " + totalSW.getMillis() + "ms, cached:" + cached);
         return Response.ok(bytes, PBF).header("X-GH-Took", "" + totalSW.getSeconds() * 1000)
                 .build();
     }
-
-    Coordinate num2deg(int xInfo, int yInfo, int zoom) {
-        // inverse web mercator projection
-        double n = Math.pow(2, zoom);
-        double lonDeg = xInfo / n * 360.0 - 180.0;
-        // unfortunately latitude numbers goes from north to south
-        double latRad = Math.atan(Math.sinh(Math.PI * (1 - 2 * yInfo / n)));
-        double latDeg = Math.toDegrees(latRad);
-        return new Coordinate(lonDeg, latDeg);
-    }
 }
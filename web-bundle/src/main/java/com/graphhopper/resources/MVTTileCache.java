@@ -0,0 +1,328 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.util.Helper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Caches the encoded vector tiles of {@link MVTResource}. The tiles are kept in a size-bounded in-memory cache that
+ * evicts the least recently used tile and, optionally, in a directory (z/x/y.mvt) that survives restarts and can be
+ * filled in advance. The number of tiles on disk is bounded as well, once the limit is reached no further tiles are
+ * written until the tiles are discarded.
+ * <p>
+ * Every tile is rendered for a specific version of the graph and the encoded values of the tiles, see
+ * {@link #getGraphVersion}. Once the version changes, e.g. because the graph was imported again, OSM changes were
+ * applied or mvt.encoded_values was changed, all tiles are discarded.
+ */
+public class MVTTileCache {
+    private static final Logger logger = LoggerFactory.getLogger(MVTTileCache.class);
+    private static final String VERSION_FILE = "version";
+    private final int maxSize;
+    private final Path directory;
+    private final int maxDiskTiles;
+    private final LinkedHashMap<Key, byte[]> map;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private String version;
+    // incremented whenever the tiles are removed, so we do not publish tiles that were written before
+    private long clearCount;
+    private int diskTiles;
+
+    /**
+     * Creates the cache as configured by mvt.cache.size, mvt.cache.disk and mvt.cache.disk_max_tiles. The cache is
+     * disabled per default.
+     */
+    public static MVTTileCache fromConfig(GraphHopperConfig config) {
+        int maxSize = config.getInt("mvt.cache.size", 0);
+        boolean disk = config.getBool("mvt.cache.disk", false);
+        int maxDiskTiles = config.getInt("mvt.cache.disk_max_tiles", 1_000_000);
+        return new MVTTileCache(maxSize, disk ? getDirectory(config) : null, maxDiskTiles);
+    }
+
+    /**
+     * @return the directory for the tiles on disk, which is located in the graph folder
+     */
+    public static Path getDirectory(GraphHopperConfig config) {
+        return Paths.get(config.getString("graph.location", "graph-cache"), "mvt_cache");
+    }
+
+    /**
+     * The version of the graph that the tiles are rendered for.
+     *
+     * @param encodedValues the encoded values that are rendered into the tiles, see mvt.encoded_values
+     */
+    public static String getGraphVersion(GraphHopper graphHopper, List<String> encodedValues) {
+        return graphHopper.getProperties().get("datareader.import.date") + "|" + graphHopper.getProperties().get("datareader.changes.date")
+                + "|" + String.join(",", encodedValues);
+    }
+
+    /**
+     * @param maxSize      the maximum number of tiles kept in memory, 0 disables the in-memory cache
+     * @param directory    the directory for the tiles on disk or null if they shall only be kept in memory
+     * @param maxDiskTiles the maximum number of tiles written to the directory
+     */
+    public MVTTileCache(int maxSize, Path directory, int maxDiskTiles) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("The maximum size of the tile cache must not be negative, but was: " + maxSize);
+        if (maxDiskTiles < 0)
+            throw new IllegalArgumentException("The maximum number of tiles on disk must not be negative, but was: " + maxDiskTiles);
+        this.maxSize = maxSize;
+        this.directory = directory;
+        this.maxDiskTiles = maxDiskTiles;
+        // access order turns the map into a LRU cache
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                return size() > MVTTileCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return false if neither the in-memory nor the disk cache is enabled
+     */
+    public boolean isEnabled() {
+        return maxSize > 0 || directory != null;
+    }
+
+    /**
+     * @return the cached tile or null if there is none for the given graph version
+     */
+    public byte[] get(String graphVersion, int z, int x, int y, boolean renderAll) {
+        MVTTileRenderer.checkTile(z, x, y);
+        Key key = new Key(z, x, y, renderAll);
+        byte[] bytes;
+        synchronized (map) {
+            checkVersion(graphVersion);
+            bytes = map.get(key);
+        }
+        if (bytes == null && directory != null) {
+            bytes = readTile(key);
+            if (bytes != null && maxSize > 0)
+                synchronized (map) {
+                    // the version might have changed while we were reading from disk
+                    if (graphVersion.equals(version))
+                        map.put(key, bytes);
+                    else
+                        bytes = null;
+                }
+        }
+        if (bytes == null)
+            misses.increment();
+        else
+            hits.increment();
+        return bytes;
+    }
+
+    public void put(String graphVersion, int z, int x, int y, boolean renderAll, byte[] bytes) {
+        MVTTileRenderer.checkTile(z, x, y);
+        Key key = new Key(z, x, y, renderAll);
+        long expectedClearCount;
+        boolean writeToDisk;
+        synchronized (map) {
+            checkVersion(graphVersion);
+            expectedClearCount = clearCount;
+            // existing tiles can still be replaced once the limit is reached
+            writeToDisk = directory != null && (diskTiles < maxDiskTiles || Files.exists(toPath(key)));
+        }
+        // writing the file is slow, so we do it outside the lock and only publish it within the lock
+        Path tmp = writeToDisk ? writeTempTile(key, bytes) : null;
+        synchronized (map) {
+            // the tiles might have been discarded in the meantime, then this tile is outdated
+            if (clearCount != expectedClearCount || !graphVersion.equals(version)) {
+                if (tmp != null)
+                    deleteTempTile(tmp);
+                return;
+            }
+            if (maxSize > 0)
+                map.put(key, bytes);
+            if (tmp != null) {
+                Path file = toPath(key);
+                boolean exists = Files.exists(file);
+                // other threads might have written tiles in the meantime
+                if (exists || diskTiles < maxDiskTiles) {
+                    publishTile(tmp, file);
+                    if (!exists)
+                        diskTiles++;
+                } else {
+                    deleteTempTile(tmp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all tiles from memory and disk.
+     */
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+            if (directory != null)
+                Helper.removeDir(directory.toFile());
+            version = null;
+            clearCount++;
+            diskTiles = 0;
+        }
+    }
+
+    private void checkVersion(String graphVersion) {
+        if (graphVersion.equals(version))
+            return;
+        if (version == null && directory != null && graphVersion.equals(readVersion())) {
+            version = graphVersion;
+            diskTiles = countTiles();
+            return;
+        }
+        if (version != null || directory != null && Files.exists(directory))
+            logger.info("graph version changed to " + graphVersion + ", discarding all vector tiles");
+        clear();
+        version = graphVersion;
+        if (directory != null)
+            writeVersion(graphVersion);
+    }
+
+    private String readVersion() {
+        Path file = directory.resolve(VERSION_FILE);
+        try {
+            return Files.exists(file) ? Files.readString(file, StandardCharsets.UTF_8) : null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void writeVersion(String graphVersion) {
+        try {
+            Files.createDirectories(directory);
+            Files.writeString(directory.resolve(VERSION_FILE), graphVersion, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private int countTiles() {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return (int) files.filter(file -> file.toString().endsWith(".mvt")).count();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Path toPath(Key key) {
+        return directory.resolve(Integer.toString(key.z)).resolve(Integer.toString(key.x))
+                .resolve(key.y + (key.renderAll ? "_all" : "") + ".mvt");
+    }
+
+    /**
+     * Reads the tile outside the lock, so it might be removed by {@link #clear()} concurrently.
+     */
+    private byte[] readTile(Key key) {
+        try {
+            return Files.readAllBytes(toPath(key));
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes the tile to a temporary file next to its final location, so readers never see a partially written tile.
+     *
+     * @return the temporary file or null if the directory was removed by {@link #clear()} concurrently
+     */
+    private Path writeTempTile(Key key, byte[] bytes) {
+        Path parent = toPath(key).getParent();
+        try {
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, "tile", ".tmp");
+            Files.write(tmp, bytes);
+            return tmp;
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void publishTile(Path tmp, Path file) {
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void deleteTempTile(Path tmp) {
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return the directory for the tiles on disk or null if they are only kept in memory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of tiles on disk
+     */
+    public int getDiskSize() {
+        synchronized (map) {
+            return diskTiles;
+        }
+    }
+
+    public int getSize() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private record Key(int z, int x, int y, boolean renderAll) {
+    }
+}
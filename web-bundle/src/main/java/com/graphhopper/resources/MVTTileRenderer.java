@@ -0,0 +1,201 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+import no.ecc.vectortile.VectorTileEncoder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.util.AffineTransformation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the edges of the road network into Mapbox vector tiles, see {@link MVTResource}. This class is thread-safe.
+ */
+public class MVTTileRenderer {
+
+    /**
+     * Tiles with a lower (or equal) zoom level are always empty.
+     */
+    public static final int MAX_EMPTY_ZOOM = 9;
+    /**
+     * Tiles with a higher zoom level are not rendered.
+     */
+    public static final int MAX_ZOOM = 22;
+    private final BaseGraph graph;
+    private final LocationIndexTree locationIndex;
+    private final EnumEncodedValue<RoadClass> roadClassEnc;
+    private final List<EncodedValue> encodedValues;
+
+    /**
+     * @param encodedValues the names of the encoded values that shall be added as attributes to the features. If empty
+     *                      all encoded values are added.
+     */
+    public MVTTileRenderer(GraphHopper graphHopper, Collection<String> encodedValues) {
+        this.graph = graphHopper.getBaseGraph();
+        this.locationIndex = (LocationIndexTree) graphHopper.getLocationIndex();
+        EncodingManager encodingManager = graphHopper.getEncodingManager();
+        if (!encodingManager.hasEncodedValue(RoadClass.KEY))
+            throw new IllegalStateException("You need to configure GraphHopper to store road_class, e.g. graph.encoded_values: road_class,max_speed,... ");
+        this.roadClassEnc = encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        if (encodedValues.isEmpty()) {
+            this.encodedValues = encodingManager.getEncodedValues();
+        } else {
+            this.encodedValues = new ArrayList<>(encodedValues.size());
+            for (String name : encodedValues) {
+                if (!encodingManager.hasEncodedValue(name))
+                    throw new IllegalArgumentException("Cannot add encoded value '" + name + "' to the vector tiles, it does not exist. Available: " + encodingManager.getEncodedValues().stream().map(EncodedValue::getName).toList());
+                this.encodedValues.add(encodingManager.getEncodedValue(name, EncodedValue.class));
+            }
+        }
+    }
+
+    public byte[] render(int zInfo, int xInfo, int yInfo, boolean renderAll) {
+        checkTile(zInfo, xInfo, yInfo);
+        if (zInfo <= MAX_EMPTY_ZOOM)
+            return new VectorTileEncoder().encode();
+
+        Coordinate nw = num2deg(xInfo, yInfo, zInfo);
+        Coordinate se = num2deg(xInfo + 1, yInfo + 1, zInfo);
+        final NodeAccess na = graph.getNodeAccess();
+        BBox bbox = new BBox(nw.x, se.x, se.y, nw.y);
+        if (!bbox.isValid())
+            throw new IllegalStateException("Invalid bbox " + bbox);
+
+        final GeometryFactory geometryFactory = new GeometryFactory();
+
+        // 256x256 pixels per MVT. here we transform from the global coordinate system to the local one of the tile.
+        AffineTransformation affineTransformation = new AffineTransformation();
+        affineTransformation.translate(-nw.x, -se.y);
+        affineTransformation.scale(
+                256.0 / (se.x - nw.x),
+                -256.0 / (nw.y - se.y)
+        );
+        affineTransformation.translate(0, 256);
+
+        // if performance of the vector tile encoding becomes an issue it might be worth to get rid of the simplification
+        // and clipping in the no.ecc code? https://github.com/graphhopper/graphhopper/commit/0f96c2deddb24efa97109e35e0c05f1c91221f59#r90830001
+        VectorTileEncoder vectorTileEncoder = new VectorTileEncoder();
+        locationIndex.query(bbox, edgeId -> {
+            EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
+            LineString lineString;
+            if (renderAll) {
+                PointList pl = edge.fetchWayGeometry(FetchMode.ALL);
+                lineString = pl.toLineString(false);
+            } else {
+                RoadClass rc = edge.get(roadClassEnc);
+                if (zInfo >= 14) {
+                    PointList pl = edge.fetchWayGeometry(FetchMode.ALL);
+                    lineString = pl.toLineString(false);
+                } else if (rc == RoadClass.MOTORWAY
+                        || zInfo > 10 && (rc == RoadClass.PRIMARY || rc == RoadClass.TRUNK)
+                        || zInfo > 11 && (rc == RoadClass.SECONDARY)
+                        || zInfo > 12) {
+                    double lat = na.getLat(edge.getBaseNode());
+                    double lon = na.getLon(edge.getBaseNode());
+                    double toLat = na.getLat(edge.getAdjNode());
+                    double toLon = na.getLon(edge.getAdjNode());
+                    lineString = geometryFactory.createLineString(new Coordinate[]{new Coordinate(lon, lat), new Coordinate(toLon, toLat)});
+                } else {
+                    // skip edge for certain zoom
+                    return;
+                }
+            }
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, KVStorage.KValue> e : edge.getKeyValues().entrySet()) {
+                map.put(e.getKey(), e.getValue().toString());
+            }
+            map.put("edge_id", edge.getEdge());
+            map.put("edge_key", edge.getEdgeKey());
+            map.put("base_node", edge.getBaseNode());
+            map.put("adj_node", edge.getAdjNode());
+            map.put("distance", edge.getDistance());
+            for (EncodedValue ev : encodedValues) {
+                if (ev instanceof EnumEncodedValue)
+                    map.put(ev.getName(), edge.get((EnumEncodedValue) ev).toString() + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((EnumEncodedValue) ev).toString() : ""));
+                else if (ev instanceof DecimalEncodedValue)
+                    map.put(ev.getName(), edge.get((DecimalEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((DecimalEncodedValue) ev) : ""));
+                else if (ev instanceof BooleanEncodedValue)
+                    map.put(ev.getName(), edge.get((BooleanEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((BooleanEncodedValue) ev) : ""));
+                else if (ev instanceof StringEncodedValue)
+                    map.put(ev.getName(), edge.get((StringEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((StringEncodedValue) ev) : ""));
+                else if (ev instanceof IntEncodedValue)
+                    map.put(ev.getName(), edge.get((IntEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((IntEncodedValue) ev) : ""));
+            }
+            lineString.setUserData(map);
+
+            Geometry g = affineTransformation.transform(lineString);
+            vectorTileEncoder.addFeature("roads", map, g, edge.getEdge());
+        });
+        return vectorTileEncoder.encode();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the given tile does not exist, i.e. the zoom level is not within
+     *                                  [0, {@link #MAX_ZOOM}] or x or y are not within [0, 2^zoom)
+     */
+    public static void checkTile(int zInfo, int xInfo, int yInfo) {
+        if (zInfo < 0 || zInfo > MAX_ZOOM)
+            throw new IllegalArgumentException("The zoom level must be within [0, " + MAX_ZOOM + "], but was: " + zInfo);
+        int n = 1 << zInfo;
+        if (xInfo < 0 || xInfo >= n || yInfo < 0 || yInfo >= n)
+            throw new IllegalArgumentException("The tile " + xInfo + "/" + yInfo + " does not exist for zoom level " + zInfo);
+    }
+
+    static Coordinate num2deg(int xInfo, int yInfo, int zoom) {
+        // inverse web mercator projection
+        double n = Math.pow(2, zoom);
+        double lonDeg = xInfo / n * 360.0 - 180.0;
+        // unfortunately latitude numbers goes from north to south
+        double latRad = Math.atan(Math.sinh(Math.PI * (1 - 2 * yInfo / n)));
+        double latDeg = Math.toDegrees(latRad);
+        return new Coordinate(lonDeg, latDeg);
+    }
+
+    /**
+     * Web mercator projection, i.e. the inverse of {@link #num2deg}.
+     */
+    public static int lon2x(double lon, int zoom) {
+        int n = 1 << zoom;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((lon + 180) / 360 * n)));
+    }
+
+    public static int lat2y(double lat, int zoom) {
+        int n = 1 << zoom;
+        double latRad = Math.toRadians(lat);
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n)));
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.resources;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -30,10 +31,12 @@ import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.jackson.Gpx;
 import com.graphhopper.jackson.Jackson;
+import com.graphhopper.jackson.ResponsePathBinaryFormat;
 import com.graphhopper.jackson.ResponsePathSerializer;
 import com.graphhopper.matching.*;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,11 +44,23 @@ import jakarta.inject.Inject;
 import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.*;
 
+import static com.graphhopper.resources.RouteResource.acceptsBinary;
+import static com.graphhopper.resources.RouteResource.binarySuccessResponseBuilder;
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
 import static com.graphhopper.util.Parameters.Details.PATH_DETAILS;
 import static com.graphhopper.util.Parameters.Routing.*;
@@ -63,6 +78,7 @@ public class MapMatchingResource {
     }
 
     private static final Logger logger = LoggerFactory.getLogger(MapMatchingResource.class);
+    private static final String NDJSON = "application/x-ndjson";
 
     private final GraphHopperConfig config;
     private final GraphHopper graphHopper;
@@ -84,10 +100,11 @@ public class MapMatchingResource {
 
     @POST
     @Consumes({MediaType.APPLICATION_XML, "application/gpx+xml"})
-    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml"})
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml", ResponsePathBinaryFormat.MEDIA_TYPE})
     public Response match(
             @NotNull Gpx gpx,
             @Context UriInfo uriInfo,
+            @Context HttpHeaders httpHeaders,
             @QueryParam(WAY_POINT_MAX_DISTANCE) @DefaultValue("0.5") double minPathPrecision,
             @QueryParam("type") @DefaultValue("json") String outType,
             @QueryParam(INSTRUCTIONS) @DefaultValue("true") boolean instructions,
@@ -114,17 +131,8 @@ public class MapMatchingResource {
 
         StopWatch sw = new StopWatch().start();
 
-        PMap hints = new PMap();
-        RouteResource.initHints(hints, uriInfo.getQueryParameters());
-
-        // resolve profile and remove legacy vehicle/weighting parameters
-        // we need to explicitly disable CH here because map matching does not use it
-        PMap profileResolverHints = new PMap(hints);
-        profileResolverHints.putObject("profile", profile);
-        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
-        profile = profileResolver.resolveProfile(profileResolverHints);
-        hints.putObject("profile", profile);
-        removeLegacyParameters(hints);
+        PMap hints = createHints(uriInfo, profile);
+        profile = hints.getString("profile", "");
 
         boolean debugMode = "debug".equals(outType);
         MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), mapMatchingRouterFactory.createMapMatchingRouter(hints));
@@ -174,6 +182,17 @@ public class MapMatchingResource {
                 return Response.ok(GpxConversions.createGPX(rsp.getBest().getInstructions(), gpx.trk.get(0).name != null ? gpx.trk.get(0).name : "", time, enableElevation, withRoute, withTrack, false, Constants.VERSION, tr), "application/gpx+xml").
                         header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).
                         build();
+            } else if (acceptsBinary(httpHeaders)) {
+                // the binary format has no place for the match statistics, so we put them into the hints
+                rsp.getHints().putObject("map_matching.distance", matchResult.getMatchLength());
+                rsp.getHints().putObject("map_matching.time", matchResult.getMatchMillis());
+                rsp.getHints().putObject("map_matching.original_distance", matchResult.getGpxEntriesLength());
+                if (enableTraversalKeys)
+                    rsp.getHints().putObject("traversal_keys", getTraversalKeys(matchResult));
+                return binarySuccessResponseBuilder(rsp, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(sw.getMillisDouble()), osmDate),
+                        instructions, calcPoints, enableElevation, pointsEncodedMultiplier).
+                        header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).
+                        build();
             } else {
                 ObjectNode map = ResponsePathSerializer.jsonObject(rsp, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(sw.getMillisDouble()), osmDate), instructions,
                         calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier);
@@ -184,15 +203,8 @@ public class MapMatchingResource {
                 matchStatistics.put("original_distance", matchResult.getGpxEntriesLength());
                 map.putPOJO("map_matching", matchStatistics);
 
-                if (enableTraversalKeys) {
-                    List<Integer> traversalKeylist = new ArrayList<>();
-                    for (EdgeMatch em : matchResult.getEdgeMatches()) {
-                        EdgeIteratorState edge = em.getEdgeState();
-                        // encode edges as traversal keys which includes orientation, decode simply by multiplying with 0.5
-                        traversalKeylist.add(edge.getEdgeKey());
-                    }
-                    map.putPOJO("traversal_keys", traversalKeylist);
-                }
+                if (enableTraversalKeys)
+                    map.putPOJO("traversal_keys", getTraversalKeys(matchResult));
                 return Response.ok(map).
                         header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).
                         build();
@@ -200,6 +212,154 @@ public class MapMatchingResource {
         }
     }
 
+    private static List<Integer> getTraversalKeys(MatchResult matchResult) {
+        List<Integer> traversalKeylist = new ArrayList<>();
+        for (EdgeMatch em : matchResult.getEdgeMatches()) {
+            EdgeIteratorState edge = em.getEdgeState();
+            // encode edges as traversal keys which includes orientation, decode simply by multiplying with 0.5
+            traversalKeylist.add(edge.getEdgeKey());
+        }
+        return traversalKeylist;
+    }
+
+    /**
+     * Map matching for live GPS feeds. The request body contains one observation per line, e.g. {"lat":51.3,"lon":12.3},
+     * and the response contains one line per matched edge (like the links of type=extended_json) as soon as the
+     * edge is final, see {@link OnlineMapMatching}. The client can keep sending observations while it reads the
+     * response, which ends after the request body was closed. An invalid first observation is rejected with status 400
+     * and e.g. {"message":"...","line":1}. The status is sent before the later observations arrive, so invalid lines
+     * after the first observation are skipped and reported by an error line, e.g. {"message":"...","line":3}. The whole stream is matched against the graph that was current when it started,
+     * so a stream keeps a replaced graph open until it ends, see {@link com.graphhopper.http.GraphHopperManaged#reload}.
+     */
+    @POST
+    @jakarta.ws.rs.Path("stream")
+    @Consumes(NDJSON)
+    @Produces(NDJSON)
+    public Response matchStream(
+            InputStream body,
+            @Context UriInfo uriInfo,
+            @QueryParam("elevation") @DefaultValue("false") boolean enableElevation,
+            @QueryParam("points_encoded") @DefaultValue("true") boolean pointsEncoded,
+            @QueryParam("points_encoded_multiplier") @DefaultValue("1e5") double pointsEncodedMultiplier,
+            @QueryParam("profile") String profile,
+            @QueryParam("gps_accuracy") @DefaultValue("10") double gpsAccuracy,
+            @QueryParam("window_size") @DefaultValue("20") int windowSize) {
+        PMap hints = createHints(uriInfo, profile);
+        MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), mapMatchingRouterFactory.createMapMatchingRouter(hints));
+        matching.setMeasurementErrorSigma(gpsAccuracy);
+        OnlineMapMatching onlineMatching = new OnlineMapMatching(matching).setWindowSize(windowSize);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, Helper.UTF_CS));
+        // we read the first observation before the status is sent, so we can still reject the request
+        int firstLine = 0;
+        Observation firstObservation = null;
+        try {
+            String line;
+            while (firstObservation == null && (line = reader.readLine()) != null) {
+                firstLine++;
+                if (!line.isBlank())
+                    firstObservation = parseObservation(line);
+            }
+        } catch (IllegalArgumentException ex) {
+            throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).
+                    entity(objectMapper.createObjectNode().put("message", ex.getMessage()).put("line", firstLine)).
+                    type(MediaType.APPLICATION_JSON).
+                    build());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        final int linesBeforeStream = firstLine;
+        final Observation first = firstObservation;
+
+        StreamingOutput out = output -> {
+            StopWatch sw = new StopWatch().start();
+            int lines = linesBeforeStream, observations = 0, edges = 0;
+            try (reader; Writer writer = new BufferedWriter(new OutputStreamWriter(output, Helper.UTF_CS))) {
+                try {
+                    Observation observation = first;
+                    while (observation != null) {
+                        observations++;
+                        edges += writeLinks(writer, onlineMatching.add(observation),
+                                onlineMatching, enableElevation, pointsEncoded, pointsEncodedMultiplier);
+                        // the client should get the edges as soon as they are known
+                        writer.flush();
+                        observation = null;
+                        String line;
+                        while (observation == null && (line = reader.readLine()) != null) {
+                            lines++;
+                            if (line.isBlank())
+                                continue;
+                            try {
+                                observation = parseObservation(line);
+                            } catch (IllegalArgumentException ex) {
+                                writeError(writer, ex.getMessage(), lines);
+                            }
+                        }
+                    }
+                    edges += writeLinks(writer, onlineMatching.finish(), onlineMatching, enableElevation, pointsEncoded, pointsEncodedMultiplier);
+                } catch (IllegalArgumentException ex) {
+                    // the response is already committed, so we can only report the error within the stream
+                    writer.write(objectMapper.createObjectNode().put("message", ex.getMessage()).toString());
+                    writer.write("\n");
+                }
+            }
+            logger.info(objectMapper.createObjectNode()
+                    .put("took", sw.stop().getMillisDouble())
+                    .put("profile", hints.getString("profile", ""))
+                    .put("observations", observations)
+                    .put("edges", edges).toString());
+        };
+        return Response.ok(out).build();
+    }
+
+    private int writeLinks(Writer writer, List<EdgeMatch> edgeMatches, OnlineMapMatching onlineMatching, boolean elevation, boolean pointsEncoded, double pointsEncodedMultiplier) throws IOException {
+        for (EdgeMatch edgeMatch : edgeMatches) {
+            // the links of a segment share their end points, only the first one needs the base node
+            FetchMode mode = onlineMatching.isSegmentStart(edgeMatch) ? FetchMode.ALL : FetchMode.PILLAR_AND_ADJ;
+            writer.write(createLink(edgeMatch, mode, elevation, pointsEncoded, pointsEncodedMultiplier).toString());
+            writer.write("\n");
+        }
+        return edgeMatches.size();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the line is not an observation with a numeric lat and lon
+     */
+    private Observation parseObservation(String line) {
+        JsonNode json;
+        try {
+            json = objectMapper.readTree(line);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Cannot parse observation: " + ex.getOriginalMessage());
+        }
+        JsonNode lat = json.get("lat");
+        JsonNode lon = json.get("lon");
+        // asDouble() would turn missing or non-numeric values into 0
+        if (lat == null || lon == null || !lat.isNumber() || !lon.isNumber())
+            throw new IllegalArgumentException("Every observation needs a numeric lat and lon, but was: " + line);
+        return new Observation(new GHPoint(lat.asDouble(), lon.asDouble()));
+    }
+
+    private void writeError(Writer writer, String message, int line) throws IOException {
+        writer.write(objectMapper.createObjectNode().put("message", message).put("line", line).toString());
+        writer.write("\n");
+        writer.flush();
+    }
+
+    private PMap createHints(UriInfo uriInfo, String profile) {
+        PMap hints = new PMap();
+        RouteResource.initHints(hints, uriInfo.getQueryParameters());
+
+        // resolve profile and remove legacy vehicle/weighting parameters
+        // we need to explicitly disable CH here because map matching does not use it
+        PMap profileResolverHints = new PMap(hints);
+        profileResolverHints.putObject("profile", profile);
+        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
+        hints.putObject("profile", profileResolver.resolveProfile(profileResolverHints));
+        removeLegacyParameters(hints);
+        return hints;
+    }
+
     public static JsonNode convertToTree(MatchResult result, boolean elevation, boolean pointsEncoded, double pointsEncodedMultiplier) {
         ObjectNode root = JsonNodeFactory.instance.objectNode();
         ObjectNode diary = root.putObject("diary");
@@ -207,26 +367,30 @@ public class MapMatchingResource {
         ObjectNode route = entries.addObject();
         ArrayNode links = route.putArray("links");
         for (int emIndex = 0; emIndex < result.getEdgeMatches().size(); emIndex++) {
-            ObjectNode link = links.addObject();
-            EdgeMatch edgeMatch = result.getEdgeMatches().get(emIndex);
-            PointList pointList = edgeMatch.getEdgeState().fetchWayGeometry(emIndex == 0 ? FetchMode.ALL : FetchMode.PILLAR_AND_ADJ);
-            final ObjectNode geometry = link.putObject("geometry");
-            if (pointList.size() < 2) {
-                geometry.putPOJO("coordinates", pointsEncoded ? ResponsePathSerializer.encodePolyline(pointList, elevation, pointsEncodedMultiplier) : pointList.toLineString(elevation));
-                geometry.put("type", "Point");
-            } else {
-                geometry.putPOJO("coordinates", pointsEncoded ? ResponsePathSerializer.encodePolyline(pointList, elevation, pointsEncodedMultiplier) : pointList.toLineString(elevation));
-                geometry.put("type", "LineString");
-            }
-            link.put("id", edgeMatch.getEdgeState().getEdge());
-            ArrayNode wpts = link.putArray("wpts");
-            for (State extension : edgeMatch.getStates()) {
-                ObjectNode wpt = wpts.addObject();
-                wpt.put("x", extension.getSnap().getSnappedPoint().lon);
-                wpt.put("y", extension.getSnap().getSnappedPoint().lat);
-            }
+            links.add(createLink(result.getEdgeMatches().get(emIndex), emIndex == 0 ? FetchMode.ALL : FetchMode.PILLAR_AND_ADJ, elevation, pointsEncoded, pointsEncodedMultiplier));
         }
         return root;
     }
 
+    private static ObjectNode createLink(EdgeMatch edgeMatch, FetchMode fetchMode, boolean elevation, boolean pointsEncoded, double pointsEncodedMultiplier) {
+        ObjectNode link = JsonNodeFactory.instance.objectNode();
+        PointList pointList = edgeMatch.getEdgeState().fetchWayGeometry(fetchMode);
+        final ObjectNode geometry = link.putObject("geometry");
+        if (pointList.size() < 2) {
+            geometry.putPOJO("coordinates", pointsEncoded ? ResponsePathSerializer.encodePolyline(pointList, elevation, pointsEncodedMultiplier) : pointList.toLineString(elevation));
+            geometry.put("type", "Point");
+        } else {
+            geometry.putPOJO("coordinates", pointsEncoded ? ResponsePathSerializer.encodePolyline(pointList, elevation, pointsEncodedMultiplier) : pointList.toLineString(elevation));
+            geometry.put("type", "LineString");
+        }
+        link.put("id", edgeMatch.getEdgeState().getEdge());
+        ArrayNode wpts = link.putArray("wpts");
+        for (State extension : edgeMatch.getStates()) {
+            ObjectNode wpt = wpts.addObject();
+            wpt.put("x", extension.getSnap().getSnappedPoint().lon);
+            wpt.put("y", extension.getSnap().getSnappedPoint().lat);
+        }
+        return link;
+    }
+
 }
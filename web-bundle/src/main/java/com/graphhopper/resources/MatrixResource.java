@@ -0,0 +1,202 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GHMatrixRequest;
+import com.graphhopper.GHMatrixResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.http.GHPointParam;
+import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.jackson.MultiException;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.StopWatch;
+import io.dropwizard.jersey.params.AbstractParam;
+import jakarta.inject.Inject;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.constraints.NotNull;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Resource to calculate the weights, times and distances between many points. The response has the same format as
+ * the one expected by GHMatrixSyncRequester of the client-hc module, i.e. times are in seconds and distances in
+ * meters. Entries of pairs that are not connected are null.
+ */
+@Path("matrix")
+public class MatrixResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatrixResource.class);
+
+    private final GraphHopperConfig config;
+    private final GraphHopper graphHopper;
+    private final ProfileResolver profileResolver;
+    private final List<String> snapPreventionsDefault;
+
+    @Inject
+    public MatrixResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver) {
+        this.config = config;
+        this.graphHopper = graphHopper;
+        this.profileResolver = profileResolver;
+        this.snapPreventionsDefault = Arrays.stream(config.getString("routing.snap_preventions_default", "")
+                .split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doGet(
+            @Context HttpServletRequest httpReq,
+            @Context UriInfo uriInfo,
+            @QueryParam("point") List<GHPointParam> pointParams,
+            @QueryParam("from_point") List<GHPointParam> fromPointParams,
+            @QueryParam("to_point") List<GHPointParam> toPointParams,
+            @QueryParam("point_hint") List<String> pointHints,
+            @QueryParam("from_point_hint") List<String> fromPointHints,
+            @QueryParam("to_point_hint") List<String> toPointHints,
+            @QueryParam("snap_prevention") List<String> snapPreventions,
+            @QueryParam("out_array") @NotNull List<String> outArrays,
+            @QueryParam("fail_fast") @DefaultValue("true") boolean failFast,
+            @QueryParam("profile") String profileName) {
+        GHMatrixRequest request = new GHMatrixRequest();
+        RouteResource.initHints(request.getHints(), uriInfo.getQueryParameters());
+        if (!pointParams.isEmpty()) {
+            if (!fromPointParams.isEmpty() || !toPointParams.isEmpty())
+                throw new IllegalArgumentException("Either use the point or the from_point and to_point parameters, but not both");
+            request.setPoints(pointParams.stream().map(AbstractParam::get).collect(toList())).
+                    setPointHints(pointHints);
+        } else {
+            request.setFromPoints(fromPointParams.stream().map(AbstractParam::get).collect(toList())).
+                    setToPoints(toPointParams.stream().map(AbstractParam::get).collect(toList())).
+                    setFromPointHints(fromPointHints).
+                    setToPointHints(toPointHints);
+        }
+        if (uriInfo.getQueryParameters().containsKey("snap_prevention"))
+            request.setSnapPreventions(snapPreventions.size() == 1 && snapPreventions.contains("") ? List.of() : snapPreventions);
+        if (!outArrays.isEmpty())
+            request.setOutArrays(outArrays);
+        request.setFailFast(failFast).setProfile(profileName);
+        // the hints contain all query parameters, but we only want to keep the unknown ones
+        for (String key : Arrays.asList("point", "from_point", "to_point", "point_hint", "from_point_hint", "to_point_hint",
+                "snap_prevention", "out_array", "fail_fast", "profile"))
+            request.getHints().remove(key);
+        return doMatrix(request, httpReq);
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doPost(@NotNull GHMatrixRequest request, @Context HttpServletRequest httpReq) {
+        return doMatrix(request, httpReq);
+    }
+
+    private Response doMatrix(GHMatrixRequest request, HttpServletRequest httpReq) {
+        StopWatch sw = new StopWatch().start();
+        if (!request.hasSnapPreventions())
+            request.setSnapPreventions(snapPreventionsDefault);
+
+        PMap profileResolverHints = new PMap(request.getHints());
+        profileResolverHints.putObject("profile", request.getProfile());
+        request.setProfile(profileResolver.resolveProfile(profileResolverHints));
+        removeLegacyParameters(request.getHints());
+
+        GHMatrixResponse matrixResponse = graphHopper.matrix(request);
+        double took = sw.stop().getMillisDouble();
+        String logStr = httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent")
+                + " " + request + ", took: " + String.format("%.1f", took) + "ms";
+        if (matrixResponse.hasErrors()) {
+            logger.info(logStr + " " + matrixResponse);
+            throw new MultiException(matrixResponse.getErrors());
+        }
+        logger.info(logStr + ", " + matrixResponse.getHints() + ", debugInfo: " + matrixResponse.getDebugInfo());
+        return Response.ok(toJson(matrixResponse, request.getFailFast(), config.getCopyrights(), Math.round(took))).
+                header("X-GH-Took", "" + Math.round(took)).
+                type(MediaType.APPLICATION_JSON).
+                build();
+    }
+
+    static ObjectNode toJson(GHMatrixResponse rsp, boolean failFast, List<String> copyrights, long took) {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        if (rsp.getWeights() != null) {
+            ArrayNode weights = json.putArray("weights");
+            for (double[] row : rsp.getWeights()) {
+                ArrayNode rowNode = weights.addArray();
+                for (double weight : row) {
+                    if (Double.isFinite(weight)) rowNode.add(Helper.round(weight, 3));
+                    else rowNode.addNull();
+                }
+            }
+        }
+        if (rsp.getTimes() != null) {
+            ArrayNode times = json.putArray("times");
+            for (long[] row : rsp.getTimes()) {
+                ArrayNode rowNode = times.addArray();
+                for (long time : row) {
+                    if (time != Long.MAX_VALUE) rowNode.add(Math.round(time / 1000.0));
+                    else rowNode.addNull();
+                }
+            }
+        }
+        if (rsp.getDistances() != null) {
+            ArrayNode distances = json.putArray("distances");
+            for (double[] row : rsp.getDistances()) {
+                ArrayNode rowNode = distances.addArray();
+                for (double distance : row) {
+                    if (Double.isFinite(distance)) rowNode.add(Math.round(distance));
+                    else rowNode.addNull();
+                }
+            }
+        }
+        if (!failFast) {
+            ArrayNode hints = json.putArray("hints");
+            if (!rsp.getDisconnectedPoints().isEmpty()) {
+                ObjectNode hint = hints.addObject();
+                hint.put("message", "Connection between locations not found");
+                ArrayNode pairs = hint.putArray("point_pairs");
+                for (int[] pair : rsp.getDisconnectedPoints())
+                    pairs.addArray().add(pair[0]).add(pair[1]);
+            }
+            if (!rsp.getInvalidFromPoints().isEmpty() || !rsp.getInvalidToPoints().isEmpty()) {
+                ObjectNode hint = hints.addObject();
+                hint.put("message", "Cannot find from_points or to_points");
+                ArrayNode invalidFrom = hint.putArray("invalid_from_points");
+                rsp.getInvalidFromPoints().forEach(invalidFrom::add);
+                ArrayNode invalidTo = hint.putArray("invalid_to_points");
+                rsp.getInvalidToPoints().forEach(invalidTo::add);
+            }
+        }
+        ObjectNode info = json.putObject("info");
+        info.putPOJO("copyrights", copyrights);
+        info.put("took", took);
+        return json;
+    }
+}
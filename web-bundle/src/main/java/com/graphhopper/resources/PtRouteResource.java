@@ -75,8 +75,10 @@ public class PtRouteResource {
                             @QueryParam("pt.beta_access_time") Double betaAccessTime,
                             @QueryParam("pt.egress_profile") String egressProfile,
                             @QueryParam("pt.beta_egress_time") Double betaEgressTime,
+                            @QueryParam("pt.range_raptor") @DefaultValue("false") boolean rangeRaptor,
                             @QueryParam("pt.algorithm") String algorithm) {
-        PtRouter ptRouter = serviceLocator.getService(PtRouter.class, algorithm);
+        // the range RAPTOR search is part of the trip-based router
+        PtRouter ptRouter = serviceLocator.getService(PtRouter.class, algorithm == null && rangeRaptor ? "trip_based" : algorithm);
 
         StopWatch stopWatch = new StopWatch().start();
         List<GHLocation> points = requestPoints.stream().map(AbstractParam::get).collect(toList());
@@ -84,6 +86,7 @@ public class PtRouteResource {
 
         Request request = new Request(points, departureTime);
         request.setArriveBy(arriveBy);
+        request.setRangeRaptor(rangeRaptor);
         Optional.ofNullable(profileQuery).ifPresent(request::setProfileQuery);
         Optional.ofNullable(profileDuration.get()).ifPresent(request::setMaxProfileDuration);
         Optional.ofNullable(ignoreTransfers).ifPresent(request::setIgnoreTransfers);
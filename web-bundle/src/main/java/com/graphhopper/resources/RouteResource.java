@@ -22,10 +22,12 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.http.AdmissionController;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.GHRequestTransformer;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.jackson.MultiException;
+import com.graphhopper.jackson.ResponsePathBinaryFormat;
 import com.graphhopper.jackson.ResponsePathSerializer;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
@@ -63,16 +65,18 @@ public class RouteResource {
     private final GraphHopper graphHopper;
     private final ProfileResolver profileResolver;
     private final GHRequestTransformer ghRequestTransformer;
+    private final AdmissionController admissionController;
     private final Boolean hasElevation;
     private final String osmDate;
     private final List<String> snapPreventionsDefault;
 
     @Inject
-    public RouteResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer, @Named("hasElevation") Boolean hasElevation) {
+    public RouteResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer, AdmissionController admissionController, @Named("hasElevation") Boolean hasElevation) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.ghRequestTransformer = ghRequestTransformer;
+        this.admissionController = admissionController;
         this.hasElevation = hasElevation;
         this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
         this.snapPreventionsDefault = Arrays.stream(config.getString("routing.snap_preventions_default", "")
@@ -80,10 +84,11 @@ public class RouteResource {
     }
 
     @GET
-    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml"})
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml", ResponsePathBinaryFormat.MEDIA_TYPE})
     public Response doGet(
             @Context HttpServletRequest httpReq,
             @Context UriInfo uriInfo,
+            @Context HttpHeaders httpHeaders,
             @QueryParam(WAY_POINT_MAX_DISTANCE) @DefaultValue("0.5") double minPathPrecision,
             @QueryParam(ELEVATION_WAY_POINT_MAX_DISTANCE) Double minPathElevationPrecision,
             @QueryParam("point") @NotNull List<GHPointParam> pointParams,
@@ -151,7 +156,10 @@ public class RouteResource {
         removeLegacyParameters(request.getHints());
         request.setProfile(profileName);
 
-        GHResponse ghResponse = graphHopper.route(request);
+        GHResponse ghResponse;
+        try (AdmissionController.Permit permit = admissionController.acquire(request, graphHopper)) {
+            ghResponse = graphHopper.route(request);
+        }
 
         double took = sw.stop().getMillisDouble();
         String logStr = (httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent")) + " " + points + ", took: " + String.format("%.1f", took) + "ms, algo: " + algoStr + ", profile: " + profileName;
@@ -169,22 +177,26 @@ public class RouteResource {
                     + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
                     + ", points0: " + ghResponse.getBest().getPoints().size()
                     + ", debugInfo: " + ghResponse.getDebugInfo());
-            return writeGPX ?
-                    gpxSuccessResponseBuilder(ghResponse, timeString, trackName, enableElevation, withRoute, withTrack, withWayPoints, Constants.VERSION).
-                            header("X-GH-Took", "" + Math.round(took)).
-                            build()
-                    :
-                    Response.ok(ResponsePathSerializer.jsonObject(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
-                            header("X-GH-Took", "" + Math.round(took)).
-                            type(MediaType.APPLICATION_JSON).
-                            build();
+            if (writeGPX)
+                return gpxSuccessResponseBuilder(ghResponse, timeString, trackName, enableElevation, withRoute, withTrack, withWayPoints, Constants.VERSION).
+                        header("X-GH-Took", "" + Math.round(took)).
+                        build();
+            ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate);
+            if (acceptsBinary(httpHeaders))
+                return binarySuccessResponseBuilder(ghResponse, info, instructions, calcPoints, enableElevation, pointsEncodedMultiplier).
+                        header("X-GH-Took", "" + Math.round(took)).
+                        build();
+            return Response.ok(ResponsePathSerializer.jsonObject(ghResponse, info, instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
+                    header("X-GH-Took", "" + Math.round(took)).
+                    type(MediaType.APPLICATION_JSON).
+                    build();
         }
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response doPost(@NotNull GHRequest request, @Context HttpServletRequest httpReq) {
+    @Produces({MediaType.APPLICATION_JSON, ResponsePathBinaryFormat.MEDIA_TYPE})
+    public Response doPost(@NotNull GHRequest request, @Context HttpServletRequest httpReq, @Context HttpHeaders httpHeaders) {
         if (!request.hasSnapPreventions())
             request.setSnapPreventions(snapPreventionsDefault);
 
@@ -201,7 +213,10 @@ public class RouteResource {
         request.setProfile(profileResolver.resolveProfile(profileResolverHints));
         removeLegacyParameters(request.getHints());
 
-        GHResponse ghResponse = graphHopper.route(request);
+        GHResponse ghResponse;
+        try (AdmissionController.Permit permit = admissionController.acquire(request, graphHopper)) {
+            ghResponse = graphHopper.route(request);
+        }
         boolean instructions = request.getHints().getBool(INSTRUCTIONS, true);
         boolean enableElevation = request.getHints().getBool("elevation", false);
         boolean calcPoints = request.getHints().getBool(CALC_POINTS, true);
@@ -223,13 +238,39 @@ public class RouteResource {
                     + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
                     + ", points0: " + ghResponse.getBest().getPoints().size()
                     + ", debugInfo: " + ghResponse.getDebugInfo());
-            return Response.ok(ResponsePathSerializer.jsonObject(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
+            ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate);
+            if (acceptsBinary(httpHeaders))
+                return binarySuccessResponseBuilder(ghResponse, info, instructions, calcPoints, enableElevation, pointsEncodedMultiplier).
+                        header("X-GH-Took", "" + Math.round(took)).
+                        build();
+            return Response.ok(ResponsePathSerializer.jsonObject(ghResponse, info, instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
                     header("X-GH-Took", "" + Math.round(took)).
                     type(MediaType.APPLICATION_JSON).
                     build();
         }
     }
 
+    /**
+     * @return true if the client prefers the binary format of {@link ResponsePathBinaryFormat} over JSON, i.e. if it
+     * is listed in the Accept header before JSON or a wildcard
+     */
+    static boolean acceptsBinary(HttpHeaders httpHeaders) {
+        // the acceptable media types are sorted by their quality
+        for (MediaType mediaType : httpHeaders.getAcceptableMediaTypes()) {
+            if (ResponsePathBinaryFormat.MEDIA_TYPE.equals(mediaType.getType() + "/" + mediaType.getSubtype()))
+                return true;
+            if (mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE))
+                return false;
+        }
+        return false;
+    }
+
+    static Response.ResponseBuilder binarySuccessResponseBuilder(GHResponse ghResponse, ResponsePathSerializer.Info info, boolean instructions,
+                                                                 boolean calcPoints, boolean enableElevation, double pointsMultiplier) {
+        StreamingOutput output = out -> ResponsePathBinaryFormat.write(ghResponse, info, instructions, calcPoints, enableElevation, pointsMultiplier, out);
+        return Response.ok(output, ResponsePathBinaryFormat.MEDIA_TYPE);
+    }
+
     public static void removeLegacyParameters(PMap hints) {
         // these parameters should only be used to resolve the profile, but should not be passed to GraphHopper
         hints.remove("weighting");
@@ -0,0 +1,111 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.shapes.GHPoint;
+import jakarta.ws.rs.WebApplicationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static com.graphhopper.http.AdmissionController.CostClass.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControllerTest {
+
+    private static AdmissionController createController(int cheap, int medium, int expensive) {
+        return new AdmissionController(Map.of(CHEAP, cheap, MEDIUM, medium, EXPENSIVE, expensive), 10, 500_000, 10);
+    }
+
+    @Test
+    public void testEstimateCost() {
+        AdmissionController controller = createController(0, 0, 0);
+        GHRequest request = new GHRequest(42.50, 1.53, 42.51, 1.54).setProfile("car");
+        assertEquals(CHEAP, controller.estimateCost(request, true, true));
+        assertEquals(MEDIUM, controller.estimateCost(request, false, true));
+        assertEquals(EXPENSIVE, controller.estimateCost(request, false, false));
+
+        request.putHint(Parameters.CH.DISABLE, true);
+        assertEquals(MEDIUM, controller.estimateCost(request, true, true));
+        request.setCustomModel(new CustomModel());
+        assertEquals(EXPENSIVE, controller.estimateCost(request, true, true));
+
+        // Berlin to Munich is more than 500km
+        GHRequest longRequest = new GHRequest(52.52, 13.40, 48.14, 11.58).setProfile("car");
+        assertEquals(MEDIUM, controller.estimateCost(longRequest, true, true));
+
+        GHRequest manyPoints = new GHRequest().setProfile("car");
+        for (int i = 0; i < 11; i++)
+            manyPoints.addPoint(new GHPoint(42.50, 1.53 + i * 0.001));
+        assertEquals(MEDIUM, controller.estimateCost(manyPoints, true, true));
+        assertEquals(EXPENSIVE, controller.estimateCost(manyPoints, false, true));
+
+        GHRequest alternativeRoute = new GHRequest(42.50, 1.53, 42.51, 1.54).setProfile("car").setAlgorithm(Parameters.Algorithms.ALT_ROUTE);
+        assertEquals(MEDIUM, controller.estimateCost(alternativeRoute, true, true));
+        assertEquals(EXPENSIVE, controller.estimateCost(alternativeRoute, false, true));
+
+        // round trips are always calculated in flexible mode
+        GHRequest roundTrip = new GHRequest(42.50, 1.53, 42.50, 1.53).setProfile("car").setAlgorithm(Parameters.Algorithms.ROUND_TRIP);
+        assertEquals(EXPENSIVE, controller.estimateCost(roundTrip, true, true));
+        assertEquals(EXPENSIVE, controller.estimateCost(roundTrip, false, true));
+    }
+
+    @Test
+    public void testRejectWhenLimitIsReached() {
+        AdmissionController controller = createController(1, 0, 1);
+        AdmissionController.Permit permit = controller.acquire(EXPENSIVE);
+        assertEquals(1, controller.getActive(EXPENSIVE));
+        WebApplicationException ex = assertThrows(WebApplicationException.class, () -> controller.acquire(EXPENSIVE));
+        assertEquals(503, ex.getResponse().getStatus());
+        assertEquals("1", ex.getResponse().getHeaderString("Retry-After"));
+        assertEquals(1, controller.getRejected(EXPENSIVE));
+
+        // the other classes are not affected
+        controller.acquire(CHEAP).close();
+        for (int i = 0; i < 5; i++)
+            controller.acquire(MEDIUM);
+        assertEquals(0, controller.getRejected(CHEAP));
+
+        // closing a permit twice releases it only once
+        permit.close();
+        permit.close();
+        assertEquals(0, controller.getActive(EXPENSIVE));
+        try (AdmissionController.Permit p = controller.acquire(EXPENSIVE)) {
+            assertThrows(WebApplicationException.class, () -> controller.acquire(EXPENSIVE));
+        }
+        assertEquals(2, controller.getRejected(EXPENSIVE));
+    }
+
+    @Test
+    public void testWaitForPermit() throws Exception {
+        AdmissionController controller = new AdmissionController(Map.of(CHEAP, 1), 5_000, 500_000, 10);
+        AdmissionController.Permit permit = controller.acquire(CHEAP);
+        Thread thread = new Thread(() -> controller.acquire(CHEAP).close());
+        thread.start();
+        while (controller.getQueued(CHEAP) == 0)
+            Thread.sleep(1);
+        permit.close();
+        thread.join();
+        assertEquals(0, controller.getRejected(CHEAP));
+        assertEquals(0, controller.getActive(CHEAP));
+    }
+}
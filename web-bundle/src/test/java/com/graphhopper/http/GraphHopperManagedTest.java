@@ -0,0 +1,101 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.Profile;
+import com.graphhopper.resources.MVTTileCache;
+import com.graphhopper.util.CustomModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GraphHopperManagedTest {
+
+    private static GraphHopperConfig createConfig(Path graphLocation) {
+        GraphHopperConfig config = new GraphHopperConfig();
+        config.putObject("datareader.file", "../core/files/andorra.osm.pbf");
+        config.putObject("graph.location", graphLocation.toString());
+        config.putObject("graph.encoded_values", "car_access, car_average_speed");
+        config.putObject("import.osm.ignored_highways", "");
+        config.putObject("graph.reload.warmup_queries", 5);
+        config.putObject("mvt.cache.disk", true);
+        config.setProfiles(List.of(new Profile("car").setCustomModel(new CustomModel().
+                addToPriority(If("!car_access", MULTIPLY, "0")).
+                addToSpeed(If("true", LIMIT, "car_average_speed")))));
+        return config;
+    }
+
+    @Test
+    public void reload(@TempDir Path dir) throws InterruptedException {
+        GraphHopperManaged graphHopperManaged = new GraphHopperManaged(createConfig(dir.resolve("old")));
+        graphHopperManaged.start();
+        GraphHopper oldGraphHopper = graphHopperManaged.getGraphHopper();
+        MVTTileCache oldTileCache = graphHopperManaged.getTileCache();
+        assertEquals(dir.resolve("old").resolve("mvt_cache"), oldTileCache.getDirectory());
+        assertEquals(0, graphHopperManaged.getGeneration());
+
+        // the new graph is imported separately, e.g. by another process
+        GraphHopper importer = new GraphHopper().init(createConfig(dir.resolve("new")));
+        importer.importOrLoad();
+        importer.close();
+
+        // a request that is running while the graph is replaced keeps using the old graph
+        GraphHopperManaged.Generation generation = graphHopperManaged.acquire();
+        GraphHopper newGraphHopper = graphHopperManaged.reload(dir.resolve("new").toString());
+        assertEquals(1, graphHopperManaged.getGeneration());
+        assertNotSame(oldGraphHopper, newGraphHopper);
+        assertSame(oldGraphHopper, graphHopperManaged.getGraphHopper());
+        assertSame(oldTileCache, graphHopperManaged.getTileCache());
+        assertFalse(oldGraphHopper.getBaseGraph().isClosed());
+
+        // the thread that started the request no longer uses the old graph ...
+        graphHopperManaged.unpin();
+        assertSame(newGraphHopper, graphHopperManaged.getGraphHopper());
+        assertFalse(oldGraphHopper.getBaseGraph().isClosed());
+        // ... and the old graph is closed once the request finished, which happens on another thread for asynchronous
+        // responses
+        Thread thread = new Thread(() -> graphHopperManaged.release(generation));
+        thread.start();
+        thread.join();
+        assertTrue(oldGraphHopper.getBaseGraph().isClosed());
+        assertSame(newGraphHopper, graphHopperManaged.getGraphHopper());
+        // the tiles of the new graph are cached in its own folder
+        assertEquals(dir.resolve("new").resolve("mvt_cache"), graphHopperManaged.getTileCache().getDirectory());
+        assertFalse(newGraphHopper.route(new GHRequest(42.56819, 1.603231, 42.571034, 1.520662).setProfile("car")).hasErrors());
+
+        // a failed reload keeps the current graph
+        assertThrows(IllegalArgumentException.class, () -> graphHopperManaged.reload(dir.resolve("missing").toString()));
+        assertEquals(1, graphHopperManaged.getGeneration());
+        assertSame(newGraphHopper, graphHopperManaged.getGraphHopper());
+        assertFalse(newGraphHopper.getBaseGraph().isClosed());
+
+        graphHopperManaged.stop();
+        assertTrue(newGraphHopper.getBaseGraph().isClosed());
+    }
+}
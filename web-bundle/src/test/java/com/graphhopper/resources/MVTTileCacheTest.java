@@ -0,0 +1,121 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MVTTileCacheTest {
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        MVTTileCache cache = new MVTTileCache(2, null, 0);
+        assertTrue(cache.isEnabled());
+        cache.put("v1", 12, 1, 2, false, new byte[]{1});
+        cache.put("v1", 12, 1, 3, false, new byte[]{2});
+        // access the first tile, so the second one is evicted
+        assertArrayEquals(new byte[]{1}, cache.get("v1", 12, 1, 2, false));
+        cache.put("v1", 12, 1, 4, false, new byte[]{3});
+        assertEquals(2, cache.getSize());
+        assertNull(cache.get("v1", 12, 1, 3, false));
+        assertNull(cache.get("v1", 12, 1, 2, true));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        assertFalse(new MVTTileCache(0, null, 0).isEnabled());
+        assertThrows(IllegalArgumentException.class, () -> new MVTTileCache(-1, null, 0));
+    }
+
+    @Test
+    public void discardTilesOfOtherGraphVersion(@TempDir Path dir) {
+        MVTTileCache cache = new MVTTileCache(10, dir, 100);
+        cache.put("v1", 12, 1, 2, false, new byte[]{1});
+        assertArrayEquals(new byte[]{1}, cache.get("v1", 12, 1, 2, false));
+        assertNull(cache.get("v2", 12, 1, 2, false));
+        assertEquals(0, cache.getSize());
+        // the tile was removed from disk as well
+        assertNull(new MVTTileCache(10, dir, 100).get("v1", 12, 1, 2, false));
+    }
+
+    @Test
+    public void loadFromDisk(@TempDir Path dir) throws IOException {
+        MVTTileCache cache = new MVTTileCache(0, dir, 100);
+        cache.put("v1", 12, 1, 2, false, new byte[]{1, 2});
+        cache.put("v1", 12, 1, 2, false, new byte[]{1, 2});
+        assertEquals(0, cache.getSize());
+        // the temporary files were moved to their final location
+        try (Stream<Path> files = Files.walk(dir)) {
+            assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+        assertArrayEquals(new byte[]{1, 2}, cache.get("v1", 12, 1, 2, false));
+
+        // a new cache, e.g. after a restart, uses the existing tiles as long as the graph did not change
+        cache = new MVTTileCache(10, dir, 100);
+        assertArrayEquals(new byte[]{1, 2}, cache.get("v1", 12, 1, 2, false));
+        assertEquals(1, cache.getSize());
+        assertNull(cache.get("v1", 12, 1, 2, true));
+        assertNull(new MVTTileCache(10, dir, 100).get("v2", 12, 1, 2, false));
+    }
+
+    @Test
+    public void limitTilesOnDisk(@TempDir Path dir) {
+        MVTTileCache cache = new MVTTileCache(0, dir, 2);
+        cache.put("v1", 12, 1, 2, false, new byte[]{1});
+        cache.put("v1", 12, 1, 3, false, new byte[]{2});
+        cache.put("v1", 12, 1, 4, false, new byte[]{3});
+        assertEquals(2, cache.getDiskSize());
+        assertNull(cache.get("v1", 12, 1, 4, false));
+        // existing tiles can still be replaced
+        cache.put("v1", 12, 1, 2, false, new byte[]{4});
+        assertArrayEquals(new byte[]{4}, cache.get("v1", 12, 1, 2, false));
+        assertEquals(2, cache.getDiskSize());
+
+        // the tiles on disk are counted after a restart
+        cache = new MVTTileCache(0, dir, 2);
+        assertArrayEquals(new byte[]{2}, cache.get("v1", 12, 1, 3, false));
+        assertEquals(2, cache.getDiskSize());
+        cache.put("v1", 12, 1, 4, false, new byte[]{3});
+        assertNull(cache.get("v1", 12, 1, 4, false));
+
+        // a new graph version discards the tiles, so new tiles can be written
+        cache.put("v2", 12, 1, 4, false, new byte[]{3});
+        assertArrayEquals(new byte[]{3}, cache.get("v2", 12, 1, 4, false));
+        assertEquals(1, cache.getDiskSize());
+    }
+
+    @Test
+    public void rejectInvalidTiles(@TempDir Path dir) throws IOException {
+        MVTTileCache cache = new MVTTileCache(10, dir, 100);
+        assertThrows(IllegalArgumentException.class, () -> cache.put("v1", 12, 4096, 2, false, new byte[]{1}));
+        assertThrows(IllegalArgumentException.class, () -> cache.put("v1", 12, 1, -1, false, new byte[]{1}));
+        assertThrows(IllegalArgumentException.class, () -> cache.put("v1", MVTTileRenderer.MAX_ZOOM + 1, 1, 2, false, new byte[]{1}));
+        assertThrows(IllegalArgumentException.class, () -> cache.get("v1", -1, 0, 0, false));
+        cache.put("v1", 12, 4095, 4095, false, new byte[]{1});
+        assertEquals(1, cache.getDiskSize());
+        try (Stream<Path> files = Files.walk(dir)) {
+            assertEquals(1, files.filter(file -> file.toString().endsWith(".mvt")).count());
+        }
+    }
+}
@@ -41,6 +41,8 @@ import java.io.FileWriter;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MatchCommand extends ConfiguredCommand<GraphHopperServerConfiguration> {
 
@@ -75,6 +77,16 @@ public class MatchCommand extends ConfiguredCommand<GraphHopperServerConfigurati
                 .type(Double.class)
                 .required(false)
                 .setDefault(2.0);
+        subparser.addArgument("--transition_threads")
+                .type(Integer.class)
+                .required(false)
+                .setDefault(1)
+                .help("number of threads to calculate the transitions between the candidates");
+        subparser.addArgument("--one_to_many")
+                .type(Boolean.class)
+                .required(false)
+                .setDefault(false)
+                .help("calculate the transitions from one candidate with a single search, only used if LM is disabled");
     }
 
     @Override
@@ -96,9 +108,13 @@ public class MatchCommand extends ConfiguredCommand<GraphHopperServerConfigurati
 
         PMap hints = new PMap();
         hints.putObject("profile", args.get("profile"));
+        hints.putObject(Parameters.MapMatching.ONE_TO_MANY, args.getBoolean("one_to_many"));
         MapMatching mapMatching = MapMatching.fromGraphHopper(hopper, hints);
         mapMatching.setTransitionProbabilityBeta(args.getDouble("transition_probability_beta"));
         mapMatching.setMeasurementErrorSigma(args.getInt("gps_accuracy"));
+        int transitionThreads = args.getInt("transition_threads");
+        ExecutorService transitionExecutor = transitionThreads > 1 ? Executors.newFixedThreadPool(transitionThreads) : null;
+        mapMatching.setTransitionExecutor(transitionExecutor);
 
         StopWatch importSW = new StopWatch();
         StopWatch matchSW = new StopWatch();
@@ -149,6 +165,8 @@ public class MatchCommand extends ConfiguredCommand<GraphHopperServerConfigurati
                 ex.printStackTrace(System.err);
             }
         }
+        if (transitionExecutor != null)
+            transitionExecutor.shutdown();
         System.out.println("gps import took:" + importSW.getSeconds() + "s, match took: " + matchSW.getSeconds());
     }
 
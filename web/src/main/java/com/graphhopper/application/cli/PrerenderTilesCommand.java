@@ -0,0 +1,107 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.cli;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.http.GraphHopperManaged;
+import com.graphhopper.resources.MVTResource;
+import com.graphhopper.resources.MVTTileCache;
+import com.graphhopper.resources.MVTTileRenderer;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.BBox;
+import io.dropwizard.core.cli.ConfiguredCommand;
+import io.dropwizard.core.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Renders the vector tiles of /mvt for a range of zoom levels into the disk cache (see mvt.cache.disk), so they do not
+ * have to be rendered on demand.
+ */
+public class PrerenderTilesCommand extends ConfiguredCommand<GraphHopperServerConfiguration> {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrerenderTilesCommand.class);
+
+    public PrerenderTilesCommand() {
+        super("prerender-tiles", "renders the vector tiles for the given zoom levels into the tile cache of the graph folder");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--min_zoom")
+                .type(Integer.class)
+                .setDefault(MVTTileRenderer.MAX_EMPTY_ZOOM + 1)
+                .help("the lowest zoom level to render");
+        subparser.addArgument("--max_zoom")
+                .type(Integer.class)
+                .setDefault(14)
+                .help("the highest zoom level to render");
+        subparser.addArgument("--bbox")
+                .type(String.class)
+                .setDefault("")
+                .help("the area to render as minLat,minLon,maxLat,maxLon, per default the area of the graph is used");
+        subparser.addArgument("--render_all")
+                .type(Boolean.class)
+                .setDefault(false)
+                .help("render the tiles with all edges, see the render_all parameter of /mvt");
+    }
+
+    @Override
+    protected void run(Bootstrap<GraphHopperServerConfiguration> bootstrap, Namespace args, GraphHopperServerConfiguration configuration) {
+        GraphHopperConfig ghConfig = configuration.getGraphHopperConfiguration();
+        int minZoom = Math.max(args.getInt("min_zoom"), MVTTileRenderer.MAX_EMPTY_ZOOM + 1);
+        int maxZoom = args.getInt("max_zoom");
+        if (maxZoom < minZoom)
+            throw new IllegalArgumentException("max_zoom must not be smaller than min_zoom (" + minZoom + "), but was: " + maxZoom);
+        if (maxZoom > MVTTileRenderer.MAX_ZOOM)
+            throw new IllegalArgumentException("max_zoom must not be larger than " + MVTTileRenderer.MAX_ZOOM + ", but was: " + maxZoom);
+        boolean renderAll = args.getBoolean("render_all");
+
+        GraphHopperManaged graphHopperManaged = new GraphHopperManaged(ghConfig);
+        graphHopperManaged.start();
+        try {
+            GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+            BBox bbox = args.getString("bbox").isEmpty() ? graphHopper.getBaseGraph().getBounds() : BBox.parseTwoPoints(args.getString("bbox"));
+            List<String> encodedValues = MVTResource.getEncodedValues(ghConfig);
+            MVTTileRenderer renderer = new MVTTileRenderer(graphHopper, encodedValues);
+            // we only write to disk, keeping the tiles in memory would not help. the area and zoom levels are chosen
+            // explicitly, so we do not limit the number of tiles on disk
+            MVTTileCache tileCache = new MVTTileCache(0, MVTTileCache.getDirectory(ghConfig), Integer.MAX_VALUE);
+            String graphVersion = MVTTileCache.getGraphVersion(graphHopper, encodedValues);
+            for (int z = minZoom; z <= maxZoom; z++) {
+                StopWatch sw = new StopWatch().start();
+                // tile y coordinates grow from north to south
+                int minX = MVTTileRenderer.lon2x(bbox.minLon, z), maxX = MVTTileRenderer.lon2x(bbox.maxLon, z);
+                int minY = MVTTileRenderer.lat2y(bbox.maxLat, z), maxY = MVTTileRenderer.lat2y(bbox.minLat, z);
+                for (int x = minX; x <= maxX; x++)
+                    for (int y = minY; y <= maxY; y++)
+                        tileCache.put(graphVersion, z, x, y, renderAll, renderer.render(z, x, y, renderAll));
+                logger.info("rendered " + (long) (maxX - minX + 1) * (maxY - minY + 1) + " tiles for zoom " + z + ", took: " + sw.stop().getSeconds() + "s");
+            }
+        } finally {
+            graphHopperManaged.stop();
+        }
+    }
+}
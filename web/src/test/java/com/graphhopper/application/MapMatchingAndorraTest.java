@@ -17,7 +17,11 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -98,4 +102,83 @@ public class MapMatchingAndorraTest {
                 "Matched path (" + matchLength + "m) is much longer than GPX trace (" + gpxLength + "m), " +
                         "indicating dead-end detours or backtracking. Ratio: " + (matchLength / gpxLength));
     }
+
+    @Test
+    public void testConcurrentAndOneToManyTransitions() throws Exception {
+        XmlMapper xmlMapper = new XmlMapper();
+        Gpx gpx = xmlMapper.readValue(
+                new FileInputStream("../map-matching/files/andorra_for_map_matching.gpx"), Gpx.class);
+        List<Observation> observations = GpxConversions.getEntries(gpx.trk.get(0));
+
+        MapMatching mapMatching = MapMatching.fromGraphHopper(graphHopper, new PMap().putObject("profile", "bike"));
+        mapMatching.setMeasurementErrorSigma(20);
+        List<Integer> expected = fetchEdgeKeys(mapMatching.match(observations).getEdgeMatches());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            mapMatching = MapMatching.fromGraphHopper(graphHopper, new PMap().putObject("profile", "bike"));
+            mapMatching.setMeasurementErrorSigma(20);
+            mapMatching.setTransitionExecutor(executor);
+            assertEquals(expected, fetchEdgeKeys(mapMatching.match(observations).getEdgeMatches()));
+            // the executor can be used for several requests
+            assertEquals(expected, fetchEdgeKeys(mapMatching.match(observations).getEdgeMatches()));
+
+            for (ExecutorService transitionExecutor : Arrays.asList(null, executor)) {
+                mapMatching = MapMatching.fromGraphHopper(graphHopper, new PMap().putObject("profile", "bike")
+                        .putObject(Parameters.MapMatching.ONE_TO_MANY, true));
+                mapMatching.setMeasurementErrorSigma(20);
+                mapMatching.setTransitionExecutor(transitionExecutor);
+                assertEquals(expected, fetchEdgeKeys(mapMatching.match(observations).getEdgeMatches()), "executor: " + transitionExecutor);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testOnlineMatching() throws Exception {
+        XmlMapper xmlMapper = new XmlMapper();
+        Gpx gpx = xmlMapper.readValue(
+                new FileInputStream("../map-matching/files/andorra_for_map_matching.gpx"), Gpx.class);
+
+        MapMatching mapMatching = MapMatching.fromGraphHopper(graphHopper, new PMap().putObject("profile", "bike"));
+        mapMatching.setMeasurementErrorSigma(20);
+        MatchResult mr = mapMatching.match(GpxConversions.getEntries(gpx.trk.get(0)));
+
+        OnlineMapMatching onlineMatching = new OnlineMapMatching(mapMatching);
+        List<EdgeMatch> edgeMatches = new ArrayList<>();
+        List<EdgeMatch> segmentStarts = new ArrayList<>();
+        for (Observation observation : GpxConversions.getEntries(gpx.trk.get(0))) {
+            List<EdgeMatch> added = onlineMatching.add(observation);
+            added.stream().filter(onlineMatching::isSegmentStart).forEach(segmentStarts::add);
+            edgeMatches.addAll(added);
+            assertNotNull(onlineMatching.getCurrentState());
+        }
+        // some edges are final before the trace ends
+        assertFalse(edgeMatches.isEmpty());
+        edgeMatches.addAll(onlineMatching.finish());
+        // the trace can be matched without starting over
+        assertEquals(List.of(edgeMatches.get(0)), segmentStarts);
+        assertNull(onlineMatching.getCurrentState());
+        assertEquals(fetchEdgeKeys(mr.getEdgeMatches()), fetchEdgeKeys(edgeMatches));
+        assertEquals(mr.getEdgeMatches().stream().mapToInt(em -> em.getStates().size()).sum(),
+                edgeMatches.stream().mapToInt(em -> em.getStates().size()).sum());
+
+        // the matcher can be used for the next trace, and with the smallest window the edges are finalized quickly
+        onlineMatching.setWindowSize(1);
+        edgeMatches.clear();
+        for (Observation observation : GpxConversions.getEntries(gpx.trk.get(0))) {
+            List<EdgeMatch> added = onlineMatching.add(observation);
+            if (edgeMatches.isEmpty() && !added.isEmpty())
+                assertTrue(onlineMatching.isSegmentStart(added.get(0)));
+            edgeMatches.addAll(added);
+        }
+        assertFalse(edgeMatches.isEmpty());
+        edgeMatches.addAll(onlineMatching.finish());
+        assertEquals(mr.getEdgeMatches().get(0).getEdgeState().getEdgeKey(), edgeMatches.get(0).getEdgeState().getEdgeKey());
+    }
+
+    private static List<Integer> fetchEdgeKeys(List<EdgeMatch> edgeMatches) {
+        return edgeMatches.stream().map(em -> em.getEdgeState().getEdgeKey()).toList();
+    }
 }
@@ -335,6 +335,14 @@ public class MapMatchingTest {
         assertTrue(debugInfo.transitions.stream().anyMatch(t -> t.chosen));
     }
 
+    @Test
+    public void testOneToManyRequiresDijkstra() {
+        PMap hints = new PMap().putObject("profile", "my_profile").putObject(Parameters.MapMatching.ONE_TO_MANY, true);
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> MapMatching.fromGraphHopper(graphHopper, hints));
+        assertTrue(ex.getMessage().contains(Parameters.Landmark.DISABLE), ex.getMessage());
+        assertNotNull(MapMatching.fromGraphHopper(graphHopper, hints.putObject(Parameters.Landmark.DISABLE, true)));
+    }
+
     /**
      * This method does not in fact create random observations. It creates observations at nodes on a route.
      * This method _should_ be replaced by one that creates random observations along a route,
@@ -24,6 +24,7 @@ import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.BodyAndStatus;
+import com.graphhopper.util.DistanceCalcEarth;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.JsonFeatureCollection;
 import com.graphhopper.util.TurnCostsConfig;
@@ -41,6 +42,8 @@ import org.locationtech.jts.geom.Polygon;
 
 import jakarta.ws.rs.client.WebTarget;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import static com.graphhopper.application.resources.Util.getWithStatus;
@@ -159,6 +162,66 @@ public class IsochroneResourceTest {
         assertTrue(weightLimitPolygon.equalsTopo(timeLimitPolygon));
     }
 
+    @Test
+    public void requestByTimeLimitWithGridContours() {
+        JsonFeatureCollection featureCollection = clientTarget(app, "/isochrone")
+                .queryParam("profile", "fast_car")
+                .queryParam("point", "42.531073,1.573792")
+                .queryParam("time_limit", 5 * 60)
+                .queryParam("buckets", 2)
+                .queryParam("grid_cell_size", 100)
+                .queryParam("type", "geojson")
+                .request().get(JsonFeatureCollection.class);
+
+        assertEquals(2, featureCollection.getFeatures().size());
+        Geometry polygon0 = featureCollection.getFeatures().get(0).getGeometry();
+        Geometry polygon1 = featureCollection.getFeatures().get(1).getGeometry();
+
+        assertTrue(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.573792, 42.531073))));
+        assertTrue(polygon1.getArea() > polygon0.getArea());
+        assertFalse(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
+    }
+
+    @Test
+    public void requestGrid() {
+        byte[] bytes = clientTarget(app, "/isochrone")
+                .queryParam("profile", "fast_car")
+                .queryParam("point", "42.531073,1.573792")
+                .queryParam("time_limit", 5 * 60)
+                .queryParam("grid_cell_size", 100)
+                .queryParam("type", "grid")
+                .request().get(byte[].class);
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte[] magic = new byte[4];
+        buffer.get(magic);
+        assertEquals("GHIG", new String(magic, StandardCharsets.US_ASCII));
+        assertEquals(1, buffer.getInt());
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        assertEquals(48 + 4 * width * height, bytes.length);
+        double west = buffer.getDouble();
+        double north = buffer.getDouble();
+        double cellWidth = buffer.getDouble();
+        double cellHeight = buffer.getDouble();
+        assertEquals(100 / DistanceCalcEarth.METERS_PER_DEGREE, cellHeight, 1e-9);
+        assertTrue(west < 1.573792 && 1.573792 < west + width * cellWidth);
+        assertTrue(north - height * cellHeight < 42.531073 && 42.531073 < north);
+
+        int reached = 0;
+        for (int i = 0; i < width * height; i++) {
+            int value = buffer.getInt();
+            assertTrue(value == -1 || value >= 0 && value <= 5 * 60 * 1000, "" + value);
+            if (value >= 0)
+                reached++;
+        }
+        assertTrue(reached > 100, "" + reached);
+        int startRow = (int) ((north - 42.531073) / cellHeight);
+        int startColumn = (int) ((1.573792 - west) / cellWidth);
+        int startValue = ByteBuffer.wrap(bytes).getInt(48 + 4 * (startRow * width + startColumn));
+        assertTrue(startValue >= 0 && startValue < 30_000, "" + startValue);
+    }
+
     @Test
     public void requestReverseFlow() {
         JsonFeatureCollection featureCollection = clientTarget(app, "/isochrone")
@@ -242,7 +305,7 @@ public class IsochroneResourceTest {
         JsonNode json = response.getBody();
         String message = json.path("message").asText();
 
-        assertEquals("query param type must be one of [json, geojson]", message);
+        assertEquals("query param type must be one of [json, geojson, grid]", message);
     }
 
     @Test
@@ -18,9 +18,14 @@
 package com.graphhopper.application.resources;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.jackson.Gpx;
+import com.graphhopper.jackson.Jackson;
 import com.graphhopper.jackson.ResponsePathDeserializerHelper;
+import com.graphhopper.matching.Observation;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
@@ -36,7 +41,9 @@ import org.locationtech.jts.io.WKTReader;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Response;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
 import static org.junit.jupiter.api.Assertions.*;
@@ -122,6 +129,56 @@ public class MapMatchingResourceTest {
         }
     }
 
+    @Test
+    public void testStream() throws Exception {
+        Gpx gpx = new XmlMapper().readValue(getClass().getResourceAsStream("/tour2-with-loop.gpx"), Gpx.class);
+        StringBuilder body = new StringBuilder();
+        for (Observation observation : GpxConversions.getEntries(gpx.trk.get(0)))
+            body.append("{\"lat\":").append(observation.getPoint().lat).append(",\"lon\":").append(observation.getPoint().lon).append("}\n");
+        String response = clientTarget(app, "/match/stream?profile=fast_car")
+                .request()
+                .post(Entity.entity(body.toString(), "application/x-ndjson"), String.class);
+        List<Integer> ids = new ArrayList<>();
+        for (String line : response.split("\n"))
+            ids.add(Jackson.newObjectMapper().readTree(line).get("id").asInt());
+
+        // the online matching finds the same edges as the regular one
+        JsonNode json = clientTarget(app, "/match?profile=fast_car&type=extended_json")
+                .request()
+                .post(Entity.xml(getClass().getResourceAsStream("/tour2-with-loop.gpx")), JsonNode.class);
+        List<Integer> expectedIds = new ArrayList<>();
+        for (JsonNode link : json.get("diary").get("entries").get(0).get("links"))
+            expectedIds.add(link.get("id").asInt());
+        assertFalse(expectedIds.isEmpty());
+        assertEquals(expectedIds, ids);
+    }
+
+    @Test
+    public void testStreamWithInvalidObservations() throws Exception {
+        // a missing or non-numeric lat or lon must not be matched as 0
+        try (Response response = clientTarget(app, "/match/stream?profile=fast_car")
+                .request()
+                .post(Entity.entity("\n{\"lat\":\"51.34\",\"lon\":12.36}\n", "application/x-ndjson"))) {
+            assertEquals(400, response.getStatus());
+            JsonNode json = response.readEntity(JsonNode.class);
+            assertTrue(json.get("message").asText().contains("numeric lat and lon"), json.toString());
+            assertEquals(2, json.get("line").asInt());
+        }
+
+        // once the stream started, invalid lines are reported within the stream
+        String body = "{\"lat\":51.34365,\"lon\":12.3607}\n{\"lat\":51.344}\n{\"lat\":51.344,\"lon\":null}\nnot json\n{\"lat\":51.34443,\"lon\":12.36418}\n";
+        String response = clientTarget(app, "/match/stream?profile=fast_car")
+                .request()
+                .post(Entity.entity(body, "application/x-ndjson"), String.class);
+        List<Integer> errorLines = new ArrayList<>();
+        for (String line : response.split("\n")) {
+            JsonNode json = Jackson.newObjectMapper().readTree(line);
+            if (json.has("message"))
+                errorLines.add(json.get("line").asInt());
+        }
+        assertEquals(List.of(2, 3, 4), errorLines);
+    }
+
     private LineString readWktLineString(String wkt) {
         WKTReader wktReader = new WKTReader();
         LineString expectedGeometry = null;
@@ -0,0 +1,119 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.api.GHMRequest;
+import com.graphhopper.api.GraphHopperMatrixWeb;
+import com.graphhopper.api.MatrixResponse;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.GHPoint;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static com.graphhopper.application.util.TestUtils.clientUrl;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class MatrixResourceTest {
+    private static final String DIR = "./target/andorra-gh-matrix/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("prepare.min_network_size", 0).
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.location", DIR).
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                setProfiles(List.of(TestProfiles.accessAndSpeed("car"))).
+                setCHProfiles(List.of(new CHProfile("car")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void testMatchesRoute() {
+        String[] points = {"42.554851,1.536198", "42.510071,1.548128", "42.531988,1.522169"};
+        JsonNode json = clientTarget(app, "/matrix?profile=car&point=" + String.join("&point=", points) +
+                "&out_array=weights&out_array=times&out_array=distances").request().get(JsonNode.class);
+        for (int i = 0; i < points.length; i++) {
+            for (int j = 0; j < points.length; j++) {
+                JsonNode path = clientTarget(app, "/route?profile=car&calc_points=false&instructions=false&point=" + points[i] +
+                        "&point=" + points[j]).request().get(JsonNode.class).get("paths").get(0);
+                assertEquals(path.get("distance").asDouble(), json.get("distances").get(i).get(j).asDouble(), 1, i + "->" + j);
+                assertEquals(path.get("time").asLong() / 1000.0, json.get("times").get(i).get(j).asDouble(), 1, i + "->" + j);
+                assertEquals(path.get("weight").asDouble(), json.get("weights").get(i).get(j).asDouble(), 1.e-2, i + "->" + j);
+            }
+        }
+        assertTrue(json.get("info").has("took"));
+    }
+
+    @Test
+    public void testClient() {
+        GraphHopperMatrixWeb client = new GraphHopperMatrixWeb(clientUrl(app, "/matrix"));
+        GHMRequest request = new GHMRequest().setProfile("car").
+                setFromPoints(Arrays.asList(new GHPoint(42.554851, 1.536198), new GHPoint(42.510071, 1.548128))).
+                setToPoints(List.of(new GHPoint(42.531988, 1.522169))).
+                setOutArrays(Arrays.asList("times", "distances"));
+        MatrixResponse rsp = client.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(2, rsp.getDistances().length);
+        assertEquals(1, rsp.getDistances()[0].length);
+        assertTrue(rsp.getDistance(0, 0) > 3000, "unexpected distance: " + rsp.getDistance(0, 0));
+        assertTrue(rsp.getTime(1, 0) > 0);
+    }
+
+    @Test
+    public void testErrors() {
+        String body = "{\"profile\": \"car\", \"from_points\": [[1.536198,42.554851],[1.548128,42.510071]], " +
+                "\"to_points\": [[1.536198,42.554851],[1.53,43.58]], \"out_arrays\": [\"weights\"]}";
+        Response response = clientTarget(app, "/matrix").request().post(Entity.json(body));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("out of bounds"));
+
+        response = clientTarget(app, "/matrix?profile=bike&point=42.554851,1.536198&point=42.510071,1.548128").request().get();
+        assertEquals(400, response.getStatus());
+
+        response = clientTarget(app, "/matrix?profile=car&point=42.554851,1.536198&point=42.510071,1.548128&out_array=speeds").request().get();
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Unknown out_arrays value"));
+    }
+}
@@ -271,6 +271,38 @@ public class RouteResourceTest {
         assertEquals(false, instructions.get(23).getExtraInfoJSON().get("exited"));
     }
 
+    @ParameterizedTest(name = "POST = {0}")
+    @ValueSource(booleans = {true, false})
+    public void testGraphHopperWebBinaryResponse(boolean usePost) {
+        GraphHopperWeb jsonClient = new GraphHopperWeb(clientUrl(app, "/route")).setPostRequest(usePost);
+        GraphHopperWeb binaryClient = new GraphHopperWeb(clientUrl(app, "/route")).setPostRequest(usePost).setBinaryResponse(true);
+        GHRequest request = new GHRequest().
+                setProfile("my_car").
+                addPoint(new GHPoint(42.554851, 1.536198)).
+                addPoint(new GHPoint(42.531896, 1.553278)).
+                addPoint(new GHPoint(42.510071, 1.548128)).
+                setPathDetails(Arrays.asList(RoadClass.KEY, "average_speed", "edge_id"));
+        GHResponse jsonRsp = jsonClient.route(request);
+        GHResponse binaryRsp = binaryClient.route(request);
+        assertFalse(binaryRsp.hasErrors(), binaryRsp.getErrors().toString());
+        ResponsePath jsonPath = jsonRsp.getBest();
+        ResponsePath binaryPath = binaryRsp.getBest();
+        assertEquals(jsonPath.getDistance(), binaryPath.getDistance(), 1.e-3);
+        assertEquals(jsonPath.getTime(), binaryPath.getTime());
+        assertEquals(jsonPath.getPoints(), binaryPath.getPoints());
+        assertEquals(jsonPath.getWaypoints(), binaryPath.getWaypoints());
+        assertEquals(jsonPath.getInstructions().size(), binaryPath.getInstructions().size());
+        for (int i = 0; i < jsonPath.getInstructions().size(); i++)
+            assertEquals(jsonPath.getInstructions().get(i).getTurnDescription(null), binaryPath.getInstructions().get(i).getTurnDescription(null));
+        assertEquals(jsonPath.getPathDetails().toString(), binaryPath.getPathDetails().toString());
+        assertEquals(jsonRsp.getHints().getLong("visited_nodes.sum", -1), binaryRsp.getHints().getLong("visited_nodes.sum", -2));
+
+        // errors are still returned as JSON
+        GHResponse errorRsp = binaryClient.route(new GHRequest(0.0, 0.0, 0.0, 0.0).setProfile("my_car"));
+        assertTrue(errorRsp.hasErrors());
+        assertInstanceOf(PointOutOfBoundsException.class, errorRsp.getErrors().get(0));
+    }
+
     @Test
     public void testPathDetailsRoadClass() {
         GraphHopperWeb client = new GraphHopperWeb(clientUrl(app, "/route"));